@@ -2,72 +2,844 @@ package bds.calcite;
 
 import bds.common.Logger;
 import bds.common.StreamIterable;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.node.ObjectNode;
+import bds.index.DiskGraphIndex;
+import bds.index.HnswIndex;
+import bds.index.BitmapIndex;
+import bds.index.IvfIndex;
+import bds.index.PqIndex;
+import bds.index.QuantizedIndex;
+import bds.index.ScalarIndex;
+import bds.index.ScalarIndexType;
+import bds.index.SearchResult;
+import bds.index.SortedIndex;
+import bds.index.VectorIndex;
+import bds.index.VectorIndexType;
+import bds.loader.BulkLoader;
+import bds.storage.Column;
+import bds.storage.ColumnarStore;
+import bds.storage.DictionaryColumn;
+import bds.storage.IntColumn;
+import bds.storage.LogRecord;
+import bds.storage.LongColumn;
+import bds.storage.Snapshot;
+import bds.storage.TableSnapshot;
+import bds.storage.TableStorage;
+import bds.storage.VectorColumn;
 import org.apache.calcite.DataContext;
 import org.apache.calcite.linq4j.Enumerable;
+import org.apache.calcite.linq4j.Enumerator;
 import org.apache.calcite.linq4j.Linq4j;
+import org.apache.calcite.linq4j.QueryProvider;
+import org.apache.calcite.linq4j.Queryable;
+import org.apache.calcite.linq4j.tree.Expression;
+import org.apache.calcite.plan.RelOptCluster;
+import org.apache.calcite.plan.RelOptTable;
+import org.apache.calcite.prepare.Prepare;
+import org.apache.calcite.rel.RelNode;
+import org.apache.calcite.rel.core.TableModify;
+import org.apache.calcite.rel.logical.LogicalTableModify;
 import org.apache.calcite.rel.type.RelDataType;
 import org.apache.calcite.rel.type.RelDataTypeFactory;
-import org.apache.calcite.schema.ScannableTable;
+import org.apache.calcite.rex.RexNode;
+import org.apache.calcite.schema.ModifiableTable;
+import org.apache.calcite.schema.ProjectableFilterableTable;
+import org.apache.calcite.schema.SchemaPlus;
+import org.apache.calcite.schema.Schemas;
 import org.apache.calcite.schema.impl.AbstractTable;
+import org.apache.calcite.schema.impl.AbstractTableQueryable;
 import org.apache.calcite.sql.type.SqlTypeName;
-import bds.vectors.DecimalVector;
+import bds.vectors.DenseVector;
+import bds.vectors.VectorMetric;
+import bds.vectors.VectorQuantization;
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.WeakHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 /**
  * BaseCustomTable class that can be subclassed to create a Custom Table like the Employees Table.
+ * Fields declared with the SqlTypeName.OTHER type are vector fields, and their values are DenseVector instances.
+ * The rows are stored in a ColumnarStore. Scans evaluate the pushed down filters on the columns first, and only
+ * convert the projected fields of the remaining rows to Objects. Large tables are scanned in parallel partitions,
+ * see ParallelScan.
+ * The table is a ModifiableTable: INSERT, UPDATE and DELETE statements are planned by CustomTableModifyRule and
+ * written through the TableStorage of the table. INSERT replaces the row with the same id, if any.
+ * Every query reads the rows through the TableSnapshot it took first, see getSnapshot, so all scans of a query see
+ * the same rows and are not affected by concurrent writes. The rows are spread over the segments of the table, which
+ * are scanned one after the other, and each segment has its own vector indexes.
+ * Scalar fields can have secondary indexes, see getScalarIndexType, which the scans look the pushed down filters up in
+ * to only test the rows that can pass them.
+ * The fields of the table are known without its rows, so a query is planned before the rows are loaded; the rows are
+ * loaded by the storage loader of the table when a query or a write first needs them, see setStorageLoader.
  */
-public abstract class BaseCustomTable extends AbstractTable implements ScannableTable {
+public abstract class BaseCustomTable extends AbstractTable implements ProjectableFilterableTable, ModifiableTable {
 
-    private Map<Object, ObjectNode> data;
-    private List<String> fieldNames;
+    private volatile TableStorage storage;
+    private Supplier<Future<TableStorage>> storageLoader;
+    private Future<TableStorage> pendingStorage;
+    private volatile List<String> fieldNames;
     private static final Logger logger = Logger.getInstance();
-    private List<SqlTypeName> fieldTypes;
+    private volatile List<SqlTypeName> fieldTypes;
+    private final Map<ColumnarStore, Map<String, IndexedSegment>> vectorIndexes = new WeakHashMap<>();
+    private final Map<ColumnarStore, ScalarIndexes> scalarIndexes = new WeakHashMap<>();
+    private final Map<DataContext, TableSnapshot> querySnapshots = Collections.synchronizedMap(new WeakHashMap<>());
 
     /**
-     * Method to set the initial data in this custom table.
+     * Method to set the initial data in this custom table. Vector and scalar indexes built over previous data are
+     * dropped.
+     * @param storage the TableStorage holding the rows, in a store created by createStore.
      */
-    public void setData(Map<Object, ObjectNode> data) {
-        this.data = data;
+    public synchronized void setData(TableStorage storage) {
+        if (this.storage == storage) return;
 
+        synchronized (vectorIndexes) {
+            vectorIndexes.clear();
+        }
+        synchronized (scalarIndexes) {
+            scalarIndexes.clear();
+        }
+        querySnapshots.clear();
+        this.pendingStorage = null;
+        this.storage = storage;
+        this.fieldNames = storage.getFieldNames();
+        this.fieldTypes = storage.getFieldTypes();
+    }
+
+    /**
+     * Method to set how the data of this table is loaded, without loading it. The loader is called once, by the first
+     * call of startLoading or of a method that needs the rows, and the table waits for the returned Future then.
+     * @param storageLoader starts loading the data, usually on another thread, and returns the pending TableStorage.
+     */
+    public synchronized void setStorageLoader(Supplier<Future<TableStorage>> storageLoader) {
+        this.storageLoader = storageLoader;
+    }
+
+    /**
+     * Method to start loading the data of this table in the background, if it is not loaded or loading yet. Calling
+     * it for all tables a query uses before the first scan lets the tables load concurrently.
+     */
+    public synchronized void startLoading() {
+        if (storage == null && pendingStorage == null && storageLoader != null) {
+            pendingStorage = storageLoader.get();
+        }
+    }
+
+    /**
+     * Method to get the TableStorage of this table, waiting for it to be loaded if needed.
+     * @return the TableStorage of this table.
+     */
+    private TableStorage getStorage() {
+        TableStorage current = storage;
+        if (current != null) return current;
+
+        Future<TableStorage> pending;
+        synchronized (this) {
+            startLoading();
+            if (storage != null) return storage;
+            pending = pendingStorage;
+        }
+        if (pending == null) {
+            throw new IllegalStateException("the data of " + getTableName() + " is not set");
+        }
+
+        try {
+            TableStorage loaded = pending.get();
+            synchronized (this) {
+                if (pendingStorage == pending) {
+                    setData(loaded);
+                }
+                return storage;
+            }
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("interrupted while loading " + getTableName(), ex);
+        }
+        catch (ExecutionException ex) {
+            synchronized (this) {
+                if (pendingStorage == pending) {
+                    // the next access tries again
+                    pendingStorage = null;
+                }
+            }
+            Throwable cause = ex.getCause();
+            throw new RuntimeException("could not load " + getTableName() + ": " + cause.getMessage(), cause);
+        }
+    }
+
+    /**
+     * Method to set the field names and types declared by addTableFieldNamesAndTypes, unless they are set already.
+     */
+    private void describeFields() {
+        if (fieldNames != null) return;
+
+        synchronized (this) {
+            if (fieldNames != null) return;
+
+            ColumnarStore store = createStore();
+            fieldTypes = store.getFieldTypes();
+            fieldNames = store.getFieldNames();
+        }
+    }
+
+    /**
+     * Method to create an empty ColumnarStore with the fields of this table, for the DataLoader to fill.
+     * @return the newly created ColumnarStore.
+     */
+    public ColumnarStore createStore() {
         List<String> names = new ArrayList<>();
         List<SqlTypeName> types = new ArrayList<>();
 
         this.addTableFieldNamesAndTypes(names, types);
-        this.fieldNames = names;
-        this.fieldTypes = types;
+        return new ColumnarStore(names, types);
+    }
+
+    /**
+     * Method to get the names of the fields of this table.
+     * @return unmodifiable list of the field names.
+     */
+    public List<String> getFieldNames() {
+        describeFields();
+        return fieldNames;
     }
 
     /**
-     * Method to get the Row Type.
+     * Method to get the TableSnapshot a query reads the rows of this table from. The first call of a query takes the
+     * current TableSnapshot and the following calls return the same one, for as long as the DataContext of the query
+     * is reachable.
+     * @param root the DataContext of the query, or null to get the current TableSnapshot.
+     * @return the TableSnapshot of the rows.
+     */
+    public TableSnapshot getSnapshot(DataContext root) {
+        TableStorage current = getStorage();
+        if (root == null) return current.snapshot();
+
+        return querySnapshots.computeIfAbsent(root, context -> current.snapshot());
+    }
+
+    /**
+     * Method to change the rows of this table. The changes are applied together, and are durable when the method
+     * returns if the table has a storage directory, see TableStorage.
+     * @param records the changes to apply, in order.
+     */
+    public void write(List<LogRecord> records) {
+        try {
+            getStorage().write(records);
+        }
+        catch (IOException ex) {
+            throw new RuntimeException("could not write to " + getTableName() + ": " + ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * Method to load the rows of a CSV, JSON Lines or .fvecs file into this table, see BulkLoader. The rows are
+     * written in batches like INSERT statements, so they replace rows with the same id, go through the log of the
+     * table, and are flushed to segments as the memtable fills up.
+     * @param path the file to load, its format is chosen by its extension.
+     * @param listener told about the progress of the load, or null.
+     * @return the number of rows loaded.
+     * @throws IOException if the file cannot be read or holds an invalid record; the batches written before stay.
+     */
+    public long bulkLoad(Path path, BulkLoader.ProgressListener listener) throws IOException {
+        describeFields();
+        return new BulkLoader(fieldNames, fieldTypes).load(path, this::write, listener);
+    }
+
+    /**
+     * Method to get the Row Type. A query asks for it while it is validated, so the rows start loading in the
+     * background then, see startLoading.
      */
     @Override
     public RelDataType getRowType(RelDataTypeFactory typeFactory) {
+        describeFields();
+        startLoading();
 
-        List<RelDataType> types = fieldTypes.stream().map(typeFactory::createSqlType).collect(Collectors.toList());
+        List<RelDataType> types = fieldTypes.stream()
+                .map(type -> createFieldType(typeFactory, type))
+                .collect(Collectors.toList());
         return typeFactory.createStructType(types, fieldNames);
     }
 
+    /**
+     * Method to create the RelDataType of a single field. Vector fields are exposed as the DenseVector Java type, so
+     * the DenseVector instances are passed to the Vector Functions directly.
+     * @param typeFactory the RelDataTypeFactory used to create the type.
+     * @param type the SqlTypeName declared for the field.
+     * @return the RelDataType of the field.
+     */
+    private static RelDataType createFieldType(RelDataTypeFactory typeFactory, SqlTypeName type) {
+        if (type == SqlTypeName.OTHER) {
+            return typeFactory.createJavaType(DenseVector.class);
+        }
+        return typeFactory.createSqlType(type);
+    }
+
     public abstract IDataLoader getDataLoader();
 
+    /**
+     * Method to get the index of a field.
+     * @param fieldName the name of the field, compared ignoring case.
+     * @return the index of the field, or -1 if this table has no such field.
+     */
+    public int getFieldIndex(String fieldName) {
+        describeFields();
+        for (int i = 0; i < fieldNames.size(); i++) {
+            if (fieldNames.get(i).equalsIgnoreCase(fieldName)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Method to find the k rows whose vectors are most similar to a query vector with the vector indexes of the
+     * segments. Each segment is searched with its own index, and the visible results of all segments are merged. The
+     * rows whose vectors have a norm of 0 have a NaN cosine similarity, which ORDER BY ... DESC ranks first, so they
+     * are returned first with a NaN score.
+     * @param root the DataContext of the query, or null to search the current TableSnapshot.
+     * @param fieldName the name of the vector field.
+     * @param query the query vector.
+     * @param k the number of results to return.
+     * @param efSearch the size of the HNSW candidate list, or 0 to use the default of the index.
+     * @return up to k results holding the ids of the rows, ordered from the most to the least similar.
+     */
+    public List<SearchResult> searchVectorIndex(DataContext root, String fieldName, DenseVector query, int k,
+                                                int efSearch) {
+        return searchVectorIndex(root, fieldName, query, k, getVectorIndexType(fieldName), efSearch);
+    }
+
+    /**
+     * Method to find the k rows whose vectors are most similar to a query vector with a given kind of vector index.
+     * The segments keep an index of each kind that was searched, so the kinds can be compared on the same data.
+     * @param root the DataContext of the query, or null to search the current TableSnapshot.
+     * @param fieldName the name of the vector field.
+     * @param query the query vector.
+     * @param k the number of results to return.
+     * @param type the kind of vector index to search.
+     * @param effort how hard the index searches, see VectorIndex.search, or 0 to use the default of the index.
+     * @return up to k results holding the ids of the rows, ordered from the most to the least similar.
+     */
+    public List<SearchResult> searchVectorIndex(DataContext root, String fieldName, DenseVector query, int k,
+                                                VectorIndexType type, int effort) {
+        return searchVectorIndex(root, fieldName, query, k, type, effort, null);
+    }
+
+    /**
+     * Method to find the k rows whose vectors are most similar to a query vector among the rows with the passed ids,
+     * like the rows accepted by the WHERE clause of a query. The ids are turned into a bitmap of the row positions
+     * of each segment, which the vector index of the segment checks while it searches, so the rejected rows never
+     * take the place of a result, see VectorIndex.search.
+     * @param root the DataContext of the query, or null to search the current TableSnapshot.
+     * @param fieldName the name of the vector field.
+     * @param query the query vector.
+     * @param k the number of results to return.
+     * @param type the kind of vector index to search, or null for the default kind of the field.
+     * @param effort how hard the index searches, see VectorIndex.search, or 0 to use the default of the index.
+     * @param ids the ids of the rows that can be returned, or null to search every row.
+     * @return up to k results holding the ids of the rows, ordered from the most to the least similar.
+     */
+    public List<SearchResult> searchVectorIndex(DataContext root, String fieldName, DenseVector query, int k,
+                                                VectorIndexType type, int effort, Collection<?> ids) {
+        TableSnapshot snapshot = getSnapshot(root);
+        return searchVectorIndex(snapshot, fieldName, query, k, type, effort,
+                ids == null ? null : createRowBitmaps(snapshot, ids));
+    }
+
+    /**
+     * Method to find the k rows whose vectors are most similar to a query vector among the rows of a RowScan that
+     * pass its filters, see RowScan.getRowBitmaps, with the default kind of vector index of the field. The vector
+     * index of each segment checks the bitmap of the segment while it searches, like for the ids of the rows.
+     * @param rowScan the RowScan whose TableSnapshot is searched.
+     * @param fieldName the name of the vector field.
+     * @param query the query vector.
+     * @param k the number of results to return.
+     * @param segmentRows the positions of the rows of each segment that can be returned, or null to search every row.
+     * @return up to k results holding the ids of the rows, ordered from the most to the least similar.
+     */
+    public List<SearchResult> searchVectorIndex(RowScan rowScan, String fieldName, DenseVector query, int k,
+                                                BitSet[] segmentRows) {
+        return searchVectorIndex(rowScan.snapshot, fieldName, query, k, null, 0, segmentRows);
+    }
+
+    /**
+     * Method to search the vector indexes of the segments of a TableSnapshot, restricted to bitmaps of row positions.
+     */
+    private List<SearchResult> searchVectorIndex(TableSnapshot snapshot, String fieldName, DenseVector query, int k,
+                                                 VectorIndexType type, int effort, BitSet[] segmentRows) {
+        int fieldIndex = getFieldIndex(fieldName);
+        if (fieldIndex < 0 || fieldTypes.get(fieldIndex) != SqlTypeName.OTHER) {
+            throw new IllegalArgumentException("Table " + getTableName() + " has no vector field " + fieldName);
+        }
+
+        VectorIndexType indexType = type != null ? type : getVectorIndexType(fieldName);
+        List<SearchResult> results = new ArrayList<>();
+        for (int i = 0; i < snapshot.getSegmentCount(); i++) {
+            Snapshot segment = snapshot.getSegment(i);
+            if (segment.size() == segment.getDeletedCount()) continue;
+            if (segmentRows != null && segmentRows[i].isEmpty()) continue;
+
+            results.addAll(searchSegment(segment, getVectorIndex(segment, fieldIndex, indexType), query, k, effort,
+                    segmentRows == null ? null : segmentRows[i]));
+        }
+        // Double.compare ranks NaN above every score, so the unscored rows come first, in the order of the segments
+        results.sort((a, b) -> Double.compare(b.getScore(), a.getScore()));
+        return results.size() > k ? new ArrayList<>(results.subList(0, k)) : results;
+    }
+
+    /**
+     * Method to find the positions of the rows with the passed ids in the segments of a TableSnapshot.
+     * @return one bitmap of row positions per segment.
+     */
+    private static BitSet[] createRowBitmaps(TableSnapshot snapshot, Collection<?> ids) {
+        BitSet[] segmentRows = new BitSet[snapshot.getSegmentCount()];
+        for (int i = 0; i < segmentRows.length; i++) {
+            segmentRows[i] = new BitSet(snapshot.getSegment(i).size());
+        }
+        for (Object id : ids) {
+            long reference = snapshot.findRow(id);
+            if (reference >= 0) {
+                segmentRows[TableSnapshot.getSegmentIndex(reference)].set(TableSnapshot.getRow(reference));
+            }
+        }
+        return segmentRows;
+    }
+
+    /**
+     * Method to search the vector index of one segment. The index holds the rows of the segment that were visible
+     * when they were indexed, so rows deleted since then are dropped from the results, and the search is repeated
+     * with a larger k until k visible rows are found or the whole index was returned. The rows whose vectors have no
+     * cosine similarity come first with a NaN score, like ORDER BY COSINE_SIMILARITY(...) DESC puts them first.
+     * @param rows the positions of the rows that can be returned, or null to search every row.
+     * @return up to k results holding the ids of the rows.
+     */
+    private static List<SearchResult> searchSegment(Snapshot segment, IndexedSegment indexed, DenseVector query,
+                                                    int k, int effort, BitSet rows) {
+        ColumnarStore store = segment.getStore();
+        List<SearchResult> unscored = new ArrayList<>();
+        BitSet unscoredRows = indexed.unscoredRows;
+        for (int row = unscoredRows.nextSetBit(0); row >= 0 && unscored.size() < k;
+             row = unscoredRows.nextSetBit(row + 1)) {
+            if ((rows == null || rows.get(row)) && segment.isVisible(row)) {
+                unscored.add(new SearchResult(store.getValue(row, 0), Double.NaN));
+            }
+        }
+        if (unscored.size() >= k) return unscored;
+
+        VectorIndex index = indexed.index;
+        List<SearchResult> visible = new ArrayList<>();
+        for (int count = k; ; count *= 2) {
+            List<SearchResult> found = index.search(query, count, effort,
+                    rows == null ? null : id -> rows.get((Integer) id));
+            visible.clear();
+            visible.addAll(unscored);
+            for (SearchResult result : found) {
+                int row = (Integer) result.getId();
+                if (segment.isVisible(row)) {
+                    visible.add(new SearchResult(store.getValue(row, 0), result.getScore()));
+                }
+            }
+            if (visible.size() >= k || found.size() < count || count >= index.size()) {
+                return visible;
+            }
+        }
+    }
+
+    /**
+     * Method to get the vector index over a vector field of a segment. The index is built the first time the segment
+     * is searched, and rows added to the segment since then are added to the index. The ids of the index are the
+     * positions of the rows in the segment. Vectors with a norm of 0, whose cosine similarity is NaN, are not added
+     * to the index but to the unscored rows of the IndexedSegment.
+     * @param segment the Snapshot of the segment.
+     * @param fieldIndex the index of the vector field.
+     * @param type the kind of vector index.
+     * @return the IndexedSegment holding the VectorIndex over the field.
+     */
+    private IndexedSegment getVectorIndex(Snapshot segment, int fieldIndex, VectorIndexType type) {
+        String name = fieldNames.get(fieldIndex);
+        ColumnarStore store = segment.getStore();
+        IndexedSegment indexed;
+        synchronized (vectorIndexes) {
+            indexed = vectorIndexes.computeIfAbsent(store, key -> new HashMap<>())
+                    .computeIfAbsent(name + "/" + type, key -> new IndexedSegment());
+        }
+
+        // the index is built under the lock of its own segment and field, so other indexes stay available meanwhile
+        synchronized (indexed) {
+            if (indexed.index == null) {
+                indexed.index = createVectorIndex(name, type);
+            }
+            int rowCount = segment.size();
+            if (indexed.rowCount < rowCount) {
+                VectorColumn vectors = (VectorColumn) store.getColumn(fieldIndex);
+                BitSet unscoredRows = null;
+                for (int row = indexed.rowCount; row < rowCount; row++) {
+                    if (!vectors.isNull(row) && segment.isVisible(row)) {
+                        DenseVector vector = vectors.getVector(row);
+                        if (hasCosineSimilarity(vector)) {
+                            indexed.index.add(row, vector);
+                        } else {
+                            if (unscoredRows == null) {
+                                unscoredRows = (BitSet) indexed.unscoredRows.clone();
+                            }
+                            unscoredRows.set(row);
+                        }
+                    }
+                }
+                if (unscoredRows != null) {
+                    indexed.unscoredRows = unscoredRows;
+                }
+                logger.debug(type + " indexed rows " + indexed.rowCount + " to " + rowCount + " of a segment of "
+                        + getTableName() + "." + name + ", " + indexed.index.size() + " vectors", "CustomTable");
+                indexed.rowCount = rowCount;
+            }
+            return indexed;
+        }
+    }
+
+    /**
+     * Method to check if the cosine similarity of a vector is a number, which needs a norm that is neither 0 nor NaN.
+     * The squared norm is accumulated in double like the distance kernels do.
+     */
+    private static boolean hasCosineSimilarity(DenseVector vector) {
+        double squares = 0;
+        for (int i = 0; i < vector.dimension(); i++) {
+            double value = vector.get(i);
+            squares += value * value;
+        }
+        return squares > 0;
+    }
+
+    /**
+     * Method to check if a vector field is indexed, which lets the planner answer top-k similarity queries on the
+     * field with its vector index.
+     * @param fieldName the name of the vector field.
+     * @return true if the field is declared as indexed by getIndexedVectorFields, or uses an index type other than
+     *         HNSW.
+     */
+    public boolean hasVectorIndex(String fieldName) {
+        for (String indexedField : getIndexedVectorFields()) {
+            if (indexedField.equalsIgnoreCase(fieldName)) {
+                return true;
+            }
+        }
+        int fieldIndex = getFieldIndex(fieldName);
+        return fieldIndex >= 0 && fieldTypes.get(fieldIndex) == SqlTypeName.OTHER
+                && getVectorIndexType(fieldName) != VectorIndexType.HNSW;
+    }
+
+    /**
+     * Method to get the names of the vector fields that are indexed. Subclasses can override this method to declare
+     * indexes on their vector fields. By default, no field is indexed.
+     * @return list of the names of the indexed vector fields.
+     */
+    protected List<String> getIndexedVectorFields() {
+        return Collections.emptyList();
+    }
+
+    /**
+     * Method to get how the vectors of a vector field are quantized. A quantized field is searched by scanning the
+     * codes of its vectors, see QuantizedIndex, instead of an HNSW graph, and needs no entry in
+     * getIndexedVectorFields. Subclasses can override this method to quantize their fields; by default, all vector
+     * fields use the 'bds.vector.quantization' system property, which is 'none' unless it is set.
+     * @param fieldName the name of the vector field.
+     * @return the VectorQuantization of the field.
+     */
+    protected VectorQuantization getVectorQuantization(String fieldName) {
+        return VectorQuantization.fromString(System.getProperty(VectorQuantization.PROPERTY), VectorQuantization.NONE);
+    }
+
+    /**
+     * Method to get the kind of vector index a vector field is searched with by default. Subclasses can override this
+     * method; by default, all vector fields use the 'bds.vector.index' system property, or QUANTIZED if the field is
+     * quantized and HNSW otherwise when it is not set.
+     * @param fieldName the name of the vector field.
+     * @return the VectorIndexType of the field.
+     */
+    protected VectorIndexType getVectorIndexType(String fieldName) {
+        VectorIndexType defaultType = getVectorQuantization(fieldName) != VectorQuantization.NONE
+                ? VectorIndexType.QUANTIZED : VectorIndexType.HNSW;
+        return VectorIndexType.fromString(System.getProperty(VectorIndexType.PROPERTY), defaultType);
+    }
+
+    /**
+     * Method to create an empty vector index for a vector field. Subclasses can override this method to use
+     * different index parameters for their fields.
+     * @param fieldName the name of the vector field.
+     * @param type the kind of vector index to create.
+     * @return the newly created VectorIndex.
+     */
+    protected VectorIndex createVectorIndex(String fieldName, VectorIndexType type) {
+        switch (type) {
+            case QUANTIZED:
+                VectorQuantization quantization = getVectorQuantization(fieldName);
+                return QuantizedIndex.fromSystemProperties(VectorMetric.COSINE,
+                        quantization != VectorQuantization.NONE ? quantization : VectorQuantization.INT8);
+            case PQ:
+                return PqIndex.fromSystemProperties(VectorMetric.COSINE);
+            case IVF:
+                return IvfIndex.fromSystemProperties(VectorMetric.COSINE);
+            case DISKANN:
+                return DiskGraphIndex.fromSystemProperties(VectorMetric.COSINE);
+            default:
+                return HnswIndex.fromSystemProperties(VectorMetric.COSINE);
+        }
+    }
+
     public abstract String getTableName();
 
     /**
-     * Method to scan the table.
-     * @param root DataContext instance.
+     * Method to get the kind of secondary index a scalar field has. Subclasses can override this method to index
+     * their fields; by default, a field is indexed when the 'bds.scalar.index.&lt;field&gt;' system property is set to
+     * 'sorted' or 'bitmap'. Only BIGINT, INTEGER and VARCHAR fields can be indexed, and the indexes of VARCHAR fields
+     * only serve equality predicates.
+     * @param fieldName the name of the scalar field.
+     * @return the ScalarIndexType of the field, or null if the field has no index.
+     */
+    protected ScalarIndexType getScalarIndexType(String fieldName) {
+        return ScalarIndexType.fromString(System.getProperty(ScalarIndexType.PROPERTY_PREFIX + fieldName), null);
+    }
+
+    /**
+     * Method to create an empty secondary index for a scalar field. Subclasses can override this method to use
+     * other index implementations for their fields.
+     * @param fieldName the name of the scalar field.
+     * @param type the kind of index to create.
+     * @return the newly created ScalarIndex.
+     */
+    protected ScalarIndex createScalarIndex(String fieldName, ScalarIndexType type) {
+        return type == ScalarIndexType.BITMAP ? new BitmapIndex() : new SortedIndex();
+    }
+
+    /**
+     * Method to get the secondary indexes of the scalar fields of a segment. The indexes are built the first time
+     * the segment is scanned with a filter, and rows added to the segment since then, by loads or writes, are added
+     * to the indexes. All row positions are indexed, visible or not, so the indexes serve the Snapshots of every
+     * query; scans still check that each row they find is visible.
+     * @param segment the Snapshot of the segment.
+     * @return the ScalarIndex of each field, null for the fields without one, or null if no field is indexed.
+     */
+    private ScalarIndex[] getScalarIndexes(Snapshot segment) {
+        ColumnarStore store = segment.getStore();
+        ScalarIndexes indexed;
+        synchronized (scalarIndexes) {
+            indexed = scalarIndexes.computeIfAbsent(store, key -> new ScalarIndexes());
+        }
+
+        // the indexes are built under the lock of their own segment, so scans of other segments are not blocked
+        synchronized (indexed) {
+            if (!indexed.created) {
+                ScalarIndex[] indexes = new ScalarIndex[fieldNames.size()];
+                boolean any = false;
+                for (int field = 0; field < indexes.length; field++) {
+                    ScalarIndexType type = getScalarIndexType(fieldNames.get(field));
+                    Column column = store.getColumn(field);
+                    boolean indexable = column instanceof LongColumn || column instanceof IntColumn
+                            || column instanceof DictionaryColumn;
+                    if (type != null && indexable) {
+                        indexes[field] = createScalarIndex(fieldNames.get(field), type);
+                        any = true;
+                    }
+                }
+                indexed.indexes = any ? indexes : null;
+                indexed.created = true;
+            }
+            if (indexed.indexes == null) return null;
+
+            int rowCount = segment.size();
+            if (indexed.rowCount < rowCount) {
+                for (int field = 0; field < indexed.indexes.length; field++) {
+                    if (indexed.indexes[field] != null) {
+                        addScalarValues(indexed.indexes[field], store.getColumn(field), indexed.rowCount, rowCount);
+                    }
+                }
+                logger.debug("scalar indexed rows " + indexed.rowCount + " to " + rowCount + " of a segment of "
+                        + getTableName(), "CustomTable");
+                indexed.rowCount = rowCount;
+            }
+            return indexed.indexes;
+        }
+    }
+
+    /**
+     * Method to add the values of a range of rows of a BIGINT, INTEGER or VARCHAR column to an index. VARCHAR values
+     * are indexed by their dictionary code, and null values are skipped.
+     */
+    private static void addScalarValues(ScalarIndex index, Column column, int from, int to) {
+        for (int row = from; row < to; row++) {
+            if (column.isNull(row)) continue;
+
+            if (column instanceof LongColumn) {
+                index.add(row, ((LongColumn) column).getLong(row));
+            } else if (column instanceof IntColumn) {
+                index.add(row, ((IntColumn) column).getInt(row));
+            } else {
+                index.add(row, ((DictionaryColumn) column).getCode(row));
+            }
+        }
+    }
+
+    /**
+     * Method to scan the table with pushed down filters and projects. The scalar filters are evaluated on the stored
+     * rows and removed from filters, the other filters are left for Calcite to evaluate on the returned rows. When
+     * a filter restricts the id to one or a few values, like 'id = 42' or 'id IN (1, 2)', the rows with these ids
+     * are found with the key indexes of the segments and only they are tested, see RowFilter.findKeys. Otherwise,
+     * when the filtered fields of a segment have secondary indexes, only the candidate rows found in the indexes are
+     * tested, and every row is tested when they have none, except the rows of the blocks whose zone map shows that
+     * none of their rows can pass the filters, see RowFilter.getRows. The scan covers the rows of the Snapshot of the
+     * query.
+     * @param root DataContext instance, or null to scan the current Snapshot.
+     * @param filters mutable list of conjunctive filters, or null.
+     * @param projects the indexes of the fields to return, or null to return all fields.
      * @return Scanned Enumerable instance.
      */
     @Override
-    public Enumerable<Object[]> scan(DataContext root) {
-        Stream<Object[]> dataStream = data.entrySet().stream().map(this::toObjectArray);
+    public Enumerable<Object[]> scan(DataContext root, List<RexNode> filters, int[] projects) {
+        RowScan rowScan = createRowScan(root, filters, projects);
+        int rowCount = rowScan.getRowCount();
+        ParallelScan parallelScan = ParallelScan.fromDataContext(root);
+        if (parallelScan.isParallel(rowCount)) {
+            return parallelScan.enumerateRanges(rowCount, rowScan::getRows)
+                    .selectMany(partition -> Linq4j.asEnumerable(partition));
+        }
+
+        Stream<Object[]> dataStream = IntStream.range(0, rowCount)
+                .mapToObj(rowScan::getRow)
+                .filter(Objects::nonNull);
         return Linq4j.asEnumerable(new StreamIterable<>(dataStream));
     }
 
+    /**
+     * Method to prepare a scan of the table with pushed down filters and projects, like scan, without reading any
+     * row yet. The rows to test are numbered by their position among the candidate rows of all segments, so they can
+     * be read partition by partition, see ParallelScan.mapRanges, without being collected first. The filters that are
+     * not evaluated on the stored rows are left in filters, like scan does.
+     * @param root DataContext instance, or null to scan the current Snapshot.
+     * @param filters mutable list of conjunctive filters, or null.
+     * @param projects the indexes of the fields to return, or null to return all fields.
+     * @return the RowScan.
+     */
+    public RowScan createRowScan(DataContext root, List<RexNode> filters, int[] projects) {
+        TableSnapshot snapshot = getSnapshot(root);
+        int segmentCount = snapshot.getSegmentCount();
+        List<RexNode> pushedFilters = filters == null ? null : new ArrayList<>(filters);
+        List<Object> keys = segmentCount == 0 ? null : RowFilter.findKeys(filters, snapshot.getSegment(0).getStore());
+        BitSet[] keyRows = keys == null ? null : createRowBitmaps(snapshot, keys);
+        RowFilter[] segmentFilters = new RowFilter[segmentCount];
+        int[][] segmentRows = new int[segmentCount][];
+        int[] offsets = new int[segmentCount + 1];
+        for (int i = 0; i < segmentCount; i++) {
+            Snapshot segment = snapshot.getSegment(i);
+            List<RexNode> segmentPushed = i == 0 || pushedFilters == null ? filters : new ArrayList<>(pushedFilters);
+            ScalarIndex[] indexes = keys != null || pushedFilters == null || pushedFilters.isEmpty() ? null
+                    : getScalarIndexes(segment);
+            segmentFilters[i] = RowFilter.create(segmentPushed, segment.getStore(), indexes);
+            segmentRows[i] = keyRows != null ? keyRows[i].stream().toArray()
+                    : segmentFilters[i].getRows(segment.size());
+            offsets[i + 1] = offsets[i] + (segmentRows[i] == null ? segment.size() : segmentRows[i].length);
+        }
+        int[] fields = projects != null ? projects : getAllFields();
+        logger.debug("scan " + getTableName() + " in " + segmentCount + " segments with "
+                + (filters == null ? 0 : filters.size()) + " remaining filters and " + fields.length + " fields, "
+                + offsets[segmentCount] + " rows to test", "CustomTable");
+        return new RowScan(snapshot, offsets, segmentRows, segmentFilters, fields);
+    }
+
+    /**
+     * Method to find the segment holding a position among the rows of all segments.
+     * @param offsets the position of the first row of each segment, followed by the number of rows.
+     * @param position the position of the row.
+     * @return the index of the segment.
+     */
+    private static int getSegmentIndex(int[] offsets, int position) {
+        int i = Arrays.binarySearch(offsets, 0, offsets.length - 1, position);
+        if (i < 0) return -i - 2;
+
+        while (i + 1 < offsets.length - 1 && offsets[i + 1] == position) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Method to filter and convert a single table row. Vectors read and scored by the filter are reused in the
+     * returned row, so vector function calls in the SELECT list reuse the scores computed for the WHERE clause.
+     * @param snapshot the Snapshot of the segment being scanned.
+     * @param row the position of the row in the segment.
+     * @param filter the RowFilter to apply.
+     * @param fields the indexes of the fields to convert.
+     * @return the converted row, or null if the row is not visible in snapshot or filter rejects it.
+     */
+    private Object[] scanRow(Snapshot snapshot, int row, RowFilter filter, int[] fields) {
+        if (!snapshot.isVisible(row)) return null;
+
+        DenseVector[] vectors = filter.isScoring() ? new DenseVector[fieldNames.size()] : null;
+        if (!filter.test(row, vectors)) return null;
+
+        return toObjectArray(snapshot.getStore(), row, fields, vectors);
+    }
+
+    /**
+     * Method to get the indexes of all fields of the table.
+     * @return array holding 0 to the number of fields - 1.
+     */
+    private int[] getAllFields() {
+        int[] fields = new int[fieldNames.size()];
+        for (int i = 0; i < fields.length; i++) {
+            fields[i] = i;
+        }
+        return fields;
+    }
+
+    /**
+     * Method to get a single row of the table by its id.
+     * @param root the DataContext of the query, or null to read the current TableSnapshot.
+     * @param id the id of the row.
+     * @return the row, or null if the TableSnapshot of the query has no row with that id.
+     */
+    public Object[] getRow(DataContext root, Object id) {
+        return getRows(root, Collections.singletonList(id), null)[0];
+    }
+
+    /**
+     * Method to get the rows of the table with a batch of ids. Each id is found with the key indexes of the segments
+     * of the TableSnapshot of the query, so no other row is read, and only the requested fields of the found rows are
+     * converted.
+     * @param root the DataContext of the query, or null to read the current TableSnapshot.
+     * @param ids the ids of the rows.
+     * @param fields the indexes of the fields to return, or null to return all fields.
+     * @return the row of each id, in the order of ids, or null for the ids the TableSnapshot of the query has no row
+     *         with.
+     */
+    public Object[][] getRows(DataContext root, List<?> ids, int[] fields) {
+        TableSnapshot snapshot = getSnapshot(root);
+        int[] rowFields = fields != null ? fields : getAllFields();
+        Object[][] rows = new Object[ids.size()][];
+        for (int i = 0; i < rows.length; i++) {
+            Object id = ids.get(i);
+            long reference = id == null ? -1 : snapshot.findRow(id);
+            if (reference >= 0) {
+                Snapshot segment = snapshot.getSegment(TableSnapshot.getSegmentIndex(reference));
+                rows[i] = toObjectArray(segment.getStore(), TableSnapshot.getRow(reference), rowFields, null);
+            }
+        }
+        return rows;
+    }
+
     /**
      * Abstract method that needs to be implemented by the subclass.
      * @param names List where names of the Table Fields need to be added.
@@ -76,34 +848,186 @@ public abstract class BaseCustomTable extends AbstractTable implements Scannable
     public abstract void addTableFieldNamesAndTypes(List<String> names, List<SqlTypeName> types);
 
     /**
-     * Method to convert Calcite Table Entry into an Object like String, Integer, Double, BigDecimal or
-     * DecimalVector.
-     * @param item the item which needs to be converted to a specific object.
-     * @return Object parsed from the passed item.
+     * Method to convert a stored row into an Object array holding values like String, Integer, Long or
+     * DenseVector. Only the requested fields are converted.
+     * @param store the ColumnarStore holding the row.
+     * @param row the position of the row in the store.
+     * @param fields the indexes of the fields to convert, in the order they are returned.
+     * @param vectors array indexed by field holding vectors that are already read, or null.
+     * @return the converted row.
+     */
+    private Object[] toObjectArray(ColumnarStore store, int row, int[] fields, DenseVector[] vectors) {
+        Object[] res = new Object[fields.length];
+
+        for (int j = 0; j < fields.length; j++) {
+            int i = fields[j];
+            res[j] = vectors != null && vectors[i] != null ? vectors[i] : store.getValue(row, i);
+        }
+        return res;
+    }
+
+    /**
+     * Method to plan an INSERT statement on this table. CustomTableModifyRule turns the returned expression into one
+     * that writes through the TableStorage of the table.
+     */
+    @Override
+    public TableModify toModificationRel(RelOptCluster cluster, RelOptTable table,
+                                         Prepare.CatalogReader catalogReader, RelNode child,
+                                         TableModify.Operation operation, List<String> updateColumnList,
+                                         List<RexNode> sourceExpressionList, boolean flattened) {
+        return LogicalTableModify.create(table, catalogReader, child, operation, updateColumnList,
+                sourceExpressionList, flattened);
+    }
+
+    /**
+     * Method required by ModifiableTable. Rows are never changed through a Collection, see toModificationRel.
+     * @return null.
+     */
+    @Override
+    public Collection getModifiableCollection() {
+        return null;
+    }
+
+    @Override
+    public <T> Queryable<T> asQueryable(QueryProvider queryProvider, SchemaPlus schema, String tableName) {
+        return new AbstractTableQueryable<T>(queryProvider, schema, this, tableName) {
+            @Override
+            @SuppressWarnings("unchecked")
+            public Enumerator<T> enumerator() {
+                return (Enumerator<T>) scan(null, null, null).enumerator();
+            }
+        };
+    }
+
+    @Override
+    public Type getElementType() {
+        return Object[].class;
+    }
+
+    @Override
+    public Expression getExpression(SchemaPlus schema, String tableName, Class clazz) {
+        return Schemas.tableExpression(schema, getElementType(), tableName, clazz);
+    }
+
+    /**
+     * The secondary indexes of the scalar fields of a segment, with the number of row positions they were brought up
+     * to date with. The fields are guarded by the lock of the ScalarIndexes.
      */
-    private Object[] toObjectArray(Map.Entry<Object, ObjectNode> item) {
+    private static class ScalarIndexes {
+        private ScalarIndex[] indexes;
+        private boolean created;
+        private int rowCount;
+    }
 
-        Object[] res = new Object[fieldNames.size()];
-        res[0] = item.getKey();
+    /**
+     * The vector index over a vector field of a segment, with the number of row positions it was brought up to date
+     * with, and the positions of the rows whose vectors have no cosine similarity. The fields are written under the
+     * lock of the IndexedSegment; unscoredRows is replaced instead of changed, so searches can read it unlocked.
+     */
+    private static class IndexedSegment {
+        private VectorIndex index;
+        private int rowCount;
+        private volatile BitSet unscoredRows = new BitSet();
+    }
 
-        for (int i = 1; i < fieldNames.size(); i++) {
-            JsonNode v = item.getValue().get(fieldNames.get(i));
-            SqlTypeName type = fieldTypes.get(i);
-            logger.debug("toObjectArray: " + type.toString(), "CustomTable");
-            switch (type) {
-                case VARCHAR:
-                    res[i] = v.textValue();
-                    break;
-                case INTEGER:
-                    res[i] = v.intValue();
-                    break;
-                case ANY:
-                    res[i] = DecimalVector.fromString(v.asText());
-                    break;
-                default:
-                    logger.debug("unsupported sql type: " + type, "CustomTable");
+    /**
+     * The rows of a scan of the table, numbered by their position among the candidate rows of all segments of the
+     * TableSnapshot of the query, see createRowScan. Rows are filtered and converted when they are read.
+     */
+    public final class RowScan {
+        private final TableSnapshot snapshot;
+        private final int[] offsets;
+        private final int[][] segmentRows;
+        private final RowFilter[] filters;
+        private final int[] fields;
+
+        /**
+         * Argument constructor for the RowScan class.
+         * @param snapshot the TableSnapshot being scanned.
+         * @param offsets the position of the first row of each segment, followed by the number of rows.
+         * @param segmentRows the candidate rows of each segment, or null for the segments whose rows are all tested.
+         * @param filters the RowFilter to apply to each segment.
+         * @param fields the indexes of the fields to convert.
+         */
+        private RowScan(TableSnapshot snapshot, int[] offsets, int[][] segmentRows, RowFilter[] filters,
+                        int[] fields) {
+            this.snapshot = snapshot;
+            this.offsets = offsets;
+            this.segmentRows = segmentRows;
+            this.filters = filters;
+            this.fields = fields;
+        }
+
+        /**
+         * Method to get the number of rows to test.
+         * @return the number of positions.
+         */
+        public int getRowCount() {
+            return offsets[offsets.length - 1];
+        }
+
+        /**
+         * Method to filter and convert the row at a position.
+         * @param position the position of the row, from 0 to getRowCount() - 1.
+         * @return the converted row, or null if it is not visible or the filters reject it.
+         */
+        public Object[] getRow(int position) {
+            int i = getSegmentIndex(offsets, position);
+            int row = segmentRows[i] == null ? position - offsets[i] : segmentRows[i][position - offsets[i]];
+            return scanRow(snapshot.getSegment(i), row, filters[i], fields);
+        }
+
+        /**
+         * Method to find the rows that are visible and pass the filters, without converting them.
+         * @return one bitmap of row positions per segment.
+         */
+        public BitSet[] getRowBitmaps() {
+            BitSet[] bitmaps = new BitSet[filters.length];
+            for (int i = 0; i < filters.length; i++) {
+                Snapshot segment = snapshot.getSegment(i);
+                int[] candidates = segmentRows[i];
+                bitmaps[i] = new BitSet(segment.size());
+                for (int position = 0; position < offsets[i + 1] - offsets[i]; position++) {
+                    int row = candidates == null ? position : candidates[position];
+                    if (segment.isVisible(row) && filters[i].test(row, null)) {
+                        bitmaps[i].set(row);
+                    }
+                }
             }
+            return bitmaps;
+        }
+
+        /**
+         * Method to convert a row of a segment without testing it, like the rows found by getRowBitmaps.
+         * @param segmentIndex the index of the segment.
+         * @param row the position of the row in the segment.
+         * @return the converted row.
+         */
+        public Object[] readRow(int segmentIndex, int row) {
+            return toObjectArray(snapshot.getSegment(segmentIndex).getStore(), row, fields, null);
+        }
+
+        /**
+         * Method to filter and convert the rows of one partition.
+         * @param from the position of the first row of the partition.
+         * @param to the position after the last row of the partition.
+         * @return the converted rows accepted by the filters, in partition order.
+         */
+        public List<Object[]> getRows(int from, int to) {
+            List<Object[]> rows = new ArrayList<>();
+            for (int i = getSegmentIndex(offsets, from); i < filters.length && offsets[i] < to; i++) {
+                Snapshot segment = snapshot.getSegment(i);
+                int[] candidates = segmentRows[i];
+                int end = Math.min(to, offsets[i + 1]) - offsets[i];
+                for (int position = Math.max(from, offsets[i]) - offsets[i]; position < end; position++) {
+                    int row = candidates == null ? position : candidates[position];
+                    Object[] converted = scanRow(segment, row, filters[i], fields);
+                    if (converted != null) {
+                        rows.add(converted);
+                    }
+                }
+            }
+            return rows;
         }
-        return res;
     }
-}
\ No newline at end of file
+}
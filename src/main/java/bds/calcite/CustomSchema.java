@@ -1,38 +1,74 @@
 package bds.calcite;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ObjectNode;
+import bds.common.Logger;
+import bds.planner.PreparedVectorFunction;
+import bds.storage.ColumnarStore;
+import bds.storage.SegmentFile;
+import bds.storage.TableStorage;
 import com.google.common.collect.*;
 import org.apache.calcite.schema.Function;
 import org.apache.calcite.schema.Table;
 import org.apache.calcite.schema.impl.AbstractSchema;
 import org.apache.calcite.schema.impl.ScalarFunctionImpl;
+import org.apache.calcite.schema.impl.TableFunctionImpl;
 import bds.vectors.VectorFunctions;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * Schema for Calcite that contains all the Custom Tables and Custom Functions.
+ * The tables are registered with their fields only, so creating the schema does not load any rows. A table starts
+ * loading in the background when a query is validated against its row type, and its first scan waits for it; all
+ * tables of a query are validated before the first scan, so they load concurrently, on up to
+ * 'bds.schema.loadThreads' threads (the number of processors by default). With 'bds.schema.preload' set to true, all
+ * tables start loading when the class is initialized instead, still without blocking it.
  */
 public class CustomSchema extends AbstractSchema {
-    private static final ObjectMapper mapper = new ObjectMapper();
-    private static final Map<String, Map<Object, ObjectNode>> tableLoadedValuesMap = new HashMap<>();
+    public static final String LOAD_THREADS_PROPERTY = "bds.schema.loadThreads";
+    public static final String PRELOAD_PROPERTY = "bds.schema.preload";
+
+    private static final Logger logger = Logger.getInstance();
     private static final List<BaseCustomTable> _allTables = getAllTables();
+    private static final Map<String, Table> tableMap = createTableMap(_allTables);
+    private static final Multimap<String, Function> functionMap = createFunctionMultimap();
+    private static final ExecutorService loadExecutor = Executors.newFixedThreadPool(
+            Math.max(1, Integer.getInteger(LOAD_THREADS_PROPERTY, Runtime.getRuntime().availableProcessors())),
+            task -> {
+                Thread thread = new Thread(task, "bds-table-load");
+                thread.setDaemon(true);
+                return thread;
+            });
 
     static {
-        loadAllTablesData(_allTables);
+        registerAllTables(_allTables);
     }
 
     /**
-     * Method to get a map of all available Custom Tables.
+     * Method to get a map of all available Custom Tables. The map is created once and does not load any rows.
      */
     @Override
     protected Map<String, Table> getTableMap() {
-        HashMap<String, Table> allTablesMap = new HashMap<>();
+        return tableMap;
+    }
+
+    /**
+     * Method to get a Custom Table by its name, and start loading its rows in the background.
+     * @param tableName the name of the table, compared ignoring case.
+     * @return the Custom Table, or null if there is no table with that name.
+     */
+    public static BaseCustomTable getCustomTable(String tableName) {
         for (BaseCustomTable table : _allTables) {
-            table.setData(tableLoadedValuesMap.get(table.getTableName()));
-            allTablesMap.put(table.getTableName(), table);
+            if (table.getTableName().equalsIgnoreCase(tableName)) {
+                table.startLoading();
+                return table;
+            }
         }
-        return allTablesMap;
+        return null;
     }
 
     /**
@@ -51,32 +87,137 @@ public class CustomSchema extends AbstractSchema {
      */
     @Override
     protected Multimap<String, Function> getFunctionMultimap() {
+        return functionMap;
+    }
+
+    /**
+     * Method to create the map of all Custom Tables by their names.
+     * @param tables the Custom Tables.
+     * @return unmodifiable map of the tables.
+     */
+    private static Map<String, Table> createTableMap(List<BaseCustomTable> tables) {
+        Map<String, Table> allTablesMap = new HashMap<>();
+        for (BaseCustomTable table : tables) {
+            allTablesMap.put(table.getTableName(), table);
+        }
+        return Collections.unmodifiableMap(allTablesMap);
+    }
+
+    /**
+     * Method to create the Multimap of all the available Custom Functions.
+     * @return unmodifiable Multimap of all the available custom Functions.
+     */
+    private static Multimap<String, Function> createFunctionMultimap() {
         Multimap<String, Function> functionMap = ArrayListMultimap.create();
         functionMap.put("SUM_ELEMENTS", ScalarFunctionImpl.create(VectorFunctions.class, "sumElements"));
-        functionMap.put("SIMILARITY", ScalarFunctionImpl.create(VectorFunctions.class, "similarity"));
-        functionMap.put("COSINE_SIMILARITY", ScalarFunctionImpl.create(VectorFunctions.class, "cosineSimilarity"));
+        functionMap.put("SIMILARITY", PreparedVectorFunction.create("similarity"));
+        functionMap.put("COSINE_SIMILARITY", PreparedVectorFunction.create("cosineSimilarity"));
+        functionMap.put("HAMMING_DISTANCE", PreparedVectorFunction.create("hammingDistance"));
+        functionMap.put("VECTOR", ScalarFunctionImpl.create(VectorFunctions.class, "vector"));
+        functionMap.put("KNN", TableFunctionImpl.create(KnnTableFunction.KNN_METHOD));
+        functionMap.put("KNN", TableFunctionImpl.create(KnnTableFunction.KNN_EF_SEARCH_METHOD));
+        functionMap.put("PQ_KNN", TableFunctionImpl.create(KnnTableFunction.PQ_KNN_METHOD));
+        functionMap.put("PQ_KNN", TableFunctionImpl.create(KnnTableFunction.PQ_KNN_RERANK_METHOD));
+        functionMap.put("IVF_KNN", TableFunctionImpl.create(KnnTableFunction.IVF_KNN_METHOD));
+        functionMap.put("IVF_KNN", TableFunctionImpl.create(KnnTableFunction.IVF_KNN_NPROBE_METHOD));
+        functionMap.put("DISKANN_KNN", TableFunctionImpl.create(KnnTableFunction.DISKANN_KNN_METHOD));
+        functionMap.put("DISKANN_KNN", TableFunctionImpl.create(KnnTableFunction.DISKANN_KNN_SEARCH_LIST_METHOD));
 
-        return functionMap;
+        return Multimaps.unmodifiableMultimap(functionMap);
     }
 
     /**
-     * Method to load Tables Data.
+     * Method to register how the data of each table is loaded, and start loading it if 'bds.schema.preload' is set.
      */
-    private static void loadAllTablesData(List<BaseCustomTable> tables) {
+    private static void registerAllTables(List<BaseCustomTable> tables) {
         if (tables == null) return;
         for (BaseCustomTable table : tables) {
-            tableLoadedValuesMap.put(table.getTableName(), loadTableData(table.getDataLoader()));
+            table.setStorageLoader(() -> loadExecutor.submit(() -> loadTableData(table)));
+            if (Boolean.getBoolean(PRELOAD_PROPERTY)) {
+                table.startLoading();
+            }
+        }
+    }
+
+    /**
+     * Method to load a single table's data and open its write path, see TableStorage. A table that was flushed or
+     * merged by a previous run is opened from the segment files listed in its manifest, without loading its rows;
+     * the changes logged by a previous run are applied to the loaded data. When the segments or the log cannot be
+     * opened, loading fails, so every query on the table reports the error: falling back to the rows of the
+     * DataLoader would lose the logged changes, and accept changes that could never be logged.
+     * @param table the table whose data needs to be loaded.
+     * @return TableStorage containing the loaded data.
+     * @throws IOException if the segments or the log of the table cannot be opened.
+     */
+    private static TableStorage loadTableData(BaseCustomTable table) throws IOException {
+        long startTime = System.nanoTime();
+        TableStorage storage = TableStorage.open(table.getTableName(), table.createStore(),
+                () -> loadTableRows(table));
+        logger.debug("opened " + table.getTableName() + " in " + (System.nanoTime() - startTime) / 1_000_000 + " ms",
+                "CustomSchema");
+        return storage;
+    }
+
+    /**
+     * Method to load the rows of a single table. When the 'bds.storage.dir' system property is set and the directory
+     * holds a segment file for the table, the segment file is memory mapped instead of running the DataLoader.
+     * Otherwise the data is loaded using the IDataLoader implementation of the table, and written to a segment file
+     * when the property is set, so the next start can map it.
+     * @param table the table whose data needs to be loaded.
+     * @return ColumnarStore containing the loaded data.
+     * @throws UncheckedIOException if the segment file cannot be written, since the log of the table needs it.
+     */
+    private static ColumnarStore loadTableRows(BaseCustomTable table) {
+        Path segmentPath = SegmentFile.getPath(table.getTableName());
+        if (segmentPath != null && Files.exists(segmentPath)) {
+            ColumnarStore store = openSegment(table, segmentPath);
+            if (store != null) return store;
+        }
+
+        ColumnarStore store = table.createStore();
+        table.getDataLoader().loadData(store);
+        logger.debug("loaded " + store.size() + " rows into " + table.getTableName() + ", about "
+                + store.getMemoryUsage() + " bytes", "CustomSchema");
+
+        if (segmentPath != null) {
+            try {
+                SegmentFile.write(store, segmentPath);
+                logger.debug("wrote segment file " + segmentPath, "CustomSchema");
+            }
+            catch (IOException ex) {
+                throw new UncheckedIOException("could not write segment file " + segmentPath, ex);
+            }
+            catch (IllegalArgumentException ex) {
+                logger.error("could not write segment file " + segmentPath + ": " + ex.getMessage(), "CustomSchema");
+            }
         }
+        return store;
     }
 
     /**
-     * Method to load a single table's data using the passed IDataLoader implementation.
-     * @param dataLoader the IDataLoader implementation to be used to load data.
-     * @return HashMap containing the loaded data.
+     * Method to open the segment file of a table.
+     * @param table the table.
+     * @param segmentPath the path of the segment file.
+     * @return the ColumnarStore mapping the segment, or null if the segment cannot be opened or does not have the
+     * fields of the table.
      */
-    private static HashMap<Object, ObjectNode> loadTableData(IDataLoader dataLoader) {
-        HashMap<Object, ObjectNode> dataMap = new HashMap<>();
-        dataLoader.loadData(mapper, dataMap);
-        return dataMap;
+    private static ColumnarStore openSegment(BaseCustomTable table, Path segmentPath) {
+        try {
+            ColumnarStore store = SegmentFile.open(segmentPath);
+            ColumnarStore expected = table.createStore();
+            if (!store.getFieldNames().equals(expected.getFieldNames())
+                    || !store.getFieldTypes().equals(expected.getFieldTypes())) {
+                logger.error("segment file " + segmentPath + " does not match the fields of "
+                        + table.getTableName() + ", loading the table again", "CustomSchema");
+                return null;
+            }
+            logger.debug("mapped " + store.size() + " rows of " + table.getTableName() + " from " + segmentPath,
+                    "CustomSchema");
+            return store;
+        }
+        catch (IOException ex) {
+            logger.error("could not open segment file " + segmentPath + ": " + ex.getMessage(), "CustomSchema");
+            return null;
+        }
     }
-}
\ No newline at end of file
+}
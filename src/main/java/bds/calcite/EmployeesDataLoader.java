@@ -1,9 +1,8 @@
 package bds.calcite;
 
 import bds.common.Logger;
-import bds.vectors.DecimalVector;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ObjectNode;
+import bds.storage.ColumnarStore;
+import bds.vectors.DenseVector;
 import java.math.BigDecimal;
 import java.util.*;
 
@@ -14,15 +13,14 @@ public class EmployeesDataLoader implements IDataLoader {
     private static final Random random = new Random();
 
     /**
-     * Method to load table data into dataMap using the passed Mapper.
-     * @param mapper instance of ObjectMapper to store data into dataMap.
-     * @param dataMap the dataMap where data needs to be stored.
+     * Method to load table data into store.
+     * @param store the ColumnarStore where data needs to be stored.
      */
-    public void loadData(ObjectMapper mapper, Map<Object, ObjectNode> dataMap) {
-        createNewEmployees(dataMap, mapper);
+    public void loadData(ColumnarStore store) {
+        createNewEmployees(store);
     }
 
-    private static void createNewEmployees(Map<Object, ObjectNode> employees, ObjectMapper mapper) {
+    private static void createNewEmployees(ColumnarStore employees) {
 
         String firstNameLastNamesListString = "Karter Dennis | Maisie Franco | Gage Wilkins | Amalia Reilly | Alvaro Barton | " +
                 "Danna McGee | Conner Fuller | Oakley Parks | Gianni Andrade | Emmy Schmitt | Murphy Knox | Kallie Walls " +
@@ -43,29 +41,27 @@ public class EmployeesDataLoader implements IDataLoader {
             String email = firstName + "." + lastName + "@gmail.com";
             int age = 20 + random.nextInt(50);
             double vectorBound = 20.20165424;
-            employees.put((long) index, mapper.createObjectNode()
-                    .put("firstname", firstName)
-                    .put("lastname", lastName)
-                    .put("email", email.toLowerCase())
-                    .put("age", age)
-                    .put("vec",
-                            decimalVector(
-                                    String.valueOf(random.nextDouble(vectorBound)),
-                                    String.valueOf(random.nextDouble(vectorBound)),
-                                    String.valueOf(random.nextDouble(vectorBound)),
-                                    String.valueOf(random.nextDouble(vectorBound))
-                    )));
+            employees.addRow((long) index, firstName, lastName, email.toLowerCase(), age,
+                    decimalVector(
+                            String.valueOf(random.nextDouble(vectorBound)),
+                            String.valueOf(random.nextDouble(vectorBound)),
+                            String.valueOf(random.nextDouble(vectorBound)),
+                            String.valueOf(random.nextDouble(vectorBound))
+                    ));
             index++;
         }
     }
 
-    private static String decimalVector(String... list) {
-        List<BigDecimal> decimalsList = new ArrayList<>();
-        for (String strVal : list) {
-            decimalsList.add(new BigDecimal(strVal));
+    /**
+     * Method to create the vector of an employee. The elements are kept as float64, so the EXACT precision mode
+     * computes with the digits of the decimals.
+     */
+    private static DenseVector decimalVector(String... list) {
+        double[] elements = new double[list.length];
+        for (int i = 0; i < list.length; i++) {
+            elements[i] = new BigDecimal(list[i]).doubleValue();
         }
-        String v = new DecimalVector(decimalsList).toString();
-        Logger.getInstance().debug("vector = " + v, "DataLoader");
-        return v;
+        Logger.getInstance().debug("vector = " + Arrays.toString(elements), "DataLoader");
+        return DenseVector.of(elements);
     }
 }
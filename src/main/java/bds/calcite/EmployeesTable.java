@@ -1,6 +1,8 @@
 package bds.calcite;
 
+import bds.index.ScalarIndexType;
 import org.apache.calcite.sql.type.SqlTypeName;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -28,7 +30,30 @@ public class EmployeesTable extends BaseCustomTable {
         types.add(SqlTypeName.VARCHAR);
         types.add(SqlTypeName.VARCHAR);
         types.add(SqlTypeName.INTEGER);
-        types.add(SqlTypeName.ANY);
+        types.add(SqlTypeName.OTHER);
+    }
+
+    /**
+     * The vec field is indexed, so top-k similarity queries on it can use its vector index.
+     * @return list containing the vec field.
+     */
+    @Override
+    protected List<String> getIndexedVectorFields() {
+        return Collections.singletonList("vec");
+    }
+
+    /**
+     * The age field has a sorted index for range predicates, and the email field a bitmap index for equality
+     * predicates.
+     * @param fieldName the name of the scalar field.
+     * @return the ScalarIndexType of the field, or null if the field has no index.
+     */
+    @Override
+    protected ScalarIndexType getScalarIndexType(String fieldName) {
+        if (fieldName.equalsIgnoreCase("age")) return ScalarIndexType.SORTED;
+        if (fieldName.equalsIgnoreCase("email")) return ScalarIndexType.BITMAP;
+
+        return super.getScalarIndexType(fieldName);
     }
 
     @Override
@@ -0,0 +1,37 @@
+package bds.calcite;
+
+import bds.loader.BulkLoader;
+import bds.storage.ColumnarStore;
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * DataLoader that loads the rows of a Custom Table from a CSV, JSON Lines or .fvecs file with the BulkLoader, so a
+ * table can be filled from a large file by returning a FileDataLoader from getDataLoader.
+ */
+public class FileDataLoader implements IDataLoader {
+    private final Path path;
+
+    /**
+     * Argument constructor for the FileDataLoader class.
+     * @param path the file to load, its format is chosen by its extension, see FileFormat.fromPath.
+     */
+    public FileDataLoader(Path path) {
+        this.path = path;
+    }
+
+    /**
+     * Method to load the rows of the file into store. Each batch of rows is added as one commit.
+     * @param store the ColumnarStore where data needs to be stored.
+     * @throws RuntimeException if the file cannot be read or holds an invalid record.
+     */
+    @Override
+    public void loadData(ColumnarStore store) {
+        try {
+            new BulkLoader(store.getFieldNames(), store.getFieldTypes()).load(path, store::apply);
+        }
+        catch (IOException ex) {
+            throw new RuntimeException("could not load " + path + ": " + ex.getMessage(), ex);
+        }
+    }
+}
@@ -1,17 +1,16 @@
 package bds.calcite;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ObjectNode;
-import java.util.Map;
+import bds.storage.ColumnarStore;
 
 /**
  * Interface for a DataLoader that loads data for a specific Custom Table like EmployeesTable.
  */
 public interface IDataLoader {
     /**
-     * Method to load table data into dataMap using the passed Mapper.
-     * @param mapper instance of ObjectMapper to store data into dataMap.
-     * @param dataMap the dataMap where data needs to be stored.
+     * Method to load table data into store. Each row is added with ColumnarStore.addRow, with its values in the
+     * order the table declares its fields, which also adds the row to the block metadata of the store that scans
+     * skip rows with, see ColumnarStore.getZoneMap.
+     * @param store the ColumnarStore where data needs to be stored.
      */
-    void loadData(ObjectMapper mapper, Map<Object, ObjectNode> dataMap);
+    void loadData(ColumnarStore store);
 }
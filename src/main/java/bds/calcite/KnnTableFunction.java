@@ -0,0 +1,224 @@
+package bds.calcite;
+
+import bds.index.SearchResult;
+import bds.index.VectorIndexType;
+import bds.vectors.DenseVector;
+import org.apache.calcite.DataContext;
+import org.apache.calcite.linq4j.Enumerable;
+import org.apache.calcite.linq4j.Linq4j;
+import org.apache.calcite.linq4j.tree.Types;
+import org.apache.calcite.rel.type.RelDataType;
+import org.apache.calcite.rel.type.RelDataTypeFactory;
+import org.apache.calcite.schema.ScannableTable;
+import org.apache.calcite.schema.impl.AbstractTable;
+import org.apache.calcite.sql.type.SqlTypeName;
+import java.lang.reflect.Method;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Implementation for the KNN table function, which finds the k rows of a table whose vectors are most similar to a
+ * query vector using the table's vector index. The result has an 'id' column holding the id of each matching row and
+ * a 'score' column holding its cosine similarity, so it can be joined back to the table. For example:
+ * <pre>
+ *   SELECT e.firstname, k.score FROM TABLE(hr.KNN('employees', 'vec', ARRAY[1.1, 2.2], 5)) AS k
+ *   JOIN hr.employees AS e ON e.id = k.id
+ * </pre>
+ * The PQ_KNN function searches the product quantization codes of the vectors instead, see PqIndex, whatever index
+ * the column uses by default: PQ_KNN('employees', 'vec', ARRAY[1.1, 2.2], 5, 10) scores the 50 best codes again
+ * with the full precision vectors, and a re-rank factor of 1 returns the approximate scores of the codes. The IVF_KNN
+ * function searches the inverted lists of an IvfIndex: IVF_KNN('employees', 'vec', ARRAY[1.1, 2.2], 5, 16) scans the
+ * 16 lists whose centroids are closest to the query. The DISKANN_KNN function searches the graph file of a
+ * DiskGraphIndex: DISKANN_KNN('employees', 'vec', ARRAY[1.1, 2.2], 5, 200) keeps the 200 best nodes found while
+ * walking the graph.
+ */
+public class KnnTableFunction {
+
+    public static final Method KNN_METHOD = Types.lookupMethod(KnnTableFunction.class, "knn",
+            String.class, String.class, List.class, int.class);
+    public static final Method KNN_EF_SEARCH_METHOD = Types.lookupMethod(KnnTableFunction.class, "knn",
+            String.class, String.class, List.class, int.class, int.class);
+    public static final Method PQ_KNN_METHOD = Types.lookupMethod(KnnTableFunction.class, "pqKnn",
+            String.class, String.class, List.class, int.class);
+    public static final Method PQ_KNN_RERANK_METHOD = Types.lookupMethod(KnnTableFunction.class, "pqKnn",
+            String.class, String.class, List.class, int.class, int.class);
+    public static final Method IVF_KNN_METHOD = Types.lookupMethod(KnnTableFunction.class, "ivfKnn",
+            String.class, String.class, List.class, int.class);
+    public static final Method IVF_KNN_NPROBE_METHOD = Types.lookupMethod(KnnTableFunction.class, "ivfKnn",
+            String.class, String.class, List.class, int.class, int.class);
+    public static final Method DISKANN_KNN_METHOD = Types.lookupMethod(KnnTableFunction.class, "diskannKnn",
+            String.class, String.class, List.class, int.class);
+    public static final Method DISKANN_KNN_SEARCH_LIST_METHOD = Types.lookupMethod(KnnTableFunction.class,
+            "diskannKnn", String.class, String.class, List.class, int.class, int.class);
+
+    /**
+     * Implementation for the KNN(table, column, queryVector, k) function.
+     * @param tableName the name of the table to search.
+     * @param columnName the name of the vector column to search.
+     * @param queryVector List of BigDecimal elements of the query vector.
+     * @param k the number of rows to return.
+     * @return table holding the ids and scores of the k most similar rows.
+     */
+    public static ScannableTable knn(String tableName, String columnName, List<BigDecimal> queryVector, int k) {
+        return knn(tableName, columnName, queryVector, k, 0);
+    }
+
+    /**
+     * Implementation for the KNN(table, column, queryVector, k, efSearch) function.
+     * @param tableName the name of the table to search.
+     * @param columnName the name of the vector column to search.
+     * @param queryVector List of BigDecimal elements of the query vector.
+     * @param k the number of rows to return.
+     * @param efSearch the number of candidates considered by the search, or 0 to use the index default.
+     * @return table holding the ids and scores of the k most similar rows.
+     */
+    public static ScannableTable knn(String tableName, String columnName, List<BigDecimal> queryVector, int k,
+                                     int efSearch) {
+        return new KnnResultTable(getTable(tableName, columnName), columnName, queryVector, k, null, efSearch);
+    }
+
+    /**
+     * Implementation for the PQ_KNN(table, column, queryVector, k) function.
+     * @param tableName the name of the table to search.
+     * @param columnName the name of the vector column to search.
+     * @param queryVector List of BigDecimal elements of the query vector.
+     * @param k the number of rows to return.
+     * @return table holding the ids and scores of the k most similar rows.
+     */
+    public static ScannableTable pqKnn(String tableName, String columnName, List<BigDecimal> queryVector, int k) {
+        return pqKnn(tableName, columnName, queryVector, k, 0);
+    }
+
+    /**
+     * Implementation for the PQ_KNN(table, column, queryVector, k, rerank) function.
+     * @param tableName the name of the table to search.
+     * @param columnName the name of the vector column to search.
+     * @param queryVector List of BigDecimal elements of the query vector.
+     * @param k the number of rows to return.
+     * @param rerank the number of candidates per row that are scored again with full precision, 1 to return the
+     *               approximate scores, or 0 to use the index default.
+     * @return table holding the ids and scores of the k most similar rows.
+     */
+    public static ScannableTable pqKnn(String tableName, String columnName, List<BigDecimal> queryVector, int k,
+                                       int rerank) {
+        return new KnnResultTable(getTable(tableName, columnName), columnName, queryVector, k, VectorIndexType.PQ,
+                rerank);
+    }
+
+    /**
+     * Implementation for the IVF_KNN(table, column, queryVector, k) function.
+     * @param tableName the name of the table to search.
+     * @param columnName the name of the vector column to search.
+     * @param queryVector List of BigDecimal elements of the query vector.
+     * @param k the number of rows to return.
+     * @return table holding the ids and scores of the k most similar rows.
+     */
+    public static ScannableTable ivfKnn(String tableName, String columnName, List<BigDecimal> queryVector, int k) {
+        return ivfKnn(tableName, columnName, queryVector, k, 0);
+    }
+
+    /**
+     * Implementation for the IVF_KNN(table, column, queryVector, k, nprobe) function.
+     * @param tableName the name of the table to search.
+     * @param columnName the name of the vector column to search.
+     * @param queryVector List of BigDecimal elements of the query vector.
+     * @param k the number of rows to return.
+     * @param nprobe the number of inverted lists to scan, or 0 to use the index default.
+     * @return table holding the ids and scores of the k most similar rows.
+     */
+    public static ScannableTable ivfKnn(String tableName, String columnName, List<BigDecimal> queryVector, int k,
+                                        int nprobe) {
+        return new KnnResultTable(getTable(tableName, columnName), columnName, queryVector, k, VectorIndexType.IVF,
+                nprobe);
+    }
+
+    /**
+     * Implementation for the DISKANN_KNN(table, column, queryVector, k) function.
+     * @param tableName the name of the table to search.
+     * @param columnName the name of the vector column to search.
+     * @param queryVector List of BigDecimal elements of the query vector.
+     * @param k the number of rows to return.
+     * @return table holding the ids and scores of the k most similar rows.
+     */
+    public static ScannableTable diskannKnn(String tableName, String columnName, List<BigDecimal> queryVector,
+                                            int k) {
+        return diskannKnn(tableName, columnName, queryVector, k, 0);
+    }
+
+    /**
+     * Implementation for the DISKANN_KNN(table, column, queryVector, k, searchList) function.
+     * @param tableName the name of the table to search.
+     * @param columnName the name of the vector column to search.
+     * @param queryVector List of BigDecimal elements of the query vector.
+     * @param k the number of rows to return.
+     * @param searchList the size of the candidate list of the graph search, or 0 to use the index default.
+     * @return table holding the ids and scores of the k most similar rows.
+     */
+    public static ScannableTable diskannKnn(String tableName, String columnName, List<BigDecimal> queryVector, int k,
+                                            int searchList) {
+        return new KnnResultTable(getTable(tableName, columnName), columnName, queryVector, k,
+                VectorIndexType.DISKANN, searchList);
+    }
+
+    /**
+     * Method to get the table searched by a function call, checking that it has the column.
+     */
+    private static BaseCustomTable getTable(String tableName, String columnName) {
+        BaseCustomTable table = CustomSchema.getCustomTable(tableName);
+        if (table == null) {
+            throw new IllegalArgumentException("Unknown table: " + tableName);
+        }
+        if (table.getFieldIndex(columnName) < 0) {
+            throw new IllegalArgumentException("Table " + tableName + " has no field " + columnName);
+        }
+        return table;
+    }
+
+    /**
+     * Table holding the result of a KNN, PQ_KNN, IVF_KNN or DISKANN_KNN function call. Calcite creates this table while
+     * validating the query, when the query vector may not be known yet, so the search only runs when the table is
+     * scanned.
+     */
+    private static class KnnResultTable extends AbstractTable implements ScannableTable {
+        private final BaseCustomTable table;
+        private final String columnName;
+        private final List<BigDecimal> queryVector;
+        private final int k;
+        private final VectorIndexType type;
+        private final int effort;
+
+        private KnnResultTable(BaseCustomTable table, String columnName, List<BigDecimal> queryVector, int k,
+                               VectorIndexType type, int effort) {
+            this.table = table;
+            this.columnName = columnName;
+            this.queryVector = queryVector;
+            this.k = k;
+            this.type = type;
+            this.effort = effort;
+        }
+
+        @Override
+        public RelDataType getRowType(RelDataTypeFactory typeFactory) {
+            RelDataType idType = table.getRowType(typeFactory).getFieldList().get(0).getType();
+            return typeFactory.builder()
+                    .add("id", idType)
+                    .add("score", SqlTypeName.DOUBLE)
+                    .build();
+        }
+
+        @Override
+        public Enumerable<Object[]> scan(DataContext root) {
+            DenseVector query = DenseVector.fromDecimals(queryVector);
+            List<SearchResult> results = type == null
+                    ? table.searchVectorIndex(root, columnName, query, k, effort)
+                    : table.searchVectorIndex(root, columnName, query, k, type, effort);
+
+            List<Object[]> rows = new ArrayList<>(results.size());
+            for (SearchResult result : results) {
+                rows.add(new Object[] {result.getId(), result.getScore()});
+            }
+            return Linq4j.asEnumerable(rows);
+        }
+    }
+}
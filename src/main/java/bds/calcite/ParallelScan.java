@@ -0,0 +1,289 @@
+package bds.calcite;
+
+import bds.common.Logger;
+import org.apache.calcite.DataContext;
+import org.apache.calcite.jdbc.CalciteConnection;
+import org.apache.calcite.linq4j.AbstractEnumerable;
+import org.apache.calcite.linq4j.Enumerable;
+import org.apache.calcite.linq4j.Enumerator;
+import org.apache.calcite.linq4j.QueryProvider;
+import java.lang.reflect.Method;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Class that splits the rows of a scan into fixed-size partitions and processes the partitions in parallel. The
+ * results of the partitions are always returned in partition order, so merging them preserves the order of the rows.
+ * The settings are read from the connection properties, then from the system properties:
+ * <ul>
+ *   <li>bds.scan.parallelism: the number of partitions processed at the same time, 1 to disable parallel scans.
+ *   Defaults to the number of available processors.</li>
+ *   <li>bds.scan.partitionSize: the number of rows in a partition. Defaults to 16384.</li>
+ *   <li>bds.scan.executor: 'forkjoin' (the default) or 'virtual'. Virtual threads need Java 21 or higher; on older
+ *   versions the ForkJoin executor is used.</li>
+ * </ul>
+ */
+public class ParallelScan {
+
+    public static final String PARALLELISM_PROPERTY = "bds.scan.parallelism";
+    public static final String PARTITION_SIZE_PROPERTY = "bds.scan.partitionSize";
+    public static final String EXECUTOR_PROPERTY = "bds.scan.executor";
+    public static final int DEFAULT_PARTITION_SIZE = 16384;
+
+    private static final Logger logger = Logger.getInstance();
+
+    /**
+     * The pool running the partitions of every ForkJoin scan, with one thread per available processor. Each scan
+     * limits how many of its partitions are processed at the same time to its parallelism.
+     */
+    private static final ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+    private final int parallelism;
+    private final int partitionSize;
+    private final boolean virtualThreads;
+
+    /**
+     * Argument constructor for the ParallelScan class.
+     * @param parallelism the number of partitions processed at the same time.
+     * @param partitionSize the number of rows in a partition.
+     * @param virtualThreads true to process partitions on virtual threads instead of a ForkJoinPool.
+     */
+    public ParallelScan(int parallelism, int partitionSize, boolean virtualThreads) {
+        this.parallelism = Math.max(1, parallelism);
+        this.partitionSize = Math.max(1, partitionSize);
+        this.virtualThreads = virtualThreads;
+    }
+
+    /**
+     * Method to create a ParallelScan from the properties of the connection running a query.
+     * @param root the DataContext of the query.
+     * @return the ParallelScan for the query.
+     */
+    public static ParallelScan fromDataContext(DataContext root) {
+        QueryProvider queryProvider = root == null ? null : root.getQueryProvider();
+        if (queryProvider instanceof CalciteConnection) {
+            return fromProperties(((CalciteConnection) queryProvider).getProperties());
+        }
+        return fromProperties(null);
+    }
+
+    /**
+     * Method to create a ParallelScan from properties. Settings missing from properties are read from the system
+     * properties.
+     * @param properties the properties, or null to only use the system properties.
+     * @return the ParallelScan.
+     */
+    public static ParallelScan fromProperties(Properties properties) {
+        int parallelism = getInt(properties, PARALLELISM_PROPERTY, Runtime.getRuntime().availableProcessors());
+        int partitionSize = getInt(properties, PARTITION_SIZE_PROPERTY, DEFAULT_PARTITION_SIZE);
+        boolean virtualThreads = "virtual".equalsIgnoreCase(getProperty(properties, EXECUTOR_PROPERTY));
+        return new ParallelScan(parallelism, partitionSize, virtualThreads);
+    }
+
+    /**
+     * Method to get the number of rows in a partition.
+     * @return the partition size.
+     */
+    public int getPartitionSize() {
+        return partitionSize;
+    }
+
+    /**
+     * Method to check if a number of rows is split into more than one partition that can run in parallel.
+     * @param rowCount the number of rows.
+     * @return true if the rows are processed in parallel.
+     */
+    public boolean isParallel(int rowCount) {
+        return parallelism > 1 && rowCount > partitionSize;
+    }
+
+    /**
+     * Method to process the rows 0 to rowCount - 1 partition by partition, where each partition is a range of row
+     * positions. This lets storage that is addressed by row position, like a ColumnarStore, be scanned without
+     * collecting its rows first. When a partition fails, the partitions that have not started are cancelled and its
+     * exception is thrown.
+     * @param rowCount the number of rows.
+     * @param task the task that processes the rows of one range.
+     * @return the results of the partitions, in partition order.
+     */
+    public <R> List<R> mapRanges(int rowCount, RangeTask<R> task) {
+        List<R> results = new ArrayList<>((rowCount + partitionSize - 1) / partitionSize);
+        try (Enumerator<R> enumerator = new RangeEnumerator<>(rowCount, task)) {
+            while (enumerator.moveNext()) {
+                results.add(enumerator.current());
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Method to process the rows 0 to rowCount - 1 partition by partition, like mapRanges, but returning the results
+     * of the partitions while they are enumerated, in partition order. At most parallelism partitions are processed
+     * ahead of the enumerator, so a scan never holds the results of all its partitions, and closing the enumerator,
+     * like a LIMIT does once it has its rows, cancels the partitions that were not enumerated.
+     * @param rowCount the number of rows.
+     * @param task the task that processes the rows of one range.
+     * @return the results of the partitions, in partition order.
+     */
+    public <R> Enumerable<R> enumerateRanges(int rowCount, RangeTask<R> task) {
+        return new AbstractEnumerable<R>() {
+            @Override
+            public Enumerator<R> enumerator() {
+                return new RangeEnumerator<>(rowCount, task);
+            }
+        };
+    }
+
+    /**
+     * Method to wait for the result of a partition.
+     */
+    private static <R> R getResult(Future<R> future) {
+        try {
+            return future.get();
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while scanning partitions", ex);
+        }
+        catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException) throw (RuntimeException) ex.getCause();
+            throw new RuntimeException(ex.getCause());
+        }
+    }
+
+    /**
+     * Method to create an executor that starts a virtual thread per task.
+     * @return the executor, or null if virtual threads are not supported by this Java version.
+     */
+    private static ExecutorService createVirtualThreadExecutor() {
+        try {
+            Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) method.invoke(null);
+        }
+        catch (ReflectiveOperationException ex) {
+            logger.debug("virtual threads are not available, using a ForkJoinPool", "ParallelScan");
+            return null;
+        }
+    }
+
+    private static String getProperty(Properties properties, String name) {
+        String value = properties == null ? null : properties.getProperty(name);
+        return value != null ? value : System.getProperty(name);
+    }
+
+    private static int getInt(Properties properties, String name, int defaultValue) {
+        String value = getProperty(properties, name);
+        if (value == null) return defaultValue;
+
+        try {
+            return Integer.parseInt(value.trim());
+        }
+        catch (NumberFormatException ex) {
+            logger.error("invalid value for " + name + ": " + value, "ParallelScan");
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Task that processes the rows of one partition, given as a range of row positions.
+     */
+    public interface RangeTask<R> {
+        /**
+         * Method to process the rows from position from to position to, exclusive.
+         * @param from the position of the first row.
+         * @param to the position after the last row.
+         * @return the result of the partition.
+         */
+        R apply(int from, int to);
+    }
+
+    /**
+     * Enumerator of the results of the partitions of mapRanges and enumerateRanges. The partitions are submitted
+     * when the first result is requested, and then whenever a result is taken, so at most parallelism partitions are
+     * pending. When a partition fails, the pending partitions are cancelled before its exception is thrown. A single
+     * partition, or a parallelism of 1, is processed on the calling thread.
+     */
+    private final class RangeEnumerator<R> implements Enumerator<R> {
+        private final int rowCount;
+        private final RangeTask<R> task;
+        private final Deque<Future<R>> pending = new ArrayDeque<>();
+        private ExecutorService virtualExecutor;
+        private ExecutorService executor;
+        private int nextStart;
+        private R current;
+
+        private RangeEnumerator(int rowCount, RangeTask<R> task) {
+            this.rowCount = rowCount;
+            this.task = task;
+        }
+
+        @Override
+        public R current() {
+            return current;
+        }
+
+        @Override
+        public boolean moveNext() {
+            if (rowCount <= partitionSize || parallelism == 1) {
+                if (nextStart >= rowCount) return false;
+
+                int from = nextStart;
+                nextStart = Math.min(rowCount, from + partitionSize);
+                current = task.apply(from, nextStart);
+                return true;
+            }
+
+            if (executor == null) {
+                virtualExecutor = virtualThreads ? createVirtualThreadExecutor() : null;
+                executor = virtualExecutor != null ? virtualExecutor : pool;
+            }
+            while (nextStart < rowCount && pending.size() < parallelism) {
+                int from = nextStart;
+                int to = Math.min(rowCount, from + partitionSize);
+                pending.add(executor.submit(() -> task.apply(from, to)));
+                nextStart = to;
+            }
+
+            Future<R> future = pending.poll();
+            if (future == null) return false;
+
+            try {
+                current = getResult(future);
+                return true;
+            }
+            catch (RuntimeException ex) {
+                close();
+                throw ex;
+            }
+        }
+
+        @Override
+        public void reset() {
+            close();
+            nextStart = 0;
+            current = null;
+        }
+
+        @Override
+        public void close() {
+            for (Future<R> future : pending) {
+                future.cancel(true);
+            }
+            pending.clear();
+            nextStart = rowCount;
+            if (virtualExecutor != null) {
+                virtualExecutor.shutdown();
+                virtualExecutor = null;
+            }
+            executor = null;
+        }
+    }
+}
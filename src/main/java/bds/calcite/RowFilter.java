@@ -0,0 +1,838 @@
+package bds.calcite;
+
+import bds.index.CompressedBitmap;
+import bds.index.ScalarIndex;
+import bds.planner.VectorFunctionCall;
+import bds.storage.Column;
+import bds.storage.ColumnarStore;
+import bds.storage.DictionaryColumn;
+import bds.storage.IntColumn;
+import bds.storage.LongColumn;
+import bds.storage.VectorColumn;
+import bds.storage.ZoneMap;
+import bds.vectors.DenseVector;
+import bds.vectors.QueryVector;
+import bds.vectors.ScoredVector;
+import bds.vectors.SimilarityRange;
+import bds.vectors.VectorFunctions;
+import bds.vectors.VectorMetric;
+import bds.vectors.VectorPrecision;
+import bds.vectors.VectorScore;
+import org.apache.calcite.jdbc.JavaTypeFactoryImpl;
+import org.apache.calcite.plan.RelOptUtil;
+import org.apache.calcite.rex.RexBuilder;
+import org.apache.calcite.rex.RexCall;
+import org.apache.calcite.rex.RexInputRef;
+import org.apache.calcite.rex.RexLiteral;
+import org.apache.calcite.rex.RexNode;
+import org.apache.calcite.rex.RexUtil;
+import org.apache.calcite.sql.SqlKind;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Filter that evaluates the predicates pushed into a Custom Table scan directly on the columns of a ColumnarStore,
+ * before the rows are converted to Object arrays. Comparisons of scalar fields with literals, comparisons of
+ * SIMILARITY or COSINE_SIMILARITY calls with a constant query vector to literals, IS [NOT] NULL tests, and AND / OR
+ * combinations of them are evaluated here, as well as the SEARCH calls Calcite turns BETWEEN and IN predicates into,
+ * which are expanded into such comparisons. Every other predicate is left to Calcite, which only evaluates it on the
+ * rows accepted by this filter. Since the whole filter runs inside the scan, it runs in parallel when the scan is
+ * partitioned.
+ * Numeric comparisons read the primitive column values without boxing them, and equality tests on VARCHAR fields
+ * compare dictionary codes, so the literal is looked up once per scan instead of comparing Strings on every row.
+ * When fields of the store have a ScalarIndex, the comparisons on them are also looked up in the indexes, and the
+ * rows found for the conjuncts are intersected into the candidate rows of the filter, so the scan only tests those
+ * rows instead of every row, see getCandidates.
+ * The same comparisons are also checked against the ZoneMap of the store, which keeps the range of the values and
+ * the per dimension bounds of the vectors of each block of rows, so the blocks where no row can pass the filter are
+ * skipped without reading their rows, see getRows. Similarity thresholds are checked against upper and lower bounds
+ * of the scores of each block.
+ */
+public class RowFilter {
+    private static final RexBuilder REX_BUILDER = new RexBuilder(new JavaTypeFactoryImpl());
+
+    private final List<Condition> conditions;
+    private final boolean scoring;
+    private final CompressedBitmap candidates;
+    private final List<BlockCondition> blockConditions;
+
+    /**
+     * Argument constructor for the RowFilter class.
+     * @param conditions the conditions that a row needs to satisfy.
+     * @param scoring true if some conditions score vectors.
+     * @param candidates the rows that can satisfy the conditions, or null if every row can.
+     * @param blockConditions the conditions that a block of rows needs to satisfy to hold rows satisfying the
+     *                        conditions.
+     */
+    private RowFilter(List<Condition> conditions, boolean scoring, CompressedBitmap candidates,
+                      List<BlockCondition> blockConditions) {
+        this.conditions = conditions;
+        this.scoring = scoring;
+        this.candidates = candidates;
+        this.blockConditions = blockConditions;
+    }
+
+    /**
+     * Method to create a RowFilter from the filters Calcite pushes into a scan. The filters that are fully
+     * evaluated by the returned RowFilter are removed from filters, so that Calcite only evaluates the remaining
+     * ones. When only some conjuncts of a filter are supported, those conjuncts are still evaluated here to drop rows
+     * early, and the filter is left in filters.
+     * @param filters the conjunctive filters pushed into the scan.
+     * @param store the ColumnarStore holding the rows of the table.
+     * @return the RowFilter evaluating the supported filters.
+     */
+    public static RowFilter create(List<RexNode> filters, ColumnarStore store) {
+        return create(filters, store, null);
+    }
+
+    /**
+     * Method to create a RowFilter from the filters Calcite pushes into a scan, like create(filters, store), and to
+     * find the rows that can pass it with the secondary indexes of the store.
+     * @param filters the conjunctive filters pushed into the scan.
+     * @param store the ColumnarStore holding the rows of the table.
+     * @param indexes the ScalarIndex of each field of store, null for the fields without one, or null.
+     * @return the RowFilter evaluating the supported filters.
+     */
+    public static RowFilter create(List<RexNode> filters, ColumnarStore store, ScalarIndex[] indexes) {
+        List<Condition> conditions = new ArrayList<>();
+        List<BlockCondition> blockConditions = new ArrayList<>();
+        if (filters == null) return new RowFilter(conditions, false, null, blockConditions);
+
+        boolean scoring = false;
+        CompressedBitmap candidates = null;
+        ZoneMap zoneMap = null;
+        Iterator<RexNode> iterator = filters.iterator();
+        while (iterator.hasNext()) {
+            boolean supported = true;
+            for (RexNode conjunct : RelOptUtil.conjunctions(iterator.next())) {
+                Condition condition = compile(conjunct, store);
+                if (condition != null) {
+                    conditions.add(condition);
+                    scoring |= containsVectorCall(conjunct);
+                    CompressedBitmap rows = indexes == null ? null : lookup(conjunct, store, indexes);
+                    if (rows != null) {
+                        candidates = candidates == null ? rows : candidates.and(rows);
+                    }
+                    zoneMap = zoneMap == null ? store.getZoneMap() : zoneMap;
+                    BlockCondition blockCondition = compileBlock(conjunct, store, zoneMap);
+                    if (blockCondition != null) {
+                        blockConditions.add(blockCondition);
+                    }
+                } else {
+                    supported = false;
+                }
+            }
+            if (supported) {
+                iterator.remove();
+            }
+        }
+        return new RowFilter(conditions, scoring, candidates, blockConditions);
+    }
+
+    /**
+     * Method to find the keys a conjunct of the filters pushed into a scan restricts the rows to, like the key of
+     * 'id = 42' or the keys of 'id IN (1, 2, 42)', where id is the first field of the store. The rows with these
+     * keys can be found with the key index of the store instead of testing every row. The filters are not changed.
+     * @param filters the conjunctive filters pushed into the scan, or null.
+     * @param store the ColumnarStore holding the rows of the table.
+     * @return the distinct keys of the first such conjunct, or null if no conjunct restricts the keys.
+     */
+    public static List<Object> findKeys(List<RexNode> filters, ColumnarStore store) {
+        Column keyColumn = store.getColumn(0);
+        boolean indexedKeys = keyColumn instanceof LongColumn || keyColumn instanceof IntColumn
+                || keyColumn instanceof DictionaryColumn;
+        if (filters == null || !indexedKeys) return null;
+
+        for (RexNode filter : filters) {
+            for (RexNode conjunct : RelOptUtil.conjunctions(filter)) {
+                Set<Object> keys = new LinkedHashSet<>();
+                if (collectKeys(conjunct, keyColumn, keys)) {
+                    return new ArrayList<>(keys);
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Method to collect the keys of a predicate that only accepts rows with some keys: an equality test of the key
+     * field with a literal, or an OR or SEARCH of them. Literals that no key can be equal to, like 4.5 for a BIGINT
+     * key, are skipped.
+     * @return true if the predicate only accepts rows with the collected keys.
+     */
+    private static boolean collectKeys(RexNode node, Column keyColumn, Set<Object> keys) {
+        if (!(node instanceof RexCall)) return false;
+
+        RexCall call = (RexCall) node;
+        switch (call.getKind()) {
+            case SEARCH:
+                return collectKeys(RexUtil.expandSearch(REX_BUILDER, null, call), keyColumn, keys);
+            case OR:
+                for (RexNode operand : call.getOperands()) {
+                    if (!collectKeys(operand, keyColumn, keys)) return false;
+                }
+                return true;
+            case EQUALS:
+                RexNode left = call.getOperands().get(0);
+                RexNode right = call.getOperands().get(1);
+                if (left instanceof RexLiteral) {
+                    RexNode swap = left;
+                    left = right;
+                    right = swap;
+                }
+                if (!(left instanceof RexInputRef) || ((RexInputRef) left).getIndex() != 0
+                        || !(right instanceof RexLiteral) || ((RexLiteral) right).isNull()) {
+                    return false;
+                }
+                Object key = toKey((RexLiteral) right, keyColumn);
+                if (key != null) {
+                    keys.add(key);
+                }
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Method to convert a literal into the key a KeyIndex finds rows with.
+     * @return a Long for BIGINT and INTEGER keys, a String for VARCHAR keys, or null if no key can be equal to the
+     *         literal.
+     */
+    private static Object toKey(RexLiteral literal, Column keyColumn) {
+        if (keyColumn instanceof DictionaryColumn) {
+            return literal.getValueAs(String.class);
+        }
+
+        BigDecimal value = literal.getValueAs(BigDecimal.class);
+        if (value == null) return null;
+
+        try {
+            return value.longValueExact();
+        }
+        catch (ArithmeticException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Method to check if a stored row satisfies every condition of this filter.
+     * @param row the position of the row in the ColumnarStore the filter was created for.
+     * @param vectors array indexed by field where the vectors read to evaluate the conditions are stored, so the
+     *                row can reuse them together with their scores, or null.
+     * @return true if the row satisfies the filter.
+     */
+    public boolean test(int row, DenseVector[] vectors) {
+        for (Condition condition : conditions) {
+            if (!condition.test(row, vectors)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Method to check if this filter scores vectors, in which case the decoded vectors are worth keeping for the
+     * returned rows.
+     * @return true if some conditions call SIMILARITY or COSINE_SIMILARITY.
+     */
+    public boolean isScoring() {
+        return scoring;
+    }
+
+    /**
+     * Method to get the rows found with the secondary indexes that can pass this filter. Only these rows need to be
+     * tested, but they still need to be, since the indexes answer some of the conditions only.
+     * @return the positions of the rows, or null if every row needs to be tested.
+     */
+    public CompressedBitmap getCandidates() {
+        return candidates;
+    }
+
+    /**
+     * Method to get the rows of a segment that need to be tested: the candidate rows found with the secondary
+     * indexes, or every row when there are none, without the rows of the blocks where the ZoneMap of the store shows
+     * that no row can pass this filter.
+     * @param size the number of row positions of the Snapshot being scanned.
+     * @return the positions of the rows in increasing order, or null if every row needs to be tested.
+     */
+    public int[] getRows(int size) {
+        if (blockConditions.isEmpty()) return candidates == null ? null : candidates.toArray();
+
+        int blockCount = ZoneMap.getBlockCount(size);
+        BitSet blocks = new BitSet(blockCount);
+        for (int block = 0; block < blockCount; block++) {
+            if (mayMatch(block)) {
+                blocks.set(block);
+            }
+        }
+        if (candidates != null) {
+            int[] rows = candidates.toArray();
+            int count = 0;
+            for (int row : rows) {
+                if (blocks.get(ZoneMap.getBlock(row))) {
+                    rows[count++] = row;
+                }
+            }
+            return Arrays.copyOf(rows, count);
+        }
+        if (blocks.cardinality() == blockCount) return null;
+
+        int[] rows = new int[size];
+        int count = 0;
+        for (int block = blocks.nextSetBit(0); block >= 0; block = blocks.nextSetBit(block + 1)) {
+            int end = Math.min(size, (block + 1) * ZoneMap.BLOCK_ROWS);
+            for (int row = block * ZoneMap.BLOCK_ROWS; row < end; row++) {
+                rows[count++] = row;
+            }
+        }
+        return Arrays.copyOf(rows, count);
+    }
+
+    /**
+     * Method to check if a block of rows may hold rows that pass this filter.
+     */
+    private boolean mayMatch(int block) {
+        for (BlockCondition blockCondition : blockConditions) {
+            if (!blockCondition.mayMatch(block)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Method to check if this filter accepts every row.
+     * @return true if the filter has no condition.
+     */
+    public boolean isEmpty() {
+        return conditions.isEmpty();
+    }
+
+    /**
+     * Method to check if a predicate contains a call to a vector function.
+     */
+    private static boolean containsVectorCall(RexNode node) {
+        if (!(node instanceof RexCall)) return false;
+        if (VectorFunctionCall.match(node) != null) return true;
+
+        for (RexNode operand : ((RexCall) node).getOperands()) {
+            if (containsVectorCall(operand)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Method to compile a predicate into a Condition.
+     * @return the Condition, or null if the predicate is not supported.
+     */
+    private static Condition compile(RexNode node, ColumnarStore store) {
+        if (!(node instanceof RexCall)) return null;
+
+        RexCall call = (RexCall) node;
+        switch (call.getKind()) {
+            case SEARCH:
+                return compile(RexUtil.expandSearch(REX_BUILDER, null, call), store);
+            case AND:
+            case OR:
+                return compileLogical(call, store);
+            case IS_NULL:
+            case IS_NOT_NULL:
+                return compileNullTest(call, store);
+            case EQUALS:
+            case NOT_EQUALS:
+            case LESS_THAN:
+            case LESS_THAN_OR_EQUAL:
+            case GREATER_THAN:
+            case GREATER_THAN_OR_EQUAL:
+                return compileComparison(call, store);
+            default:
+                return null;
+        }
+    }
+
+    private static Condition compileLogical(RexCall call, ColumnarStore store) {
+        List<Condition> operands = new ArrayList<>();
+        for (RexNode operand : call.getOperands()) {
+            Condition condition = compile(operand, store);
+            if (condition == null) return null;
+            operands.add(condition);
+        }
+
+        boolean isAnd = call.getKind() == SqlKind.AND;
+        return (row, vectors) -> {
+            for (Condition operand : operands) {
+                if (operand.test(row, vectors) != isAnd) {
+                    return !isAnd;
+                }
+            }
+            return isAnd;
+        };
+    }
+
+    private static Condition compileNullTest(RexCall call, ColumnarStore store) {
+        RexNode operand = call.getOperands().get(0);
+        if (!(operand instanceof RexInputRef)) return null;
+
+        Column column = store.getColumn(((RexInputRef) operand).getIndex());
+        boolean isNull = call.getKind() == SqlKind.IS_NULL;
+        return (row, vectors) -> column.isNull(row) == isNull;
+    }
+
+    private static Condition compileComparison(RexCall call, ColumnarStore store) {
+        SqlKind kind = call.getKind();
+        RexNode left = call.getOperands().get(0);
+        RexNode right = call.getOperands().get(1);
+        if (left instanceof RexLiteral && !(right instanceof RexLiteral)) {
+            RexNode swap = left;
+            left = right;
+            right = swap;
+            kind = kind.reverse();
+        }
+        if (!(right instanceof RexLiteral) || ((RexLiteral) right).isNull()) return null;
+
+        RexLiteral literal = (RexLiteral) right;
+        VectorFunctionCall vectorCall = VectorFunctionCall.match(left);
+        if (vectorCall != null) {
+            return compileScoreComparison(vectorCall, kind, literal, store);
+        }
+        if (!(left instanceof RexInputRef)) return null;
+
+        Column column = store.getColumn(((RexInputRef) left).getIndex());
+        if (column instanceof LongColumn) {
+            LongColumn longColumn = (LongColumn) column;
+            return compileNumericComparison(column, longColumn::getLong, kind, literal);
+        }
+        if (column instanceof IntColumn) {
+            IntColumn intColumn = (IntColumn) column;
+            return compileNumericComparison(column, intColumn::getInt, kind, literal);
+        }
+        if (column instanceof DictionaryColumn) {
+            return compileStringComparison((DictionaryColumn) column, kind, literal);
+        }
+        return null;
+    }
+
+    /**
+     * Method to compile the comparison of a BIGINT or INTEGER field with a literal. The literal is split into its
+     * floor and a flag telling if it has a fractional part, so each row is compared with a single long comparison.
+     * @return the Condition, or null if the literal is not a number that fits in a long.
+     */
+    private static Condition compileNumericComparison(Column column, LongReader reader, SqlKind kind,
+                                                      RexLiteral literal) {
+        BigDecimal value = literal.getValueAs(BigDecimal.class);
+        if (value == null) return null;
+
+        long floor;
+        try {
+            floor = value.setScale(0, RoundingMode.FLOOR).longValueExact();
+        }
+        catch (ArithmeticException ex) {
+            return null;
+        }
+        boolean fractional = value.compareTo(BigDecimal.valueOf(floor)) != 0;
+
+        return (row, vectors) -> {
+            if (column.isNull(row)) return false;
+
+            long fieldValue = reader.read(row);
+            int cmp = fractional ? (fieldValue <= floor ? -1 : 1) : Long.compare(fieldValue, floor);
+            return accept(kind, cmp);
+        };
+    }
+
+    /**
+     * Method to compile the comparison of a VARCHAR field with a literal. Equality tests compare the dictionary code
+     * of the field with the code of the literal, other comparisons compare the Strings.
+     * @return the Condition, or null if the literal is not a String.
+     */
+    private static Condition compileStringComparison(DictionaryColumn column, SqlKind kind, RexLiteral literal) {
+        String value = literal.getValueAs(String.class);
+        if (value == null) return null;
+
+        if (kind == SqlKind.EQUALS || kind == SqlKind.NOT_EQUALS) {
+            int code = column.findCode(value);
+            boolean equals = kind == SqlKind.EQUALS;
+            return (row, vectors) -> !column.isNull(row) && (column.getCode(row) == code) == equals;
+        }
+        return (row, vectors) -> !column.isNull(row) && accept(kind, column.getString(row).compareTo(value));
+    }
+
+    /**
+     * Method to compile the comparison of a SIMILARITY or COSINE_SIMILARITY call with a literal. The vector of the
+     * row is read as a view over the vector column. Comparisons other than NOT_EQUALS are range searches, see
+     * SimilarityRange, which reject most vectors from a partial dot product and the precomputed norm of the row; the
+     * other comparisons, and all of them in EXACT precision, score the vector with the Vector Function. The score of
+     * a vector scored completely by a range search is kept for the row as a ScoredVector in place of the vector, so
+     * the other conditions and the SELECT list of the row reuse it without changing the stored vectors.
+     * @return the Condition, or null if the call does not reference a vector field or the literal is not a number.
+     */
+    private static Condition compileScoreComparison(VectorFunctionCall vectorCall, SqlKind kind, RexLiteral literal,
+                                                    ColumnarStore store) {
+        int index = vectorCall.getVectorField();
+        Column column = store.getColumn(index);
+        Double value = literal.getValueAs(Double.class);
+        if (!(column instanceof VectorColumn) || value == null) return null;
+
+        VectorColumn vectorColumn = (VectorColumn) column;
+        QueryVector query = vectorCall.getPreparedQuery();
+        boolean cosine = vectorCall.getMetric() == VectorMetric.COSINE;
+        SimilarityRange range = kind == SqlKind.NOT_EQUALS || VectorFunctions.getPrecision() != VectorPrecision.FAST
+                ? null : createRange(vectorCall, kind, value);
+        return (row, vectors) -> {
+            if (vectorColumn.isNull(row)) return false;
+
+            DenseVector vector = vectors != null ? vectors[index] : null;
+            if (vector == null) {
+                vector = vectorColumn.getVector(row);
+                if (vectors != null) {
+                    vectors[index] = vector;
+                }
+            }
+            if (range != null) {
+                VectorScore score = range.score(vector, vectorColumn.getSquaredNorm(row));
+                if (score == null) return false;
+
+                if (vectors != null && !(vector instanceof ScoredVector)) {
+                    vectors[index] = new ScoredVector(vector, score);
+                }
+                return range.contains(score);
+            }
+
+            double score = cosine ? VectorFunctions.cosineSimilarity(vector, query)
+                    : VectorFunctions.similarity(vector, query);
+            return accept(kind, score, value);
+        };
+    }
+
+    /**
+     * Method to create the SimilarityRange of the scores satisfying the comparison of a score with a value.
+     */
+    private static SimilarityRange createRange(VectorFunctionCall vectorCall, SqlKind kind, double value) {
+        QueryVector query = vectorCall.getPreparedQuery();
+        VectorMetric metric = vectorCall.getMetric();
+        switch (kind) {
+            case EQUALS:
+                return new SimilarityRange(query, metric, value, true, value, true);
+            case LESS_THAN:
+            case LESS_THAN_OR_EQUAL:
+                boolean toInclusive = kind == SqlKind.LESS_THAN_OR_EQUAL;
+                return new SimilarityRange(query, metric, Double.NEGATIVE_INFINITY, false, value, toInclusive);
+            default:
+                boolean fromInclusive = kind == SqlKind.GREATER_THAN_OR_EQUAL;
+                return new SimilarityRange(query, metric, value, fromInclusive, Double.POSITIVE_INFINITY, false);
+        }
+    }
+
+    /**
+     * Method to compile a predicate into a BlockCondition telling which blocks of rows may hold rows satisfying it,
+     * with the ZoneMap of the store. AND predicates need every operand that can be checked to be satisfied, OR
+     * predicates need one operand to be satisfied and can only be checked when all of their operands can.
+     * @return the BlockCondition, or null if the predicate cannot be checked on blocks.
+     */
+    private static BlockCondition compileBlock(RexNode node, ColumnarStore store, ZoneMap zoneMap) {
+        if (!(node instanceof RexCall)) return null;
+
+        RexCall call = (RexCall) node;
+        switch (call.getKind()) {
+            case SEARCH:
+                return compileBlock(RexUtil.expandSearch(REX_BUILDER, null, call), store, zoneMap);
+            case AND:
+            case OR:
+                boolean isAnd = call.getKind() == SqlKind.AND;
+                List<BlockCondition> operands = new ArrayList<>();
+                for (RexNode operand : call.getOperands()) {
+                    BlockCondition blockCondition = compileBlock(operand, store, zoneMap);
+                    if (blockCondition != null) {
+                        operands.add(blockCondition);
+                    } else if (!isAnd) {
+                        return null;
+                    }
+                }
+                if (operands.isEmpty()) return null;
+
+                return block -> {
+                    for (BlockCondition operand : operands) {
+                        if (operand.mayMatch(block) != isAnd) {
+                            return !isAnd;
+                        }
+                    }
+                    return isAnd;
+                };
+            case EQUALS:
+            case LESS_THAN:
+            case LESS_THAN_OR_EQUAL:
+            case GREATER_THAN:
+            case GREATER_THAN_OR_EQUAL:
+                return compileBlockComparison(call, store, zoneMap);
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Method to compile the comparison of a BIGINT, INTEGER or VARCHAR field, or of a SIMILARITY or
+     * COSINE_SIMILARITY call, with a literal into a BlockCondition. Field comparisons become a range of values that
+     * must overlap the range of the block, like lookupComparison. Score comparisons compare the literal with the
+     * bounds of the scores of the block, so a block is skipped when even its best possible score cannot pass a
+     * threshold like 'SIMILARITY(vec, ARRAY[1.1, 2.2]) > 50'.
+     * @return the BlockCondition, or null if the comparison cannot be checked on blocks.
+     */
+    private static BlockCondition compileBlockComparison(RexCall call, ColumnarStore store, ZoneMap zoneMap) {
+        SqlKind kind = call.getKind();
+        RexNode left = call.getOperands().get(0);
+        RexNode right = call.getOperands().get(1);
+        if (left instanceof RexLiteral && !(right instanceof RexLiteral)) {
+            RexNode swap = left;
+            left = right;
+            right = swap;
+            kind = kind.reverse();
+        }
+        if (!(right instanceof RexLiteral) || ((RexLiteral) right).isNull()) return null;
+
+        RexLiteral literal = (RexLiteral) right;
+        VectorFunctionCall vectorCall = VectorFunctionCall.match(left);
+        if (vectorCall != null) {
+            int field = vectorCall.getVectorField();
+            Double value = literal.getValueAs(Double.class);
+            if (!(store.getColumn(field) instanceof VectorColumn) || value == null) return null;
+
+            QueryVector query = vectorCall.getPreparedQuery();
+            boolean cosine = vectorCall.getMetric() == VectorMetric.COSINE;
+            SqlKind scoreKind = kind;
+            return block -> {
+                double[] bounds = zoneMap.getScoreBounds(field, block, query, cosine);
+                return bounds == null || mayAccept(scoreKind, bounds[0], bounds[1], value);
+            };
+        }
+        if (!(left instanceof RexInputRef)) return null;
+
+        int field = ((RexInputRef) left).getIndex();
+        Column column = store.getColumn(field);
+        if (column instanceof DictionaryColumn) {
+            String value = literal.getValueAs(String.class);
+            if (kind != SqlKind.EQUALS || value == null) return null;
+
+            int code = ((DictionaryColumn) column).findCode(value);
+            return block -> code >= 0 && zoneMap.mayContain(field, block, code, code);
+        }
+        if (!(column instanceof LongColumn) && !(column instanceof IntColumn)) return null;
+
+        long[] range = toRange(kind, literal);
+        if (range == null) return null;
+
+        return block -> range[0] <= range[1] && zoneMap.mayContain(field, block, range[0], range[1]);
+    }
+
+    /**
+     * Method to check if some score between two bounds may satisfy a comparison operator with a value.
+     */
+    private static boolean mayAccept(SqlKind kind, double lower, double upper, double value) {
+        switch (kind) {
+            case EQUALS:
+                return lower <= value && value <= upper;
+            case LESS_THAN:
+                return lower < value;
+            case LESS_THAN_OR_EQUAL:
+                return lower <= value;
+            case GREATER_THAN:
+                return upper > value;
+            default:
+                return upper >= value;
+        }
+    }
+
+    /**
+     * Method to find the rows that can satisfy a predicate with the secondary indexes. AND predicates intersect the
+     * rows of the operands that have an index, OR predicates unite the rows of their operands when all of them have
+     * one.
+     * @return the positions of the rows, or null if the predicate cannot be looked up.
+     */
+    private static CompressedBitmap lookup(RexNode node, ColumnarStore store, ScalarIndex[] indexes) {
+        if (!(node instanceof RexCall)) return null;
+
+        RexCall call = (RexCall) node;
+        switch (call.getKind()) {
+            case SEARCH:
+                return lookup(RexUtil.expandSearch(REX_BUILDER, null, call), store, indexes);
+            case AND:
+                CompressedBitmap intersection = null;
+                for (RexNode operand : call.getOperands()) {
+                    CompressedBitmap rows = lookup(operand, store, indexes);
+                    if (rows != null) {
+                        intersection = intersection == null ? rows : intersection.and(rows);
+                    }
+                }
+                return intersection;
+            case OR:
+                CompressedBitmap union = new CompressedBitmap();
+                for (RexNode operand : call.getOperands()) {
+                    CompressedBitmap rows = lookup(operand, store, indexes);
+                    if (rows == null) return null;
+                    union = union.or(rows);
+                }
+                return union;
+            case EQUALS:
+            case LESS_THAN:
+            case LESS_THAN_OR_EQUAL:
+            case GREATER_THAN:
+            case GREATER_THAN_OR_EQUAL:
+                return lookupComparison(call, store, indexes);
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Method to find the rows that can satisfy the comparison of an indexed field with a literal. Comparisons of
+     * BIGINT and INTEGER fields become a range of values, like compileNumericComparison, and equality tests on
+     * VARCHAR fields look up the dictionary code of the literal.
+     * @return the positions of the rows, or null if the field has no index or the comparison cannot be looked up.
+     */
+    private static CompressedBitmap lookupComparison(RexCall call, ColumnarStore store, ScalarIndex[] indexes) {
+        SqlKind kind = call.getKind();
+        RexNode left = call.getOperands().get(0);
+        RexNode right = call.getOperands().get(1);
+        if (left instanceof RexLiteral && !(right instanceof RexLiteral)) {
+            RexNode swap = left;
+            left = right;
+            right = swap;
+            kind = kind.reverse();
+        }
+        if (!(left instanceof RexInputRef) || !(right instanceof RexLiteral) || ((RexLiteral) right).isNull()) {
+            return null;
+        }
+
+        int field = ((RexInputRef) left).getIndex();
+        ScalarIndex index = field < indexes.length ? indexes[field] : null;
+        if (index == null) return null;
+
+        RexLiteral literal = (RexLiteral) right;
+        Column column = store.getColumn(field);
+        if (column instanceof DictionaryColumn) {
+            String value = literal.getValueAs(String.class);
+            if (kind != SqlKind.EQUALS || value == null) return null;
+
+            int code = ((DictionaryColumn) column).findCode(value);
+            return code < 0 ? new CompressedBitmap() : index.find(code, code);
+        }
+
+        long[] range = toRange(kind, literal);
+        if (range == null) return null;
+
+        return range[0] > range[1] ? new CompressedBitmap() : index.find(range[0], range[1]);
+    }
+
+    /**
+     * Method to turn the comparison of a BIGINT or INTEGER field with a literal into the inclusive range of the
+     * values that satisfy it, like compileNumericComparison.
+     * @return the smallest and largest value of the range, which is empty when the smallest is larger, or null if the
+     *         comparison is not a range or the literal is not a number that fits in a long.
+     */
+    private static long[] toRange(SqlKind kind, RexLiteral literal) {
+        BigDecimal value = literal.getValueAs(BigDecimal.class);
+        if (value == null || kind == SqlKind.NOT_EQUALS) return null;
+
+        long floor;
+        try {
+            floor = value.setScale(0, RoundingMode.FLOOR).longValueExact();
+        }
+        catch (ArithmeticException ex) {
+            return null;
+        }
+        boolean fractional = value.compareTo(BigDecimal.valueOf(floor)) != 0;
+        long[] empty = {1, 0};
+        long from = Long.MIN_VALUE;
+        long to = Long.MAX_VALUE;
+        switch (kind) {
+            case EQUALS:
+                if (fractional) return empty;
+                from = floor;
+                to = floor;
+                break;
+            case LESS_THAN:
+                if (!fractional && floor == Long.MIN_VALUE) return empty;
+                to = fractional ? floor : floor - 1;
+                break;
+            case LESS_THAN_OR_EQUAL:
+                to = floor;
+                break;
+            default:
+                boolean exclusive = kind == SqlKind.GREATER_THAN || fractional;
+                if (exclusive && floor == Long.MAX_VALUE) return empty;
+                from = exclusive ? floor + 1 : floor;
+                break;
+        }
+        return new long[] {from, to};
+    }
+
+    /**
+     * Method to check if a score satisfies a comparison with a value. The doubles are compared like the code Calcite
+     * generates for the filters it evaluates: a NaN score, like the cosine similarity of a vector of norm 0, is only
+     * accepted by NOT_EQUALS, and -0.0 is equal to 0.0.
+     */
+    private static boolean accept(SqlKind kind, double score, double value) {
+        switch (kind) {
+            case EQUALS:
+                return score == value;
+            case NOT_EQUALS:
+                return score != value;
+            case LESS_THAN:
+                return score < value;
+            case LESS_THAN_OR_EQUAL:
+                return score <= value;
+            case GREATER_THAN:
+                return score > value;
+            default:
+                return score >= value;
+        }
+    }
+
+    /**
+     * Method to check if the result of a comparison satisfies a comparison operator.
+     */
+    private static boolean accept(SqlKind kind, int cmp) {
+        switch (kind) {
+            case EQUALS:
+                return cmp == 0;
+            case NOT_EQUALS:
+                return cmp != 0;
+            case LESS_THAN:
+                return cmp < 0;
+            case LESS_THAN_OR_EQUAL:
+                return cmp <= 0;
+            case GREATER_THAN:
+                return cmp > 0;
+            default:
+                return cmp >= 0;
+        }
+    }
+
+    /**
+     * A predicate on a stored row.
+     */
+    private interface Condition {
+        boolean test(int row, DenseVector[] vectors);
+    }
+
+    /**
+     * A test telling if a block of stored rows may hold rows satisfying a predicate.
+     */
+    private interface BlockCondition {
+        boolean mayMatch(int block);
+    }
+
+    /**
+     * Reads the value of a BIGINT or INTEGER field without boxing it.
+     */
+    private interface LongReader {
+        long read(int row);
+    }
+}
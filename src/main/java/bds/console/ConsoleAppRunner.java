@@ -1,6 +1,11 @@
 package bds.console;
 
+import bds.calcite.BaseCustomTable;
+import bds.calcite.CustomSchema;
 import bds.query.CalciteQueryProcessor;
+import bds.vectors.VectorFunctions;
+import bds.vectors.VectorPrecision;
+import java.nio.file.Paths;
 import java.util.*;
 
 /**
@@ -118,6 +123,12 @@ public class ConsoleAppRunner {
             case ":show-storage":
                 showStorageMap();
                 break;
+            case ":set-precision":
+                processPrecisionCommand(command, ":set-precision");
+                break;
+            case ":load":
+                processLoadCommand(command, ":load");
+                break;
             default:
                 println("  Unknown User Command: " + firstPart);
         }
@@ -137,12 +148,14 @@ public class ConsoleAppRunner {
         println("> Executing SQL using Calcite > " + query + "\n");
         query = query.trim();
         try {
-            if (query.toLowerCase().startsWith("insert") || query.toLowerCase().startsWith("update")) {
-                println("INSERT/UPDATE");
+            String lowerQuery = query.toLowerCase();
+            if (lowerQuery.startsWith("insert") || lowerQuery.startsWith("update") || lowerQuery.startsWith("delete")) {
+                println("INSERT/UPDATE/DELETE");
                 int result = queryProcessor.executeUpdate(query);
-                println("INSERT/UPDATE Result: " + result);
+                println("INSERT/UPDATE/DELETE Result: " + result);
+            } else {
+                queryProcessor.executeQuery(query);
             }
-            queryProcessor.executeQuery(query);
         }
         catch (Exception ex) {
             println("ERROR");
@@ -176,6 +189,56 @@ public class ConsoleAppRunner {
         }
     }
 
+    /**
+     * Method to process set-precision command, which switches the Vector Functions between fast and exact precision.
+     * @param command the command to process.
+     * @param shortcut the first part of the command.
+     */
+    private void processPrecisionCommand(String command, String shortcut) {
+        String precisionText = command.substring(shortcut.length()).trim();
+        VectorPrecision precision = VectorPrecision.fromString(precisionText, null);
+        if (precision == null) {
+            println("  Unknown precision: " + precisionText + ". Use 'fast' or 'exact'.");
+            return;
+        }
+
+        VectorFunctions.setPrecision(precision);
+        println("Vector precision set to " + precision.name().toLowerCase() + ".");
+    }
+
+    /**
+     * Method to process load command, which loads the rows of a CSV, JSON Lines or .fvecs file into a table.
+     * @param command the command to process.
+     * @param shortcut the first part of the command.
+     */
+    private void processLoadCommand(String command, String shortcut) {
+        String[] loadParts = command.substring(shortcut.length()).trim().split("\\s+", 2);
+        if (loadParts.length < 2) {
+            println("  Usage: :load <table> <file>");
+            return;
+        }
+
+        BaseCustomTable table = CustomSchema.getCustomTable(loadParts[0]);
+        if (table == null) {
+            println("  Unknown table: " + loadParts[0]);
+            return;
+        }
+
+        long startTime = System.nanoTime();
+        try {
+            long rows = table.bulkLoad(Paths.get(loadParts[1].trim()), (loaded, bytes, totalBytes) ->
+                    System.out.print(String.format("\r  %d rows, %d%%", loaded,
+                            100 * bytes / Math.max(totalBytes, 1))));
+            println("");
+            println(String.format("Loaded %d rows in %.1f s.", rows, (System.nanoTime() - startTime) / 1e9));
+        }
+        catch (Exception ex) {
+            println("");
+            println("ERROR");
+            println(ex.getMessage());
+        }
+    }
+
     /**
      * Method to clear the existing storage map.
      */
@@ -210,6 +273,7 @@ public class ConsoleAppRunner {
                 1. hr.SUM_ELEMENTS 
                 2. hr.SIMILARITY
                 3. hr.COSINE_SIMILARITY 
+                4. hr.HAMMING_DISTANCE
                 """;
         System.out.println(allTables);
     }
@@ -238,6 +302,8 @@ public class ConsoleAppRunner {
                 :set-storage ---------------> Storage a variable value pair for later use.
                 :clear-storage -------------> Clear all variable values.
                 :show-storage --------------> View all variable values currently stored.
+                :set-precision -------------> Set vector precision to 'fast' (default) or 'exact'.
+                :load <table> <file> -------> Load the rows of a CSV, JSON Lines or .fvecs file into a table.
                 
                 User Commands::
                 :quit --------------> Quit or exit the application.
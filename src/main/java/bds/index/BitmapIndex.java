@@ -0,0 +1,52 @@
+package bds.index;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * ScalarIndex holding a CompressedBitmap of the rows of each distinct value. An equality lookup copies a single
+ * bitmap, and a range lookup unites the bitmaps of the values in the range, so the index suits fields with few
+ * distinct values. Rows of a value that has a single row cost about as much as an entry of a hash map.
+ */
+public class BitmapIndex implements ScalarIndex {
+    private final Map<Long, CompressedBitmap> bitmaps = new HashMap<>();
+    private int size;
+
+    @Override
+    public synchronized void add(int row, long value) {
+        bitmaps.computeIfAbsent(value, key -> new CompressedBitmap()).add(row);
+        size++;
+    }
+
+    @Override
+    public synchronized CompressedBitmap find(long from, long to) {
+        if (from == to) {
+            CompressedBitmap bitmap = bitmaps.get(from);
+            return bitmap == null ? new CompressedBitmap() : bitmap.copy();
+        }
+
+        CompressedBitmap result = new CompressedBitmap();
+        for (Map.Entry<Long, CompressedBitmap> entry : bitmaps.entrySet()) {
+            long value = entry.getKey();
+            if (value >= from && value <= to) {
+                result = result.or(entry.getValue());
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public synchronized int size() {
+        return size;
+    }
+
+    @Override
+    public synchronized long getMemoryUsage() {
+        long usage = 0;
+        for (CompressedBitmap bitmap : bitmaps.values()) {
+            // the bitmap, its boxed key and its entry in the map
+            usage += bitmap.getMemoryUsage() + 64;
+        }
+        return usage;
+    }
+}
@@ -0,0 +1,437 @@
+package bds.index;
+
+import java.util.Arrays;
+
+/**
+ * Compressed bitmap of row positions, organized like a roaring bitmap: the positions are split by their high 16 bits
+ * into chunks of 65536 positions, and each chunk is stored in the smaller of two containers, a sorted array of the low
+ * 16 bits of its positions while it holds at most 4096 of them, and a bitset of 1024 longs once it holds more. So a
+ * bitmap of a few scattered rows takes about two bytes per row, and a bitmap of most rows about one bit per row.
+ * Intersections and unions work chunk by chunk, and skip the chunks that are missing from one of the bitmaps.
+ * A bitmap is not thread safe; the bitmaps returned by a ScalarIndex belong to the caller.
+ */
+public final class CompressedBitmap {
+    private static final int ARRAY_LIMIT = 4096;
+
+    private char[] keys = new char[0];
+    private Container[] containers = new Container[0];
+    private int size;
+
+    /**
+     * Method to create a bitmap holding row positions.
+     * @param rows the positions, in any order.
+     * @return the new CompressedBitmap.
+     */
+    public static CompressedBitmap of(int... rows) {
+        int[] sorted = rows.clone();
+        Arrays.sort(sorted);
+        CompressedBitmap bitmap = new CompressedBitmap();
+        for (int row : sorted) {
+            bitmap.add(row);
+        }
+        return bitmap;
+    }
+
+    /**
+     * Method to add a row position. Adding positions in ascending order is the fastest.
+     * @param row the position, at least 0.
+     */
+    public void add(int row) {
+        char high = (char) (row >>> 16);
+        int i = size > 0 && keys[size - 1] == high ? size - 1 : findChunk(high);
+        if (i < 0) {
+            i = -i - 1;
+            insertChunk(i, high, new ArrayContainer());
+        }
+        containers[i] = containers[i].add((char) row);
+    }
+
+    /**
+     * Method to check if a row position is in this bitmap.
+     * @param row the position.
+     * @return true if the position was added.
+     */
+    public boolean contains(int row) {
+        int i = findChunk((char) (row >>> 16));
+        return i >= 0 && containers[i].contains((char) row);
+    }
+
+    /**
+     * Method to get the number of row positions in this bitmap.
+     * @return the number of positions.
+     */
+    public int getCardinality() {
+        int cardinality = 0;
+        for (int i = 0; i < size; i++) {
+            cardinality += containers[i].cardinality();
+        }
+        return cardinality;
+    }
+
+    /**
+     * Method to check if this bitmap holds no position.
+     * @return true if the bitmap is empty.
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Method to intersect this bitmap with another one.
+     * @param other the other bitmap.
+     * @return a new bitmap holding the positions that are in both bitmaps.
+     */
+    public CompressedBitmap and(CompressedBitmap other) {
+        CompressedBitmap result = new CompressedBitmap();
+        int i = 0;
+        int j = 0;
+        while (i < size && j < other.size) {
+            if (keys[i] < other.keys[j]) {
+                i++;
+            } else if (keys[i] > other.keys[j]) {
+                j++;
+            } else {
+                Container container = containers[i].and(other.containers[j]);
+                if (container.cardinality() > 0) {
+                    result.insertChunk(result.size, keys[i], container);
+                }
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Method to unite this bitmap with another one.
+     * @param other the other bitmap.
+     * @return a new bitmap holding the positions that are in either bitmap.
+     */
+    public CompressedBitmap or(CompressedBitmap other) {
+        CompressedBitmap result = new CompressedBitmap();
+        int i = 0;
+        int j = 0;
+        while (i < size || j < other.size) {
+            if (j == other.size || (i < size && keys[i] < other.keys[j])) {
+                result.insertChunk(result.size, keys[i], containers[i].copy());
+                i++;
+            } else if (i == size || keys[i] > other.keys[j]) {
+                result.insertChunk(result.size, other.keys[j], other.containers[j].copy());
+                j++;
+            } else {
+                result.insertChunk(result.size, keys[i], containers[i].or(other.containers[j]));
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Method to copy this bitmap.
+     * @return a new bitmap holding the same positions.
+     */
+    public CompressedBitmap copy() {
+        return or(new CompressedBitmap());
+    }
+
+    /**
+     * Method to get the row positions of this bitmap.
+     * @return a new array holding the positions in ascending order.
+     */
+    public int[] toArray() {
+        int[] rows = new int[getCardinality()];
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            count = containers[i].toArray(keys[i] << 16, rows, count);
+        }
+        return rows;
+    }
+
+    /**
+     * Method to estimate the number of bytes of heap used by this bitmap.
+     * @return the estimated memory usage in bytes.
+     */
+    public long getMemoryUsage() {
+        long usage = 32 + 2L * keys.length + 8L * containers.length;
+        for (int i = 0; i < size; i++) {
+            usage += containers[i].getMemoryUsage();
+        }
+        return usage;
+    }
+
+    private int findChunk(char high) {
+        return Arrays.binarySearch(keys, 0, size, high);
+    }
+
+    private void insertChunk(int i, char high, Container container) {
+        if (size == keys.length) {
+            int capacity = Math.max(4, size * 2);
+            keys = Arrays.copyOf(keys, capacity);
+            containers = Arrays.copyOf(containers, capacity);
+        }
+        System.arraycopy(keys, i, keys, i + 1, size - i);
+        System.arraycopy(containers, i, containers, i + 1, size - i);
+        keys[i] = high;
+        containers[i] = container;
+        size++;
+    }
+
+    /**
+     * The low 16 bits of the positions of one chunk.
+     */
+    private abstract static class Container {
+        /**
+         * Method to add a position, which may turn the container into the other kind.
+         * @return the container holding the position.
+         */
+        abstract Container add(char low);
+
+        abstract boolean contains(char low);
+
+        abstract int cardinality();
+
+        abstract Container and(Container other);
+
+        abstract Container or(Container other);
+
+        abstract Container copy();
+
+        /**
+         * Method to write the positions of the container, in ascending order, to an array.
+         * @return the offset after the last written position.
+         */
+        abstract int toArray(int base, int[] rows, int offset);
+
+        abstract long getMemoryUsage();
+    }
+
+    /**
+     * Container holding up to 4096 positions in a sorted array.
+     */
+    private static final class ArrayContainer extends Container {
+        private char[] values;
+        private int cardinality;
+
+        private ArrayContainer() {
+            this(new char[4], 0);
+        }
+
+        private ArrayContainer(char[] values, int cardinality) {
+            this.values = values;
+            this.cardinality = cardinality;
+        }
+
+        @Override
+        Container add(char low) {
+            int i = cardinality > 0 && values[cardinality - 1] < low ? -cardinality - 1
+                    : Arrays.binarySearch(values, 0, cardinality, low);
+            if (i >= 0) return this;
+
+            if (cardinality == ARRAY_LIMIT) {
+                return toBitset().add(low);
+            }
+            i = -i - 1;
+            if (cardinality == values.length) {
+                values = Arrays.copyOf(values, Math.min(ARRAY_LIMIT, cardinality * 2));
+            }
+            System.arraycopy(values, i, values, i + 1, cardinality - i);
+            values[i] = low;
+            cardinality++;
+            return this;
+        }
+
+        @Override
+        boolean contains(char low) {
+            return Arrays.binarySearch(values, 0, cardinality, low) >= 0;
+        }
+
+        @Override
+        int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        Container and(Container other) {
+            char[] result = new char[Math.min(cardinality, other.cardinality())];
+            int count = 0;
+            if (other instanceof ArrayContainer) {
+                ArrayContainer array = (ArrayContainer) other;
+                int i = 0;
+                int j = 0;
+                while (i < cardinality && j < array.cardinality) {
+                    if (values[i] < array.values[j]) {
+                        i++;
+                    } else if (values[i] > array.values[j]) {
+                        j++;
+                    } else {
+                        result[count++] = values[i];
+                        i++;
+                        j++;
+                    }
+                }
+            } else {
+                for (int i = 0; i < cardinality; i++) {
+                    if (other.contains(values[i])) {
+                        result[count++] = values[i];
+                    }
+                }
+            }
+            return new ArrayContainer(result, count);
+        }
+
+        @Override
+        Container or(Container other) {
+            if (other instanceof BitsetContainer) return other.or(this);
+
+            ArrayContainer array = (ArrayContainer) other;
+            char[] result = new char[cardinality + array.cardinality];
+            int count = 0;
+            int i = 0;
+            int j = 0;
+            while (i < cardinality || j < array.cardinality) {
+                if (j == array.cardinality || (i < cardinality && values[i] < array.values[j])) {
+                    result[count++] = values[i++];
+                } else if (i == cardinality || values[i] > array.values[j]) {
+                    result[count++] = array.values[j++];
+                } else {
+                    result[count++] = values[i++];
+                    j++;
+                }
+            }
+            ArrayContainer union = new ArrayContainer(result, count);
+            return count > ARRAY_LIMIT ? union.toBitset() : union;
+        }
+
+        @Override
+        Container copy() {
+            return new ArrayContainer(Arrays.copyOf(values, Math.max(1, cardinality)), cardinality);
+        }
+
+        @Override
+        int toArray(int base, int[] rows, int offset) {
+            for (int i = 0; i < cardinality; i++) {
+                rows[offset++] = base | values[i];
+            }
+            return offset;
+        }
+
+        @Override
+        long getMemoryUsage() {
+            return 32 + 2L * values.length;
+        }
+
+        private BitsetContainer toBitset() {
+            BitsetContainer bitset = new BitsetContainer(new long[1024], 0);
+            for (int i = 0; i < cardinality; i++) {
+                bitset.add(values[i]);
+            }
+            return bitset;
+        }
+    }
+
+    /**
+     * Container holding more than 4096 positions as a bitset of all 65536 positions of the chunk.
+     */
+    private static final class BitsetContainer extends Container {
+        private final long[] words;
+        private int cardinality;
+
+        private BitsetContainer(long[] words, int cardinality) {
+            this.words = words;
+            this.cardinality = cardinality;
+        }
+
+        @Override
+        Container add(char low) {
+            long bit = 1L << low;
+            if ((words[low >>> 6] & bit) == 0) {
+                words[low >>> 6] |= bit;
+                cardinality++;
+            }
+            return this;
+        }
+
+        @Override
+        boolean contains(char low) {
+            return (words[low >>> 6] & (1L << low)) != 0;
+        }
+
+        @Override
+        int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        Container and(Container other) {
+            if (other instanceof ArrayContainer) return other.and(this);
+
+            long[] otherWords = ((BitsetContainer) other).words;
+            long[] result = new long[1024];
+            int count = 0;
+            for (int i = 0; i < result.length; i++) {
+                result[i] = words[i] & otherWords[i];
+                count += Long.bitCount(result[i]);
+            }
+            if (count > ARRAY_LIMIT) return new BitsetContainer(result, count);
+
+            char[] values = new char[count];
+            new BitsetContainer(result, count).toValues(values);
+            return new ArrayContainer(values, count);
+        }
+
+        @Override
+        Container or(Container other) {
+            long[] result = words.clone();
+            if (other instanceof ArrayContainer) {
+                BitsetContainer union = new BitsetContainer(result, cardinality);
+                ArrayContainer array = (ArrayContainer) other;
+                for (int i = 0; i < array.cardinality; i++) {
+                    union.add(array.values[i]);
+                }
+                return union;
+            }
+
+            long[] otherWords = ((BitsetContainer) other).words;
+            int count = 0;
+            for (int i = 0; i < result.length; i++) {
+                result[i] |= otherWords[i];
+                count += Long.bitCount(result[i]);
+            }
+            return new BitsetContainer(result, count);
+        }
+
+        @Override
+        Container copy() {
+            return new BitsetContainer(words.clone(), cardinality);
+        }
+
+        @Override
+        int toArray(int base, int[] rows, int offset) {
+            for (int i = 0; i < words.length; i++) {
+                long word = words[i];
+                while (word != 0) {
+                    rows[offset++] = base | (i << 6) | Long.numberOfTrailingZeros(word);
+                    word &= word - 1;
+                }
+            }
+            return offset;
+        }
+
+        @Override
+        long getMemoryUsage() {
+            return 32 + 8L * words.length;
+        }
+
+        private void toValues(char[] values) {
+            int offset = 0;
+            for (int i = 0; i < words.length; i++) {
+                long word = words[i];
+                while (word != 0) {
+                    values[offset++] = (char) ((i << 6) | Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+        }
+    }
+}
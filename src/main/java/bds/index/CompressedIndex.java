@@ -0,0 +1,311 @@
+package bds.index;
+
+import bds.common.Logger;
+import bds.vectors.DenseVector;
+import bds.vectors.DistanceKernels;
+import bds.vectors.DotAndSquaredNorm;
+import bds.vectors.VectorMetric;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.IntPredicate;
+import java.util.function.Predicate;
+
+/**
+ * Base class for the indexes that scan compact codes of the vectors instead of the vectors themselves. A search
+ * scores every code against the query, keeps the oversampling * k best candidates, and scores these again with their
+ * full precision vectors, so the results have exact scores and the codes only cost recall when a true result does
+ * not make it into the candidates. A filtered search skips the codes of the vectors the filter rejects, so all
+ * candidates pass the filter.
+ * The index does not copy the full precision vectors: it keeps the DenseVector views it was given, which read the
+ * elements from the vector column or the memory mapped segment file, so only the codes and the few rescored vectors
+ * need to be in memory during a search.
+ * The codes are trained on the vectors added before the first search, and vectors added later are encoded with the
+ * same codes. Adding vectors is synchronized, and searches can run concurrently with each other.
+ */
+abstract class CompressedIndex implements VectorIndex {
+    private static final int INITIAL_CAPACITY = 64;
+    private static final Logger logger = Logger.getInstance();
+
+    protected final VectorMetric metric;
+    protected final DistanceKernels kernels = DistanceKernels.getInstance();
+    private final int oversampling;
+
+    private volatile Object[] ids = new Object[INITIAL_CAPACITY];
+    private volatile DenseVector[] vectors = new DenseVector[INITIAL_CAPACITY];
+    private volatile int size;
+    private volatile boolean trained;
+
+    /**
+     * Argument constructor for the CompressedIndex class.
+     * @param metric the similarity metric used to compare vectors.
+     * @param oversampling the default number of candidates per requested result that are scored again with full
+     *                     precision.
+     */
+    protected CompressedIndex(VectorMetric metric, int oversampling) {
+        if (oversampling < 1) throw new IllegalArgumentException("oversampling must be positive");
+
+        this.metric = metric;
+        this.oversampling = oversampling;
+    }
+
+    /**
+     * Method to get the number of bytes used by the codes of the vectors, which is 0 before the first search.
+     * @return the size of the codes in bytes.
+     */
+    public long getCodeBytes() {
+        return trained ? (long) size * getBytesPerVector() : 0;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public synchronized void add(Object id, DenseVector vector) {
+        int node = size;
+        ensureCapacity(node + 1);
+        ids[node] = id;
+        vectors[node] = vector;
+        if (trained) {
+            encode(node, prepare(vector));
+        }
+        size = node + 1;
+    }
+
+    @Override
+    public List<SearchResult> search(DenseVector query, int k) {
+        return search(query, k, 0);
+    }
+
+    /**
+     * Method to find the k vectors that are most similar to the query vector, scoring the passed number of
+     * candidates per result again with full precision.
+     * @param query the query vector.
+     * @param k the number of results to return.
+     * @param effort the oversampling factor, or 0 to use the default of the index.
+     * @return up to k results, ordered from the most to the least similar.
+     */
+    @Override
+    public List<SearchResult> search(DenseVector query, int k, int effort) {
+        return search(query, k, effort, null);
+    }
+
+    /**
+     * Method to find the k vectors that are most similar to the query vector among the vectors whose ids pass a
+     * filter, scoring the passed number of candidates per result again with full precision.
+     * @param query the query vector.
+     * @param k the number of results to return.
+     * @param effort the oversampling factor, or 0 to use the default of the index.
+     * @param filter accepts the ids of the vectors that can be returned, or null to accept every vector.
+     * @return up to k results that pass the filter, ordered from the most to the least similar.
+     */
+    @Override
+    public List<SearchResult> search(DenseVector query, int k, int effort, Predicate<Object> filter) {
+        if (!trained && size > 0) {
+            train();
+        }
+        int count = size;
+        if (count == 0 || k <= 0) return new ArrayList<>();
+
+        int factor = effort > 0 ? effort : oversampling;
+        float[] prepared = metric.prepare(query);
+        DenseVector[] currentVectors = vectors;
+        Object[] currentIds = ids;
+        IntPredicate accepted = filter == null ? null : node -> filter.test(currentIds[node]);
+        PriorityQueue<Candidate> candidates = findCandidates(prepared, count, k * factor, accepted);
+
+        boolean rescore = isRescored(factor);
+        List<SearchResult> results = new ArrayList<>(candidates.size());
+        DotAndSquaredNorm result = new DotAndSquaredNorm();
+        for (Candidate candidate : candidates) {
+            double score = rescore ? score(metric, kernels, currentVectors[candidate.node], prepared, result)
+                    : candidate.score;
+            results.add(new SearchResult(currentIds[candidate.node], score));
+        }
+        results.sort((a, b) -> Double.compare(b.getScore(), a.getScore()));
+        return results.size() > k ? new ArrayList<>(results.subList(0, k)) : results;
+    }
+
+    /**
+     * Method to check if the candidates are scored again with full precision. By default they always are, since the
+     * approximate scores of the codes are only good enough to rank the vectors.
+     * @param oversampling the oversampling factor of the search.
+     * @return true if the candidates are rescored.
+     */
+    protected boolean isRescored(int oversampling) {
+        return true;
+    }
+
+    /**
+     * Method to get the number of bytes of the code of one vector.
+     * @return the size of a code in bytes.
+     */
+    protected abstract long getBytesPerVector();
+
+    /**
+     * Method to train the codes on the first vectors, and allocate room for the codes of capacity vectors. Called
+     * once, with the lock held, before any vector is encoded.
+     * @param count the number of vectors to train on, see getVector.
+     * @param capacity the number of vectors the codes must have room for.
+     */
+    protected abstract void train(int count, int capacity);
+
+    /**
+     * Method to write the code of a vector. Called with the lock held.
+     * @param node the position of the vector.
+     * @param prepared the vector, prepared like the query is, see prepare.
+     */
+    protected abstract void encode(int node, float[] prepared);
+
+    /**
+     * Method to grow the codes so that they can hold the codes of capacity vectors. Called with the lock held.
+     * @param capacity the new number of vectors.
+     */
+    protected abstract void growCodes(int capacity);
+
+    /**
+     * Method to score the codes of the first count vectors against the query, and keep the best of them.
+     * @param query the prepared query.
+     * @param count the number of vectors to score.
+     * @param limit the number of candidates to keep.
+     * @param accepted accepts the positions of the vectors that can be candidates, or null to accept every vector.
+     * @return the best candidates, worst first, see offer.
+     */
+    protected abstract PriorityQueue<Candidate> findCandidates(float[] query, int count, int limit,
+                                                               IntPredicate accepted);
+
+    /**
+     * Method to get a vector added to the index, for the training.
+     * @param node the position of the vector.
+     * @return the DenseVector view of the vector.
+     */
+    protected DenseVector getVector(int node) {
+        return vectors[node];
+    }
+
+    /**
+     * Method to prepare a vector like the query is prepared. The metric copies the elements, so the copy does not
+     * stay cached in the DenseVector view.
+     * @param vector the vector.
+     * @return the prepared elements.
+     */
+    protected float[] prepare(DenseVector vector) {
+        return prepare(metric, vector);
+    }
+
+    /**
+     * Method to prepare a vector for a metric without caching the copy of its elements in the DenseVector view.
+     * @param metric the similarity metric.
+     * @param vector the vector.
+     * @return the prepared elements.
+     */
+    static float[] prepare(VectorMetric metric, DenseVector vector) {
+        DenseVector copy = vector.getArray() != null && vector.getArrayOffset() == 0
+                && vector.dimension() == vector.getArray().length ? vector : copyOf(vector);
+        return metric.prepare(copy);
+    }
+
+    private static DenseVector copyOf(DenseVector vector) {
+        float[] elements = new float[vector.dimension()];
+        for (int i = 0; i < elements.length; i++) {
+            elements[i] = vector.get(i);
+        }
+        return new DenseVector(elements);
+    }
+
+    /**
+     * Method to add a scored vector to the candidates if it is better than the worst of them.
+     * @param candidates the candidates, worst first.
+     * @param node the position of the vector.
+     * @param score the approximate score of the vector.
+     * @param limit the number of candidates to keep.
+     */
+    protected static void offer(PriorityQueue<Candidate> candidates, int node, float score, int limit) {
+        if (candidates.size() < limit) {
+            candidates.add(new Candidate(node, score));
+        } else if (score > candidates.peek().score) {
+            candidates.poll();
+            candidates.add(new Candidate(node, score));
+        }
+    }
+
+    /**
+     * Method to score a full precision vector against a prepared query without copying its elements.
+     * @param metric the similarity metric the query was prepared for.
+     * @param kernels the DistanceKernels computing the score.
+     * @param vector the vector, read from its array, buffer or elements.
+     * @param query the prepared query.
+     * @param result the kernel result reused by the caller across the vectors it scores.
+     * @return the similarity score.
+     */
+    static double score(VectorMetric metric, DistanceKernels kernels, DenseVector vector, float[] query,
+                        DotAndSquaredNorm result) {
+        if (vector.getArray() != null) {
+            kernels.dotAndSquaredNorm(vector.getArray(), vector.getArrayOffset(), vector.dimension(), query, result);
+        } else if (vector.getBuffer() != null) {
+            kernels.dotAndSquaredNorm(vector.getBuffer(), vector.getBufferOffset(), vector.dimension(), query,
+                    result);
+        } else {
+            kernels.dotAndSquaredNorm(vector.getElements(), query, result);
+        }
+        if (metric != VectorMetric.COSINE) return result.getDot();
+
+        // the prepared query has a norm of 1
+        double squaredNorm = result.getSquaredNorm();
+        return squaredNorm > 0 ? result.getDot() / Math.sqrt(squaredNorm) : 0;
+    }
+
+    /**
+     * Method to train the codes on the vectors added so far, and encode them.
+     */
+    private synchronized void train() {
+        if (trained) return;
+
+        long startTime = System.nanoTime();
+        int count = size;
+        train(count, Math.max(ids.length, 1));
+        for (int node = 0; node < count; node++) {
+            encode(node, prepare(vectors[node]));
+        }
+        trained = true;
+
+        logger.debug(String.format("trained %s on %d vectors in %d ms, %d bytes of codes", getClass().getSimpleName(),
+                count, (System.nanoTime() - startTime) / 1_000_000, getCodeBytes()), "CompressedIndex");
+    }
+
+    /**
+     * Method to grow the arrays so that they can hold at least capacity vectors.
+     */
+    private void ensureCapacity(int capacity) {
+        if (capacity <= ids.length) return;
+
+        int newCapacity = Math.max(capacity, ids.length * 2);
+        ids = Arrays.copyOf(ids, newCapacity);
+        vectors = Arrays.copyOf(vectors, newCapacity);
+        if (trained) {
+            growCodes(newCapacity);
+        }
+    }
+
+    /**
+     * A vector together with its approximate score for the current query. Candidates are ordered by ascending score,
+     * so the head of a PriorityQueue is the worst candidate kept.
+     */
+    protected static final class Candidate implements Comparable<Candidate> {
+        private final int node;
+        private final float score;
+
+        private Candidate(int node, float score) {
+            this.node = node;
+            this.score = score;
+        }
+
+        @Override
+        public int compareTo(Candidate other) {
+            return Float.compare(score, other.score);
+        }
+    }
+}
@@ -0,0 +1,603 @@
+package bds.index;
+
+import bds.common.Logger;
+import bds.storage.SegmentFile;
+import bds.vectors.DenseVector;
+import bds.vectors.DistanceKernels;
+import bds.vectors.DotAndSquaredNorm;
+import bds.vectors.VectorMetric;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+/**
+ * Disk resident graph index in the style of DiskANN, for vector columns larger than the memory. The full precision
+ * vectors and the adjacency lists of a Vamana graph, see VamanaGraph, are written to a graph file in records that
+ * never cross a 4 KiB page boundary, and only product quantization codes of the vectors, see ProductQuantizer, stay
+ * in memory.
+ * A search is a beam search from the entry points of the graph: the searchList best nodes found so far are ranked by
+ * their PQ scores, and in each step the beamWidth best nodes that were not read yet are read from the file at once,
+ * with concurrent positional reads. A read record gives the exact score of its node, so the results need no separate
+ * re-rank, and the neighbors of the node, which are ranked with their codes. Each node is read at most once, so a
+ * search reads about searchList pages, whatever the size of the index. A filtered search walks the graph through
+ * all nodes, but only offers the nodes that pass the filter as results.
+ * The graph is built, in memory, from the vectors added before the first search. Vectors added later are kept in a
+ * delta that is scanned exactly, and once it holds as many vectors as the graph, the graph is rebuilt with them at
+ * the next search. Adding vectors is synchronized, and searches can run concurrently with each other and with adds.
+ */
+public class DiskGraphIndex implements VectorIndex {
+    public static final String DEGREE_PROPERTY = "bds.diskann.degree";
+    public static final String BUILD_LIST_PROPERTY = "bds.diskann.buildList";
+    public static final String SEARCH_LIST_PROPERTY = "bds.diskann.searchList";
+    public static final String BEAM_WIDTH_PROPERTY = "bds.diskann.beamWidth";
+    public static final String SUBSPACES_PROPERTY = "bds.diskann.m";
+    public static final String DIRECTORY_PROPERTY = "bds.diskann.dir";
+
+    static final int PAGE_SIZE = 4096;
+    private static final int DEFAULT_DEGREE = 32;
+    private static final int DEFAULT_BUILD_LIST = 64;
+    private static final int DEFAULT_SEARCH_LIST = 100;
+    private static final int DEFAULT_BEAM_WIDTH = 4;
+    private static final int DEFAULT_SUBSPACE_DIMENSION = 4;
+    private static final int TRAINING_SIZE = 8192;
+    private static final int TRAINING_ITERATIONS = 10;
+    private static final int INITIAL_CAPACITY = 64;
+    private static final float ALPHA = 1.2f;
+    private static final int MAX_ENTRY_POINTS = 1024;
+    private static final long SEED = 42;
+    private static final Logger logger = Logger.getInstance();
+
+    private final VectorMetric metric;
+    private final int degree;
+    private final int buildList;
+    private final int searchList;
+    private final int beamWidth;
+    private final int requestedSubspaces;
+    private final Path directory;
+    private final DistanceKernels kernels = DistanceKernels.getInstance();
+    private final AtomicLong searches = new AtomicLong();
+    private final AtomicLong pageReads = new AtomicLong();
+
+    private volatile State state = new State(null, new Object[INITIAL_CAPACITY], new DenseVector[INITIAL_CAPACITY], 0);
+
+    /**
+     * Argument constructor for the DiskGraphIndex class.
+     * @param metric the similarity metric used to compare vectors.
+     * @param degree the maximum number of neighbors of a node, R.
+     * @param buildList the size of the candidate list of the searches that build the graph.
+     * @param searchList the default size of the candidate list of a search, L.
+     * @param beamWidth the number of nodes read from the file at once, W.
+     * @param subspaces the number of bytes of the PQ code of a vector, or 0 for one per 4 dimensions.
+     * @param directory the directory of the graph files.
+     */
+    public DiskGraphIndex(VectorMetric metric, int degree, int buildList, int searchList, int beamWidth,
+                          int subspaces, Path directory) {
+        if (degree < 1) throw new IllegalArgumentException("degree must be positive");
+        if (searchList < 1) throw new IllegalArgumentException("searchList must be positive");
+        if (beamWidth < 1) throw new IllegalArgumentException("beamWidth must be positive");
+
+        this.metric = metric;
+        this.degree = degree;
+        this.buildList = Math.max(buildList, degree);
+        this.searchList = searchList;
+        this.beamWidth = beamWidth;
+        this.requestedSubspaces = Math.max(0, subspaces);
+        this.directory = directory;
+    }
+
+    /**
+     * Method to create an index with the parameters read from the 'bds.diskann.*' system properties, falling back to
+     * the default parameters. The graph files are written to 'bds.diskann.dir', or else to 'bds.storage.dir', or else
+     * to the temporary directory.
+     * @param metric the similarity metric used to compare vectors.
+     * @return the newly created DiskGraphIndex.
+     */
+    public static DiskGraphIndex fromSystemProperties(VectorMetric metric) {
+        String directory = System.getProperty(DIRECTORY_PROPERTY,
+                System.getProperty(SegmentFile.DIRECTORY_PROPERTY, System.getProperty("java.io.tmpdir")));
+        return new DiskGraphIndex(metric,
+                Integer.getInteger(DEGREE_PROPERTY, DEFAULT_DEGREE),
+                Integer.getInteger(BUILD_LIST_PROPERTY, DEFAULT_BUILD_LIST),
+                Integer.getInteger(SEARCH_LIST_PROPERTY, DEFAULT_SEARCH_LIST),
+                Integer.getInteger(BEAM_WIDTH_PROPERTY, DEFAULT_BEAM_WIDTH),
+                Integer.getInteger(SUBSPACES_PROPERTY, 0),
+                Paths.get(directory));
+    }
+
+    /**
+     * Method to get the average number of pages read from the graph file per search.
+     * @return the average number of page reads, or 0 if no search read the file yet.
+     */
+    public double getAveragePageReads() {
+        long count = searches.get();
+        return count == 0 ? 0 : (double) pageReads.get() / count;
+    }
+
+    /**
+     * Method to get the number of vectors in the graph file, without the delta.
+     * @return the number of vectors in the graph.
+     */
+    public int getGraphSize() {
+        DiskGraph graph = state.graph;
+        return graph == null ? 0 : graph.count;
+    }
+
+    @Override
+    public int size() {
+        State current = state;
+        return (current.graph == null ? 0 : current.graph.count) + current.count;
+    }
+
+    @Override
+    public synchronized void add(Object id, DenseVector vector) {
+        State current = state;
+        Object[] ids = current.ids;
+        DenseVector[] vectors = current.vectors;
+        int count = current.count;
+        if (count == ids.length) {
+            ids = Arrays.copyOf(ids, count * 2);
+            vectors = Arrays.copyOf(vectors, count * 2);
+        }
+        ids[count] = id;
+        vectors[count] = vector;
+        state = new State(current.graph, ids, vectors, count + 1);
+    }
+
+    @Override
+    public List<SearchResult> search(DenseVector query, int k) {
+        return search(query, k, 0);
+    }
+
+    /**
+     * Method to find the k vectors that are most similar to the query vector with a candidate list of the passed
+     * size.
+     * @param query the query vector.
+     * @param k the number of results to return.
+     * @param effort the size of the candidate list, or 0 to use the default searchList.
+     * @return up to k results, ordered from the most to the least similar.
+     */
+    @Override
+    public List<SearchResult> search(DenseVector query, int k, int effort) {
+        return search(query, k, effort, null);
+    }
+
+    /**
+     * Method to find the k vectors that are most similar to the query vector among the vectors whose ids pass a
+     * filter, with a candidate list of the passed size.
+     * @param query the query vector.
+     * @param k the number of results to return.
+     * @param effort the size of the candidate list, or 0 to use the default searchList.
+     * @param filter accepts the ids of the vectors that can be returned, or null to accept every vector.
+     * @return up to k results that pass the filter, ordered from the most to the least similar.
+     */
+    @Override
+    public List<SearchResult> search(DenseVector query, int k, int effort, Predicate<Object> filter) {
+        if (needsBuild(state)) {
+            build();
+        }
+        if (k <= 0) return new ArrayList<>();
+
+        float[] prepared = metric.prepare(query);
+        while (true) {
+            State current = state;
+            PriorityQueue<SearchResult> best = new PriorityQueue<>(k + 1,
+                    Comparator.comparingDouble(SearchResult::getScore));
+            try {
+                if (current.graph != null) {
+                    searchGraph(current.graph, prepared, k, Math.max(k, effort > 0 ? effort : searchList), filter,
+                            best);
+                }
+            }
+            catch (ClosedChannelException ex) {
+                // the graph was rebuilt and its file closed during the search
+                if (state != current) continue;
+                throw new RuntimeException("could not read the graph file: " + ex.getMessage(), ex);
+            }
+            catch (IOException ex) {
+                throw new RuntimeException("could not read the graph file: " + ex.getMessage(), ex);
+            }
+
+            DotAndSquaredNorm result = new DotAndSquaredNorm();
+            for (int i = 0; i < current.count; i++) {
+                if (filter != null && !filter.test(current.ids[i])) continue;
+
+                double score = CompressedIndex.score(metric, kernels, current.vectors[i], prepared, result);
+                offer(best, current.ids[i], score, k);
+            }
+            List<SearchResult> results = new ArrayList<>(best);
+            results.sort((a, b) -> Double.compare(b.getScore(), a.getScore()));
+            return results;
+        }
+    }
+
+    /**
+     * Method to run the beam search over the graph file, offering every node read that passes the filter to the
+     * results.
+     */
+    private void searchGraph(DiskGraph graph, float[] query, int k, int listSize, Predicate<Object> filter,
+                             PriorityQueue<SearchResult> best) throws IOException {
+        float[] fitted = graph.quantizer.fit(query);
+        float[] table = graph.quantizer.createLookupTable(fitted);
+        CandidateList candidates = new CandidateList(listSize);
+        BitSet seen = new BitSet(graph.count);
+        for (int entryPoint : graph.entryPoints) {
+            seen.set(entryPoint);
+            candidates.insert(entryPoint, graph.quantizer.score(table, graph.codes, entryPoint * graph.codeBytes),
+                    filter == null || filter.test(graph.ids[entryPoint]));
+        }
+        int reads = 0;
+
+        int[] beam = new int[beamWidth];
+        DotAndSquaredNorm result = new DotAndSquaredNorm();
+        while (true) {
+            int beamSize = candidates.pollUnread(beam);
+            if (beamSize == 0) break;
+
+            ByteBuffer[] records = graph.read(beam, beamSize);
+            reads += beamSize * graph.pagesPerRecord;
+            for (int b = 0; b < beamSize; b++) {
+                ByteBuffer record = records[b];
+                Object id = graph.ids[beam[b]];
+                if (filter == null || filter.test(id)) {
+                    offer(best, id, kernels.dotAndSquaredNorm(record, 0, graph.dimension, fitted, result).getDot(), k);
+                }
+
+                int degree = record.getInt(graph.dimension * Float.BYTES);
+                for (int i = 0; i < degree; i++) {
+                    int neighbor = record.getInt((graph.dimension + 1 + i) * Float.BYTES);
+                    if (seen.get(neighbor)) continue;
+
+                    seen.set(neighbor);
+                    candidates.insert(neighbor, graph.quantizer.score(table, graph.codes, neighbor * graph.codeBytes),
+                            filter == null || filter.test(graph.ids[neighbor]));
+                }
+            }
+        }
+        searches.incrementAndGet();
+        pageReads.addAndGet(reads);
+    }
+
+    private static void offer(PriorityQueue<SearchResult> best, Object id, double score, int k) {
+        if (best.size() < k) {
+            best.add(new SearchResult(id, score));
+        } else if (score > best.peek().getScore()) {
+            best.poll();
+            best.add(new SearchResult(id, score));
+        }
+    }
+
+    /**
+     * Method to check if the graph must be built, which is the case when there is no graph yet, or when the delta
+     * holds as many vectors as the graph.
+     */
+    private static boolean needsBuild(State current) {
+        return current.count > 0 && (current.graph == null || current.count >= current.graph.count);
+    }
+
+    /**
+     * Method to build the graph over the vectors of the current graph and of the delta, and write it to a new graph
+     * file. The full precision vectors are held in memory during the build.
+     */
+    private synchronized void build() {
+        State current = state;
+        if (!needsBuild(current)) return;
+
+        long startTime = System.nanoTime();
+        DiskGraph previous = current.graph;
+        int previousCount = previous == null ? 0 : previous.count;
+        int count = previousCount + current.count;
+        int dimension = previous == null ? 0 : previous.dimension;
+        for (int i = 0; i < current.count; i++) {
+            dimension = Math.max(dimension, current.vectors[i].dimension());
+        }
+
+        float[][] vectors = new float[count][];
+        Object[] ids = new Object[count];
+        try {
+            for (int node = 0; node < previousCount; node++) {
+                vectors[node] = Arrays.copyOf(previous.readVector(node), dimension);
+                ids[node] = previous.ids[node];
+            }
+            for (int i = 0; i < current.count; i++) {
+                vectors[previousCount + i] = Arrays.copyOf(CompressedIndex.prepare(metric, current.vectors[i]),
+                        dimension);
+                ids[previousCount + i] = current.ids[i];
+            }
+
+            int subspaces = requestedSubspaces > 0 ? requestedSubspaces
+                    : (dimension + DEFAULT_SUBSPACE_DIMENSION - 1) / DEFAULT_SUBSPACE_DIMENSION;
+            ProductQuantizer quantizer = ProductQuantizer.train(sample(vectors), dimension, subspaces,
+                    TRAINING_ITERATIONS, SEED);
+            int entryPoints = (int) Math.min(MAX_ENTRY_POINTS, Math.round(Math.sqrt(count)));
+            VamanaGraph vamana = VamanaGraph.build(vectors, degree, buildList, ALPHA, entryPoints, new Random(SEED));
+            Files.createDirectories(directory);
+            Path path = Files.createTempFile(directory, "vamana-", ".graph");
+            path.toFile().deleteOnExit();
+            DiskGraph graph = DiskGraph.write(path, vectors, vamana, degree, quantizer, ids);
+
+            // adds wait for the build, so the delta holds no vectors that are not in the graph
+            state = new State(graph, new Object[INITIAL_CAPACITY], new DenseVector[INITIAL_CAPACITY], 0);
+            if (previous != null) {
+                previous.close();
+            }
+
+            logger.debug(String.format("built a graph of %d vectors of dimension %d in %d ms, %s, %d bytes in "
+                    + "memory", count, dimension, (System.nanoTime() - startTime) / 1_000_000, path,
+                    (long) count * quantizer.getSubspaces()), "DiskGraphIndex");
+        }
+        catch (IOException ex) {
+            throw new RuntimeException("could not build the graph file: " + ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * Method to pick up to TRAINING_SIZE vectors at random for the PQ codebooks.
+     */
+    private static float[][] sample(float[][] vectors) {
+        if (vectors.length <= TRAINING_SIZE) return vectors;
+
+        Random random = new Random(SEED);
+        float[][] shuffled = vectors.clone();
+        for (int i = 0; i < TRAINING_SIZE; i++) {
+            int swap = i + random.nextInt(shuffled.length - i);
+            float[] vector = shuffled[swap];
+            shuffled[swap] = shuffled[i];
+            shuffled[i] = vector;
+        }
+        return Arrays.copyOf(shuffled, TRAINING_SIZE);
+    }
+
+    /**
+     * The graph file and the vectors added since it was built. Adds publish a new State after writing the added
+     * vector, so a search that reads the state once sees a consistent graph and delta.
+     */
+    private static final class State {
+        private final DiskGraph graph;
+        private final Object[] ids;
+        private final DenseVector[] vectors;
+        private final int count;
+
+        private State(DiskGraph graph, Object[] ids, DenseVector[] vectors, int count) {
+            this.graph = graph;
+            this.ids = ids;
+            this.vectors = vectors;
+            this.count = count;
+        }
+    }
+
+    /**
+     * The candidate list of a beam search, sorted by decreasing estimated score. The list keeps the listSize best
+     * nodes that pass the filter of the search, and the nodes that do not but have a better estimate than the last
+     * of these: they are read to reach their neighbors, but never become results. Without a filter, this is a list
+     * of the listSize best nodes.
+     */
+    private static final class CandidateList {
+        private final int listSize;
+        private int[] nodes;
+        private float[] scores;
+        private boolean[] accepted;
+        private boolean[] read;
+        private int size;
+        private int acceptedCount;
+
+        private CandidateList(int listSize) {
+            this.listSize = listSize;
+            this.nodes = new int[listSize];
+            this.scores = new float[listSize];
+            this.accepted = new boolean[listSize];
+            this.read = new boolean[listSize];
+        }
+
+        /**
+         * Method to insert a node, unless the list holds listSize accepted nodes that are better.
+         */
+        private void insert(int node, float estimate, boolean isAccepted) {
+            if (acceptedCount == listSize && estimate <= scores[size - 1]) return;
+
+            if (size == nodes.length) {
+                nodes = Arrays.copyOf(nodes, size * 2);
+                scores = Arrays.copyOf(scores, size * 2);
+                accepted = Arrays.copyOf(accepted, size * 2);
+                read = Arrays.copyOf(read, size * 2);
+            }
+            int position = size++;
+            while (position > 0 && scores[position - 1] < estimate) {
+                nodes[position] = nodes[position - 1];
+                scores[position] = scores[position - 1];
+                accepted[position] = accepted[position - 1];
+                read[position] = read[position - 1];
+                position--;
+            }
+            nodes[position] = node;
+            scores[position] = estimate;
+            accepted[position] = isAccepted;
+            read[position] = false;
+
+            if (isAccepted && ++acceptedCount > listSize) {
+                // drop the accepted node that is now past listSize, and the rejected nodes after the one before it
+                do {
+                    size--;
+                } while (!accepted[size]);
+                acceptedCount--;
+                while (!accepted[size - 1]) {
+                    size--;
+                }
+            }
+        }
+
+        /**
+         * Method to mark the best nodes that were not read yet as read.
+         * @param beam the array receiving the nodes, up to its length.
+         * @return the number of nodes, 0 when all nodes of the list were read.
+         */
+        private int pollUnread(int[] beam) {
+            int count = 0;
+            for (int i = 0; i < size && count < beam.length; i++) {
+                if (!read[i]) {
+                    read[i] = true;
+                    beam[count++] = nodes[i];
+                }
+            }
+            return count;
+        }
+    }
+
+    /**
+     * A graph file with the PQ codes of its vectors. The record of a node holds its prepared vector, its number of
+     * neighbors and its neighbors, as little-endian values. Records smaller than a page are packed into pages without
+     * crossing page boundaries; larger records start at a page boundary and take whole pages.
+     */
+    private static final class DiskGraph {
+        private final Path path;
+        private final AsynchronousFileChannel channel;
+        private final int count;
+        private final int dimension;
+        private final int[] entryPoints;
+        private final int recordSize;
+        private final int recordsPerBlock;
+        private final int blockSize;
+        private final int pagesPerRecord;
+        private final ProductQuantizer quantizer;
+        private final int codeBytes;
+        private final byte[] codes;
+        private final Object[] ids;
+
+        private DiskGraph(Path path, int count, int dimension, int degree, int[] entryPoints,
+                          ProductQuantizer quantizer, byte[] codes, Object[] ids) throws IOException {
+            this.path = path;
+            this.count = count;
+            this.dimension = dimension;
+            this.entryPoints = entryPoints;
+            this.recordSize = (dimension + 1 + degree) * Float.BYTES;
+            this.recordsPerBlock = Math.max(1, PAGE_SIZE / recordSize);
+            this.blockSize = recordSize <= PAGE_SIZE ? PAGE_SIZE : (recordSize + PAGE_SIZE - 1) / PAGE_SIZE * PAGE_SIZE;
+            this.pagesPerRecord = blockSize / PAGE_SIZE;
+            this.quantizer = quantizer;
+            this.codeBytes = quantizer.getSubspaces();
+            this.codes = codes;
+            this.ids = ids;
+            this.channel = AsynchronousFileChannel.open(path, StandardOpenOption.READ);
+        }
+
+        /**
+         * Method to write the graph file and encode the vectors.
+         */
+        private static DiskGraph write(Path path, float[][] vectors, VamanaGraph vamana, int degree,
+                                       ProductQuantizer quantizer, Object[] ids) throws IOException {
+            int count = vectors.length;
+            int dimension = vectors[0].length;
+            byte[] codes = new byte[count * quantizer.getSubspaces()];
+            for (int node = 0; node < count; node++) {
+                quantizer.encode(vectors[node], codes, node * quantizer.getSubspaces());
+            }
+
+            int recordSize = (dimension + 1 + degree) * Float.BYTES;
+            int recordsPerBlock = Math.max(1, PAGE_SIZE / recordSize);
+            int blockSize = recordSize <= PAGE_SIZE ? PAGE_SIZE : (recordSize + PAGE_SIZE - 1) / PAGE_SIZE * PAGE_SIZE;
+            ByteBuffer block = ByteBuffer.allocate(blockSize).order(ByteOrder.LITTLE_ENDIAN);
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                for (int first = 0; first < count; first += recordsPerBlock) {
+                    block.clear();
+                    Arrays.fill(block.array(), (byte) 0);
+                    for (int node = first; node < Math.min(count, first + recordsPerBlock); node++) {
+                        block.position((node - first) * recordSize);
+                        for (float element : vectors[node]) {
+                            block.putFloat(element);
+                        }
+                        int[] neighbors = vamana.getNeighbors(node);
+                        block.putInt(neighbors.length);
+                        for (int neighbor : neighbors) {
+                            block.putInt(neighbor);
+                        }
+                    }
+                    block.clear();
+                    while (block.hasRemaining()) {
+                        channel.write(block);
+                    }
+                }
+                channel.force(false);
+            }
+            return new DiskGraph(path, count, dimension, degree, vamana.getEntryPoints(), quantizer, codes, ids);
+        }
+
+        private long position(int node) {
+            return (long) (node / recordsPerBlock) * blockSize + (long) (node % recordsPerBlock) * recordSize;
+        }
+
+        /**
+         * Method to read the records of nodes with concurrent positional reads.
+         * @return the records, as little-endian buffers.
+         */
+        private ByteBuffer[] read(int[] nodes, int length) throws IOException {
+            ByteBuffer[] records = new ByteBuffer[length];
+            List<Future<Integer>> reads = new ArrayList<>(length);
+            for (int i = 0; i < length; i++) {
+                records[i] = ByteBuffer.allocate(recordSize).order(ByteOrder.LITTLE_ENDIAN);
+                reads.add(channel.read(records[i], position(nodes[i])));
+            }
+            for (int i = 0; i < length; i++) {
+                try {
+                    int read = reads.get(i).get();
+                    while (records[i].hasRemaining()) {
+                        if (read < 0) throw new EOFException("truncated graph file " + path);
+
+                        read = channel.read(records[i], position(nodes[i]) + records[i].position()).get();
+                    }
+                }
+                catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("interrupted while reading " + path, ex);
+                }
+                catch (ExecutionException ex) {
+                    Throwable cause = ex.getCause();
+                    if (cause instanceof IOException) throw (IOException) cause;
+
+                    throw new IOException("could not read " + path + ": " + cause.getMessage(), cause);
+                }
+            }
+            return records;
+        }
+
+        /**
+         * Method to read the prepared vector of a node back, to rebuild the graph.
+         */
+        private float[] readVector(int node) throws IOException {
+            ByteBuffer record = read(new int[] {node}, 1)[0];
+            float[] vector = new float[dimension];
+            for (int i = 0; i < dimension; i++) {
+                vector[i] = record.getFloat(i * Float.BYTES);
+            }
+            return vector;
+        }
+
+        private void close() {
+            try {
+                channel.close();
+                Files.deleteIfExists(path);
+            }
+            catch (IOException ex) {
+                logger.error("could not delete " + path + ": " + ex.getMessage(), "DiskGraphIndex");
+            }
+        }
+    }
+}
@@ -0,0 +1,443 @@
+package bds.index;
+
+import bds.vectors.DenseVector;
+import bds.vectors.VectorMetric;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.function.Predicate;
+
+/**
+ * In-memory HNSW (Hierarchical Navigable Small World) graph index. Every vector is a node in a hierarchy of
+ * proximity graphs, where the upper layers are sparse and the bottom layer contains all nodes. A search descends
+ * greedily through the upper layers and then runs a best-first search with efSearch candidates on the bottom layer,
+ * so the number of visited nodes grows logarithmically with the size of the index. A filtered search walks the same
+ * graph, but only nodes that pass the filter become results, so the rejected nodes still connect the accepted ones.
+ * Adding vectors is synchronized, and searches can run concurrently with each other.
+ */
+public class HnswIndex implements VectorIndex {
+    public static final int DEFAULT_M = 16;
+    public static final int DEFAULT_EF_CONSTRUCTION = 200;
+    public static final int DEFAULT_EF_SEARCH = 64;
+    public static final String M_PROPERTY = "bds.hnsw.m";
+    public static final String EF_CONSTRUCTION_PROPERTY = "bds.hnsw.efConstruction";
+    public static final String EF_SEARCH_PROPERTY = "bds.hnsw.efSearch";
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final VectorMetric metric;
+    private final int m;
+    private final int maxM0;
+    private final int efConstruction;
+    private final double levelMultiplier;
+    private final Random random = new Random(42);
+    private volatile int efSearch;
+
+    private volatile Object[] ids = new Object[INITIAL_CAPACITY];
+    private volatile float[][] vectors = new float[INITIAL_CAPACITY][];
+    private volatile int[][][] links = new int[INITIAL_CAPACITY][][];
+    private volatile int size;
+    private volatile int entryPoint = -1;
+    private volatile int maxLevel = -1;
+
+    private final ThreadLocal<VisitedSet> visitedSets = ThreadLocal.withInitial(VisitedSet::new);
+
+    /**
+     * Constructor that creates an index using the default parameters.
+     * @param metric the similarity metric used to compare vectors.
+     */
+    public HnswIndex(VectorMetric metric) {
+        this(metric, DEFAULT_M, DEFAULT_EF_CONSTRUCTION, DEFAULT_EF_SEARCH);
+    }
+
+    /**
+     * Argument constructor for the HnswIndex class.
+     * @param metric the similarity metric used to compare vectors.
+     * @param m the maximum number of links per node on the upper layers. The bottom layer allows 2 * m links.
+     * @param efConstruction the number of candidates considered when linking a new node.
+     * @param efSearch the default number of candidates considered by a search.
+     */
+    public HnswIndex(VectorMetric metric, int m, int efConstruction, int efSearch) {
+        if (m < 2) throw new IllegalArgumentException("M must be at least 2, got " + m);
+        if (efConstruction < 1) throw new IllegalArgumentException("efConstruction must be positive");
+        if (efSearch < 1) throw new IllegalArgumentException("efSearch must be positive");
+
+        this.metric = metric;
+        this.m = m;
+        this.maxM0 = 2 * m;
+        this.efConstruction = efConstruction;
+        this.efSearch = efSearch;
+        this.levelMultiplier = 1.0 / Math.log(m);
+    }
+
+    /**
+     * Method to create an index whose parameters are read from the 'bds.hnsw.m', 'bds.hnsw.efConstruction' and
+     * 'bds.hnsw.efSearch' system properties, falling back to the default parameters.
+     * @param metric the similarity metric used to compare vectors.
+     * @return the newly created HnswIndex.
+     */
+    public static HnswIndex fromSystemProperties(VectorMetric metric) {
+        return new HnswIndex(metric,
+                Integer.getInteger(M_PROPERTY, DEFAULT_M),
+                Integer.getInteger(EF_CONSTRUCTION_PROPERTY, DEFAULT_EF_CONSTRUCTION),
+                Integer.getInteger(EF_SEARCH_PROPERTY, DEFAULT_EF_SEARCH));
+    }
+
+    /**
+     * Method to get the default number of candidates considered by a search.
+     * @return efSearch.
+     */
+    public int getEfSearch() {
+        return efSearch;
+    }
+
+    /**
+     * Method to set the default number of candidates considered by a search. Higher values improve recall at the
+     * cost of latency.
+     * @param efSearch the new efSearch.
+     */
+    public void setEfSearch(int efSearch) {
+        if (efSearch < 1) throw new IllegalArgumentException("efSearch must be positive");
+        this.efSearch = efSearch;
+    }
+
+    /**
+     * Method to get the metric used by this index.
+     * @return the VectorMetric.
+     */
+    public VectorMetric getMetric() {
+        return metric;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public synchronized void add(Object id, DenseVector vector) {
+        float[] prepared = metric.prepare(vector);
+        int node = size;
+        ensureCapacity(node + 1);
+
+        int level = randomLevel();
+        int[][] nodeLinks = new int[level + 1][];
+        for (int l = 0; l <= level; l++) {
+            nodeLinks[l] = new int[0];
+        }
+        ids[node] = id;
+        vectors[node] = prepared;
+        links[node] = nodeLinks;
+
+        int entry = entryPoint;
+        if (entry < 0) {
+            size = node + 1;
+            entryPoint = node;
+            maxLevel = level;
+            return;
+        }
+
+        int currentMaxLevel = maxLevel;
+        float entryScore = metric.score(prepared, vectors[entry]);
+        for (int l = currentMaxLevel; l > level; l--) {
+            Candidate closest = greedySearch(prepared, entry, entryScore, l);
+            entry = closest.node;
+            entryScore = closest.score;
+        }
+
+        List<Candidate> entryPoints = Collections.singletonList(new Candidate(entry, entryScore));
+        for (int l = Math.min(level, currentMaxLevel); l >= 0; l--) {
+            List<Candidate> candidates = searchLayer(prepared, entryPoints, efConstruction, l, null);
+            int maxLinks = l == 0 ? maxM0 : m;
+            List<Candidate> selected = selectNeighbors(candidates, maxLinks);
+
+            int[] nodeNeighbors = new int[selected.size()];
+            for (int i = 0; i < nodeNeighbors.length; i++) {
+                nodeNeighbors[i] = selected.get(i).node;
+            }
+            nodeLinks[l] = nodeNeighbors;
+
+            for (Candidate neighbor : selected) {
+                connect(neighbor.node, node, neighbor.score, l, maxLinks);
+            }
+            entryPoints = candidates;
+        }
+
+        size = node + 1;
+        if (level > currentMaxLevel) {
+            maxLevel = level;
+            entryPoint = node;
+        }
+    }
+
+    @Override
+    public List<SearchResult> search(DenseVector query, int k) {
+        return search(query, k, efSearch);
+    }
+
+    /**
+     * Method to find the k vectors that are most similar to the query vector, using the passed efSearch instead of
+     * the default one.
+     * @param query the query vector.
+     * @param k the number of results to return.
+     * @param ef the number of candidates considered by the search, or 0 to use the default efSearch.
+     * @return up to k results, ordered from the most to the least similar.
+     */
+    @Override
+    public List<SearchResult> search(DenseVector query, int k, int ef) {
+        return search(query, k, ef, null);
+    }
+
+    /**
+     * Method to find the k vectors that are most similar to the query vector among the vectors whose ids pass a
+     * filter. The bottom layer search keeps ef accepted nodes, and goes on through rejected nodes until it finds
+     * them, so a selective filter makes the search visit more nodes.
+     * @param query the query vector.
+     * @param k the number of results to return.
+     * @param ef the number of candidates considered by the search, or 0 to use the default efSearch.
+     * @param filter accepts the ids of the vectors that can be returned, or null to accept every vector.
+     * @return up to k results that pass the filter, ordered from the most to the least similar.
+     */
+    @Override
+    public List<SearchResult> search(DenseVector query, int k, int ef, Predicate<Object> filter) {
+        if (ef <= 0) {
+            ef = efSearch;
+        }
+        int entry = entryPoint;
+        if (entry < 0 || k <= 0) return new ArrayList<>();
+
+        float[] prepared = metric.prepare(query);
+        float entryScore = metric.score(prepared, vectors[entry]);
+        int topLevel = Math.min(maxLevel, links[entry].length - 1);
+        for (int l = topLevel; l > 0; l--) {
+            Candidate closest = greedySearch(prepared, entry, entryScore, l);
+            entry = closest.node;
+            entryScore = closest.score;
+        }
+
+        List<Candidate> candidates = searchLayer(prepared,
+                Collections.singletonList(new Candidate(entry, entryScore)), Math.max(ef, k), 0, filter);
+
+        Object[] currentIds = ids;
+        List<SearchResult> results = new ArrayList<>(Math.min(k, candidates.size()));
+        for (int i = 0; i < candidates.size() && results.size() < k; i++) {
+            Candidate candidate = candidates.get(i);
+            results.add(new SearchResult(currentIds[candidate.node], candidate.score));
+        }
+        return results;
+    }
+
+    /**
+     * Method to pick a random level for a new node, using an exponentially decaying distribution.
+     */
+    private int randomLevel() {
+        double uniform = 1.0 - random.nextDouble();
+        return (int) Math.floor(-Math.log(uniform) * levelMultiplier);
+    }
+
+    /**
+     * Method to grow the node arrays so that they can hold at least capacity nodes.
+     */
+    private void ensureCapacity(int capacity) {
+        if (capacity <= ids.length) return;
+
+        int newCapacity = Math.max(capacity, ids.length * 2);
+        ids = Arrays.copyOf(ids, newCapacity);
+        vectors = Arrays.copyOf(vectors, newCapacity);
+        links = Arrays.copyOf(links, newCapacity);
+    }
+
+    /**
+     * Method to move greedily to the neighbor that is most similar to the query, until no neighbor is more similar.
+     */
+    private Candidate greedySearch(float[] query, int entry, float entryScore, int level) {
+        float[][] currentVectors = vectors;
+        int[][][] currentLinks = links;
+        int current = entry;
+        float currentScore = entryScore;
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int neighbor : currentLinks[current][level]) {
+                if (!isVisible(currentVectors, neighbor)) continue;
+
+                float score = metric.score(query, currentVectors[neighbor]);
+                if (score > currentScore) {
+                    currentScore = score;
+                    current = neighbor;
+                    changed = true;
+                }
+            }
+        }
+        return new Candidate(current, currentScore);
+    }
+
+    /**
+     * Method to run a best-first search on a single layer. With a filter, every visited node can lead the search
+     * further, but only the nodes whose ids pass the filter are kept as results.
+     * @return up to ef candidates that pass the filter, ordered from the most to the least similar.
+     */
+    private List<Candidate> searchLayer(float[] query, List<Candidate> entryPoints, int ef, int level,
+                                        Predicate<Object> filter) {
+        float[][] currentVectors = vectors;
+        int[][][] currentLinks = links;
+        Object[] currentIds = ids;
+        VisitedSet visited = visitedSets.get();
+        visited.reset(currentVectors.length);
+
+        PriorityQueue<Candidate> candidates = new PriorityQueue<>((a, b) -> Float.compare(b.score, a.score));
+        PriorityQueue<Candidate> results = new PriorityQueue<>((a, b) -> Float.compare(a.score, b.score));
+        for (Candidate entry : entryPoints) {
+            if (visited.add(entry.node)) {
+                candidates.add(entry);
+                if (filter == null || filter.test(currentIds[entry.node])) {
+                    results.add(entry);
+                }
+            }
+        }
+        while (results.size() > ef) {
+            results.poll();
+        }
+
+        while (!candidates.isEmpty()) {
+            Candidate candidate = candidates.poll();
+            if (results.size() >= ef && candidate.score < results.peek().score) {
+                break;
+            }
+
+            int[][] candidateLinks = currentLinks[candidate.node];
+            if (candidateLinks == null || level >= candidateLinks.length) continue;
+
+            for (int neighbor : candidateLinks[level]) {
+                if (!isVisible(currentVectors, neighbor) || !visited.add(neighbor)) continue;
+
+                float score = metric.score(query, currentVectors[neighbor]);
+                if (results.size() < ef || score > results.peek().score) {
+                    Candidate next = new Candidate(neighbor, score);
+                    candidates.add(next);
+                    if (filter != null && !filter.test(currentIds[neighbor])) continue;
+
+                    results.add(next);
+                    if (results.size() > ef) {
+                        results.poll();
+                    }
+                }
+            }
+        }
+
+        List<Candidate> ordered = new ArrayList<>(results);
+        ordered.sort((a, b) -> Float.compare(b.score, a.score));
+        return ordered;
+    }
+
+    /**
+     * Method to check if a node can be read from the passed snapshot of the vectors array. A search that runs
+     * concurrently with add can follow a link to a node that was added after the search took its snapshot.
+     */
+    private static boolean isVisible(float[][] currentVectors, int node) {
+        return node < currentVectors.length && currentVectors[node] != null;
+    }
+
+    /**
+     * Method to select up to maxLinks neighbors from candidates ordered by descending score. A candidate is kept when
+     * it is more similar to the new node than to any neighbor already selected, which keeps links spread out in
+     * different directions. Remaining slots are filled with the best pruned candidates.
+     */
+    private List<Candidate> selectNeighbors(List<Candidate> candidates, int maxLinks) {
+        if (candidates.size() <= maxLinks) return candidates;
+
+        float[][] currentVectors = vectors;
+        List<Candidate> selected = new ArrayList<>(maxLinks);
+        List<Candidate> pruned = new ArrayList<>();
+        for (Candidate candidate : candidates) {
+            if (selected.size() >= maxLinks) break;
+
+            boolean keep = true;
+            for (Candidate chosen : selected) {
+                if (metric.score(currentVectors[candidate.node], currentVectors[chosen.node]) > candidate.score) {
+                    keep = false;
+                    break;
+                }
+            }
+            if (keep) {
+                selected.add(candidate);
+            } else {
+                pruned.add(candidate);
+            }
+        }
+        for (int i = 0; i < pruned.size() && selected.size() < maxLinks; i++) {
+            selected.add(pruned.get(i));
+        }
+        return selected;
+    }
+
+    /**
+     * Method to add a link from node to newNode on the passed level, shrinking the links of node when it has more
+     * than maxLinks of them. The links array is replaced instead of modified so that concurrent searches always see a
+     * consistent array.
+     */
+    private void connect(int node, int newNode, float score, int level, int maxLinks) {
+        int[] current = links[node][level];
+        int[] updated = Arrays.copyOf(current, current.length + 1);
+        updated[current.length] = newNode;
+
+        if (updated.length > maxLinks) {
+            float[] nodeVector = vectors[node];
+            List<Candidate> candidates = new ArrayList<>(updated.length);
+            for (int neighbor : updated) {
+                float neighborScore = neighbor == newNode ? score : metric.score(nodeVector, vectors[neighbor]);
+                candidates.add(new Candidate(neighbor, neighborScore));
+            }
+            candidates.sort((a, b) -> Float.compare(b.score, a.score));
+            List<Candidate> selected = selectNeighbors(candidates, maxLinks);
+            updated = new int[selected.size()];
+            for (int i = 0; i < updated.length; i++) {
+                updated[i] = selected.get(i).node;
+            }
+        }
+        links[node][level] = updated;
+    }
+
+    /**
+     * A node of the graph together with its score for the current query.
+     */
+    private static final class Candidate {
+        private final int node;
+        private final float score;
+
+        private Candidate(int node, float score) {
+            this.node = node;
+            this.score = score;
+        }
+    }
+
+    /**
+     * Set of visited nodes that can be reset in constant time, by tagging nodes with the current search number.
+     */
+    private static final class VisitedSet {
+        private int[] marks = new int[0];
+        private int tag;
+
+        private void reset(int capacity) {
+            if (marks.length < capacity) {
+                marks = new int[capacity];
+                tag = 0;
+            }
+            tag++;
+            if (tag == Integer.MAX_VALUE) {
+                Arrays.fill(marks, 0);
+                tag = 1;
+            }
+        }
+
+        private boolean add(int node) {
+            if (marks[node] == tag) return false;
+
+            marks[node] = tag;
+            return true;
+        }
+    }
+}
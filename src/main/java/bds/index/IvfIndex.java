@@ -0,0 +1,280 @@
+package bds.index;
+
+import bds.common.Logger;
+import bds.vectors.DenseVector;
+import bds.vectors.DistanceKernels;
+import bds.vectors.VectorMetric;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.function.Predicate;
+import java.util.stream.IntStream;
+
+/**
+ * Inverted file index (IVF-Flat). The vectors are clustered around centroids with mini-batch k-means, and each
+ * cluster keeps an inverted list holding copies of its prepared vectors one after the other in a single array, so a
+ * list is scanned sequentially. A search ranks the centroids by their distance to the query and scores only the
+ * vectors of the nprobe closest lists, with exact scores; a larger nprobe finds more of the true results and scans
+ * more vectors. A filtered search skips the vectors the filter rejects, and scans lists beyond the nprobe closest
+ * ones until it has k results.
+ * The centroids are trained on the vectors added before the first search, which is much faster than building a
+ * graph, and vectors added later are appended to the list of their closest centroid. Adding vectors is synchronized,
+ * and searches can run concurrently with each other and with adds.
+ */
+public class IvfIndex implements VectorIndex {
+    public static final String LISTS_PROPERTY = "bds.ivf.lists";
+    public static final String NPROBE_PROPERTY = "bds.ivf.nprobe";
+    public static final String ITERATIONS_PROPERTY = "bds.ivf.iterations";
+    public static final String BATCH_SIZE_PROPERTY = "bds.ivf.batchSize";
+
+    private static final int DEFAULT_NPROBE = 8;
+    private static final int DEFAULT_ITERATIONS = 50;
+    private static final int DEFAULT_BATCH_SIZE = 1024;
+    private static final int INITIAL_CAPACITY = 64;
+    private static final long SEED = 42;
+    private static final Logger logger = Logger.getInstance();
+
+    private final VectorMetric metric;
+    private final int requestedLists;
+    private final int nprobe;
+    private final int iterations;
+    private final int batchSize;
+    private final DistanceKernels kernels = DistanceKernels.getInstance();
+
+    private Object[] pendingIds = new Object[INITIAL_CAPACITY];
+    private DenseVector[] pendingVectors = new DenseVector[INITIAL_CAPACITY];
+    private volatile int size;
+
+    private volatile boolean trained;
+    private int dimension;
+    private float[][] centroids;
+    private InvertedList[] lists;
+
+    /**
+     * Argument constructor for the IvfIndex class.
+     * @param metric the similarity metric used to compare vectors.
+     * @param lists the number of inverted lists, or 0 for the square root of the number of vectors at training.
+     * @param nprobe the default number of lists scanned by a search.
+     * @param iterations the number of mini-batches of the k-means training.
+     * @param batchSize the number of vectors per mini-batch.
+     */
+    public IvfIndex(VectorMetric metric, int lists, int nprobe, int iterations, int batchSize) {
+        if (lists < 0) throw new IllegalArgumentException("lists must not be negative");
+        if (nprobe < 1) throw new IllegalArgumentException("nprobe must be positive");
+        if (batchSize < 1) throw new IllegalArgumentException("batchSize must be positive");
+
+        this.metric = metric;
+        this.requestedLists = lists;
+        this.nprobe = nprobe;
+        this.iterations = Math.max(1, iterations);
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Method to create an index with the parameters read from the 'bds.ivf.lists', 'bds.ivf.nprobe',
+     * 'bds.ivf.iterations' and 'bds.ivf.batchSize' system properties, falling back to the default parameters.
+     * @param metric the similarity metric used to compare vectors.
+     * @return the newly created IvfIndex.
+     */
+    public static IvfIndex fromSystemProperties(VectorMetric metric) {
+        return new IvfIndex(metric,
+                Integer.getInteger(LISTS_PROPERTY, 0),
+                Integer.getInteger(NPROBE_PROPERTY, DEFAULT_NPROBE),
+                Integer.getInteger(ITERATIONS_PROPERTY, DEFAULT_ITERATIONS),
+                Integer.getInteger(BATCH_SIZE_PROPERTY, DEFAULT_BATCH_SIZE));
+    }
+
+    /**
+     * Method to get the number of inverted lists, which is 0 before the first search.
+     * @return the number of lists.
+     */
+    public int getListCount() {
+        return trained ? lists.length : 0;
+    }
+
+    /**
+     * Method to get the default number of lists scanned by a search.
+     * @return nprobe.
+     */
+    public int getNprobe() {
+        return nprobe;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public synchronized void add(Object id, DenseVector vector) {
+        int node = size;
+        if (trained) {
+            float[] prepared = fit(CompressedIndex.prepare(metric, vector));
+            lists[KMeans.nearest(centroids, prepared, kernels)].append(id, prepared);
+        } else {
+            if (node == pendingIds.length) {
+                pendingIds = Arrays.copyOf(pendingIds, node * 2);
+                pendingVectors = Arrays.copyOf(pendingVectors, node * 2);
+            }
+            pendingIds[node] = id;
+            pendingVectors[node] = vector;
+        }
+        size = node + 1;
+    }
+
+    @Override
+    public List<SearchResult> search(DenseVector query, int k) {
+        return search(query, k, 0);
+    }
+
+    /**
+     * Method to find the k vectors that are most similar to the query vector, scanning the passed number of lists.
+     * @param query the query vector.
+     * @param k the number of results to return.
+     * @param effort the number of lists to scan, or 0 to use the default nprobe.
+     * @return up to k results, ordered from the most to the least similar.
+     */
+    @Override
+    public List<SearchResult> search(DenseVector query, int k, int effort) {
+        return search(query, k, effort, null);
+    }
+
+    /**
+     * Method to find the k vectors that are most similar to the query vector among the vectors whose ids pass a
+     * filter, scanning at least the passed number of lists.
+     * @param query the query vector.
+     * @param k the number of results to return.
+     * @param effort the number of lists to scan, or 0 to use the default nprobe.
+     * @param filter accepts the ids of the vectors that can be returned, or null to accept every vector.
+     * @return up to k results that pass the filter, ordered from the most to the least similar.
+     */
+    @Override
+    public List<SearchResult> search(DenseVector query, int k, int effort, Predicate<Object> filter) {
+        if (!trained && size > 0) {
+            train();
+        }
+        if (!trained || k <= 0) return new ArrayList<>();
+
+        float[] prepared = fit(metric.prepare(query));
+        PriorityQueue<SearchResult> best = new PriorityQueue<>(k + 1,
+                Comparator.comparingDouble(SearchResult::getScore));
+        int probes = Math.min(lists.length, effort > 0 ? effort : nprobe);
+        int[] closestLists = findClosestLists(prepared, filter == null ? probes : lists.length);
+        for (int j = 0; j < closestLists.length && (j < probes || best.size() < k); j++) {
+            InvertedList invertedList = lists[closestLists[j]];
+            int count = invertedList.size;
+            float[] vectors = invertedList.vectors;
+            Object[] ids = invertedList.ids;
+            for (int i = 0, offset = 0; i < count; i++, offset += dimension) {
+                if (filter != null && !filter.test(ids[i])) continue;
+
+                float score = kernels.dot(vectors, offset, dimension, prepared);
+                if (best.size() < k) {
+                    best.add(new SearchResult(ids[i], score));
+                } else if (score > best.peek().getScore()) {
+                    best.poll();
+                    best.add(new SearchResult(ids[i], score));
+                }
+            }
+        }
+
+        List<SearchResult> results = new ArrayList<>(best);
+        results.sort((a, b) -> Double.compare(b.getScore(), a.getScore()));
+        return results;
+    }
+
+    /**
+     * Method to find the lists whose centroids are closest to the query.
+     * @return the indexes of the lists.
+     */
+    private int[] findClosestLists(float[] query, int count) {
+        float[] distances = new float[centroids.length];
+        for (int c = 0; c < centroids.length; c++) {
+            distances[c] = kernels.squaredL2(centroids[c], query);
+        }
+        return IntStream.range(0, centroids.length).boxed()
+                .sorted(Comparator.comparingDouble(c -> distances[c]))
+                .limit(count)
+                .mapToInt(Integer::intValue)
+                .toArray();
+    }
+
+    /**
+     * Method to train the centroids on the vectors added so far, and move these vectors to the inverted lists. The
+     * vectors are assigned to their closest centroids in parallel.
+     */
+    private synchronized void train() {
+        if (trained) return;
+
+        long startTime = System.nanoTime();
+        int count = size;
+        dimension = 0;
+        for (int node = 0; node < count; node++) {
+            dimension = Math.max(dimension, pendingVectors[node].dimension());
+        }
+        int listCount = requestedLists > 0 ? requestedLists : (int) Math.round(Math.sqrt(count));
+        listCount = Math.max(1, Math.min(listCount, count));
+        centroids = KMeans.trainMiniBatch(node -> fit(CompressedIndex.prepare(metric, pendingVectors[node])), count,
+                listCount, iterations, batchSize, new Random(SEED));
+
+        int[] assignments = new int[count];
+        IntStream.range(0, count).parallel().forEach(node -> assignments[node] = KMeans.nearest(centroids,
+                fit(CompressedIndex.prepare(metric, pendingVectors[node])), kernels));
+        int[] listSizes = new int[listCount];
+        for (int node = 0; node < count; node++) {
+            listSizes[assignments[node]]++;
+        }
+        lists = new InvertedList[listCount];
+        for (int list = 0; list < listCount; list++) {
+            lists[list] = new InvertedList(Math.max(listSizes[list], 1), dimension);
+        }
+        for (int node = 0; node < count; node++) {
+            float[] prepared = fit(CompressedIndex.prepare(metric, pendingVectors[node]));
+            lists[assignments[node]].append(pendingIds[node], prepared);
+        }
+        pendingIds = null;
+        pendingVectors = null;
+        trained = true;
+
+        logger.debug(String.format("trained %d inverted lists on %d vectors of dimension %d in %d ms", listCount,
+                count, dimension, (System.nanoTime() - startTime) / 1_000_000), "IvfIndex");
+    }
+
+    /**
+     * Method to pad or truncate a prepared vector to the dimension of the index.
+     */
+    private float[] fit(float[] prepared) {
+        return prepared.length == dimension ? prepared : Arrays.copyOf(prepared, dimension);
+    }
+
+    /**
+     * The vectors of one cluster, stored one after the other. Appends happen with the lock of the index held; the
+     * size is written last, so a search that reads it first only reads elements that were completely written.
+     */
+    private static final class InvertedList {
+        private final int dimension;
+        private volatile float[] vectors;
+        private volatile Object[] ids;
+        private volatile int size;
+
+        private InvertedList(int capacity, int dimension) {
+            this.dimension = dimension;
+            this.vectors = new float[capacity * dimension];
+            this.ids = new Object[capacity];
+        }
+
+        private void append(Object id, float[] vector) {
+            int position = size;
+            if (position == ids.length) {
+                ids = Arrays.copyOf(ids, position * 2);
+                vectors = Arrays.copyOf(vectors, position * 2 * dimension);
+            }
+            ids[position] = id;
+            System.arraycopy(vector, 0, vectors, position * dimension, dimension);
+            size = position + 1;
+        }
+    }
+}
@@ -0,0 +1,265 @@
+package bds.index;
+
+import bds.vectors.DistanceKernels;
+import java.util.Random;
+import java.util.function.IntFunction;
+import java.util.stream.IntStream;
+
+/**
+ * K-means clustering of points by squared Euclidean distance, used to train the codebooks of the indexes. The
+ * centroids are seeded with k-means++, which picks each next seed with a probability proportional to its squared
+ * distance to the closest seed so far, and then refined with Lloyd iterations. A centroid that loses all its points
+ * is moved to the point that is farthest from its own centroid, taken from a cluster with other points.
+ * For many points of a high dimension, trainMiniBatch instead moves the centroids towards small random batches of
+ * points, whose assignment to the closest centroids runs on all processors.
+ */
+final class KMeans {
+
+    /**
+     * Private constructor since this class only contains static methods.
+     */
+    private KMeans() {}
+
+    /**
+     * Method to cluster points.
+     * @param points the points, which all have the same dimension.
+     * @param k the number of clusters, at most the number of points.
+     * @param iterations the maximum number of Lloyd iterations.
+     * @param random the source of randomness for the seeding.
+     * @return the k centroids.
+     */
+    static float[][] train(float[][] points, int k, int iterations, Random random) {
+        if (k < 1 || k > points.length) throw new IllegalArgumentException("k must be between 1 and " + points.length);
+
+        float[][] centroids = seed(points, k, random);
+        int[] assignments = new int[points.length];
+        for (int iteration = 0; iteration < iterations; iteration++) {
+            boolean changed = assign(points, centroids, assignments) || iteration == 0;
+            if (!changed) break;
+
+            update(points, centroids, assignments);
+        }
+        return centroids;
+    }
+
+    /**
+     * Method to cluster points with mini-batch k-means: the centroids are seeded with k-means++ on a sample, and then
+     * each iteration assigns a random batch of points to their closest centroids in parallel and moves each centroid
+     * towards its points, by a step that shrinks with the number of points the centroid has seen.
+     * @param points returns the point at a position, all points have the same dimension.
+     * @param count the number of points.
+     * @param k the number of clusters, at most the number of points.
+     * @param iterations the number of batches.
+     * @param batchSize the number of points per batch.
+     * @param random the source of randomness for the seeding and the batches.
+     * @return the k centroids.
+     */
+    static float[][] trainMiniBatch(IntFunction<float[]> points, int count, int k, int iterations, int batchSize,
+                                    Random random) {
+        if (k < 1 || k > count) throw new IllegalArgumentException("k must be between 1 and " + count);
+
+        int[] positions = new int[count];
+        for (int p = 0; p < count; p++) {
+            positions[p] = p;
+        }
+        float[][] sample = new float[Math.min(count, Math.max(batchSize, 4 * k))][];
+        for (int i = 0; i < sample.length; i++) {
+            int swap = i + random.nextInt(count - i);
+            int position = positions[swap];
+            positions[swap] = positions[i];
+            sample[i] = points.apply(position);
+        }
+        if (count == sample.length && count <= batchSize) {
+            // all points fit in one batch
+            return train(sample, k, iterations, random);
+        }
+        float[][] centroids = seed(sample, k, random);
+
+        DistanceKernels kernels = DistanceKernels.getInstance();
+        int[] seen = new int[k];
+        for (int iteration = 0; iteration < iterations; iteration++) {
+            float[][] batch = new float[batchSize][];
+            for (int i = 0; i < batchSize; i++) {
+                batch[i] = points.apply(random.nextInt(count));
+            }
+            int[] assignments = new int[batchSize];
+            IntStream.range(0, batchSize).parallel()
+                    .forEach(i -> assignments[i] = nearest(centroids, batch[i], kernels));
+
+            for (int i = 0; i < batchSize; i++) {
+                float[] centroid = centroids[assignments[i]];
+                float step = 1f / ++seen[assignments[i]];
+                for (int d = 0; d < centroid.length; d++) {
+                    centroid[d] += step * (batch[i][d] - centroid[d]);
+                }
+            }
+        }
+        return centroids;
+    }
+
+    /**
+     * Method to find the centroid that is closest to a point with the distance kernels, for points of a high
+     * dimension.
+     * @param centroids the centroids.
+     * @param point the point, of the dimension of the centroids.
+     * @param kernels the DistanceKernels computing the distances.
+     * @return the index of the closest centroid.
+     */
+    static int nearest(float[][] centroids, float[] point, DistanceKernels kernels) {
+        int best = 0;
+        float bestDistance = Float.POSITIVE_INFINITY;
+        for (int c = 0; c < centroids.length; c++) {
+            float distance = kernels.squaredL2(centroids[c], point);
+            if (distance < bestDistance) {
+                bestDistance = distance;
+                best = c;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Method to copy centroids into one array, centroid after centroid, which nearest scans faster.
+     * @param centroids the centroids.
+     * @return the flattened centroids.
+     */
+    static float[] flatten(float[][] centroids) {
+        int dimension = centroids[0].length;
+        float[] flat = new float[centroids.length * dimension];
+        for (int c = 0; c < centroids.length; c++) {
+            System.arraycopy(centroids[c], 0, flat, c * dimension, dimension);
+        }
+        return flat;
+    }
+
+    /**
+     * Method to find the centroid that is closest to a point, or a part of it.
+     * @param centroids the flattened centroids, see flatten.
+     * @param dimension the dimension of the centroids.
+     * @param point the array holding the point.
+     * @param offset the index of the first element of the point.
+     * @return the index of the closest centroid.
+     */
+    static int nearest(float[] centroids, int dimension, float[] point, int offset) {
+        int best = 0;
+        float bestDistance = Float.POSITIVE_INFINITY;
+        for (int c = 0, base = 0; base < centroids.length; c++, base += dimension) {
+            float distance = 0;
+            for (int i = 0; i < dimension; i++) {
+                float difference = centroids[base + i] - point[offset + i];
+                distance += difference * difference;
+            }
+            if (distance < bestDistance) {
+                bestDistance = distance;
+                best = c;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Method to compute the squared Euclidean distance between a centroid and a point stored in a larger array.
+     * @param centroid the centroid.
+     * @param point the array holding the point.
+     * @param offset the index of the first element of the point.
+     * @return the squared distance.
+     */
+    static float squaredDistance(float[] centroid, float[] point, int offset) {
+        float sum = 0;
+        for (int i = 0; i < centroid.length; i++) {
+            float difference = centroid[i] - point[offset + i];
+            sum += difference * difference;
+        }
+        return sum;
+    }
+
+    /**
+     * Method to pick the initial centroids with k-means++.
+     */
+    private static float[][] seed(float[][] points, int k, Random random) {
+        float[][] centroids = new float[k][];
+        centroids[0] = points[random.nextInt(points.length)].clone();
+        float[] distances = new float[points.length];
+        double total = 0;
+        for (int p = 0; p < points.length; p++) {
+            distances[p] = squaredDistance(centroids[0], points[p], 0);
+            total += distances[p];
+        }
+
+        for (int c = 1; c < k; c++) {
+            int chosen = random.nextInt(points.length);
+            if (total > 0) {
+                double target = random.nextDouble() * total;
+                for (int p = 0; p < points.length; p++) {
+                    target -= distances[p];
+                    if (target <= 0) {
+                        chosen = p;
+                        break;
+                    }
+                }
+            }
+            centroids[c] = points[chosen].clone();
+
+            total = 0;
+            for (int p = 0; p < points.length; p++) {
+                distances[p] = Math.min(distances[p], squaredDistance(centroids[c], points[p], 0));
+                total += distances[p];
+            }
+        }
+        return centroids;
+    }
+
+    /**
+     * Method to assign each point to its closest centroid.
+     * @return true if any assignment changed.
+     */
+    private static boolean assign(float[][] points, float[][] centroids, int[] assignments) {
+        boolean changed = false;
+        float[] flat = flatten(centroids);
+        int dimension = centroids[0].length;
+        for (int p = 0; p < points.length; p++) {
+            int closest = nearest(flat, dimension, points[p], 0);
+            if (closest != assignments[p]) {
+                assignments[p] = closest;
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Method to move each centroid to the mean of its points.
+     */
+    private static void update(float[][] points, float[][] centroids, int[] assignments) {
+        int dimension = centroids[0].length;
+        double[][] sums = new double[centroids.length][dimension];
+        int[] counts = new int[centroids.length];
+        for (int p = 0; p < points.length; p++) {
+            double[] sum = sums[assignments[p]];
+            for (int i = 0; i < dimension; i++) {
+                sum[i] += points[p][i];
+            }
+            counts[assignments[p]]++;
+        }
+
+        for (int c = 0; c < centroids.length; c++) {
+            if (counts[c] == 0) {
+                int farthest = 0;
+                float farthestDistance = -1;
+                for (int p = 0; p < points.length; p++) {
+                    float distance = squaredDistance(centroids[assignments[p]], points[p], 0);
+                    if (distance > farthestDistance && counts[assignments[p]] > 1) {
+                        farthestDistance = distance;
+                        farthest = p;
+                    }
+                }
+                assignments[farthest] = c;
+                centroids[c] = points[farthest].clone();
+                continue;
+            }
+            for (int i = 0; i < dimension; i++) {
+                centroids[c][i] = (float) (sums[c][i] / counts[c]);
+            }
+        }
+    }
+}
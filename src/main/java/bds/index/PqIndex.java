@@ -0,0 +1,156 @@
+package bds.index;
+
+import bds.vectors.VectorMetric;
+import java.util.Arrays;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.function.IntPredicate;
+
+/**
+ * Index that scans product quantization (PQ) codes of the vectors, see CompressedIndex and ProductQuantizer. The
+ * dimensions are split into m subspaces, and each subspace gets a codebook of up to 256 centroids, trained with
+ * k-means on a sample of the vectors added before the first search. A vector is encoded as the m bytes of the
+ * centroids closest to its parts, so with the default of 4 dimensions per subspace a code is 16 times smaller than
+ * the float32 vector.
+ * A search computes the dot products of each part of the query with the centroids of its subspace once, into a lookup
+ * table of m * 256 floats, and scores each code with m table lookups instead of a full dot product (asymmetric
+ * distance computation, the query is not quantized). The best rerank * k candidates are then scored again with full
+ * precision; with a re-rank factor of 1, the approximate scores of the codes are returned as they are.
+ */
+public class PqIndex extends CompressedIndex {
+    public static final String SUBSPACES_PROPERTY = "bds.pq.m";
+    public static final String TRAINING_SIZE_PROPERTY = "bds.pq.trainingSize";
+    public static final String ITERATIONS_PROPERTY = "bds.pq.iterations";
+    public static final String RERANK_PROPERTY = "bds.pq.rerank";
+
+    private static final int DEFAULT_SUBSPACE_DIMENSION = 4;
+    private static final int DEFAULT_TRAINING_SIZE = 8192;
+    private static final int DEFAULT_ITERATIONS = 10;
+    private static final int DEFAULT_RERANK = 8;
+    private static final long SEED = 42;
+
+    private final int requestedSubspaces;
+    private final int trainingSize;
+    private final int iterations;
+
+    private int dimension;
+    private ProductQuantizer quantizer;
+    private volatile byte[] codes;
+
+    /**
+     * Argument constructor for the PqIndex class.
+     * @param metric the similarity metric used to compare vectors.
+     * @param subspaces the number of subspaces m, or 0 for one subspace per 4 dimensions.
+     * @param trainingSize the maximum number of vectors the codebooks are trained on.
+     * @param iterations the maximum number of k-means iterations per codebook.
+     * @param rerank the default number of candidates per requested result that are scored again with full precision.
+     */
+    public PqIndex(VectorMetric metric, int subspaces, int trainingSize, int iterations, int rerank) {
+        super(metric, rerank);
+        if (subspaces < 0) throw new IllegalArgumentException("subspaces must not be negative");
+        if (trainingSize < 1) throw new IllegalArgumentException("trainingSize must be positive");
+
+        this.requestedSubspaces = subspaces;
+        this.trainingSize = trainingSize;
+        this.iterations = Math.max(1, iterations);
+    }
+
+    /**
+     * Method to create an index with the parameters read from the 'bds.pq.m', 'bds.pq.trainingSize',
+     * 'bds.pq.iterations' and 'bds.pq.rerank' system properties, falling back to the default parameters.
+     * @param metric the similarity metric used to compare vectors.
+     * @return the newly created PqIndex.
+     */
+    public static PqIndex fromSystemProperties(VectorMetric metric) {
+        return new PqIndex(metric,
+                Integer.getInteger(SUBSPACES_PROPERTY, 0),
+                Integer.getInteger(TRAINING_SIZE_PROPERTY, DEFAULT_TRAINING_SIZE),
+                Integer.getInteger(ITERATIONS_PROPERTY, DEFAULT_ITERATIONS),
+                Integer.getInteger(RERANK_PROPERTY, DEFAULT_RERANK));
+    }
+
+    /**
+     * Method to get the number of subspaces, which is the number of bytes of a code, or 0 before the first search.
+     * @return the number of subspaces m.
+     */
+    public int getSubspaces() {
+        return quantizer != null ? quantizer.getSubspaces() : 0;
+    }
+
+    @Override
+    protected boolean isRescored(int oversampling) {
+        return oversampling > 1;
+    }
+
+    @Override
+    protected long getBytesPerVector() {
+        return quantizer.getSubspaces();
+    }
+
+    /**
+     * Method to train the codebooks on a random sample of the vectors.
+     */
+    @Override
+    protected void train(int count, int capacity) {
+        dimension = 0;
+        for (int node = 0; node < count; node++) {
+            dimension = Math.max(dimension, getVector(node).dimension());
+        }
+        int m = requestedSubspaces > 0 ? requestedSubspaces
+                : (dimension + DEFAULT_SUBSPACE_DIMENSION - 1) / DEFAULT_SUBSPACE_DIMENSION;
+        quantizer = ProductQuantizer.train(sample(count), dimension, m, iterations, SEED);
+        codes = new byte[capacity * quantizer.getSubspaces()];
+    }
+
+    /**
+     * Method to pick up to trainingSize distinct vectors at random, prepared and padded to the dimension.
+     */
+    private float[][] sample(int count) {
+        int[] nodes = new int[count];
+        for (int node = 0; node < count; node++) {
+            nodes[node] = node;
+        }
+        int sampleSize = Math.min(count, trainingSize);
+        Random random = new Random(SEED);
+        float[][] sample = new float[sampleSize][];
+        for (int i = 0; i < sampleSize; i++) {
+            int swap = i + random.nextInt(count - i);
+            int node = nodes[swap];
+            nodes[swap] = nodes[i];
+            nodes[i] = node;
+            float[] prepared = prepare(getVector(node));
+            sample[i] = prepared.length == dimension ? prepared : Arrays.copyOf(prepared, dimension);
+        }
+        return sample;
+    }
+
+    @Override
+    protected void encode(int node, float[] prepared) {
+        quantizer.encode(quantizer.fit(prepared), codes, node * quantizer.getSubspaces());
+    }
+
+    @Override
+    protected void growCodes(int capacity) {
+        codes = Arrays.copyOf(codes, capacity * quantizer.getSubspaces());
+    }
+
+    /**
+     * Method to find the candidates with the PQ codes, scored with the lookup table of the query.
+     * @return the best candidates, worst first.
+     */
+    @Override
+    protected PriorityQueue<Candidate> findCandidates(float[] query, int count, int limit,
+                                                      IntPredicate accepted) {
+        byte[] currentCodes = codes;
+        float[] table = quantizer.createLookupTable(query);
+        int m = quantizer.getSubspaces();
+
+        PriorityQueue<Candidate> candidates = new PriorityQueue<>(limit + 1);
+        for (int node = 0, offset = 0; node < count; node++, offset += m) {
+            if (accepted != null && !accepted.test(node)) continue;
+
+            offer(candidates, node, quantizer.score(table, currentCodes, offset), limit);
+        }
+        return candidates;
+    }
+}
@@ -0,0 +1,129 @@
+package bds.index;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+/**
+ * Product quantization codebooks. The dimensions are split into m subspaces, and each subspace gets a codebook of up
+ * to 256 centroids, trained with k-means on a sample of the vectors. A vector is encoded as the m bytes of the
+ * centroids closest to its parts. A query is compared with codes through a lookup table holding the dot products of
+ * each part of the query with the centroids of its subspace, so scoring a code takes m table lookups instead of a
+ * full dot product (asymmetric distance computation, the query is not quantized).
+ */
+final class ProductQuantizer {
+    static final int CENTROIDS = 256;
+
+    private final int dimension;
+    private final int subspaces;
+    private final int[] bounds;
+    private final float[][][] codebooks;
+    private final float[][] flatCodebooks;
+
+    private ProductQuantizer(int dimension, int subspaces, int[] bounds, float[][][] codebooks) {
+        this.dimension = dimension;
+        this.subspaces = subspaces;
+        this.bounds = bounds;
+        this.codebooks = codebooks;
+        this.flatCodebooks = new float[subspaces][];
+        for (int j = 0; j < subspaces; j++) {
+            flatCodebooks[j] = KMeans.flatten(codebooks[j]);
+        }
+    }
+
+    /**
+     * Method to train the codebooks of the subspaces. The codebooks are independent, so they are trained in parallel.
+     * @param sample the prepared vectors to train on, all of the passed dimension.
+     * @param dimension the dimension of the vectors.
+     * @param subspaces the number of subspaces m, at most the dimension.
+     * @param iterations the maximum number of k-means iterations per codebook.
+     * @param seed the seed of the k-means seeding.
+     * @return the trained ProductQuantizer.
+     */
+    static ProductQuantizer train(float[][] sample, int dimension, int subspaces, int iterations, long seed) {
+        int m = Math.max(1, Math.min(subspaces, dimension));
+        int[] bounds = new int[m + 1];
+        for (int j = 0; j <= m; j++) {
+            bounds[j] = (int) ((long) j * dimension / m);
+        }
+
+        int k = Math.min(CENTROIDS, sample.length);
+        float[][][] codebooks = new float[m][][];
+        IntStream.range(0, m).parallel().forEach(j -> {
+            float[][] parts = new float[sample.length][];
+            for (int i = 0; i < sample.length; i++) {
+                parts[i] = Arrays.copyOfRange(sample[i], bounds[j], bounds[j + 1]);
+            }
+            codebooks[j] = KMeans.train(parts, k, iterations, new Random(seed + j));
+        });
+        return new ProductQuantizer(dimension, m, bounds, codebooks);
+    }
+
+    /**
+     * Method to get the number of subspaces, which is the number of bytes of a code.
+     * @return the number of subspaces m.
+     */
+    int getSubspaces() {
+        return subspaces;
+    }
+
+    /**
+     * Method to write the code of a vector.
+     * @param vector the prepared vector, of the dimension of the quantizer.
+     * @param codes the array receiving the code.
+     * @param offset the index of the first byte of the code in codes.
+     */
+    void encode(float[] vector, byte[] codes, int offset) {
+        for (int j = 0; j < subspaces; j++) {
+            codes[offset + j] = (byte) KMeans.nearest(flatCodebooks[j], bounds[j + 1] - bounds[j], vector, bounds[j]);
+        }
+    }
+
+    /**
+     * Method to compute the dot products of each part of the query with the centroids of its subspace.
+     * @param query the prepared query.
+     * @return the lookup table, holding the dot product with centroid c of subspace j at j * 256 + c.
+     */
+    float[] createLookupTable(float[] query) {
+        float[] table = new float[subspaces * CENTROIDS];
+        for (int j = 0; j < subspaces; j++) {
+            float[][] codebook = codebooks[j];
+            int from = bounds[j];
+            int to = Math.min(bounds[j + 1], query.length);
+            for (int c = 0; c < codebook.length; c++) {
+                float[] centroid = codebook[c];
+                float dot = 0;
+                for (int i = from; i < to; i++) {
+                    dot += query[i] * centroid[i - from];
+                }
+                table[j * CENTROIDS + c] = dot;
+            }
+        }
+        return table;
+    }
+
+    /**
+     * Method to score a code with a lookup table: the dot product of the query and the concatenated centroids of the
+     * code.
+     * @param table the lookup table of the query, see createLookupTable.
+     * @param codes the array holding the code.
+     * @param offset the index of the first byte of the code in codes.
+     * @return the approximate dot product.
+     */
+    float score(float[] table, byte[] codes, int offset) {
+        float score = 0;
+        for (int j = 0, base = 0; j < subspaces; j++, base += CENTROIDS) {
+            score += table[base + (codes[offset + j] & 0xFF)];
+        }
+        return score;
+    }
+
+    /**
+     * Method to pad or truncate a prepared vector to the dimension of the quantizer.
+     * @param vector the prepared vector.
+     * @return the vector itself if it has the dimension, else a copy of it.
+     */
+    float[] fit(float[] vector) {
+        return vector.length == dimension ? vector : Arrays.copyOf(vector, dimension);
+    }
+}
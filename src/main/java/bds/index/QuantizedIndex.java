@@ -0,0 +1,223 @@
+package bds.index;
+
+import bds.vectors.BinaryCodes;
+import bds.vectors.VectorMetric;
+import bds.vectors.VectorQuantization;
+import java.util.Arrays;
+import java.util.PriorityQueue;
+import java.util.function.IntPredicate;
+
+/**
+ * Index that scans quantized codes of the vectors instead of the vectors themselves, see VectorQuantization and
+ * CompressedIndex. INT8 codes scale each dimension between the minimum and maximum of the vectors added before the
+ * first search, so vectors added later that fall outside the range are clamped to it.
+ */
+public class QuantizedIndex extends CompressedIndex {
+    public static final String OVERSAMPLING_PROPERTY = "bds.quantization.oversampling";
+
+    private final VectorQuantization quantization;
+
+    private int dimension;
+    private float[] minimums;
+    private float[] scales;
+    private float[] means;
+    private int words;
+    private volatile byte[] byteCodes;
+    private volatile long[] bitCodes;
+
+    /**
+     * Argument constructor for the QuantizedIndex class.
+     * @param metric the similarity metric used to compare vectors.
+     * @param quantization the kind of codes, which must not be NONE.
+     * @param oversampling the number of candidates per requested result that are scored again with full precision.
+     */
+    public QuantizedIndex(VectorMetric metric, VectorQuantization quantization, int oversampling) {
+        super(metric, oversampling);
+        if (quantization == VectorQuantization.NONE) {
+            throw new IllegalArgumentException("a QuantizedIndex needs a quantization");
+        }
+
+        this.quantization = quantization;
+    }
+
+    /**
+     * Method to create an index whose oversampling is read from the 'bds.quantization.oversampling' system property,
+     * falling back to the default of the quantization.
+     * @param metric the similarity metric used to compare vectors.
+     * @param quantization the kind of codes, which must not be NONE.
+     * @return the newly created QuantizedIndex.
+     */
+    public static QuantizedIndex fromSystemProperties(VectorMetric metric, VectorQuantization quantization) {
+        return new QuantizedIndex(metric, quantization,
+                Integer.getInteger(OVERSAMPLING_PROPERTY, quantization.getDefaultOversampling()));
+    }
+
+    /**
+     * Method to get the kind of codes of this index.
+     * @return the VectorQuantization.
+     */
+    public VectorQuantization getQuantization() {
+        return quantization;
+    }
+
+    @Override
+    protected long getBytesPerVector() {
+        return quantization == VectorQuantization.BINARY ? 8L * words : dimension;
+    }
+
+    @Override
+    protected void train(int count, int capacity) {
+        dimension = 0;
+        for (int node = 0; node < count; node++) {
+            dimension = Math.max(dimension, getVector(node).dimension());
+        }
+        if (quantization == VectorQuantization.BINARY) {
+            trainMeans(count);
+            words = BinaryCodes.words(dimension);
+            bitCodes = new long[capacity * words];
+        } else {
+            trainScales(count);
+            byteCodes = new byte[capacity * dimension];
+        }
+    }
+
+    @Override
+    protected void encode(int node, float[] prepared) {
+        if (quantization == VectorQuantization.BINARY) {
+            long[] codes = bitCodes;
+            int offset = node * words;
+            for (int i = 0; i < dimension; i++) {
+                if ((i < prepared.length ? prepared[i] : 0) > means[i]) {
+                    codes[offset + (i >>> 6)] |= 1L << (i & 63);
+                }
+            }
+            return;
+        }
+
+        byte[] codes = byteCodes;
+        int offset = node * dimension;
+        for (int i = 0; i < dimension; i++) {
+            float element = i < prepared.length ? prepared[i] : 0;
+            int code = scales[i] > 0 ? Math.round((element - minimums[i]) / scales[i]) : 0;
+            codes[offset + i] = (byte) (Math.max(0, Math.min(255, code)) - 128);
+        }
+    }
+
+    @Override
+    protected void growCodes(int capacity) {
+        if (quantization == VectorQuantization.BINARY) {
+            bitCodes = Arrays.copyOf(bitCodes, capacity * words);
+        } else {
+            byteCodes = Arrays.copyOf(byteCodes, capacity * dimension);
+        }
+    }
+
+    @Override
+    protected PriorityQueue<Candidate> findCandidates(float[] query, int count, int limit,
+                                                      IntPredicate accepted) {
+        return quantization == VectorQuantization.BINARY
+                ? findBinaryCandidates(query, count, limit, accepted)
+                : findByteCandidates(query, count, limit, accepted);
+    }
+
+    /**
+     * Method to find the candidates with the INT8 codes. The score of a code is the dot product of the query and the
+     * decoded vector, min + (code + 128) * scale per element, which is computed as a constant plus the dot product of
+     * the signed codes and the query weighted by the scales.
+     * @return the best candidates, worst first.
+     */
+    private PriorityQueue<Candidate> findByteCandidates(float[] query, int count, int limit, IntPredicate accepted) {
+        byte[] codes = byteCodes;
+        int length = Math.min(dimension, query.length);
+        float[] weights = new float[dimension];
+        float base = 0;
+        for (int i = 0; i < length; i++) {
+            weights[i] = query[i] * scales[i];
+            base += query[i] * minimums[i] + 128 * weights[i];
+        }
+
+        PriorityQueue<Candidate> candidates = new PriorityQueue<>(limit + 1);
+        for (int node = 0, offset = 0; node < count; node++, offset += dimension) {
+            if (accepted != null && !accepted.test(node)) continue;
+
+            offer(candidates, node, base + kernels.dot(weights, codes, offset, length), limit);
+        }
+        return candidates;
+    }
+
+    /**
+     * Method to find the candidates with the BINARY codes, scored by their negated Hamming distance to the code of
+     * the query. The vectors are encoded relative to their mean, which does not change their order by dot product
+     * with the query, but spreads the signs of clustered vectors that would otherwise share most of their bits.
+     * @return the best candidates, worst first.
+     */
+    private PriorityQueue<Candidate> findBinaryCandidates(float[] query, int count, int limit,
+                                                          IntPredicate accepted) {
+        long[] codes = bitCodes;
+        long[] queryCode = Arrays.copyOf(BinaryCodes.encode(query), words);
+
+        PriorityQueue<Candidate> candidates = new PriorityQueue<>(limit + 1);
+        for (int node = 0, offset = 0; node < count; node++, offset += words) {
+            if (accepted != null && !accepted.test(node)) continue;
+
+            offer(candidates, node, -BinaryCodes.hammingDistance(codes, offset, queryCode, 0, words), limit);
+        }
+        return candidates;
+    }
+
+    /**
+     * Method to compute the mean of the prepared vectors, which the BINARY codes are relative to.
+     */
+    private void trainMeans(int count) {
+        double[] sums = new double[dimension];
+        for (int node = 0; node < count; node++) {
+            float[] prepared = prepare(getVector(node));
+            for (int i = 0; i < prepared.length; i++) {
+                sums[i] += prepared[i];
+            }
+        }
+        means = new float[dimension];
+        for (int i = 0; i < dimension; i++) {
+            means[i] = (float) (sums[i] / count);
+        }
+    }
+
+    /**
+     * Method to compute the minimum and the scale of each dimension from the prepared vectors, per dimension for
+     * INT8 and over all dimensions for INT8_GLOBAL.
+     */
+    private void trainScales(int count) {
+        float[] lows = new float[dimension];
+        float[] highs = new float[dimension];
+        Arrays.fill(lows, Float.POSITIVE_INFINITY);
+        Arrays.fill(highs, Float.NEGATIVE_INFINITY);
+        for (int node = 0; node < count; node++) {
+            float[] prepared = prepare(getVector(node));
+            for (int i = 0; i < dimension; i++) {
+                float element = i < prepared.length ? prepared[i] : 0;
+                lows[i] = Math.min(lows[i], element);
+                highs[i] = Math.max(highs[i], element);
+            }
+        }
+
+        if (quantization == VectorQuantization.INT8_GLOBAL) {
+            float low = Float.POSITIVE_INFINITY;
+            float high = Float.NEGATIVE_INFINITY;
+            for (int i = 0; i < dimension; i++) {
+                low = Math.min(low, lows[i]);
+                high = Math.max(high, highs[i]);
+            }
+            Arrays.fill(lows, low);
+            Arrays.fill(highs, high);
+        }
+
+        minimums = new float[dimension];
+        scales = new float[dimension];
+        for (int i = 0; i < dimension; i++) {
+            if (lows[i] <= highs[i]) {
+                minimums[i] = lows[i];
+                scales[i] = (highs[i] - lows[i]) / 255f;
+            }
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package bds.index;
+
+/**
+ * Interface for a secondary index over the values of a scalar column of a segment. The values are longs: the values
+ * of BIGINT and INTEGER columns, and the dictionary codes of VARCHAR columns, which only support equality lookups.
+ * Null values are not indexed. An index can be read while rows are added to it.
+ */
+public interface ScalarIndex {
+    /**
+     * Method to add the value of a row to the index.
+     * @param row the position of the row in its segment.
+     * @param value the value of the row.
+     */
+    void add(int row, long value);
+
+    /**
+     * Method to find the rows whose value is between two bounds.
+     * @param from the smallest value, inclusive.
+     * @param to the largest value, inclusive.
+     * @return a new bitmap holding the positions of the rows.
+     */
+    CompressedBitmap find(long from, long to);
+
+    /**
+     * Method to get the number of rows in the index.
+     * @return the number of indexed rows.
+     */
+    int size();
+
+    /**
+     * Method to estimate the number of bytes of heap used by the index.
+     * @return the estimated memory usage in bytes.
+     */
+    long getMemoryUsage();
+}
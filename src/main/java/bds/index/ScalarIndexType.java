@@ -0,0 +1,40 @@
+package bds.index;
+
+/**
+ * Kinds of secondary indexes a scalar field can be indexed with.
+ */
+public enum ScalarIndexType {
+    /**
+     * Values kept sorted in a primitive array, for range and equality predicates, see SortedIndex.
+     */
+    SORTED,
+
+    /**
+     * One compressed bitmap of rows per distinct value, for equality predicates on low cardinality fields, see
+     * BitmapIndex.
+     */
+    BITMAP;
+
+    /**
+     * Prefix of the system properties declaring the index of a field, like 'bds.scalar.index.age=sorted'.
+     */
+    public static final String PROPERTY_PREFIX = "bds.scalar.index.";
+
+    /**
+     * Method to parse an index type from a String like 'sorted' or 'bitmap'.
+     * @param value the String to parse.
+     * @param defaultValue the value returned when value is null or unknown.
+     * @return the parsed ScalarIndexType.
+     */
+    public static ScalarIndexType fromString(String value, ScalarIndexType defaultValue) {
+        if (value == null) return defaultValue;
+
+        String name = value.trim();
+        for (ScalarIndexType type : values()) {
+            if (type.name().equalsIgnoreCase(name)) {
+                return type;
+            }
+        }
+        return defaultValue;
+    }
+}
@@ -0,0 +1,40 @@
+package bds.index;
+
+/**
+ * A single result of a vector index search, holding the id of the matching row and its similarity score.
+ */
+public class SearchResult {
+    private final Object id;
+    private final double score;
+
+    /**
+     * Argument constructor for the SearchResult class.
+     * @param id the id of the matching row.
+     * @param score the similarity score of the matching row.
+     */
+    public SearchResult(Object id, double score) {
+        this.id = id;
+        this.score = score;
+    }
+
+    /**
+     * Method to get the id of the matching row.
+     * @return the id of the matching row.
+     */
+    public Object getId() {
+        return id;
+    }
+
+    /**
+     * Method to get the similarity score of the matching row.
+     * @return the similarity score.
+     */
+    public double getScore() {
+        return score;
+    }
+
+    @Override
+    public String toString() {
+        return id + ":" + score;
+    }
+}
@@ -0,0 +1,144 @@
+package bds.index;
+
+import java.util.Arrays;
+
+/**
+ * ScalarIndex keeping the values of the indexed rows sorted in a primitive long array, next to the position of each
+ * row in an int array, so a range lookup is two binary searches followed by a copy of the rows in between. Rows
+ * added since the last lookup are kept apart, and the next lookup sorts them and merges them into the arrays, so
+ * indexing the rows of a segment one by one costs one sort instead of one insertion per row.
+ */
+public class SortedIndex implements ScalarIndex {
+    private long[] values = new long[0];
+    private int[] rows = new int[0];
+    private long[] pendingValues = new long[16];
+    private int[] pendingRows = new int[16];
+    private int pendingSize;
+
+    @Override
+    public synchronized void add(int row, long value) {
+        if (pendingSize == pendingValues.length) {
+            pendingValues = Arrays.copyOf(pendingValues, pendingSize * 2);
+            pendingRows = Arrays.copyOf(pendingRows, pendingSize * 2);
+        }
+        pendingValues[pendingSize] = value;
+        pendingRows[pendingSize] = row;
+        pendingSize++;
+    }
+
+    @Override
+    public synchronized CompressedBitmap find(long from, long to) {
+        merge();
+        if (from > to) return new CompressedBitmap();
+
+        int start = lowerBound(from);
+        int end = to == Long.MAX_VALUE ? values.length : lowerBound(to + 1);
+        return CompressedBitmap.of(Arrays.copyOfRange(rows, start, end));
+    }
+
+    @Override
+    public synchronized int size() {
+        return values.length + pendingSize;
+    }
+
+    @Override
+    public synchronized long getMemoryUsage() {
+        return 12L * (values.length + pendingValues.length);
+    }
+
+    /**
+     * Method to find the position of the first value that is not smaller than a value.
+     */
+    private int lowerBound(long value) {
+        int low = 0;
+        int high = values.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (values[mid] < value) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Method to sort the pending rows and merge them into the sorted arrays.
+     */
+    private void merge() {
+        if (pendingSize == 0) return;
+
+        sort(pendingValues, pendingRows, 0, pendingSize - 1);
+        long[] mergedValues = new long[values.length + pendingSize];
+        int[] mergedRows = new int[mergedValues.length];
+        int i = 0;
+        int j = 0;
+        for (int k = 0; k < mergedValues.length; k++) {
+            if (j == pendingSize || (i < values.length && values[i] <= pendingValues[j])) {
+                mergedValues[k] = values[i];
+                mergedRows[k] = rows[i++];
+            } else {
+                mergedValues[k] = pendingValues[j];
+                mergedRows[k] = pendingRows[j++];
+            }
+        }
+        values = mergedValues;
+        rows = mergedRows;
+        pendingValues = new long[16];
+        pendingRows = new int[16];
+        pendingSize = 0;
+    }
+
+    /**
+     * Method to sort values from position low to position high, inclusive, moving the rows along with them. This is
+     * a quicksort with a median of three pivot that recurses into the smaller part, so the stack stays shallow.
+     */
+    private static void sort(long[] values, int[] rows, int low, int high) {
+        while (high - low > 16) {
+            int mid = (low + high) >>> 1;
+            if (values[mid] < values[low]) swap(values, rows, mid, low);
+            if (values[high] < values[low]) swap(values, rows, high, low);
+            if (values[high] < values[mid]) swap(values, rows, high, mid);
+            long pivot = values[mid];
+
+            int i = low;
+            int j = high;
+            while (i <= j) {
+                while (values[i] < pivot) i++;
+                while (values[j] > pivot) j--;
+                if (i <= j) {
+                    swap(values, rows, i++, j--);
+                }
+            }
+            if (j - low < high - i) {
+                sort(values, rows, low, j);
+                low = i;
+            } else {
+                sort(values, rows, i, high);
+                high = j;
+            }
+        }
+        for (int i = low + 1; i <= high; i++) {
+            long value = values[i];
+            int row = rows[i];
+            int j = i - 1;
+            while (j >= low && values[j] > value) {
+                values[j + 1] = values[j];
+                rows[j + 1] = rows[j];
+                j--;
+            }
+            values[j + 1] = value;
+            rows[j + 1] = row;
+        }
+    }
+
+    private static void swap(long[] values, int[] rows, int i, int j) {
+        long value = values[i];
+        values[i] = values[j];
+        values[j] = value;
+        int row = rows[i];
+        rows[i] = rows[j];
+        rows[j] = row;
+    }
+}
@@ -0,0 +1,263 @@
+package bds.index;
+
+import bds.vectors.DistanceKernels;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Builder of Vamana graphs, the single layer proximity graphs of DiskANN. Every node starts with random neighbors,
+ * and then, in a random order, each node is searched for greedily and gets the nodes visited by the search as its
+ * new neighbors, pruned with the robust prune rule: a candidate is dropped when a neighbor already chosen is alpha
+ * times closer to it than the node is. An alpha above 1 keeps some long edges, so searches reach far away parts of
+ * the graph in few hops, which keeps the number of nodes read from disk small. Like in DiskANN, the graph is built in
+ * two passes, the first with an alpha of 1.
+ * Instead of the single medoid of DiskANN, searches start from the nodes closest to the centroids of a mini-batch
+ * k-means clustering: pruning drops the edges between well separated clusters of vectors, which would leave the
+ * clusters far from the medoid unreachable.
+ * Distances are squared euclidean distances of the prepared vectors, so for the cosine metric the closest vectors
+ * are the most similar ones.
+ */
+final class VamanaGraph {
+    private static final int ENTRY_ITERATIONS = 20;
+    private static final int ENTRY_BATCH_SIZE = 1024;
+
+    private final float[][] vectors;
+    private final int degree;
+    private final int listSize;
+    private final DistanceKernels kernels = DistanceKernels.getInstance();
+
+    private final int[][] neighbors;
+    private final int[] degrees;
+    private final int[] seen;
+    private int epoch;
+    private int[] entryPoints;
+
+    private VamanaGraph(float[][] vectors, int degree, int listSize) {
+        this.vectors = vectors;
+        this.degree = degree;
+        this.listSize = Math.max(listSize, degree);
+        this.neighbors = new int[vectors.length][degree];
+        this.degrees = new int[vectors.length];
+        this.seen = new int[vectors.length];
+    }
+
+    /**
+     * Method to build the graph of a set of vectors.
+     * @param vectors the prepared vectors, all of the same dimension.
+     * @param degree the maximum number of neighbors of a node, R.
+     * @param listSize the size of the candidate list of the searches during the build, L.
+     * @param alpha the pruning factor of the second pass, usually 1.2.
+     * @param entryCount the number of entry points, at least 1.
+     * @param random the source of randomness for the clustering, the initial graph and the order of the nodes.
+     * @return the built graph.
+     */
+    static VamanaGraph build(float[][] vectors, int degree, int listSize, float alpha, int entryCount,
+                             Random random) {
+        VamanaGraph graph = new VamanaGraph(vectors, degree, listSize);
+        graph.entryPoints = graph.findEntryPoints(Math.max(1, Math.min(entryCount, vectors.length)), random);
+        graph.initialize(random);
+        graph.refine(1f, random);
+        graph.refine(alpha, random);
+        return graph;
+    }
+
+    /**
+     * Method to get the nodes where searches start.
+     * @return the entry points.
+     */
+    int[] getEntryPoints() {
+        return entryPoints.clone();
+    }
+
+    /**
+     * Method to get the neighbors of a node.
+     * @param node the node.
+     * @return a new array holding the neighbors.
+     */
+    int[] getNeighbors(int node) {
+        return Arrays.copyOf(neighbors[node], degrees[node]);
+    }
+
+    /**
+     * Method to cluster the vectors and pick the distinct nodes closest to the centroids.
+     */
+    private int[] findEntryPoints(int count, Random random) {
+        float[][] centroids = KMeans.trainMiniBatch(node -> vectors[node], vectors.length, count, ENTRY_ITERATIONS,
+                ENTRY_BATCH_SIZE, random);
+        int[] nodes = new int[count];
+        float[] distances = new float[count];
+        Arrays.fill(nodes, -1);
+        Arrays.fill(distances, Float.POSITIVE_INFINITY);
+        for (int node = 0; node < vectors.length; node++) {
+            int centroid = KMeans.nearest(centroids, vectors[node], kernels);
+            float distance = kernels.squaredL2(centroids[centroid], vectors[node]);
+            if (distance < distances[centroid]) {
+                distances[centroid] = distance;
+                nodes[centroid] = node;
+            }
+        }
+        return Arrays.stream(nodes).filter(node -> node >= 0).distinct().toArray();
+    }
+
+    /**
+     * Method to give every node up to degree random neighbors.
+     */
+    private void initialize(Random random) {
+        int count = vectors.length;
+        int initialDegree = Math.min(degree, count - 1);
+        for (int node = 0; node < count; node++) {
+            epoch++;
+            seen[node] = epoch;
+            while (degrees[node] < initialDegree) {
+                int neighbor = random.nextInt(count);
+                if (seen[neighbor] != epoch) {
+                    seen[neighbor] = epoch;
+                    neighbors[node][degrees[node]++] = neighbor;
+                }
+            }
+        }
+    }
+
+    /**
+     * Method to run one pass over all nodes in a random order, replacing the neighbors of each node with the pruned
+     * nodes visited by a search for it, and adding the node to the neighbors of its new neighbors.
+     */
+    private void refine(float alpha, Random random) {
+        int count = vectors.length;
+        int[] order = new int[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+        }
+        for (int i = count - 1; i > 0; i--) {
+            int swap = random.nextInt(i + 1);
+            int node = order[swap];
+            order[swap] = order[i];
+            order[i] = node;
+        }
+
+        float squaredAlpha = alpha * alpha;
+        for (int node : order) {
+            List<Integer> candidates = search(vectors[node]);
+            for (int i = 0; i < degrees[node]; i++) {
+                candidates.add(neighbors[node][i]);
+            }
+            prune(node, candidates, squaredAlpha);
+
+            for (int i = 0; i < degrees[node]; i++) {
+                int neighbor = neighbors[node][i];
+                if (contains(neighbor, node)) continue;
+
+                if (degrees[neighbor] < degree) {
+                    neighbors[neighbor][degrees[neighbor]++] = node;
+                } else {
+                    List<Integer> neighborCandidates = new ArrayList<>(degree + 1);
+                    for (int j = 0; j < degrees[neighbor]; j++) {
+                        neighborCandidates.add(neighbors[neighbor][j]);
+                    }
+                    neighborCandidates.add(node);
+                    prune(neighbor, neighborCandidates, squaredAlpha);
+                }
+            }
+        }
+    }
+
+    private boolean contains(int node, int neighbor) {
+        for (int i = 0; i < degrees[node]; i++) {
+            if (neighbors[node][i] == neighbor) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Method to search greedily for a vector from the entry points, keeping the listSize closest nodes found.
+     * @return the nodes that were expanded by the search.
+     */
+    private List<Integer> search(float[] query) {
+        epoch++;
+        int[] nodes = new int[listSize];
+        float[] distances = new float[listSize];
+        boolean[] expanded = new boolean[listSize];
+        int size = 0;
+        for (int entryPoint : entryPoints) {
+            seen[entryPoint] = epoch;
+            size = insert(nodes, distances, expanded, size, entryPoint, kernels.squaredL2(vectors[entryPoint], query));
+        }
+
+        List<Integer> visited = new ArrayList<>();
+        int next = 0;
+        while (next < size) {
+            int node = nodes[next];
+            expanded[next] = true;
+            visited.add(node);
+
+            for (int i = 0; i < degrees[node]; i++) {
+                int neighbor = neighbors[node][i];
+                if (seen[neighbor] == epoch) continue;
+
+                seen[neighbor] = epoch;
+                size = insert(nodes, distances, expanded, size, neighbor, kernels.squaredL2(vectors[neighbor], query));
+            }
+
+            next = 0;
+            while (next < size && expanded[next]) {
+                next++;
+            }
+        }
+        return visited;
+    }
+
+    /**
+     * Method to insert a node into the sorted candidate list, unless the list is full of closer nodes.
+     * @return the new size of the list.
+     */
+    private int insert(int[] nodes, float[] distances, boolean[] expanded, int size, int node, float distance) {
+        if (size == nodes.length && distance >= distances[size - 1]) return size;
+
+        int position = size < nodes.length ? size++ : size - 1;
+        while (position > 0 && distances[position - 1] > distance) {
+            nodes[position] = nodes[position - 1];
+            distances[position] = distances[position - 1];
+            expanded[position] = expanded[position - 1];
+            position--;
+        }
+        nodes[position] = node;
+        distances[position] = distance;
+        expanded[position] = false;
+        return size;
+    }
+
+    /**
+     * Method to choose the new neighbors of a node among candidates with the robust prune rule.
+     */
+    private void prune(int node, List<Integer> candidates, float squaredAlpha) {
+        float[] vector = vectors[node];
+        int[] sorted = candidates.stream().mapToInt(Integer::intValue).filter(candidate -> candidate != node)
+                .distinct().toArray();
+        float[] distances = new float[sorted.length];
+        Integer[] order = new Integer[sorted.length];
+        for (int i = 0; i < sorted.length; i++) {
+            distances[i] = kernels.squaredL2(vectors[sorted[i]], vector);
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Float.compare(distances[a], distances[b]));
+
+        boolean[] removed = new boolean[sorted.length];
+        int count = 0;
+        for (int i = 0; i < order.length && count < degree; i++) {
+            if (removed[order[i]]) continue;
+
+            int chosen = sorted[order[i]];
+            neighbors[node][count++] = chosen;
+            for (int j = i + 1; j < order.length; j++) {
+                int other = order[j];
+                if (!removed[other]) {
+                    float distance = kernels.squaredL2(vectors[chosen], vectors[sorted[other]]);
+                    removed[other] = squaredAlpha * distance <= distances[other];
+                }
+            }
+        }
+        degrees[node] = count;
+    }
+}
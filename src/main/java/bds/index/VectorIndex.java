@@ -0,0 +1,75 @@
+package bds.index;
+
+import bds.vectors.DenseVector;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * Interface for an index over the vectors of a table's vector column.
+ */
+public interface VectorIndex {
+    /**
+     * Method to add a vector to the index.
+     * @param id the id of the row the vector belongs to.
+     * @param vector the vector to add.
+     */
+    void add(Object id, DenseVector vector);
+
+    /**
+     * Method to find the k vectors that are most similar to the query vector.
+     * @param query the query vector.
+     * @param k the number of results to return.
+     * @return up to k results, ordered from the most to the least similar.
+     */
+    List<SearchResult> search(DenseVector query, int k);
+
+    /**
+     * Method to find the k vectors that are most similar to the query vector, trading speed for recall with an
+     * index specific effort: efSearch for an HnswIndex, the oversampling factor for a QuantizedIndex, the re-rank
+     * factor for a PqIndex, nprobe for an IvfIndex and the search list size for a DiskGraphIndex. By default, the
+     * effort is ignored.
+     * @param query the query vector.
+     * @param k the number of results to return.
+     * @param effort how hard the index searches, or 0 to use the default of the index.
+     * @return up to k results, ordered from the most to the least similar.
+     */
+    default List<SearchResult> search(DenseVector query, int k, int effort) {
+        return search(query, k);
+    }
+
+    /**
+     * Method to find the k vectors that are most similar to the query vector among the vectors whose ids pass a
+     * filter. Indexes apply the filter while they search, so rejected vectors only guide the search and never take
+     * the place of a result. By default, the index is searched for more and more results until k of them pass the
+     * filter, or the whole index was returned.
+     * @param query the query vector.
+     * @param k the number of results to return.
+     * @param effort how hard the index searches, or 0 to use the default of the index.
+     * @param filter accepts the ids of the vectors that can be returned, or null to accept every vector.
+     * @return up to k results that pass the filter, ordered from the most to the least similar.
+     */
+    default List<SearchResult> search(DenseVector query, int k, int effort, Predicate<Object> filter) {
+        if (filter == null) return search(query, k, effort);
+
+        List<SearchResult> accepted = new ArrayList<>();
+        for (int count = k; ; count *= 2) {
+            List<SearchResult> found = search(query, count, effort);
+            accepted.clear();
+            for (SearchResult result : found) {
+                if (filter.test(result.getId()) && accepted.size() < k) {
+                    accepted.add(result);
+                }
+            }
+            if (accepted.size() >= k || found.size() < count || count >= size()) {
+                return accepted;
+            }
+        }
+    }
+
+    /**
+     * Method to get the number of vectors stored in the index.
+     * @return the number of vectors.
+     */
+    int size();
+}
@@ -0,0 +1,51 @@
+package bds.index;
+
+/**
+ * Kinds of vector indexes a vector field can be searched with.
+ */
+public enum VectorIndexType {
+    /**
+     * Hierarchical navigable small world graph over the full precision vectors, see HnswIndex.
+     */
+    HNSW,
+
+    /**
+     * Scan of int8 or binary codes of the vectors, see QuantizedIndex.
+     */
+    QUANTIZED,
+
+    /**
+     * Scan of product quantization codes of the vectors, see PqIndex.
+     */
+    PQ,
+
+    /**
+     * Inverted lists of the full precision vectors, clustered with k-means, see IvfIndex.
+     */
+    IVF,
+
+    /**
+     * Vamana graph over the full precision vectors in a graph file, navigated with PQ codes, see DiskGraphIndex.
+     */
+    DISKANN;
+
+    public static final String PROPERTY = "bds.vector.index";
+
+    /**
+     * Method to parse an index type from a String like 'hnsw', 'pq', 'ivf' or 'diskann'.
+     * @param value the String to parse.
+     * @param defaultValue the value returned when value is null or unknown.
+     * @return the parsed VectorIndexType.
+     */
+    public static VectorIndexType fromString(String value, VectorIndexType defaultValue) {
+        if (value == null) return defaultValue;
+
+        String name = value.trim();
+        for (VectorIndexType type : values()) {
+            if (type.name().equalsIgnoreCase(name)) {
+                return type;
+            }
+        }
+        return defaultValue;
+    }
+}
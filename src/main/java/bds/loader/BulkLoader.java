@@ -0,0 +1,268 @@
+package bds.loader;
+
+import bds.common.Logger;
+import bds.storage.LogRecord;
+import org.apache.calcite.sql.type.SqlTypeName;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+/**
+ * Streaming loader for large CSV, JSON Lines and .fvecs files, see FileFormat. The calling thread reads the file in
+ * chunks of 'bds.load.chunkBytes' bytes (4 MiB by default) that end at a record boundary, and parser threads
+ * ('bds.load.parallelism', the number of processors by default) turn the chunks into records in parallel. The records
+ * are passed to the sink in file order, in batches of 'bds.load.batchRows' records (8192 by default), so a key that
+ * appears twice keeps its last row like with INSERT. At most two chunks per parser thread are in flight, so memory
+ * stays bounded however large the file is, and reading, parsing and writing overlap.
+ */
+public class BulkLoader {
+    public static final String PARALLELISM_PROPERTY = "bds.load.parallelism";
+    public static final String CHUNK_BYTES_PROPERTY = "bds.load.chunkBytes";
+    public static final String BATCH_ROWS_PROPERTY = "bds.load.batchRows";
+
+    private static final int DEFAULT_CHUNK_BYTES = 4 << 20;
+    private static final int DEFAULT_BATCH_ROWS = 8192;
+    private static final long PROGRESS_INTERVAL_NANOS = 5_000_000_000L;
+    private static final Logger logger = Logger.getInstance();
+
+    private final List<String> fieldNames;
+    private final List<SqlTypeName> fieldTypes;
+    private final int parallelism;
+    private final int chunkBytes;
+    private final int batchRows;
+
+    /**
+     * Interface for a listener that is told how far a load got.
+     */
+    public interface ProgressListener {
+        /**
+         * Method called after each chunk is passed to the sink, and once more when the load is complete.
+         * @param rows the number of rows passed to the sink so far.
+         * @param bytes the number of bytes of the file these rows were read from.
+         * @param totalBytes the size of the file.
+         */
+        void progress(long rows, long bytes, long totalBytes);
+    }
+
+    /**
+     * Argument constructor for the BulkLoader class, configured with the 'bds.load.*' system properties.
+     * @param fieldNames the names of the fields of the table, the first field is the key.
+     * @param fieldTypes the types of the fields of the table.
+     */
+    public BulkLoader(List<String> fieldNames, List<SqlTypeName> fieldTypes) {
+        this(fieldNames, fieldTypes,
+                Integer.getInteger(PARALLELISM_PROPERTY, Runtime.getRuntime().availableProcessors()),
+                Integer.getInteger(CHUNK_BYTES_PROPERTY, DEFAULT_CHUNK_BYTES),
+                Integer.getInteger(BATCH_ROWS_PROPERTY, DEFAULT_BATCH_ROWS));
+    }
+
+    /**
+     * Argument constructor for the BulkLoader class.
+     * @param fieldNames the names of the fields of the table, the first field is the key.
+     * @param fieldTypes the types of the fields of the table.
+     * @param parallelism the number of parser threads.
+     * @param chunkBytes the number of bytes read per chunk.
+     * @param batchRows the number of records passed to the sink at once.
+     */
+    public BulkLoader(List<String> fieldNames, List<SqlTypeName> fieldTypes, int parallelism, int chunkBytes,
+                      int batchRows) {
+        this.fieldNames = fieldNames;
+        this.fieldTypes = fieldTypes;
+        this.parallelism = Math.max(1, parallelism);
+        this.chunkBytes = Math.max(4096, chunkBytes);
+        this.batchRows = Math.max(1, batchRows);
+    }
+
+    /**
+     * Method to load a file, logging the progress every few seconds when debug logging is enabled.
+     * @param path the file to load, its format is chosen by its extension, see FileFormat.fromPath.
+     * @param sink receives the rows as batches of upserts, in file order, on the calling thread.
+     * @return the number of rows loaded.
+     * @throws IOException if the file cannot be read or holds an invalid record; the rows of the batches passed
+     *                     to the sink before stay loaded.
+     */
+    public long load(Path path, Consumer<List<LogRecord>> sink) throws IOException {
+        return load(path, sink, null);
+    }
+
+    /**
+     * Method to load a file.
+     * @param path the file to load, its format is chosen by its extension, see FileFormat.fromPath.
+     * @param sink receives the rows as batches of upserts, in file order, on the calling thread.
+     * @param listener told about the progress of the load, or null to log it every few seconds.
+     * @return the number of rows loaded.
+     * @throws IOException if the file cannot be read or holds an invalid record; the rows of the batches passed
+     *                     to the sink before stay loaded.
+     */
+    public long load(Path path, Consumer<List<LogRecord>> sink, ProgressListener listener) throws IOException {
+        RecordParser parser = FileFormat.fromPath(path).createParser(fieldNames, fieldTypes);
+        long startTime = System.nanoTime();
+        ProgressListener progress = listener != null ? listener : new ProgressLog(path, startTime);
+
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism, task -> {
+            Thread thread = new Thread(task, "bds-load");
+            thread.setDaemon(true);
+            return thread;
+        });
+        Deque<Chunk> pending = new ArrayDeque<>();
+        long rows = 0;
+        long totalBytes;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            totalBytes = channel.size();
+            byte[] buffer = new byte[chunkBytes];
+            int length = 0;
+            long offset = 0;
+            boolean endOfFile = false;
+            boolean header = true;
+            while (true) {
+                while (length < buffer.length && !endOfFile) {
+                    int read = channel.read(ByteBuffer.wrap(buffer, length, buffer.length - length));
+                    if (read < 0) {
+                        endOfFile = true;
+                    } else {
+                        length += read;
+                    }
+                }
+
+                if (header) {
+                    int headerBytes = parser.readHeader(buffer, length, endOfFile);
+                    if (headerBytes < 0) {
+                        buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                        continue;
+                    }
+                    System.arraycopy(buffer, headerBytes, buffer, 0, length - headerBytes);
+                    length -= headerBytes;
+                    offset += headerBytes;
+                    header = false;
+                }
+
+                int end = parser.findEnd(buffer, length, endOfFile);
+                if (end == 0) {
+                    if (!endOfFile) {
+                        // a single record is larger than the buffer
+                        buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                        continue;
+                    }
+                    if (length > 0) {
+                        throw new IOException("incomplete record at the end of " + path + ", byte " + offset);
+                    }
+                    break;
+                }
+
+                byte[] chunk = buffer;
+                int chunkLength = end;
+                long chunkOffset = offset;
+                pending.add(new Chunk(executor.submit(() -> {
+                    List<LogRecord> records = new ArrayList<>();
+                    parser.parse(chunk, chunkLength, chunkOffset, records);
+                    return records;
+                }), chunkOffset + chunkLength));
+
+                buffer = new byte[Math.max(chunkBytes, length - end)];
+                System.arraycopy(chunk, end, buffer, 0, length - end);
+                length -= end;
+                offset += end;
+
+                while (pending.size() >= 2 * parallelism) {
+                    rows = deliver(pending.poll(), path, sink, rows, totalBytes, progress);
+                }
+            }
+            while (!pending.isEmpty()) {
+                rows = deliver(pending.poll(), path, sink, rows, totalBytes, progress);
+            }
+        }
+        finally {
+            for (Chunk chunk : pending) {
+                chunk.records.cancel(true);
+            }
+            executor.shutdownNow();
+        }
+
+        if (listener != null) {
+            listener.progress(rows, totalBytes, totalBytes);
+        }
+        double seconds = (System.nanoTime() - startTime) / 1e9;
+        logger.debug(String.format("loaded %d rows from %s in %.1f s, %.0f rows/s", rows, path, seconds,
+                rows / Math.max(seconds, 1e-9)), "BulkLoader");
+        return rows;
+    }
+
+    /**
+     * Method to wait for the records of a chunk and pass them to the sink in batches.
+     * @return the number of rows loaded, including the rows of the chunk.
+     */
+    private long deliver(Chunk chunk, Path path, Consumer<List<LogRecord>> sink, long rows, long totalBytes,
+                         ProgressListener progress) throws IOException {
+        List<LogRecord> records;
+        try {
+            records = chunk.records.get();
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while loading " + path, ex);
+        }
+        catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            throw new IOException("could not load " + path + ": " + cause.getMessage(), cause);
+        }
+
+        for (int from = 0; from < records.size(); from += batchRows) {
+            sink.accept(new ArrayList<>(records.subList(from, Math.min(records.size(), from + batchRows))));
+        }
+        rows += records.size();
+        progress.progress(rows, chunk.end, totalBytes);
+        return rows;
+    }
+
+    /**
+     * A chunk being parsed, with the position in the file after its last record.
+     */
+    private static class Chunk {
+        private final Future<List<LogRecord>> records;
+        private final long end;
+
+        private Chunk(Future<List<LogRecord>> records, long end) {
+            this.records = records;
+            this.end = end;
+        }
+    }
+
+    /**
+     * The ProgressListener used when the caller passes none, which logs the progress every few seconds.
+     */
+    private static class ProgressLog implements ProgressListener {
+        private final Path path;
+        private final long startTime;
+        private long lastLog;
+
+        private ProgressLog(Path path, long startTime) {
+            this.path = path;
+            this.startTime = startTime;
+            this.lastLog = startTime;
+        }
+
+        @Override
+        public void progress(long rows, long bytes, long totalBytes) {
+            long now = System.nanoTime();
+            if (now - lastLog < PROGRESS_INTERVAL_NANOS) return;
+
+            lastLog = now;
+            double seconds = (now - startTime) / 1e9;
+            logger.debug(String.format("loading %s: %d rows, %d of %d MiB (%.0f%%), %.0f rows/s", path, rows,
+                    bytes >> 20, totalBytes >> 20, 100.0 * bytes / Math.max(totalBytes, 1), rows / seconds),
+                    "BulkLoader");
+        }
+    }
+}
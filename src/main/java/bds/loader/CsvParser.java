@@ -0,0 +1,202 @@
+package bds.loader;
+
+import bds.storage.LogRecord;
+import org.apache.calcite.sql.type.SqlTypeName;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Parser for comma separated values in UTF-8. The first line names the fields of the columns, compared ignoring
+ * case; columns that are not fields of the table are skipped, and fields without a column are null. Values can be
+ * enclosed in double quotes, with doubled quotes inside, and may then span lines. An empty unquoted value is null.
+ * Vectors are written like '[1.5,2,3]': commas inside square brackets do not separate values, so vectors need no
+ * quotes.
+ */
+class CsvParser extends RecordParser {
+    private int[] columnFields;
+
+    /**
+     * Argument constructor for the CsvParser class.
+     * @param fieldNames the names of the fields of the table.
+     * @param fieldTypes the types of the fields of the table.
+     */
+    CsvParser(List<String> fieldNames, List<SqlTypeName> fieldTypes) {
+        super(fieldNames, fieldTypes);
+    }
+
+    @Override
+    int readHeader(byte[] buffer, int length, boolean endOfFile) throws IOException {
+        int start = length >= 3 && buffer[0] == (byte) 0xEF && buffer[1] == (byte) 0xBB && buffer[2] == (byte) 0xBF
+                ? 3 : 0;
+        int end = findLineEnd(buffer, start, length);
+        if (end < 0) {
+            if (!endOfFile) return -1;
+            end = length;
+        }
+
+        String header = new String(buffer, start, end - start, StandardCharsets.UTF_8);
+        List<String> columns = new ArrayList<>();
+        int position = 0;
+        while (position <= header.length()) {
+            int[] bounds = new int[2];
+            StringBuilder unquoted = new StringBuilder();
+            position = readValue(header, position, bounds, unquoted);
+            columns.add((unquoted.length() > 0 ? unquoted.toString() : header.substring(bounds[0], bounds[1])).trim());
+            if (position >= header.length() || header.charAt(position) != ',') break;
+            position++;
+        }
+
+        columnFields = new int[columns.size()];
+        boolean hasKey = false;
+        for (int i = 0; i < columnFields.length; i++) {
+            columnFields[i] = -1;
+            for (int field = 0; field < fieldNames.size(); field++) {
+                if (fieldNames.get(field).equalsIgnoreCase(columns.get(i))) {
+                    columnFields[i] = field;
+                    hasKey |= field == 0;
+                }
+            }
+        }
+        if (!hasKey) {
+            throw new IOException("the CSV header has no column for the key field " + fieldNames.get(0));
+        }
+        return Math.min(length, end + 1);
+    }
+
+    @Override
+    int findEnd(byte[] buffer, int length, boolean endOfFile) {
+        if (endOfFile) return length;
+
+        boolean quoted = false;
+        int end = 0;
+        for (int i = 0; i < length; i++) {
+            byte b = buffer[i];
+            if (b == '"') {
+                quoted = !quoted;
+            } else if (b == '\n' && !quoted) {
+                end = i + 1;
+            }
+        }
+        return end;
+    }
+
+    @Override
+    void parse(byte[] buffer, int length, long offset, List<LogRecord> records) throws IOException {
+        String text = new String(buffer, 0, length, StandardCharsets.UTF_8);
+        int[] bounds = new int[2];
+        StringBuilder unquoted = new StringBuilder();
+        int position = 0;
+        int line = 0;
+        while (position < text.length()) {
+            line++;
+            if (text.charAt(position) == '\n' || text.charAt(position) == '\r') {
+                position++;
+                continue;
+            }
+
+            Object[] values = new Object[fieldNames.size()];
+            int column = 0;
+            try {
+                while (true) {
+                    unquoted.setLength(0);
+                    boolean quoted = position < text.length() && text.charAt(position) == '"';
+                    position = readValue(text, position, bounds, unquoted);
+                    int field = column < columnFields.length ? columnFields[column] : -1;
+                    if (field >= 0 && (quoted || bounds[1] > bounds[0])) {
+                        values[field] = unquoted.length() > 0
+                                ? convert(unquoted.toString(), 0, unquoted.length(), fieldTypes.get(field))
+                                : convert(text, bounds[0], bounds[1], fieldTypes.get(field));
+                    }
+                    column++;
+                    if (position >= text.length() || text.charAt(position) != ',') break;
+                    position++;
+                }
+            }
+            catch (IllegalArgumentException ex) {
+                throw new IOException("invalid value in column " + (column + 1) + " of record " + line
+                        + " of the chunk at byte " + offset + ": " + ex.getMessage(), ex);
+            }
+            if (values[0] == null) {
+                throw new IOException("record " + line + " of the chunk at byte " + offset + " has no key");
+            }
+            records.add(LogRecord.upsert(values));
+            while (position < text.length() && text.charAt(position) != '\n') {
+                position++;
+            }
+            position++;
+        }
+    }
+
+    /**
+     * Method to read one value of a record. An unquoted value is returned as its bounds in text; a quoted value is
+     * returned as its bounds when it holds no doubled quotes, and is copied to unquoted otherwise.
+     * @return the position after the value, at the ',' or line break that ends it.
+     */
+    private static int readValue(String text, int position, int[] bounds, StringBuilder unquoted) {
+        int length = text.length();
+        if (position < length && text.charAt(position) == '"') {
+            int start = position + 1;
+            int i = start;
+            while (i < length) {
+                char c = text.charAt(i);
+                if (c == '"') {
+                    if (i + 1 < length && text.charAt(i + 1) == '"') {
+                        if (unquoted.length() == 0) {
+                            unquoted.append(text, start, i);
+                        }
+                        unquoted.append('"');
+                        i += 2;
+                        continue;
+                    }
+                    break;
+                }
+                if (unquoted.length() > 0) {
+                    unquoted.append(c);
+                }
+                i++;
+            }
+            bounds[0] = start;
+            bounds[1] = i;
+            i++;
+            while (i < length && text.charAt(i) != ',' && text.charAt(i) != '\n') {
+                i++;
+            }
+            return i;
+        }
+
+        int depth = 0;
+        int i = position;
+        while (i < length) {
+            char c = text.charAt(i);
+            if (c == '[') {
+                depth++;
+            } else if (c == ']') {
+                depth--;
+            } else if (c == '\n' || c == ',' && depth <= 0) {
+                break;
+            }
+            i++;
+        }
+        bounds[0] = position;
+        bounds[1] = i > position && text.charAt(i - 1) == '\r' ? i - 1 : i;
+        return i;
+    }
+
+    /**
+     * Method to find the first line break that is not inside quotes.
+     * @return the position of the line break, or -1 if there is none.
+     */
+    private static int findLineEnd(byte[] buffer, int from, int length) {
+        boolean quoted = false;
+        for (int i = from; i < length; i++) {
+            if (buffer[i] == '"') {
+                quoted = !quoted;
+            } else if (buffer[i] == '\n' && !quoted) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
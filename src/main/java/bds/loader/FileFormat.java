@@ -0,0 +1,48 @@
+package bds.loader;
+
+import org.apache.calcite.sql.type.SqlTypeName;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * The file formats the BulkLoader reads, chosen by the extension of the file.
+ */
+public enum FileFormat {
+    /** Comma separated values with a header line naming the fields, see CsvParser. */
+    CSV,
+    /** One JSON object per line, with a member per field, see JsonLinesParser. */
+    JSON_LINES,
+    /** Raw float32 vectors, each preceded by its dimension, see FvecsParser. */
+    FVECS;
+
+    /**
+     * Method to get the format of a file from its extension: '.csv', '.jsonl', '.ndjson' or '.fvecs'.
+     * @param path the path of the file.
+     * @return the FileFormat of the file.
+     * @throws IllegalArgumentException if the extension is not known.
+     */
+    public static FileFormat fromPath(Path path) {
+        String name = path.getFileName().toString().toLowerCase(Locale.ROOT);
+        if (name.endsWith(".csv")) return CSV;
+        if (name.endsWith(".jsonl") || name.endsWith(".ndjson")) return JSON_LINES;
+        if (name.endsWith(".fvecs")) return FVECS;
+
+        throw new IllegalArgumentException("unknown file format of " + path
+                + ", expected a .csv, .jsonl, .ndjson or .fvecs file");
+    }
+
+    /**
+     * Method to create a parser for files of this format.
+     */
+    RecordParser createParser(List<String> fieldNames, List<SqlTypeName> fieldTypes) {
+        switch (this) {
+            case CSV:
+                return new CsvParser(fieldNames, fieldTypes);
+            case JSON_LINES:
+                return new JsonLinesParser(fieldNames, fieldTypes);
+            default:
+                return new FvecsParser(fieldNames, fieldTypes);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package bds.loader;
+
+import bds.storage.LogRecord;
+import org.apache.calcite.sql.type.SqlTypeName;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.List;
+
+/**
+ * Parser for .fvecs files, as used by the common vector search benchmarks: each vector is stored as its dimension
+ * (int32) followed by its elements (float32), all little-endian, and all vectors have the same dimension. The file
+ * holds no ids, so the key of each row is the position of the vector in the file, starting at 0. The table needs a
+ * BIGINT or INTEGER key field; the vectors go to its first vector field, and the other fields are null.
+ */
+class FvecsParser extends RecordParser {
+    private static final int MAX_DIMENSION = 1 << 16;
+
+    private final int vectorField;
+    private int dimension;
+    private int recordBytes;
+
+    /**
+     * Argument constructor for the FvecsParser class.
+     * @param fieldNames the names of the fields of the table.
+     * @param fieldTypes the types of the fields of the table.
+     */
+    FvecsParser(List<String> fieldNames, List<SqlTypeName> fieldTypes) {
+        super(fieldNames, fieldTypes);
+        SqlTypeName keyType = fieldTypes.get(0);
+        int field = fieldTypes.indexOf(SqlTypeName.OTHER);
+        if (keyType != SqlTypeName.BIGINT && keyType != SqlTypeName.INTEGER || field < 0) {
+            throw new IllegalArgumentException("loading an .fvecs file needs a BIGINT or INTEGER key field and a "
+                    + "vector field");
+        }
+        this.vectorField = field;
+    }
+
+    @Override
+    int readHeader(byte[] buffer, int length, boolean endOfFile) throws IOException {
+        if (length < 4) {
+            if (!endOfFile) return -1;
+            if (length == 0) return 0;
+            throw new IOException("the .fvecs file is truncated");
+        }
+
+        dimension = ByteBuffer.wrap(buffer, 0, 4).order(ByteOrder.LITTLE_ENDIAN).getInt();
+        if (dimension <= 0 || dimension > MAX_DIMENSION) {
+            throw new IOException("the .fvecs file has an invalid dimension " + dimension);
+        }
+        recordBytes = 4 + 4 * dimension;
+        return 0;
+    }
+
+    @Override
+    int findEnd(byte[] buffer, int length, boolean endOfFile) {
+        if (recordBytes == 0) return 0;
+
+        return length - length % recordBytes;
+    }
+
+    @Override
+    void parse(byte[] buffer, int length, long offset, List<LogRecord> records) throws IOException {
+        ByteBuffer bytes = ByteBuffer.wrap(buffer, 0, length).order(ByteOrder.LITTLE_ENDIAN);
+        long ordinal = offset / recordBytes;
+        boolean intKey = fieldTypes.get(0) == SqlTypeName.INTEGER;
+        for (int position = 0; position < length; position += recordBytes, ordinal++) {
+            int recordDimension = bytes.getInt(position);
+            if (recordDimension != dimension) {
+                throw new IOException("vector " + ordinal + " of the .fvecs file has dimension " + recordDimension
+                        + " instead of " + dimension);
+            }
+            float[] elements = new float[dimension];
+            ByteBuffer view = bytes.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+            view.position(position + 4);
+            view.asFloatBuffer().get(elements);
+
+            Object[] values = new Object[fieldNames.size()];
+            values[0] = intKey ? (Object) (int) ordinal : (Object) ordinal;
+            values[vectorField] = elements;
+            records.add(LogRecord.upsert(values));
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package bds.loader;
+
+import bds.storage.LogRecord;
+import org.apache.calcite.sql.type.SqlTypeName;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Parser for JSON Lines: one JSON object per line, like {"id": 1, "name": "a", "vec": [0.5, 1.5]}. The members are
+ * matched to the fields by name, ignoring case; other members are skipped, and fields without a member are null.
+ * Vector fields take an array of numbers, or a string holding the elements. The parser only reads what a row needs,
+ * so it is much lighter than binding each line to a tree of objects.
+ */
+class JsonLinesParser extends RecordParser {
+    private final Map<String, Integer> fieldIndexes = new HashMap<>();
+
+    /**
+     * Argument constructor for the JsonLinesParser class.
+     * @param fieldNames the names of the fields of the table.
+     * @param fieldTypes the types of the fields of the table.
+     */
+    JsonLinesParser(List<String> fieldNames, List<SqlTypeName> fieldTypes) {
+        super(fieldNames, fieldTypes);
+        for (int i = 0; i < fieldNames.size(); i++) {
+            fieldIndexes.put(fieldNames.get(i).toLowerCase(Locale.ROOT), i);
+        }
+    }
+
+    @Override
+    int findEnd(byte[] buffer, int length, boolean endOfFile) {
+        if (endOfFile) return length;
+
+        for (int i = length - 1; i >= 0; i--) {
+            if (buffer[i] == '\n') {
+                return i + 1;
+            }
+        }
+        return 0;
+    }
+
+    @Override
+    void parse(byte[] buffer, int length, long offset, List<LogRecord> records) throws IOException {
+        String text = new String(buffer, 0, length, StandardCharsets.UTF_8);
+        int position = 0;
+        int line = 0;
+        while (position < text.length()) {
+            line++;
+            int end = text.indexOf('\n', position);
+            if (end < 0) {
+                end = text.length();
+            }
+            int start = skipWhitespace(text, position, end);
+            if (start < end) {
+                Object[] values = new Object[fieldNames.size()];
+                try {
+                    int next = skipWhitespace(text, parseObject(text, start, end, values), end);
+                    if (next != end) {
+                        throw new IllegalArgumentException("unexpected '" + text.charAt(next) + "' after the object");
+                    }
+                }
+                catch (IllegalArgumentException | IndexOutOfBoundsException ex) {
+                    throw new IOException("invalid JSON in line " + line + " of the chunk at byte " + offset + ": "
+                            + ex.getMessage(), ex);
+                }
+                if (values[0] == null) {
+                    throw new IOException("line " + line + " of the chunk at byte " + offset + " has no key");
+                }
+                records.add(LogRecord.upsert(values));
+            }
+            position = end + 1;
+        }
+    }
+
+    /**
+     * Method to parse an object and store the values of its members in values.
+     * @return the position after the object.
+     */
+    private int parseObject(String text, int position, int end, Object[] values) {
+        position = expect(text, position, end, '{');
+        position = skipWhitespace(text, position, end);
+        if (text.charAt(position) == '}') return position + 1;
+
+        StringBuilder name = new StringBuilder();
+        while (true) {
+            name.setLength(0);
+            position = parseString(text, expect(text, skipWhitespace(text, position, end), end, '"') - 1, end, name);
+            position = skipWhitespace(text, expect(text, skipWhitespace(text, position, end), end, ':'), end);
+
+            Integer field = fieldIndexes.get(name.toString().toLowerCase(Locale.ROOT));
+            if (field == null) {
+                position = skipValue(text, position, end);
+            } else {
+                position = parseValue(text, position, end, fieldTypes.get(field), values, field);
+            }
+
+            position = skipWhitespace(text, position, end);
+            char c = text.charAt(position);
+            if (c == '}') return position + 1;
+            if (c != ',') {
+                throw new IllegalArgumentException("expected ',' or '}' but found '" + c + "'");
+            }
+            position++;
+        }
+    }
+
+    /**
+     * Method to parse a value and convert it to the type of a field.
+     * @return the position after the value.
+     */
+    private int parseValue(String text, int position, int end, SqlTypeName type, Object[] values, int field) {
+        char c = text.charAt(position);
+        if (c == '"') {
+            StringBuilder value = new StringBuilder();
+            int next = parseString(text, position, end, value);
+            values[field] = convert(value.toString(), 0, value.length(), type);
+            return next;
+        }
+        if (c == '[' && type == SqlTypeName.OTHER) {
+            int next = text.indexOf(']', position);
+            if (next < 0 || next > end) {
+                throw new IllegalArgumentException("unterminated array");
+            }
+            values[field] = parseVector(text, position + 1, next);
+            return next + 1;
+        }
+        if (c == 'n' && text.startsWith("null", position)) {
+            values[field] = null;
+            return position + 4;
+        }
+
+        int next = skipValue(text, position, end);
+        values[field] = convert(text, position, next, type);
+        return next;
+    }
+
+    /**
+     * Method to skip a value of any kind.
+     * @return the position after the value.
+     */
+    private static int skipValue(String text, int position, int end) {
+        char c = text.charAt(position);
+        if (c == '"') {
+            return parseString(text, position, end, null);
+        }
+        if (c == '{' || c == '[') {
+            int depth = 0;
+            for (int i = position; i < end; i++) {
+                char d = text.charAt(i);
+                if (d == '"') {
+                    i = parseString(text, i, end, null) - 1;
+                } else if (d == '{' || d == '[') {
+                    depth++;
+                } else if ((d == '}' || d == ']') && --depth == 0) {
+                    return i + 1;
+                }
+            }
+            throw new IllegalArgumentException("unterminated " + (c == '{' ? "object" : "array"));
+        }
+
+        int i = position;
+        while (i < end && ",}] \t\r".indexOf(text.charAt(i)) < 0) {
+            i++;
+        }
+        if (i == position) {
+            throw new IllegalArgumentException("expected a value but found '" + c + "'");
+        }
+        return i;
+    }
+
+    /**
+     * Method to parse a string starting at its opening quote, decoding the escapes into value if it is not null.
+     * @return the position after the closing quote.
+     */
+    private static int parseString(String text, int position, int end, StringBuilder value) {
+        for (int i = position + 1; i < end; i++) {
+            char c = text.charAt(i);
+            if (c == '"') return i + 1;
+            if (c != '\\') {
+                if (value != null) {
+                    value.append(c);
+                }
+                continue;
+            }
+
+            char escaped = text.charAt(++i);
+            if (escaped == 'u') {
+                if (value != null) {
+                    value.append((char) Integer.parseInt(text.substring(i + 1, i + 5), 16));
+                }
+                i += 4;
+            } else if (value != null) {
+                switch (escaped) {
+                    case 'n':
+                        value.append('\n');
+                        break;
+                    case 't':
+                        value.append('\t');
+                        break;
+                    case 'r':
+                        value.append('\r');
+                        break;
+                    case 'b':
+                        value.append('\b');
+                        break;
+                    case 'f':
+                        value.append('\f');
+                        break;
+                    default:
+                        value.append(escaped);
+                }
+            }
+        }
+        throw new IllegalArgumentException("unterminated string");
+    }
+
+    private static int expect(String text, int position, int end, char expected) {
+        if (position >= end || text.charAt(position) != expected) {
+            throw new IllegalArgumentException("expected '" + expected + "'"
+                    + (position < end ? " but found '" + text.charAt(position) + "'" : " at the end of the line"));
+        }
+        return position + 1;
+    }
+
+    private static int skipWhitespace(String text, int position, int end) {
+        while (position < end && Character.isWhitespace(text.charAt(position))) {
+            position++;
+        }
+        return position;
+    }
+}
@@ -0,0 +1,196 @@
+package bds.loader;
+
+import bds.storage.LogRecord;
+import org.apache.calcite.sql.type.SqlTypeName;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Parser for the records of one FileFormat. The BulkLoader reads the file in chunks that end at a record boundary,
+ * see findEnd, and parses the chunks in parallel, so parse must not change the state of the parser.
+ */
+abstract class RecordParser {
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18,
+            1e19, 1e20, 1e21, 1e22
+    };
+
+    protected final List<String> fieldNames;
+    protected final List<SqlTypeName> fieldTypes;
+
+    /**
+     * Argument constructor for the RecordParser class.
+     * @param fieldNames the names of the fields of the table.
+     * @param fieldTypes the types of the fields of the table.
+     */
+    RecordParser(List<String> fieldNames, List<SqlTypeName> fieldTypes) {
+        this.fieldNames = fieldNames;
+        this.fieldTypes = fieldTypes;
+    }
+
+    /**
+     * Method to read the header at the start of the file, called once before the chunks are split.
+     * @param buffer the first bytes of the file.
+     * @param length the number of bytes in buffer.
+     * @param endOfFile true if buffer holds the whole file.
+     * @return the number of header bytes, which are not parsed as records, or -1 if the header is longer than buffer.
+     * @throws IOException if the header is not valid.
+     */
+    int readHeader(byte[] buffer, int length, boolean endOfFile) throws IOException {
+        return 0;
+    }
+
+    /**
+     * Method to find the end of the last complete record in a buffer starting at a record boundary.
+     * @param buffer the bytes read.
+     * @param length the number of bytes in buffer.
+     * @param endOfFile true if the file ends after buffer.
+     * @return the position after the last complete record, or 0 if buffer holds no complete record.
+     */
+    abstract int findEnd(byte[] buffer, int length, boolean endOfFile);
+
+    /**
+     * Method to parse the records of a chunk.
+     * @param buffer the bytes of the chunk.
+     * @param length the number of bytes of the chunk, ending at a record boundary.
+     * @param offset the position of the chunk in the file.
+     * @param records the list the parsed records are added to, as upserts.
+     * @throws IOException if a record is not valid.
+     */
+    abstract void parse(byte[] buffer, int length, long offset, List<LogRecord> records) throws IOException;
+
+    /**
+     * Method to convert the text of a value to the type of a field. Vector fields accept the elements separated by
+     * commas, semicolons or whitespace, optionally enclosed in square brackets.
+     * @param text the text holding the value.
+     * @param from the position of the first character of the value.
+     * @param to the position after the last character of the value.
+     * @param type the type of the field.
+     * @return the converted value.
+     * @throws NumberFormatException if the text is not a number of the type.
+     */
+    static Object convert(String text, int from, int to, SqlTypeName type) {
+        switch (type) {
+            case BIGINT:
+                return Long.parseLong(text.substring(from, to).trim());
+            case INTEGER:
+                return Integer.parseInt(text.substring(from, to).trim());
+            case DOUBLE:
+            case FLOAT:
+            case REAL:
+            case DECIMAL:
+                return Double.parseDouble(text.substring(from, to).trim());
+            case BOOLEAN:
+                return Boolean.parseBoolean(text.substring(from, to).trim());
+            case OTHER:
+                return parseVector(text, from, to);
+            default:
+                return text.substring(from, to);
+        }
+    }
+
+    /**
+     * Method to parse the elements of a vector.
+     * @param text the text holding the vector.
+     * @param from the position of the first character of the vector.
+     * @param to the position after the last character of the vector.
+     * @return the elements of the vector.
+     */
+    static float[] parseVector(String text, int from, int to) {
+        float[] elements = new float[16];
+        int count = 0;
+        int position = from;
+        while (position < to) {
+            char c = text.charAt(position);
+            if (c == ',' || c == ';' || c == '[' || c == ']' || Character.isWhitespace(c)) {
+                position++;
+                continue;
+            }
+            int end = position + 1;
+            while (end < to && !isVectorSeparator(text.charAt(end))) {
+                end++;
+            }
+            if (count == elements.length) {
+                elements = Arrays.copyOf(elements, count * 2);
+            }
+            elements[count++] = parseFloat(text, position, end);
+            position = end;
+        }
+        return count == elements.length ? elements : Arrays.copyOf(elements, count);
+    }
+
+    private static boolean isVectorSeparator(char c) {
+        return c == ',' || c == ';' || c == ']' || Character.isWhitespace(c);
+    }
+
+    /**
+     * Method to parse a decimal number without creating a String. Numbers with up to 15 significant digits and small
+     * exponents are computed as a correctly rounded double and then rounded to float, which in rare cases differs
+     * from Float.parseFloat in the last bit; other numbers are passed to Float.parseFloat.
+     * @param text the text holding the number.
+     * @param from the position of the first character of the number.
+     * @param to the position after the last character of the number.
+     * @return the number.
+     * @throws NumberFormatException if the text is not a number.
+     */
+    static float parseFloat(String text, int from, int to) {
+        int position = from;
+        boolean negative = false;
+        if (position < to && (text.charAt(position) == '-' || text.charAt(position) == '+')) {
+            negative = text.charAt(position) == '-';
+            position++;
+        }
+
+        long mantissa = 0;
+        int significantDigits = 0;
+        int exponent = 0;
+        boolean hasDigits = false;
+        boolean fraction = false;
+        while (position < to) {
+            char c = text.charAt(position);
+            if (c >= '0' && c <= '9') {
+                hasDigits = true;
+                mantissa = mantissa * 10 + (c - '0');
+                if (mantissa != 0) {
+                    significantDigits++;
+                }
+                if (fraction) {
+                    exponent--;
+                }
+            } else if (c == '.' && !fraction) {
+                fraction = true;
+            } else {
+                break;
+            }
+            if (significantDigits > 15) {
+                return Float.parseFloat(text.substring(from, to));
+            }
+            position++;
+        }
+        if (position < to && (text.charAt(position) == 'e' || text.charAt(position) == 'E')) {
+            position++;
+            boolean negativeExponent = false;
+            if (position < to && (text.charAt(position) == '-' || text.charAt(position) == '+')) {
+                negativeExponent = text.charAt(position) == '-';
+                position++;
+            }
+            int value = 0;
+            int start = position;
+            while (position < to && text.charAt(position) >= '0' && text.charAt(position) <= '9' && value < 1000) {
+                value = value * 10 + (text.charAt(position) - '0');
+                position++;
+            }
+            if (position == start) {
+                return Float.parseFloat(text.substring(from, to));
+            }
+            exponent += negativeExponent ? -value : value;
+        }
+        if (!hasDigits || position != to || exponent < -22 || exponent > 22) {
+            return Float.parseFloat(text.substring(from, to));
+        }
+
+        double value = exponent >= 0 ? mantissa * POWERS_OF_TEN[exponent] : mantissa / POWERS_OF_TEN[-exponent];
+        return (float) (negative ? -value : value);
+    }
+}
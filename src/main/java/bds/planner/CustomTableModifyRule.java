@@ -0,0 +1,46 @@
+package bds.planner;
+
+import bds.calcite.BaseCustomTable;
+import org.apache.calcite.adapter.enumerable.EnumerableConvention;
+import org.apache.calcite.plan.Convention;
+import org.apache.calcite.plan.RelTraitSet;
+import org.apache.calcite.rel.RelNode;
+import org.apache.calcite.rel.convert.ConverterRule;
+import org.apache.calcite.rel.core.TableModify;
+import org.apache.calcite.rel.logical.LogicalTableModify;
+
+/**
+ * Planner rule that converts an INSERT, UPDATE or DELETE on a Custom Table to an EnumerableCustomTableModify.
+ * Calcite's own EnumerableTableModifyRule only supports INSERT and DELETE through the Collection of a ModifiableTable.
+ * The rule only matches modifications of Custom Tables, so Calcite's rule still plans the other tables. For Custom
+ * Tables both rules produce an enumerable expression, and EnumerableCustomTableModify wins by its lower cost.
+ */
+public class CustomTableModifyRule extends ConverterRule {
+
+    /**
+     * The rule instance registered by VectorPlannerRules.
+     */
+    public static final CustomTableModifyRule INSTANCE = Config.INSTANCE
+            .withConversion(LogicalTableModify.class,
+                    modify -> modify.getTable().unwrap(BaseCustomTable.class) != null,
+                    Convention.NONE, EnumerableConvention.INSTANCE, "CustomTableModifyRule")
+            .withRuleFactory(CustomTableModifyRule::new)
+            .toRule(CustomTableModifyRule.class);
+
+    /**
+     * Creates a CustomTableModifyRule.
+     * @param config the rule configuration.
+     */
+    protected CustomTableModifyRule(Config config) {
+        super(config);
+    }
+
+    @Override
+    public RelNode convert(RelNode rel) {
+        TableModify modify = (TableModify) rel;
+        RelTraitSet traitSet = modify.getTraitSet().replace(EnumerableConvention.INSTANCE);
+        return new EnumerableCustomTableModify(modify.getCluster(), traitSet, modify.getTable(),
+                modify.getCatalogReader(), convert(modify.getInput(), traitSet), modify.getOperation(),
+                modify.getUpdateColumnList(), modify.getSourceExpressionList(), modify.isFlattened());
+    }
+}
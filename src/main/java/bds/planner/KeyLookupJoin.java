@@ -0,0 +1,141 @@
+package bds.planner;
+
+import org.apache.calcite.DataContext;
+import org.apache.calcite.adapter.enumerable.EnumerableRel;
+import org.apache.calcite.adapter.enumerable.EnumerableRelImplementor;
+import org.apache.calcite.adapter.enumerable.JavaRowFormat;
+import org.apache.calcite.adapter.enumerable.PhysType;
+import org.apache.calcite.adapter.enumerable.PhysTypeImpl;
+import org.apache.calcite.linq4j.tree.BlockBuilder;
+import org.apache.calcite.linq4j.tree.Expression;
+import org.apache.calcite.linq4j.tree.Expressions;
+import org.apache.calcite.plan.RelOptCluster;
+import org.apache.calcite.plan.RelOptCost;
+import org.apache.calcite.plan.RelOptPlanner;
+import org.apache.calcite.plan.RelOptTable;
+import org.apache.calcite.plan.RelTraitSet;
+import org.apache.calcite.rel.AbstractRelNode;
+import org.apache.calcite.rel.RelNode;
+import org.apache.calcite.rel.RelWriter;
+import org.apache.calcite.rel.metadata.RelMetadataQuery;
+import org.apache.calcite.rel.type.RelDataType;
+import com.google.common.collect.ImmutableList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Relational expression that joins its input rows with the rows of a Custom Table whose id is equal to a field of
+ * the input, by finding the row of each id with the key indexes of the table, see KeyLookupRuntime.lookupJoin. The
+ * table is never scanned, so the cost depends on the number of input rows only.
+ */
+public class KeyLookupJoin extends AbstractRelNode implements EnumerableRel {
+    private RelNode input;
+    private final RelOptTable table;
+    private final int keyField;
+    private final int[] fields;
+    private final boolean tableFirst;
+    private final boolean outer;
+    private final RelDataType joinRowType;
+
+    /**
+     * Argument constructor for the KeyLookupJoin class.
+     * @param cluster the cluster this expression belongs to.
+     * @param traitSet the traits of this expression.
+     * @param input the input rows.
+     * @param table the table the rows are looked up in.
+     * @param keyField the position of the field holding the id in the input rows.
+     * @param fields the indexes of the table fields the joined rows hold.
+     * @param tableFirst true if the table fields come before the input fields in the joined rows.
+     * @param outer true to keep the input rows without a table row, with null table fields.
+     * @param joinRowType the type of the joined rows.
+     */
+    public KeyLookupJoin(RelOptCluster cluster, RelTraitSet traitSet, RelNode input, RelOptTable table, int keyField,
+                         int[] fields, boolean tableFirst, boolean outer, RelDataType joinRowType) {
+        super(cluster, traitSet);
+        this.input = input;
+        this.table = table;
+        this.keyField = keyField;
+        this.fields = fields;
+        this.tableFirst = tableFirst;
+        this.outer = outer;
+        this.joinRowType = joinRowType;
+    }
+
+    @Override
+    public RelNode copy(RelTraitSet traitSet, List<RelNode> inputs) {
+        return new KeyLookupJoin(getCluster(), traitSet, sole(inputs), table, keyField, fields, tableFirst, outer,
+                joinRowType);
+    }
+
+    /**
+     * Method to get the input of this expression.
+     * @return the input RelNode.
+     */
+    public RelNode getInput() {
+        return input;
+    }
+
+    @Override
+    public List<RelNode> getInputs() {
+        return ImmutableList.of(input);
+    }
+
+    @Override
+    public void replaceInput(int ordinalInParent, RelNode rel) {
+        assert ordinalInParent == 0;
+        this.input = rel;
+        recomputeDigest();
+    }
+
+    @Override
+    protected RelDataType deriveRowType() {
+        return joinRowType;
+    }
+
+    @Override
+    public RelWriter explainTerms(RelWriter pw) {
+        return super.explainTerms(pw)
+                .input("input", input)
+                .item("table", table.getQualifiedName())
+                .item("key", keyField)
+                .item("fields", Arrays.toString(fields))
+                .item("joinType", outer ? "outer" : "inner");
+    }
+
+    @Override
+    public double estimateRowCount(RelMetadataQuery mq) {
+        return mq.getRowCount(input);
+    }
+
+    @Override
+    public RelOptCost computeSelfCost(RelOptPlanner planner, RelMetadataQuery mq) {
+        double rows = mq.getRowCount(input);
+        return planner.getCostFactory().makeCost(rows, rows, 0);
+    }
+
+    @Override
+    public Result implement(EnumerableRelImplementor implementor, Prefer pref) {
+        BlockBuilder builder = new BlockBuilder();
+        PhysType physType = PhysTypeImpl.of(implementor.getTypeFactory(), getRowType(), JavaRowFormat.ARRAY, false);
+
+        Result inputResult = implementor.visitChild(this, 0, (EnumerableRel) input, Prefer.ARRAY);
+        Expression inputRows = builder.append("input", inputResult.block);
+        if (inputResult.format != JavaRowFormat.ARRAY) {
+            inputRows = inputResult.physType.convertTo(inputRows, JavaRowFormat.ARRAY);
+        }
+
+        List<String> tableName = table.getQualifiedName();
+        Expression rows = Expressions.call(KeyLookupRuntime.class, "lookupJoin",
+                DataContext.ROOT,
+                Expressions.constant(tableName.get(0)),
+                Expressions.constant(tableName.get(tableName.size() - 1)),
+                inputRows,
+                Expressions.constant(keyField),
+                Expressions.constant(fields),
+                Expressions.constant(tableFirst),
+                Expressions.constant(outer));
+
+        builder.add(Expressions.return_(null, rows));
+        return implementor.result(physType, builder.toBlock());
+    }
+}
@@ -0,0 +1,149 @@
+package bds.planner;
+
+import bds.calcite.BaseCustomTable;
+import org.apache.calcite.adapter.enumerable.EnumerableConvention;
+import org.apache.calcite.interpreter.Bindables;
+import org.apache.calcite.plan.RelOptCluster;
+import org.apache.calcite.plan.RelOptRuleCall;
+import org.apache.calcite.plan.RelRule;
+import org.apache.calcite.rel.RelNode;
+import org.apache.calcite.rel.core.JoinInfo;
+import org.apache.calcite.rel.core.JoinRelType;
+import org.apache.calcite.rel.core.Project;
+import org.apache.calcite.rel.core.TableScan;
+import org.apache.calcite.rel.logical.LogicalJoin;
+import org.apache.calcite.rex.RexInputRef;
+import org.apache.calcite.rex.RexNode;
+import java.util.List;
+
+/**
+ * Planner rule that rewrites a join of any input with a scan of a Custom Table on the id field of the table, like
+ * <pre>
+ *   SELECT e.firstname, k.score FROM TABLE(hr.KNN('employees', 'vec', ARRAY[1.1, 2.2], 5)) AS k
+ *   JOIN hr.employees AS e ON e.id = k.id
+ * </pre>
+ * so that a KeyLookupJoin finds the table row of each input row with the key indexes of the table, in batches,
+ * instead of scanning the whole table to build a hash table. Inner joins are rewritten, and outer joins that keep
+ * every input row. The scan, or a Project of fields over it, may only return some fields of the table, but the scan
+ * must not be filtered.
+ */
+public class KeyLookupJoinRule extends RelRule<RuleConfig> {
+
+    /**
+     * Rule matching a join whose right input is a scan of a Custom Table.
+     */
+    public static final KeyLookupJoinRule TABLE_RIGHT = RuleConfig.of(KeyLookupJoinRule::new)
+            .withDescription("KeyLookupJoinRule:table-right")
+            .withOperandSupplier(b0 -> b0.operand(LogicalJoin.class).inputs(
+                    b1 -> b1.operand(RelNode.class).anyInputs(),
+                    b2 -> b2.operand(TableScan.class).noInputs()))
+            .toRule(KeyLookupJoinRule.class);
+
+    /**
+     * Rule matching a join whose left input is a scan of a Custom Table.
+     */
+    public static final KeyLookupJoinRule TABLE_LEFT = RuleConfig.of(KeyLookupJoinRule::new)
+            .withDescription("KeyLookupJoinRule:table-left")
+            .withOperandSupplier(b0 -> b0.operand(LogicalJoin.class).inputs(
+                    b1 -> b1.operand(TableScan.class).noInputs(),
+                    b2 -> b2.operand(RelNode.class).anyInputs()))
+            .toRule(KeyLookupJoinRule.class);
+
+    /**
+     * Rule matching a join whose right input is a Project of fields over a scan of a Custom Table.
+     */
+    public static final KeyLookupJoinRule PROJECT_RIGHT = RuleConfig.of(KeyLookupJoinRule::new)
+            .withDescription("KeyLookupJoinRule:project-right")
+            .withOperandSupplier(b0 -> b0.operand(LogicalJoin.class).inputs(
+                    b1 -> b1.operand(RelNode.class).anyInputs(),
+                    b2 -> b2.operand(Project.class).oneInput(b3 ->
+                            b3.operand(TableScan.class).noInputs())))
+            .toRule(KeyLookupJoinRule.class);
+
+    /**
+     * Rule matching a join whose left input is a Project of fields over a scan of a Custom Table.
+     */
+    public static final KeyLookupJoinRule PROJECT_LEFT = RuleConfig.of(KeyLookupJoinRule::new)
+            .withDescription("KeyLookupJoinRule:project-left")
+            .withOperandSupplier(b0 -> b0.operand(LogicalJoin.class).inputs(
+                    b1 -> b1.operand(Project.class).oneInput(b2 ->
+                            b2.operand(TableScan.class).noInputs()),
+                    b3 -> b3.operand(RelNode.class).anyInputs()))
+            .toRule(KeyLookupJoinRule.class);
+
+    /**
+     * Creates a KeyLookupJoinRule.
+     * @param config the rule configuration.
+     */
+    protected KeyLookupJoinRule(RuleConfig config) {
+        super(config);
+    }
+
+    @Override
+    public void onMatch(RelOptRuleCall call) {
+        LogicalJoin join = call.rel(0);
+        // the operand of the other input matches any RelNode, and comes first when the table is the right input
+        boolean tableOnRight = getOperands().get(1).getMatchedClass() == RelNode.class;
+        RelNode tableInput = call.rel(tableOnRight ? 2 : 1);
+        TableScan scan = tableInput instanceof TableScan ? (TableScan) tableInput : call.rel(tableOnRight ? 3 : 2);
+        RelNode input = join.getInput(tableOnRight ? 0 : 1);
+
+        BaseCustomTable table = scan.getTable().unwrap(BaseCustomTable.class);
+        if (table == null) return;
+
+        JoinRelType joinType = join.getJoinType();
+        boolean outer = joinType == (tableOnRight ? JoinRelType.LEFT : JoinRelType.RIGHT);
+        if (joinType != JoinRelType.INNER && !outer) return;
+
+        JoinInfo joinInfo = join.analyzeCondition();
+        if (!joinInfo.isEqui() || joinInfo.leftKeys.size() != 1) return;
+
+        int[] fields = getFields(scan);
+        if (fields != null && tableInput instanceof Project) {
+            fields = getFields((Project) tableInput, fields);
+        }
+        if (fields == null) return;
+
+        int tableKey = tableOnRight ? joinInfo.rightKeys.get(0) : joinInfo.leftKeys.get(0);
+        int inputKey = tableOnRight ? joinInfo.leftKeys.get(0) : joinInfo.rightKeys.get(0);
+        if (fields[tableKey] != 0) return;
+
+        RelNode enumerableInput = convert(input, input.getTraitSet().replace(EnumerableConvention.INSTANCE));
+        RelOptCluster cluster = join.getCluster();
+        call.transformTo(new KeyLookupJoin(cluster, cluster.traitSetOf(EnumerableConvention.INSTANCE),
+                enumerableInput, scan.getTable(), inputKey, fields, !tableOnRight, outer, join.getRowType()));
+    }
+
+    /**
+     * Method to get the fields of the table a Project over a scan returns.
+     * @param scanFields the fields of the table the scan returns.
+     * @return the index of each returned field in the table, or null if the Project computes an expression.
+     */
+    private static int[] getFields(Project project, int[] scanFields) {
+        List<RexNode> projects = project.getProjects();
+        int[] fields = new int[projects.size()];
+        for (int i = 0; i < fields.length; i++) {
+            if (!(projects.get(i) instanceof RexInputRef)) return null;
+
+            fields[i] = scanFields[((RexInputRef) projects.get(i)).getIndex()];
+        }
+        return fields;
+    }
+
+    /**
+     * Method to get the fields of the table a scan returns.
+     * @return the index of each returned field in the table, or null if the scan is filtered.
+     */
+    private static int[] getFields(TableScan scan) {
+        List<Integer> projects = TableScan.identity(scan.getTable());
+        if (scan instanceof Bindables.BindableTableScan) {
+            Bindables.BindableTableScan bindableScan = (Bindables.BindableTableScan) scan;
+            if (!bindableScan.filters.isEmpty()) return null;
+
+            if (bindableScan.projects != null) {
+                projects = bindableScan.projects;
+            }
+        }
+        return projects.stream().mapToInt(Integer::intValue).toArray();
+    }
+}
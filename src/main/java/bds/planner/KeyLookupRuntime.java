@@ -0,0 +1,87 @@
+package bds.planner;
+
+import bds.calcite.BaseCustomTable;
+import org.apache.calcite.DataContext;
+import org.apache.calcite.linq4j.Enumerable;
+import org.apache.calcite.linq4j.Enumerator;
+import org.apache.calcite.linq4j.Linq4j;
+import org.apache.calcite.schema.SchemaPlus;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runtime methods called by the code that Calcite generates for KeyLookupJoin.
+ */
+public class KeyLookupRuntime {
+    public static final String BATCH_SIZE_PROPERTY = "bds.lookup.batchSize";
+
+    private static final int DEFAULT_BATCH_SIZE = 1024;
+
+    /**
+     * Private constructor since this class only contains static methods.
+     */
+    private KeyLookupRuntime() {}
+
+    /**
+     * Method to join input rows with the rows of a table whose id is equal to a field of the input. The input rows
+     * are read in batches of the 'bds.lookup.batchSize' system property rows (1024 by default), and the table rows
+     * of each batch are found together with BaseCustomTable.getRows, so no table row is read but the joined ones.
+     * @param root the DataContext of the query.
+     * @param schemaName the name of the schema holding the table.
+     * @param tableName the name of the table.
+     * @param input the input rows.
+     * @param keyField the position of the field holding the id in the input rows.
+     * @param fields the indexes of the table fields the joined rows hold.
+     * @param tableFirst true if the table fields come before the input fields in the joined rows.
+     * @param outer true to keep the input rows without a table row, with null table fields.
+     * @return the joined rows, in input order.
+     */
+    public static Enumerable<Object[]> lookupJoin(DataContext root, String schemaName, String tableName,
+                                                  Enumerable<Object[]> input, int keyField, int[] fields,
+                                                  boolean tableFirst, boolean outer) {
+        SchemaPlus schema = root.getRootSchema().getSubSchema(schemaName);
+        BaseCustomTable table = (BaseCustomTable) schema.getTable(tableName);
+        int batchSize = Math.max(1, Integer.getInteger(BATCH_SIZE_PROPERTY, DEFAULT_BATCH_SIZE));
+
+        List<Object[]> joined = new ArrayList<>();
+        List<Object[]> batch = new ArrayList<>(batchSize);
+        try (Enumerator<Object[]> enumerator = input.enumerator()) {
+            while (enumerator.moveNext()) {
+                batch.add(enumerator.current());
+                if (batch.size() == batchSize) {
+                    joinBatch(root, table, batch, keyField, fields, tableFirst, outer, joined);
+                    batch.clear();
+                }
+            }
+        }
+        joinBatch(root, table, batch, keyField, fields, tableFirst, outer, joined);
+        return Linq4j.asEnumerable(joined);
+    }
+
+    /**
+     * Method to look the table rows of a batch of input rows up and add the joined rows to a list.
+     */
+    private static void joinBatch(DataContext root, BaseCustomTable table, List<Object[]> batch, int keyField,
+                                  int[] fields, boolean tableFirst, boolean outer, List<Object[]> joined) {
+        if (batch.isEmpty()) return;
+
+        List<Object> ids = new ArrayList<>(batch.size());
+        for (Object[] row : batch) {
+            ids.add(row[keyField]);
+        }
+        Object[][] tableRows = table.getRows(root, ids, fields);
+        for (int i = 0; i < tableRows.length; i++) {
+            Object[] tableRow = tableRows[i];
+            if (tableRow == null && !outer) continue;
+
+            Object[] inputRow = batch.get(i);
+            Object[] row = new Object[inputRow.length + fields.length];
+            int inputOffset = tableFirst ? fields.length : 0;
+            System.arraycopy(inputRow, 0, row, inputOffset, inputRow.length);
+            if (tableRow != null) {
+                System.arraycopy(tableRow, 0, row, tableFirst ? 0 : inputRow.length, fields.length);
+            }
+            joined.add(row);
+        }
+    }
+}
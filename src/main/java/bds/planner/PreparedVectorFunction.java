@@ -0,0 +1,104 @@
+package bds.planner;
+
+import bds.vectors.PreparedQuery;
+import bds.vectors.QueryVector;
+import bds.vectors.VectorFunctions;
+import org.apache.calcite.adapter.enumerable.CallImplementor;
+import org.apache.calcite.adapter.enumerable.NullPolicy;
+import org.apache.calcite.adapter.enumerable.RexImpTable;
+import org.apache.calcite.adapter.enumerable.RexToLixTranslator;
+import org.apache.calcite.linq4j.tree.Expression;
+import org.apache.calcite.linq4j.tree.Expressions;
+import org.apache.calcite.rel.type.RelDataType;
+import org.apache.calcite.rel.type.RelDataTypeFactory;
+import org.apache.calcite.rex.RexCall;
+import org.apache.calcite.schema.FunctionParameter;
+import org.apache.calcite.schema.ImplementableFunction;
+import org.apache.calcite.schema.ScalarFunction;
+import org.apache.calcite.schema.impl.ScalarFunctionImpl;
+import org.apache.calcite.sql.type.SqlTypeName;
+import java.lang.reflect.Method;
+import java.util.List;
+
+/**
+ * A Vector Function taking a query vector, like SIMILARITY, COSINE_SIMILARITY and HAMMING_DISTANCE. The SQL signature
+ * is the one of the VectorFunctions method taking a List of elements, but the generated code calls the method taking
+ * a QueryVector, with a query vector prepared once per statement instead of once per row:
+ * - a constant ARRAY[...] query, which VectorConvertletTable replaces with its encoded elements when the statement
+ *   is converted, is passed as QueryVector.parse of the encoded elements, which Calcite evaluates once when it loads
+ *   the generated code;
+ * - any other query, like a '?' parameter, is passed through a PreparedQuery created once for the call, which only
+ *   prepares the query vector again when the statement passes another List.
+ */
+public class PreparedVectorFunction implements ScalarFunction, ImplementableFunction {
+    private final ScalarFunctionImpl function;
+    private final Method preparedMethod;
+    private final CallImplementor implementor;
+
+    /**
+     * Argument constructor for the PreparedVectorFunction class.
+     * @param function the function declaring the SQL signature.
+     * @param preparedMethod the static method taking the vector and a QueryVector.
+     */
+    private PreparedVectorFunction(ScalarFunctionImpl function, Method preparedMethod) {
+        this.function = function;
+        this.preparedMethod = preparedMethod;
+        this.implementor = RexImpTable.createImplementor(this::implement, NullPolicy.NONE, false);
+    }
+
+    /**
+     * Method to create the function of a VectorFunctions method that takes the vector and a List of elements, and
+     * has an overload taking the vector and a QueryVector.
+     * @param name the name of the method.
+     * @return the new PreparedVectorFunction.
+     */
+    public static PreparedVectorFunction create(String name) {
+        try {
+            Method method = VectorFunctions.class.getMethod(name, Object.class, List.class);
+            Method preparedMethod = VectorFunctions.class.getMethod(name, Object.class, QueryVector.class);
+            return new PreparedVectorFunction((ScalarFunctionImpl) ScalarFunctionImpl.create(method),
+                    preparedMethod);
+        }
+        catch (NoSuchMethodException ex) {
+            throw new IllegalArgumentException("no vector function " + name, ex);
+        }
+    }
+
+    /**
+     * Method to get the VectorFunctions method declaring the SQL signature.
+     * @return the method taking a List of elements.
+     */
+    public Method getMethod() {
+        return function.method;
+    }
+
+    @Override
+    public RelDataType getReturnType(RelDataTypeFactory typeFactory) {
+        return function.getReturnType(typeFactory);
+    }
+
+    @Override
+    public List<FunctionParameter> getParameters() {
+        return function.getParameters();
+    }
+
+    @Override
+    public CallImplementor getImplementor() {
+        return implementor;
+    }
+
+    /**
+     * Method to generate the call to the method taking a QueryVector.
+     */
+    private Expression implement(RexToLixTranslator translator, RexCall call, List<Expression> operands) {
+        // in programs the operands are references to expressions, so the encoded query is found by its type
+        Expression query = operands.get(1);
+        if (SqlTypeName.CHAR_TYPES.contains(call.getOperands().get(1).getType().getSqlTypeName())) {
+            query = Expressions.call(QueryVector.class, "parse", Expressions.convert_(query, String.class));
+        } else {
+            query = Expressions.call(Expressions.new_(PreparedQuery.class), "get",
+                    Expressions.convert_(query, List.class));
+        }
+        return Expressions.call(preparedMethod, Expressions.convert_(operands.get(0), Object.class), query);
+    }
+}
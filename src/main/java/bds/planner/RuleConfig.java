@@ -0,0 +1,85 @@
+package bds.planner;
+
+import org.apache.calcite.plan.RelOptRule;
+import org.apache.calcite.plan.RelRule;
+import org.apache.calcite.rel.core.RelFactories;
+import org.apache.calcite.tools.RelBuilderFactory;
+import java.util.function.Function;
+
+/**
+ * Immutable configuration of the RelRule planner rules of this package. Calcite builds the configurations of its own
+ * rules with generated classes, and the RelRule.Config.EMPTY base other rules used before is deprecated, so the rules
+ * of this package start from RuleConfig.of instead. Like the generated configurations, every with method returns a
+ * changed copy, and toRule creates the rule with the factory the configuration was created with.
+ */
+public final class RuleConfig implements RelRule.Config {
+    private final Function<RuleConfig, ? extends RelOptRule> ruleFactory;
+    private final RelBuilderFactory relBuilderFactory;
+    private final String description;
+    private final RelRule.OperandTransform operandSupplier;
+
+    private RuleConfig(Function<RuleConfig, ? extends RelOptRule> ruleFactory, RelBuilderFactory relBuilderFactory,
+                       String description, RelRule.OperandTransform operandSupplier) {
+        this.ruleFactory = ruleFactory;
+        this.relBuilderFactory = relBuilderFactory;
+        this.description = description;
+        this.operandSupplier = operandSupplier;
+    }
+
+    /**
+     * Method to create an empty configuration, without a description or operands, using the logical RelBuilder.
+     * @param ruleFactory creates the rule from its configuration, usually the constructor of the rule.
+     * @return the new RuleConfig.
+     */
+    public static RuleConfig of(Function<RuleConfig, ? extends RelOptRule> ruleFactory) {
+        return new RuleConfig(ruleFactory, RelFactories.LOGICAL_BUILDER, null, null);
+    }
+
+    @Override
+    public RelOptRule toRule() {
+        return ruleFactory.apply(this);
+    }
+
+    /**
+     * Method to create the rule of this configuration as a given class.
+     * @param ruleClass the class of the rule created by the factory of this configuration.
+     * @param <R> the type of the rule.
+     * @return the new rule.
+     */
+    public <R extends RelOptRule> R toRule(Class<R> ruleClass) {
+        return ruleClass.cast(toRule());
+    }
+
+    @Override
+    public RelBuilderFactory relBuilderFactory() {
+        return relBuilderFactory;
+    }
+
+    @Override
+    public RuleConfig withRelBuilderFactory(RelBuilderFactory factory) {
+        return new RuleConfig(ruleFactory, factory, description, operandSupplier);
+    }
+
+    @Override
+    public String description() {
+        return description;
+    }
+
+    @Override
+    public RuleConfig withDescription(String newDescription) {
+        return new RuleConfig(ruleFactory, relBuilderFactory, newDescription, operandSupplier);
+    }
+
+    @Override
+    public RelRule.OperandTransform operandSupplier() {
+        if (operandSupplier == null) {
+            throw new IllegalStateException("the rule " + description + " has no operands");
+        }
+        return operandSupplier;
+    }
+
+    @Override
+    public RuleConfig withOperandSupplier(RelRule.OperandTransform transform) {
+        return new RuleConfig(ruleFactory, relBuilderFactory, description, transform);
+    }
+}
@@ -0,0 +1,73 @@
+package bds.planner;
+
+import bds.calcite.BaseCustomTable;
+import bds.storage.LogRecord;
+import org.apache.calcite.DataContext;
+import org.apache.calcite.linq4j.Enumerable;
+import org.apache.calcite.linq4j.Linq4j;
+import org.apache.calcite.schema.SchemaPlus;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Runtime methods called by the code generated for EnumerableCustomTableModify.
+ */
+public class TableModifyRuntime {
+
+    /**
+     * Private constructor since this class only contains static methods.
+     */
+    private TableModifyRuntime() {}
+
+    /**
+     * Method to apply an INSERT, UPDATE or DELETE statement to a Custom Table. All input rows are read before the
+     * table is changed, and the changes are written with a single call, so an UPDATE never sees its own changes and
+     * the changes of a statement are logged together. INSERT replaces the row with the same id. An UPDATE that
+     * changes the id of a row deletes the row with the old id.
+     * @param root the DataContext of the statement.
+     * @param schemaName the name of the schema holding the table.
+     * @param tableName the name of the table to change.
+     * @param operation the name of the TableModify.Operation.
+     * @param updateColumns the indexes of the fields changed by an UPDATE.
+     * @param input the rows to insert; for UPDATE and DELETE, the rows to change, followed by the new values of the
+     *              updated fields for UPDATE.
+     * @return the number of changed rows.
+     */
+    public static Enumerable<Long> modify(DataContext root, String schemaName, String tableName, String operation,
+                                          int[] updateColumns, Enumerable<Object[]> input) {
+        SchemaPlus schema = root.getRootSchema().getSubSchema(schemaName);
+        BaseCustomTable table = (BaseCustomTable) schema.getTable(tableName);
+        int fieldCount = table.getFieldNames().size();
+
+        List<LogRecord> records = new ArrayList<>();
+        long count = 0;
+        for (Object[] row : input) {
+            switch (operation) {
+                case "INSERT":
+                    records.add(LogRecord.upsert(Arrays.copyOf(row, fieldCount)));
+                    break;
+                case "DELETE":
+                    records.add(LogRecord.delete(row[0]));
+                    break;
+                case "UPDATE":
+                    Object[] values = Arrays.copyOf(row, fieldCount);
+                    for (int i = 0; i < updateColumns.length; i++) {
+                        values[updateColumns[i]] = row[fieldCount + i];
+                    }
+                    if (!Objects.equals(row[0], values[0])) {
+                        records.add(LogRecord.delete(row[0]));
+                    }
+                    records.add(LogRecord.upsert(values));
+                    break;
+                default:
+                    throw new UnsupportedOperationException(operation + " is not supported on " + tableName);
+            }
+            count++;
+        }
+
+        table.write(records);
+        return Linq4j.singletonEnumerable(count);
+    }
+}
@@ -0,0 +1,65 @@
+package bds.planner;
+
+import org.apache.calcite.rex.RexBuilder;
+import org.apache.calcite.rex.RexCall;
+import org.apache.calcite.rex.RexNode;
+import org.apache.calcite.sql.SqlCall;
+import org.apache.calcite.sql.validate.SqlUserDefinedFunction;
+import org.apache.calcite.sql2rel.SqlRexContext;
+import org.apache.calcite.sql2rel.SqlRexConvertlet;
+import org.apache.calcite.sql2rel.SqlRexConvertletTable;
+import org.apache.calcite.sql2rel.StandardConvertletTable;
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Convertlet table used by the connections of VectorDriver. Calls to a PreparedVectorFunction whose query vector is a
+ * constant ARRAY[...] are converted with the query vector replaced by a character literal of its encoded elements,
+ * see VectorFunctionCall.encodeQueryVector, so the generated code prepares the query vector once instead of building
+ * the ARRAY list again for every row. Every other call is converted by the StandardConvertletTable.
+ */
+public class VectorConvertletTable implements SqlRexConvertletTable {
+
+    /**
+     * The convertlet table instance used by VectorDriver.
+     */
+    public static final VectorConvertletTable INSTANCE = new VectorConvertletTable();
+
+    private final SqlRexConvertletTable standard = StandardConvertletTable.INSTANCE;
+
+    /**
+     * Private constructor, use INSTANCE.
+     */
+    private VectorConvertletTable() {}
+
+    @Override
+    public SqlRexConvertlet get(SqlCall call) {
+        SqlRexConvertlet convertlet = standard.get(call);
+        if (convertlet == null || !(call.getOperator() instanceof SqlUserDefinedFunction)
+                || !(((SqlUserDefinedFunction) call.getOperator()).getFunction() instanceof PreparedVectorFunction)) {
+            return convertlet;
+        }
+        return (cx, sqlCall) -> prepareQueryVector(cx, convertlet.convertCall(cx, sqlCall));
+    }
+
+    /**
+     * Method to replace the constant query vector of a converted call with its encoded elements.
+     * @param cx the conversion context.
+     * @param node the converted call.
+     * @return the call with the encoded query vector, or node if its query vector is not a constant ARRAY[...].
+     */
+    private static RexNode prepareQueryVector(SqlRexContext cx, RexNode node) {
+        if (!(node instanceof RexCall) || ((RexCall) node).getOperands().size() != 2) return node;
+
+        RexCall call = (RexCall) node;
+        RexNode queryOperand = call.getOperands().get(1);
+        List<BigDecimal> queryVector = VectorFunctionCall.getConstantVector(queryOperand);
+        if (queryVector == null || !(queryOperand instanceof RexCall)) return node;
+
+        RexBuilder rexBuilder = cx.getRexBuilder();
+        RexNode encoded = rexBuilder.makeLiteral(VectorFunctionCall.encodeQueryVector(queryVector));
+        return rexBuilder.makeCall(call.getType(), call.getOperator(), Arrays.asList(call.getOperands().get(0),
+                encoded));
+    }
+}
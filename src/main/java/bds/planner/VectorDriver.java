@@ -0,0 +1,44 @@
+package bds.planner;
+
+import org.apache.calcite.jdbc.CalcitePrepare;
+import org.apache.calcite.jdbc.Driver;
+import org.apache.calcite.linq4j.function.Function0;
+import org.apache.calcite.plan.RelOptCostFactory;
+import org.apache.calcite.plan.RelOptPlanner;
+import org.apache.calcite.prepare.CalcitePrepareImpl;
+import org.apache.calcite.sql2rel.SqlRexConvertletTable;
+
+/**
+ * Calcite JDBC driver whose connections plan their queries with the vector planner rules, see VectorPlannerRules,
+ * and convert their statements with the VectorConvertletTable.
+ * The rules are added to each planner the connections of this driver create, so other Calcite connections in the
+ * same JVM are not affected. The driver is not registered with DriverManager: connect through an instance, like
+ * CalciteConnector does.
+ */
+public class VectorDriver extends Driver {
+
+    @Override
+    protected Function0<CalcitePrepare> createPrepareFactory() {
+        return VectorPrepare::new;
+    }
+
+    /**
+     * Statement preparation that adds the vector planner rules to the planners it creates.
+     */
+    private static class VectorPrepare extends CalcitePrepareImpl {
+
+        @Override
+        protected SqlRexConvertletTable createConvertletTable() {
+            return VectorConvertletTable.INSTANCE;
+        }
+
+        @Override
+        protected RelOptPlanner createPlanner(CalcitePrepare.Context prepareContext,
+                                              org.apache.calcite.plan.Context externalContext,
+                                              RelOptCostFactory costFactory) {
+            RelOptPlanner planner = super.createPlanner(prepareContext, externalContext, costFactory);
+            VectorPlannerRules.addRules(planner);
+            return planner;
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package bds.planner;
+
+import bds.vectors.QueryVector;
+import bds.vectors.VectorMetric;
+import org.apache.calcite.rex.RexCall;
+import org.apache.calcite.rex.RexInputRef;
+import org.apache.calcite.rex.RexLiteral;
+import org.apache.calcite.rex.RexNode;
+import org.apache.calcite.schema.Function;
+import org.apache.calcite.sql.SqlKind;
+import org.apache.calcite.sql.type.SqlTypeName;
+import org.apache.calcite.sql.validate.SqlUserDefinedFunction;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A call to the SIMILARITY or COSINE_SIMILARITY function found in a query plan, whose first argument is a reference to
+ * an input field and whose second argument is a constant ARRAY[...] query vector, or the character literal of its
+ * encoded elements VectorConvertletTable replaces it with.
+ */
+public class VectorFunctionCall {
+    private final VectorMetric metric;
+    private final int vectorField;
+    private final List<BigDecimal> queryVector;
+
+    /**
+     * Argument constructor for the VectorFunctionCall class.
+     * @param metric COSINE for COSINE_SIMILARITY calls, DOT_PRODUCT for SIMILARITY calls.
+     * @param vectorField the index of the input field holding the vectors.
+     * @param queryVector the constant query vector.
+     */
+    public VectorFunctionCall(VectorMetric metric, int vectorField, List<BigDecimal> queryVector) {
+        this.metric = metric;
+        this.vectorField = vectorField;
+        this.queryVector = queryVector;
+    }
+
+    /**
+     * Method to match a RexNode against a call to a vector function with a constant query vector.
+     * @param node the RexNode to match.
+     * @return the matched VectorFunctionCall, or null if node is not such a call.
+     */
+    public static VectorFunctionCall match(RexNode node) {
+        if (!(node instanceof RexCall)) return null;
+
+        RexCall call = (RexCall) node;
+        VectorMetric metric = getMetric(call);
+        if (metric == null || call.getOperands().size() != 2) return null;
+
+        RexNode vectorOperand = call.getOperands().get(0);
+        if (!(vectorOperand instanceof RexInputRef)) return null;
+
+        List<BigDecimal> queryVector = getConstantVector(call.getOperands().get(1));
+        if (queryVector == null) return null;
+
+        return new VectorFunctionCall(metric, ((RexInputRef) vectorOperand).getIndex(), queryVector);
+    }
+
+    /**
+     * Method to get the metric computed by a call to a vector function.
+     * @param call the call to check.
+     * @return COSINE for COSINE_SIMILARITY calls, DOT_PRODUCT for SIMILARITY calls, or null for any other call.
+     */
+    public static VectorMetric getMetric(RexCall call) {
+        if (!(call.getOperator() instanceof SqlUserDefinedFunction)) return null;
+
+        Function function = ((SqlUserDefinedFunction) call.getOperator()).getFunction();
+        if (!(function instanceof PreparedVectorFunction)) return null;
+
+        switch (((PreparedVectorFunction) function).getMethod().getName()) {
+            case "cosineSimilarity":
+                return VectorMetric.COSINE;
+            case "similarity":
+                return VectorMetric.DOT_PRODUCT;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Method to get the elements of an ARRAY[...] constructor whose elements are all numeric literals, or of the
+     * character literal of encoded elements that replaces such a constructor in the calls of vector functions.
+     * @param node the RexNode to check.
+     * @return the elements, or null if node is not such a constructor or literal.
+     */
+    public static List<BigDecimal> getConstantVector(RexNode node) {
+        if (node instanceof RexLiteral && SqlTypeName.CHAR_TYPES.contains(node.getType().getSqlTypeName())) {
+            String encoded = ((RexLiteral) node).getValueAs(String.class);
+            return encoded == null ? null : decodeQueryVector(encoded);
+        }
+        if (!(node instanceof RexCall) || node.getKind() != SqlKind.ARRAY_VALUE_CONSTRUCTOR) return null;
+
+        List<BigDecimal> elements = new ArrayList<>();
+        for (RexNode operand : ((RexCall) node).getOperands()) {
+            if (!(operand instanceof RexLiteral)) return null;
+
+            BigDecimal value = ((RexLiteral) operand).getValueAs(BigDecimal.class);
+            if (value == null) return null;
+            elements.add(value);
+        }
+        return elements;
+    }
+
+    /**
+     * Method to encode a query vector as a String that can be embedded in generated code.
+     * @param queryVector the query vector.
+     * @return the elements of queryVector separated by ','.
+     */
+    public static String encodeQueryVector(List<BigDecimal> queryVector) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < queryVector.size(); i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append(queryVector.get(i).toPlainString());
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Method to decode a query vector encoded by encodeQueryVector.
+     * @param encoded the encoded query vector.
+     * @return the elements of the query vector.
+     */
+    public static List<BigDecimal> decodeQueryVector(String encoded) {
+        List<BigDecimal> elements = new ArrayList<>();
+        if (encoded == null || encoded.isEmpty()) return elements;
+
+        for (String part : encoded.split(",")) {
+            elements.add(new BigDecimal(part));
+        }
+        return elements;
+    }
+
+    /**
+     * Method to get the metric computed by the call.
+     * @return COSINE for COSINE_SIMILARITY calls, DOT_PRODUCT for SIMILARITY calls.
+     */
+    public VectorMetric getMetric() {
+        return metric;
+    }
+
+    /**
+     * Method to get the index of the input field holding the vectors.
+     * @return the index of the vector field.
+     */
+    public int getVectorField() {
+        return vectorField;
+    }
+
+    /**
+     * Method to get the constant query vector passed to the call.
+     * @return the elements of the query vector.
+     */
+    public List<BigDecimal> getQueryVector() {
+        return queryVector;
+    }
+
+    /**
+     * Method to prepare the constant query vector, see QueryVector.of.
+     * @return the prepared QueryVector.
+     */
+    public QueryVector getPreparedQuery() {
+        return QueryVector.of(queryVector);
+    }
+}
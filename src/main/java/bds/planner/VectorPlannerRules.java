@@ -0,0 +1,40 @@
+package bds.planner;
+
+import org.apache.calcite.plan.RelOptPlanner;
+import org.apache.calcite.plan.RelOptRule;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Class that holds the vector planner rules, together with the rule joining rows to Custom Tables by id and the rule
+ * planning INSERT, UPDATE and DELETE statements on Custom Tables. The rules are added to the planners of the
+ * connections created through VectorDriver.
+ */
+public class VectorPlannerRules {
+
+    /**
+     * Private constructor since this class only contains static methods.
+     */
+    private VectorPlannerRules() {}
+
+    /**
+     * Method to get all the vector planner rules.
+     * @return list of all vector planner rules.
+     */
+    public static List<RelOptRule> getRules() {
+        return Arrays.asList(VectorTopKRule.SCAN, VectorTopKRule.FILTER_SCAN, KeyLookupJoinRule.TABLE_RIGHT,
+                KeyLookupJoinRule.TABLE_LEFT, KeyLookupJoinRule.PROJECT_RIGHT, KeyLookupJoinRule.PROJECT_LEFT,
+                CustomTableModifyRule.INSTANCE);
+    }
+
+    /**
+     * Method to add the vector planner rules to a planner. The rules of the planner are kept, the rules of this class
+     * only match Custom Tables.
+     * @param planner the planner to add the rules to.
+     */
+    public static void addRules(RelOptPlanner planner) {
+        for (RelOptRule rule : getRules()) {
+            planner.addRule(rule);
+        }
+    }
+}
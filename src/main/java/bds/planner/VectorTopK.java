@@ -0,0 +1,251 @@
+package bds.planner;
+
+import bds.vectors.VectorMetric;
+import org.apache.calcite.DataContext;
+import org.apache.calcite.adapter.enumerable.EnumerableRel;
+import org.apache.calcite.adapter.enumerable.EnumerableRelImplementor;
+import org.apache.calcite.adapter.enumerable.JavaRowFormat;
+import org.apache.calcite.adapter.enumerable.PhysType;
+import org.apache.calcite.adapter.enumerable.PhysTypeImpl;
+import org.apache.calcite.linq4j.tree.BlockBuilder;
+import org.apache.calcite.linq4j.tree.Expression;
+import org.apache.calcite.linq4j.tree.Expressions;
+import org.apache.calcite.plan.RelOptCluster;
+import org.apache.calcite.plan.RelOptCost;
+import org.apache.calcite.plan.RelOptPlanner;
+import org.apache.calcite.plan.RelOptTable;
+import org.apache.calcite.plan.RelTraitSet;
+import org.apache.calcite.rel.RelNode;
+import org.apache.calcite.rel.RelWriter;
+import org.apache.calcite.rel.AbstractRelNode;
+import org.apache.calcite.rel.metadata.RelMetadataQuery;
+import org.apache.calcite.rel.type.RelDataType;
+import org.apache.calcite.rex.RexNode;
+import org.apache.calcite.util.ImmutableIntList;
+import com.google.common.collect.ImmutableList;
+import java.util.List;
+
+/**
+ * Relational expression that returns the k rows of its input whose vectors score highest (or lowest) against a
+ * constant query vector, ordered from the best to the worst score. The rows are found with the table's vector index
+ * when useIndex is set, otherwise every input row is scored and the best k are kept in a bounded heap, so the input
+ * is never fully sorted. When the input rows are filtered, the index search is restricted to them, see
+ * VectorTopKRuntime.filteredIndexTopK. When the filters of the input rows on the fields of the table are known, the
+ * rows are read from the table storage instead of the input, see VectorTopKRuntime.scanTopK.
+ * This class does not extend SingleRel, because Calcite's row count metadata assumes that a SingleRel returns as
+ * many rows as its input.
+ */
+public class VectorTopK extends AbstractRelNode implements EnumerableRel {
+    private RelNode input;
+    private final RelOptTable table;
+    private final VectorFunctionCall vectorCall;
+    private final int k;
+    private final boolean descending;
+    private final boolean useIndex;
+    private final int idField;
+    private final ImmutableList<RexNode> tableFilters;
+    private final ImmutableIntList projects;
+
+    /**
+     * Argument constructor for the VectorTopK class.
+     * @param cluster the cluster this expression belongs to.
+     * @param traitSet the traits of this expression.
+     * @param input the input rows, which are the rows of table, optionally filtered.
+     * @param table the table the input rows are read from.
+     * @param vectorCall the vector function call used to score rows.
+     * @param k the number of rows to return.
+     * @param descending true to return the highest scores, false to return the lowest scores.
+     * @param useIndex true to find the rows with the table's vector index instead of scoring the input.
+     * @param idField the position of the id field in the input rows when the index search is restricted to the
+     *                input rows, or -1 when the input holds every row of the table.
+     * @param tableFilters the filters of the input rows on the fields of table, when the rows can be read from the
+     *                     table storage instead of input, or null.
+     * @param projects the indexes of the fields of table in the input rows, or null for all fields.
+     */
+    public VectorTopK(RelOptCluster cluster, RelTraitSet traitSet, RelNode input, RelOptTable table,
+                      VectorFunctionCall vectorCall, int k, boolean descending, boolean useIndex, int idField,
+                      ImmutableList<RexNode> tableFilters, ImmutableIntList projects) {
+        super(cluster, traitSet);
+        this.input = input;
+        this.table = table;
+        this.vectorCall = vectorCall;
+        this.k = k;
+        this.descending = descending;
+        this.useIndex = useIndex;
+        this.idField = idField;
+        this.tableFilters = tableFilters;
+        this.projects = projects;
+    }
+
+    @Override
+    public RelNode copy(RelTraitSet traitSet, List<RelNode> inputs) {
+        return new VectorTopK(getCluster(), traitSet, sole(inputs), table, vectorCall, k, descending, useIndex,
+                idField, tableFilters, projects);
+    }
+
+    /**
+     * Method to get the input of this expression.
+     * @return the input RelNode.
+     */
+    public RelNode getInput() {
+        return input;
+    }
+
+    @Override
+    public List<RelNode> getInputs() {
+        return ImmutableList.of(input);
+    }
+
+    @Override
+    public void replaceInput(int ordinalInParent, RelNode rel) {
+        assert ordinalInParent == 0;
+        this.input = rel;
+        recomputeDigest();
+    }
+
+    @Override
+    protected RelDataType deriveRowType() {
+        return input.getRowType();
+    }
+
+    @Override
+    public RelWriter explainTerms(RelWriter pw) {
+        return super.explainTerms(pw)
+                .input("input", input)
+                .item("metric", vectorCall.getMetric())
+                .item("field", vectorCall.getVectorField())
+                .item("query", vectorCall.getQueryVector())
+                .item("k", k)
+                .item("dir", descending ? "DESC" : "ASC")
+                .item("strategy", !useIndex ? "heap" : isFiltered() ? "filtered-index" : "index");
+    }
+
+    @Override
+    public double estimateRowCount(RelMetadataQuery mq) {
+        return Math.min(k, mq.getRowCount(getInput()));
+    }
+
+    @Override
+    public RelOptCost computeSelfCost(RelOptPlanner planner, RelMetadataQuery mq) {
+        if (useIndex) {
+            double rows = Math.max(1, mq.getRowCount(getInput()));
+            double visited = k * (1 + Math.log(rows));
+            // a filtered search reads the input rows once to know which rows it can return
+            return planner.getCostFactory().makeCost(k, isFiltered() ? rows + visited : visited, 0);
+        }
+
+        double rows = mq.getRowCount(getInput());
+        return planner.getCostFactory().makeCost(rows, rows * Math.log(Math.max(2, k)), 0);
+    }
+
+    @Override
+    public Result implement(EnumerableRelImplementor implementor, Prefer pref) {
+        BlockBuilder builder = new BlockBuilder();
+        PhysType physType = PhysTypeImpl.of(implementor.getTypeFactory(), getRowType(), JavaRowFormat.ARRAY, false);
+        String queryVector = VectorFunctionCall.encodeQueryVector(vectorCall.getQueryVector());
+
+        Expression topK;
+        if (useIndex && isFiltered()) {
+            Expression input = implementInput(implementor, builder);
+            String fieldName = getRowType().getFieldNames().get(vectorCall.getVectorField());
+            List<String> tableName = table.getQualifiedName();
+            topK = Expressions.call(VectorTopKRuntime.class, "filteredIndexTopK",
+                    DataContext.ROOT,
+                    Expressions.constant(tableName.get(0)),
+                    Expressions.constant(tableName.get(tableName.size() - 1)),
+                    Expressions.constant(fieldName),
+                    Expressions.constant(queryVector),
+                    Expressions.constant(k),
+                    tableFilters == null ? Expressions.constant(null, List.class)
+                            : implementor.stash(tableFilters, List.class),
+                    Expressions.constant(projects == null ? null : projects.toIntArray(), int[].class),
+                    input,
+                    Expressions.constant(vectorCall.getVectorField()),
+                    Expressions.constant(idField));
+        } else if (useIndex) {
+            String fieldName = getRowType().getFieldNames().get(vectorCall.getVectorField());
+            List<String> tableName = table.getQualifiedName();
+            topK = Expressions.call(VectorTopKRuntime.class, "indexTopK",
+                    DataContext.ROOT,
+                    Expressions.constant(tableName.get(0)),
+                    Expressions.constant(tableName.get(tableName.size() - 1)),
+                    Expressions.constant(fieldName),
+                    Expressions.constant(queryVector),
+                    Expressions.constant(k));
+        } else if (tableFilters != null) {
+            Expression input = implementInput(implementor, builder);
+            List<String> tableName = table.getQualifiedName();
+            topK = Expressions.call(VectorTopKRuntime.class, "scanTopK",
+                    DataContext.ROOT,
+                    Expressions.constant(tableName.get(0)),
+                    Expressions.constant(tableName.get(tableName.size() - 1)),
+                    implementor.stash(tableFilters, List.class),
+                    Expressions.constant(projects == null ? null : projects.toIntArray(), int[].class),
+                    input,
+                    Expressions.constant(vectorCall.getVectorField()),
+                    Expressions.constant(vectorCall.getMetric().name()),
+                    Expressions.constant(queryVector),
+                    Expressions.constant(k),
+                    Expressions.constant(descending));
+        } else {
+            Expression input = implementInput(implementor, builder);
+            topK = Expressions.call(VectorTopKRuntime.class, "heapTopK",
+                    DataContext.ROOT,
+                    input,
+                    Expressions.constant(vectorCall.getVectorField()),
+                    Expressions.constant(vectorCall.getMetric().name()),
+                    Expressions.constant(queryVector),
+                    Expressions.constant(k),
+                    Expressions.constant(descending));
+        }
+
+        builder.add(Expressions.return_(null, topK));
+        return implementor.result(physType, builder.toBlock());
+    }
+
+    /**
+     * Method to add the code producing the input rows, as Object arrays, to a block.
+     * @return the expression holding the input rows.
+     */
+    private Expression implementInput(EnumerableRelImplementor implementor, BlockBuilder builder) {
+        Result inputResult = implementor.visitChild(this, 0, (EnumerableRel) getInput(), Prefer.ARRAY);
+        Expression input = builder.append("input", inputResult.block);
+        if (inputResult.format != JavaRowFormat.ARRAY) {
+            input = inputResult.physType.convertTo(input, JavaRowFormat.ARRAY);
+        }
+        return input;
+    }
+
+    /**
+     * Method to check if this expression finds its rows with the table's vector index.
+     * @return true if the vector index is used.
+     */
+    public boolean isUseIndex() {
+        return useIndex;
+    }
+
+    /**
+     * Method to check if the index search is restricted to the input rows, which are filtered or only hold some
+     * fields of the table.
+     * @return true if the index search is restricted to the input rows.
+     */
+    public boolean isFiltered() {
+        return idField >= 0;
+    }
+
+    /**
+     * Method to get the vector function call used to score rows.
+     * @return the VectorFunctionCall.
+     */
+    public VectorFunctionCall getVectorCall() {
+        return vectorCall;
+    }
+
+    /**
+     * Method to get the metric used to score rows.
+     * @return the VectorMetric.
+     */
+    public VectorMetric getMetric() {
+        return vectorCall.getMetric();
+    }
+}
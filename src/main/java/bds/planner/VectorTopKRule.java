@@ -0,0 +1,206 @@
+package bds.planner;
+
+import bds.calcite.BaseCustomTable;
+import bds.vectors.VectorMetric;
+import org.apache.calcite.adapter.enumerable.EnumerableConvention;
+import org.apache.calcite.interpreter.Bindables;
+import org.apache.calcite.plan.RelOptRuleCall;
+import org.apache.calcite.plan.RelOptUtil;
+import org.apache.calcite.plan.RelRule;
+import org.apache.calcite.rel.RelFieldCollation;
+import org.apache.calcite.rel.RelNode;
+import org.apache.calcite.rel.core.Filter;
+import org.apache.calcite.rel.core.Project;
+import org.apache.calcite.rel.core.Sort;
+import org.apache.calcite.rel.core.TableScan;
+import org.apache.calcite.rex.RexInputRef;
+import org.apache.calcite.rex.RexLiteral;
+import org.apache.calcite.rex.RexNode;
+import org.apache.calcite.rex.RexShuttle;
+import org.apache.calcite.util.ImmutableIntList;
+import com.google.common.collect.ImmutableList;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Planner rule that rewrites queries of the form
+ * <pre>
+ *   SELECT ..., hr.COSINE_SIMILARITY(vec, ARRAY[...]) AS score FROM hr.table [WHERE ...] ORDER BY score DESC LIMIT k
+ * </pre>
+ * so that a VectorTopK expression finds the k best rows before the projection, instead of scoring and sorting every
+ * row. The sort and the projection are kept above VectorTopK, but they only see k rows. SIMILARITY calls and
+ * ascending order are rewritten too. The table's vector index is used when the order is descending by
+ * COSINE_SIMILARITY and the table declares an index on the vector field. With a WHERE clause, the index search is
+ * restricted to the rows that pass it. The filters are passed to VectorTopK on the fields of the table, so the allowed
+ * rows can be found in the table storage; when some filter cannot be evaluated there, the filtered rows are read
+ * instead, which needs the id field among them: Calcite only reads the fields a query uses, so the id field is added
+ * to a scan that does not read it.
+ */
+public class VectorTopKRule extends RelRule<RuleConfig> {
+
+    /**
+     * Rule matching a Sort over a Project over a scan of a Custom Table.
+     */
+    public static final VectorTopKRule SCAN = RuleConfig.of(VectorTopKRule::new)
+            .withDescription("VectorTopKRule:scan")
+            .withOperandSupplier(b0 -> b0.operand(Sort.class).oneInput(b1 ->
+                    b1.operand(Project.class).oneInput(b2 ->
+                            b2.operand(TableScan.class).noInputs())))
+            .toRule(VectorTopKRule.class);
+
+    /**
+     * Rule matching a Sort over a Project over a Filter over a scan of a Custom Table.
+     */
+    public static final VectorTopKRule FILTER_SCAN = RuleConfig.of(VectorTopKRule::new)
+            .withDescription("VectorTopKRule:filter-scan")
+            .withOperandSupplier(b0 -> b0.operand(Sort.class).oneInput(b1 ->
+                    b1.operand(Project.class).oneInput(b2 ->
+                            b2.operand(Filter.class).oneInput(b3 ->
+                                    b3.operand(TableScan.class).noInputs()))))
+            .toRule(VectorTopKRule.class);
+
+    /**
+     * Creates a VectorTopKRule.
+     * @param config the rule configuration.
+     */
+    protected VectorTopKRule(RuleConfig config) {
+        super(config);
+    }
+
+    @Override
+    public void onMatch(RelOptRuleCall call) {
+        Sort sort = call.rel(0);
+        Project project = call.rel(1);
+        Filter filter = call.getRelList().size() == 4 ? call.rel(2) : null;
+        TableScan scan = call.rel(call.getRelList().size() - 1);
+
+        BaseCustomTable table = scan.getTable().unwrap(BaseCustomTable.class);
+        if (table == null || sort.getCollation().getFieldCollations().size() != 1) return;
+
+        Integer k = getTopCount(sort);
+        if (k == null) return;
+
+        RelFieldCollation collation = sort.getCollation().getFieldCollations().get(0);
+        VectorFunctionCall vectorCall = VectorFunctionCall.match(project.getProjects().get(collation.getFieldIndex()));
+        if (vectorCall == null) return;
+
+        boolean descending = collation.getDirection().isDescending();
+        String fieldName = scan.getRowType().getFieldNames().get(vectorCall.getVectorField());
+        // a query vector with a norm of 0 has a NaN similarity with every row, which only a scan returns in order
+        boolean useIndex = descending && vectorCall.getMetric() == VectorMetric.COSINE
+                && vectorCall.getPreparedQuery().getNorm() > 0 && table.hasVectorIndex(fieldName);
+
+        RelNode input = filter != null ? filter : scan;
+        int idField = -1;
+        if (useIndex && (filter != null || !isFullScan(scan))) {
+            idField = getIdField(scan);
+            if (idField < 0 && filter == null) {
+                scan = addIdField((Bindables.BindableTableScan) scan);
+                input = scan;
+                idField = scan.getRowType().getFieldCount() - 1;
+            }
+            useIndex = idField >= 0;
+        }
+
+        boolean readsStorage = !useIndex || idField >= 0;
+        RelNode enumerableInput = convert(input, input.getTraitSet().replace(EnumerableConvention.INSTANCE));
+        VectorTopK topK = new VectorTopK(scan.getCluster(), scan.getCluster().traitSetOf(EnumerableConvention.INSTANCE),
+                enumerableInput, scan.getTable(), vectorCall, k, descending, useIndex, idField,
+                readsStorage ? getTableFilters(scan, filter) : null, readsStorage ? getProjects(scan) : null);
+
+        Project newProject = project.copy(project.getTraitSet(), topK, project.getProjects(), project.getRowType());
+        call.transformTo(sort.copy(sort.getTraitSet(), newProject, sort.getCollation(), sort.offset, sort.fetch));
+    }
+
+    /**
+     * Method to check if a scan returns every field of every row of its table. Scans that Calcite has pushed filters
+     * or projects into do not, so the index search is restricted to the rows they return.
+     * @return true if scan returns the whole table.
+     */
+    private static boolean isFullScan(TableScan scan) {
+        if (!(scan instanceof Bindables.BindableTableScan)) return true;
+
+        Bindables.BindableTableScan bindableScan = (Bindables.BindableTableScan) scan;
+        return bindableScan.filters.isEmpty()
+                && (bindableScan.projects == null || bindableScan.projects.equals(TableScan.identity(scan.getTable())));
+    }
+
+    /**
+     * Method to get the filters of the rows of a scan, optionally filtered, on the fields of the table: the filters
+     * pushed down to the scan, and the conjunctions of the condition of filter, whose field references are mapped
+     * from the fields the scan returns to the fields of the table.
+     * @param scan the scan of the table.
+     * @param filter the Filter over scan, or null.
+     * @return the filters.
+     */
+    private static ImmutableList<RexNode> getTableFilters(TableScan scan, Filter filter) {
+        ImmutableList.Builder<RexNode> filters = ImmutableList.builder();
+        if (scan instanceof Bindables.BindableTableScan) {
+            filters.addAll(((Bindables.BindableTableScan) scan).filters);
+        }
+        if (filter != null) {
+            ImmutableIntList projects = getProjects(scan);
+            RexShuttle toTableFields = new RexShuttle() {
+                @Override
+                public RexNode visitInputRef(RexInputRef inputRef) {
+                    return projects == null ? inputRef
+                            : new RexInputRef(projects.get(inputRef.getIndex()), inputRef.getType());
+                }
+            };
+            for (RexNode condition : RelOptUtil.conjunctions(filter.getCondition())) {
+                filters.add(condition.accept(toTableFields));
+            }
+        }
+        return filters.build();
+    }
+
+    /**
+     * Method to get the indexes of the fields of the table in the rows of a scan.
+     * @return the indexes, or null if the scan returns every field.
+     */
+    private static ImmutableIntList getProjects(TableScan scan) {
+        return scan instanceof Bindables.BindableTableScan ? ((Bindables.BindableTableScan) scan).projects : null;
+    }
+
+    /**
+     * Method to get the position of the id field, the first field of the table, in the rows of a scan.
+     * @return the position, or -1 if the scan does not return the id field.
+     */
+    private static int getIdField(TableScan scan) {
+        if (!(scan instanceof Bindables.BindableTableScan)) return 0;
+
+        List<Integer> projects = ((Bindables.BindableTableScan) scan).projects;
+        return projects == null ? 0 : projects.indexOf(0);
+    }
+
+    /**
+     * Method to copy a scan, adding the id field after the fields it returns. The fields of the scan keep their
+     * positions, so expressions over the scan still refer to the same fields.
+     * @return the new scan.
+     */
+    private static TableScan addIdField(Bindables.BindableTableScan scan) {
+        List<Integer> projects = new ArrayList<>(scan.projects);
+        projects.add(0);
+        return Bindables.BindableTableScan.create(scan.getCluster(), scan.getTable(), scan.filters, projects);
+    }
+
+    /**
+     * Method to get the number of rows the Sort needs, which is its fetch plus its offset.
+     * @return the number of rows, or null if the Sort has no constant fetch.
+     */
+    private static Integer getTopCount(Sort sort) {
+        Integer fetch = getIntLiteral(sort.fetch);
+        if (fetch == null) return null;
+
+        if (sort.offset == null) return fetch;
+
+        Integer offset = getIntLiteral(sort.offset);
+        return offset == null ? null : fetch + offset;
+    }
+
+    private static Integer getIntLiteral(RexNode node) {
+        if (!(node instanceof RexLiteral)) return null;
+
+        return ((RexLiteral) node).getValueAs(Integer.class);
+    }
+}
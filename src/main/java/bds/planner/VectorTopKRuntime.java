@@ -0,0 +1,330 @@
+package bds.planner;
+
+import bds.calcite.BaseCustomTable;
+import bds.calcite.ParallelScan;
+import bds.index.SearchResult;
+import bds.vectors.DenseVector;
+import bds.vectors.QueryVector;
+import bds.vectors.VectorFunctions;
+import bds.vectors.VectorMetric;
+import org.apache.calcite.DataContext;
+import org.apache.calcite.linq4j.Enumerable;
+import org.apache.calcite.linq4j.Enumerator;
+import org.apache.calcite.linq4j.Linq4j;
+import org.apache.calcite.rex.RexNode;
+import org.apache.calcite.schema.SchemaPlus;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Runtime methods called by the code that Calcite generates for VectorTopK.
+ */
+public class VectorTopKRuntime {
+    public static final String BRUTE_FORCE_PERCENT_PROPERTY = "bds.vector.bruteForcePercent";
+
+    private static final int DEFAULT_BRUTE_FORCE_PERCENT = 10;
+
+    /**
+     * Private constructor since this class only contains static methods.
+     */
+    private VectorTopKRuntime() {}
+
+    /**
+     * Method to find the top k rows of a table with its vector index. The rows are ordered from the most to the least
+     * similar.
+     * @param root the DataContext of the query.
+     * @param schemaName the name of the schema holding the table.
+     * @param tableName the name of the table to search.
+     * @param fieldName the name of the indexed vector field.
+     * @param queryVector the query vector, encoded by VectorFunctionCall.encodeQueryVector.
+     * @param k the number of rows to return.
+     * @return the top k rows.
+     */
+    public static Enumerable<Object[]> indexTopK(DataContext root, String schemaName, String tableName,
+                                                 String fieldName, String queryVector, int k) {
+        SchemaPlus schema = root.getRootSchema().getSubSchema(schemaName);
+        BaseCustomTable table = (BaseCustomTable) schema.getTable(tableName);
+        DenseVector query = DenseVector.fromDecimals(VectorFunctionCall.decodeQueryVector(queryVector));
+        List<SearchResult> results = table.searchVectorIndex(root, fieldName, query, k, 0);
+
+        List<Object> ids = new ArrayList<>(results.size());
+        for (SearchResult result : results) {
+            ids.add(result.getId());
+        }
+        List<Object[]> rows = new ArrayList<>(results.size());
+        for (Object[] row : table.getRows(root, ids, null)) {
+            if (row != null) {
+                rows.add(row);
+            }
+        }
+        return Linq4j.asEnumerable(rows);
+    }
+
+    /**
+     * Method to find the top k rows among the filtered rows of a table. The search of the vector index is restricted
+     * to the rows that pass the filter, see BaseCustomTable.searchVectorIndex, so the index returns k rows that pass
+     * the filter instead of k rows of which the filter may reject most. When the filters can be evaluated on the
+     * stored rows, see BaseCustomTable.createRowScan, the allowed rows are found as bitmaps of row positions, using
+     * the secondary indexes of the table, and only the k rows found are read, see BaseCustomTable.getRows. Otherwise
+     * the input rows are collected and their ids restrict the search. When fewer rows than the
+     * 'bds.vector.bruteForcePercent' system property percent of the table (10 by default) pass the filter, a filtered
+     * index search would visit many rejected rows for each accepted one, so the allowed rows are scored exactly
+     * instead, which costs at most that percent of a full scan. The rows are ordered from the most to the least
+     * similar.
+     * @param root the DataContext of the query.
+     * @param schemaName the name of the schema holding the table.
+     * @param tableName the name of the table to search.
+     * @param fieldName the name of the indexed vector field.
+     * @param queryVector the query vector, encoded by VectorFunctionCall.encodeQueryVector.
+     * @param k the number of rows to return.
+     * @param filters the filters of the input rows on the fields of the table, or null if they are not known.
+     * @param projects the indexes of the fields of the table in the input rows, or null for all fields.
+     * @param input the rows of the table that pass the filter.
+     * @param vectorField the index of the vector field in the input rows.
+     * @param idField the index of the id field in the input rows.
+     * @return the top k rows.
+     */
+    public static Enumerable<Object[]> filteredIndexTopK(DataContext root, String schemaName, String tableName,
+                                                         String fieldName, String queryVector, int k,
+                                                         List<RexNode> filters, int[] projects,
+                                                         Enumerable<Object[]> input, int vectorField, int idField) {
+        if (k <= 0) return Linq4j.emptyEnumerable();
+
+        SchemaPlus schema = root.getRootSchema().getSubSchema(schemaName);
+        BaseCustomTable table = (BaseCustomTable) schema.getTable(tableName);
+        long rowCount = table.getSnapshot(root).getRowCount();
+        int percent = Integer.getInteger(BRUTE_FORCE_PERCENT_PROPERTY, DEFAULT_BRUTE_FORCE_PERCENT);
+        if (filters != null) {
+            List<RexNode> remainingFilters = new ArrayList<>(filters);
+            BaseCustomTable.RowScan rowScan = table.createRowScan(root, remainingFilters,
+                    new int[] {0, table.getFieldIndex(fieldName)});
+            if (remainingFilters.isEmpty()) {
+                BitSet[] allowedRows = rowScan.getRowBitmaps();
+                long allowedCount = 0;
+                for (BitSet segmentRows : allowedRows) {
+                    allowedCount += segmentRows.cardinality();
+                }
+
+                List<Object> ids = new ArrayList<>(k);
+                if (allowedCount <= k || allowedCount * 100 < rowCount * percent) {
+                    for (Object[] idAndVector : scoreRows(rowScan, allowedRows, queryVector, k)) {
+                        ids.add(idAndVector[0]);
+                    }
+                } else {
+                    DenseVector query = DenseVector.fromDecimals(VectorFunctionCall.decodeQueryVector(queryVector));
+                    for (SearchResult result : table.searchVectorIndex(rowScan, fieldName, query, k,
+                            allowedCount < rowCount ? allowedRows : null)) {
+                        ids.add(result.getId());
+                    }
+                }
+
+                List<Object[]> topRows = new ArrayList<>(ids.size());
+                for (Object[] row : table.getRows(root, ids, projects)) {
+                    if (row != null) {
+                        topRows.add(row);
+                    }
+                }
+                return Linq4j.asEnumerable(topRows);
+            }
+        }
+
+        List<Object[]> rows = input.toList();
+        if (rows.size() <= k || rows.size() * 100L < rowCount * percent) {
+            return heapTopK(root, Linq4j.asEnumerable(rows), vectorField, VectorMetric.COSINE.name(), queryVector, k,
+                    true);
+        }
+
+        Map<Object, Object[]> rowsById = new HashMap<>(rows.size() * 2);
+        for (Object[] row : rows) {
+            rowsById.put(row[idField], row);
+        }
+        DenseVector query = DenseVector.fromDecimals(VectorFunctionCall.decodeQueryVector(queryVector));
+        List<SearchResult> results = table.searchVectorIndex(root, fieldName, query, k, null, 0,
+                rows.size() < rowCount ? rowsById.keySet() : null);
+
+        List<Object[]> topRows = new ArrayList<>(results.size());
+        for (SearchResult result : results) {
+            Object[] row = rowsById.get(result.getId());
+            if (row != null) {
+                topRows.add(row);
+            }
+        }
+        return Linq4j.asEnumerable(topRows);
+    }
+
+    /**
+     * Method to find the k allowed rows of a RowScan with the highest cosine similarity by scoring each of them.
+     * @param rowScan the RowScan reading the id and the vector of the rows.
+     * @param allowedRows the positions of the allowed rows of each segment.
+     * @return the id and the vector of the top k rows, from the most to the least similar.
+     */
+    private static Enumerable<Object[]> scoreRows(BaseCustomTable.RowScan rowScan, BitSet[] allowedRows,
+                                                  String queryVector, int k) {
+        QueryVector query = QueryVector.parse(queryVector);
+        PriorityQueue<ScoredRow> heap = new PriorityQueue<>(k + 1);
+        int position = 0;
+        for (int i = 0; i < allowedRows.length; i++) {
+            for (int row = allowedRows[i].nextSetBit(0); row >= 0; row = allowedRows[i].nextSetBit(row + 1)) {
+                Object[] idAndVector = rowScan.readRow(i, row);
+                double score = score(VectorMetric.COSINE, idAndVector[1], query);
+                offer(heap, new ScoredRow(idAndVector, position++, score, true), k);
+            }
+        }
+        return toRows(heap);
+    }
+
+    /**
+     * Method to find the top k rows of input by scoring every row, keeping the best k rows in a bounded heap. Rows
+     * are scored with the same Vector Functions that SQL queries call, while input is enumerated, so the input rows
+     * are never collected. Rows with equal scores keep their input order. The rows are ordered from the best to the
+     * worst score, in the order of Calcite's sort: a NaN score, like the cosine similarity of a vector with a norm of
+     * 0, is higher than any other score, so it comes first in descending order and last in ascending order.
+     * @param root the DataContext of the query.
+     * @param input the rows to score.
+     * @param vectorField the index of the vector field in the rows.
+     * @param metricName the name of the VectorMetric used to score rows.
+     * @param queryVector the query vector, encoded by VectorFunctionCall.encodeQueryVector.
+     * @param k the number of rows to return.
+     * @param descending true to return the highest scores, false to return the lowest scores.
+     * @return the top k rows.
+     */
+    public static Enumerable<Object[]> heapTopK(DataContext root, Enumerable<Object[]> input, int vectorField,
+                                                String metricName, String queryVector, int k, boolean descending) {
+        if (k <= 0) return Linq4j.emptyEnumerable();
+
+        VectorMetric metric = VectorMetric.valueOf(metricName);
+        QueryVector query = QueryVector.parse(queryVector);
+
+        PriorityQueue<ScoredRow> heap = new PriorityQueue<>(k + 1);
+        try (Enumerator<Object[]> rows = input.enumerator()) {
+            for (int position = 0; rows.moveNext(); position++) {
+                Object[] row = rows.current();
+                offer(heap, new ScoredRow(row, position, score(metric, row[vectorField], query), descending), k);
+            }
+        }
+        return toRows(heap);
+    }
+
+    /**
+     * Method to find the top k rows of a scan of a table, like heapTopK. When the scan is split into partitions that
+     * run in parallel, see ParallelScan, the rows are read from their positions in the table storage, see
+     * BaseCustomTable.createRowScan, each partition keeps its best k rows in its own heap, and the heaps of all
+     * partitions are merged, so only k rows per partition are ever held. Otherwise, or when some filters of the scan
+     * cannot be evaluated on the stored rows, the rows of input are scored by heapTopK. Rows with equal scores keep
+     * their scan order, so the result does not depend on the partitioning.
+     * @param root the DataContext of the query.
+     * @param schemaName the name of the schema holding the table.
+     * @param tableName the name of the table to scan.
+     * @param filters the filters pushed down to the scan.
+     * @param projects the indexes of the fields the scan returns.
+     * @param input the rows of the scan, used when the rows are not scored from storage.
+     * @param vectorField the index of the vector field in the rows.
+     * @param metricName the name of the VectorMetric used to score rows.
+     * @param queryVector the query vector, encoded by VectorFunctionCall.encodeQueryVector.
+     * @param k the number of rows to return.
+     * @param descending true to return the highest scores, false to return the lowest scores.
+     * @return the top k rows.
+     */
+    public static Enumerable<Object[]> scanTopK(DataContext root, String schemaName, String tableName,
+                                                List<RexNode> filters, int[] projects, Enumerable<Object[]> input,
+                                                int vectorField, String metricName, String queryVector, int k,
+                                                boolean descending) {
+        if (k <= 0) return Linq4j.emptyEnumerable();
+
+        SchemaPlus schema = root.getRootSchema().getSubSchema(schemaName);
+        BaseCustomTable table = (BaseCustomTable) schema.getTable(tableName);
+        List<RexNode> remainingFilters = new ArrayList<>(filters);
+        BaseCustomTable.RowScan rowScan = table.createRowScan(root, remainingFilters, projects);
+        ParallelScan parallelScan = ParallelScan.fromDataContext(root);
+        if (!remainingFilters.isEmpty() || !parallelScan.isParallel(rowScan.getRowCount())) {
+            return heapTopK(root, input, vectorField, metricName, queryVector, k, descending);
+        }
+
+        VectorMetric metric = VectorMetric.valueOf(metricName);
+        QueryVector query = QueryVector.parse(queryVector);
+
+        List<PriorityQueue<ScoredRow>> partitionHeaps = parallelScan.mapRanges(rowScan.getRowCount(),
+                (from, to) -> {
+                    PriorityQueue<ScoredRow> heap = new PriorityQueue<>(k + 1);
+                    for (int position = from; position < to; position++) {
+                        Object[] row = rowScan.getRow(position);
+                        if (row != null) {
+                            double score = score(metric, row[vectorField], query);
+                            offer(heap, new ScoredRow(row, position, score, descending), k);
+                        }
+                    }
+                    return heap;
+                });
+
+        PriorityQueue<ScoredRow> heap = new PriorityQueue<>(k + 1);
+        for (PriorityQueue<ScoredRow> partitionHeap : partitionHeaps) {
+            for (ScoredRow scoredRow : partitionHeap) {
+                offer(heap, scoredRow, k);
+            }
+        }
+        return toRows(heap);
+    }
+
+    /**
+     * Method to empty a heap into its rows, ordered from the best to the worst.
+     */
+    private static Enumerable<Object[]> toRows(PriorityQueue<ScoredRow> heap) {
+        Object[][] result = new Object[heap.size()][];
+        for (int i = result.length - 1; i >= 0; i--) {
+            result[i] = heap.poll().row;
+        }
+        return Linq4j.asEnumerable(result);
+    }
+
+    /**
+     * Method to add a row to a heap holding at most k rows, dropping the worst row when the heap is full.
+     */
+    private static void offer(PriorityQueue<ScoredRow> heap, ScoredRow scoredRow, int k) {
+        if (heap.size() < k) {
+            heap.add(scoredRow);
+        } else if (scoredRow.compareTo(heap.peek()) > 0) {
+            heap.poll();
+            heap.add(scoredRow);
+        }
+    }
+
+    /**
+     * Method to score a vector with the Vector Function matching metric.
+     */
+    private static double score(VectorMetric metric, Object vector, QueryVector query) {
+        if (metric == VectorMetric.COSINE) {
+            return VectorFunctions.cosineSimilarity(vector, query);
+        }
+        return VectorFunctions.similarity(vector, query);
+    }
+
+    /**
+     * A row together with its input position and score. Rows are ordered from the worst to the best: by score in the
+     * direction of the query, then by descending position so that earlier rows win ties. Scores are compared with
+     * Double.compare, like Calcite's sort compares them, instead of negating ascending scores, which would leave NaN
+     * scores the best in both directions. The head of a PriorityQueue is the worst row kept.
+     */
+    private static final class ScoredRow implements Comparable<ScoredRow> {
+        private final Object[] row;
+        private final int position;
+        private final double score;
+        private final boolean descending;
+
+        private ScoredRow(Object[] row, int position, double score, boolean descending) {
+            this.row = row;
+            this.position = position;
+            this.score = score;
+            this.descending = descending;
+        }
+
+        @Override
+        public int compareTo(ScoredRow other) {
+            int cmp = descending ? Double.compare(score, other.score) : Double.compare(other.score, score);
+            return cmp != 0 ? cmp : Integer.compare(other.position, position);
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package bds.query;
 
 import bds.calcite.CustomSchema;
+import bds.planner.VectorDriver;
 import com.mysql.cj.jdbc.MysqlDataSource;
 import org.apache.calcite.adapter.jdbc.JdbcSchema;
 import org.apache.calcite.config.Lex;
@@ -17,17 +18,29 @@ public class CalciteConnector {
     private CalciteConnection calciteConnection;
 
     /**
-     * Method to create a new CalciteConnection.
+     * Method to create a new CalciteConnection. The connection is created through VectorDriver, so that queries on
+     * the Custom Tables are planned with the vector planner rules and can be rewritten to use vector top-k scans.
      * @return newly created CalciteConnection.
      * @throws ClassNotFoundException may be thrown.
      * @throws SQLException may be thrown.
      */
     public CalciteConnection connect() throws ClassNotFoundException, SQLException {
-        Class.forName("org.apache.calcite.jdbc.Driver");
+        return connect(new Properties());
+    }
 
+    /**
+     * Method to create a new CalciteConnection with extra connection properties, like the ParallelScan settings
+     * 'bds.scan.parallelism', 'bds.scan.partitionSize' and 'bds.scan.executor'.
+     * @param properties the extra connection properties.
+     * @return newly created CalciteConnection.
+     * @throws ClassNotFoundException may be thrown.
+     * @throws SQLException may be thrown.
+     */
+    public CalciteConnection connect(Properties properties) throws ClassNotFoundException, SQLException {
         Properties info = new Properties();
+        info.putAll(properties);
         info.setProperty("lex", "JAVA");
-        Connection connection = DriverManager.getConnection("jdbc:calcite:", info);
+        Connection connection = new VectorDriver().connect("jdbc:calcite:", info);
 
         calciteConnection = connection.unwrap(CalciteConnection.class);
         SchemaPlus rootSchema = calciteConnection.getRootSchema();
@@ -44,8 +57,6 @@ public class CalciteConnector {
      * @throws SQLException may be thrown.
      */
     public CalciteConnection connectMysql() throws ClassNotFoundException, SQLException {
-        Class.forName("org.apache.calcite.jdbc.Driver");
-
         Properties info = new Properties();
         info.setProperty("lex", Lex.MYSQL.name());
 
@@ -54,7 +65,7 @@ public class CalciteConnector {
         mysqlProperties.setProperty("user", "root"); // Replace with your MySQL user
         mysqlProperties.setProperty("password", "password"); // Replace with your MySQL password
 
-        Connection connection = DriverManager.getConnection("jdbc:calcite:", info);
+        Connection connection = new VectorDriver().connect("jdbc:calcite:", info);
 
         calciteConnection = connection.unwrap(CalciteConnection.class);
         SchemaPlus rootSchema = calciteConnection.getRootSchema();
@@ -0,0 +1,131 @@
+package bds.storage;
+
+import org.apache.calcite.sql.type.SqlTypeName;
+import java.nio.ByteBuffer;
+
+/**
+ * A single column of a ColumnarStore. The values of a column are kept in primitive arrays indexed by row position,
+ * and the null values are tracked in a RowBitmap, so rows have no per-row object overhead. The columns of a store
+ * opened from a segment file override the read methods to read the mapped file instead.
+ * A column has a single writer and any number of readers that do not lock. The arrays are held in volatile fields
+ * and are replaced by larger copies when they grow, so a reader always sees the values of the rows that were
+ * committed before it took its Snapshot.
+ */
+public abstract class Column {
+    protected static final int INITIAL_CAPACITY = 16;
+
+    private final SqlTypeName type;
+    private final RowBitmap nulls = new RowBitmap();
+
+    /**
+     * Argument constructor for the Column class.
+     * @param type the SqlTypeName of the column.
+     */
+    protected Column(SqlTypeName type) {
+        this.type = type;
+    }
+
+    /**
+     * Method to create an empty column for a field type. BIGINT and INTEGER fields are stored in long and int arrays,
+     * VARCHAR fields are dictionary encoded, and vector fields (SqlTypeName.OTHER) share one float buffer. Fields of
+     * any other type are stored as objects.
+     * @param type the SqlTypeName of the field.
+     * @return the newly created Column.
+     */
+    public static Column create(SqlTypeName type) {
+        switch (type) {
+            case BIGINT:
+                return new LongColumn(type);
+            case INTEGER:
+                return new IntColumn(type);
+            case VARCHAR:
+                return new DictionaryColumn(type);
+            case OTHER:
+                return new VectorColumn(type);
+            default:
+                return new ObjectColumn(type);
+        }
+    }
+
+    /**
+     * Method to get the type of this column.
+     * @return the SqlTypeName of the column.
+     */
+    public SqlTypeName getType() {
+        return type;
+    }
+
+    /**
+     * Method to check if the value of a row is null.
+     * @param row the position of the row.
+     * @return true if the value is null.
+     */
+    public boolean isNull(int row) {
+        return nulls.get(row);
+    }
+
+    /**
+     * Method to get the value of a row as the Java object Calcite expects for the column type.
+     * @param row the position of the row.
+     * @return the value, or null.
+     */
+    public Object get(int row) {
+        return isNull(row) ? null : getValue(row);
+    }
+
+    /**
+     * Method to set the value of a row. The column grows when row is past its capacity.
+     * @param row the position of the row.
+     * @param value the value, or null.
+     */
+    void set(int row, Object value) {
+        if (value == null) {
+            nulls.set(row);
+            setDefault(row);
+        } else {
+            nulls.clear(row);
+            setValue(row, value);
+        }
+    }
+
+    /**
+     * Method to estimate the number of bytes of heap used by the values of this column.
+     * @return the estimated memory usage in bytes.
+     */
+    public long getMemoryUsage() {
+        return nulls.getMemoryUsage();
+    }
+
+    /**
+     * Method to read a non-null value.
+     */
+    protected abstract Object getValue(int row);
+
+    /**
+     * Method to store a non-null value.
+     */
+    protected abstract void setValue(int row, Object value);
+
+    /**
+     * Method to store the placeholder of a null value.
+     */
+    protected abstract void setDefault(int row);
+
+    /**
+     * Method to check if the bit of a row is set in a null bitmap stored as little-endian longs, like the null
+     * bitmaps of a segment file.
+     * @param bitmap the buffer holding the bitmap.
+     * @param row the position of the row.
+     * @return true if the bit of row is set.
+     */
+    protected static boolean isSet(ByteBuffer bitmap, int row) {
+        return (bitmap.getLong((row >>> 6) << 3) & (1L << (row & 63))) != 0;
+    }
+
+    /**
+     * Method to compute the new capacity of an array that needs to hold at least required elements.
+     */
+    protected static int grow(int capacity, int required) {
+        return Math.max(required, Math.max(INITIAL_CAPACITY, capacity + (capacity >> 1)));
+    }
+}
@@ -0,0 +1,346 @@
+package bds.storage;
+
+import org.apache.calcite.sql.type.SqlTypeName;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * In-memory columnar storage for the rows of a Custom Table. Each field is stored in its own Column, see
+ * Column.create, and rows are identified by their position. The first field is the key of the row: adding a row
+ * with a key that is already stored replaces that row, like putting an entry into a Map.
+ * The store keeps multiple versions of its rows. Rows are never changed in place: a replaced row is appended at a new
+ * position that links back to the old one, and replacing or deleting a row records the version of the commit on the
+ * old position. Each commit publishes a new Snapshot, and readers read through the Snapshot they took when they
+ * started, so they never lock and never see part of a commit, while a single writer at a time adds new versions.
+ * Positions that are no longer visible stay in the store until it is compacted with copyOf.
+ * Appended rows are also summarized in the ZoneMap of the store, the block metadata scans use to skip rows.
+ * A store opened from a segment file by SegmentFile.open is read-only: its columns read the mapped file directly and
+ * no rows can be added, but its rows can still be deleted, which only records versions on the heap.
+ * TableStorage changes several stores in one commit with the package methods appendRow, deleteKey, deleteRowAt and
+ * commit.
+ */
+public class ColumnarStore {
+    private final List<String> fieldNames;
+    private final List<SqlTypeName> fieldTypes;
+    private final Column[] columns;
+    private final KeyIndex keys;
+    private final boolean readOnly;
+    private final RowVersions versions = new RowVersions();
+    private volatile ZoneMap zoneMap;
+    private int size;
+    private int deletedCount;
+    private long version;
+    private volatile Snapshot current;
+
+    /**
+     * Argument constructor for the ColumnarStore class.
+     * @param fieldNames the names of the fields, the first field is the key of the rows.
+     * @param fieldTypes the types of the fields.
+     */
+    public ColumnarStore(List<String> fieldNames, List<SqlTypeName> fieldTypes) {
+        if (fieldNames.isEmpty() || fieldNames.size() != fieldTypes.size()) {
+            throw new IllegalArgumentException("a ColumnarStore needs a key field and one type per field");
+        }
+        this.fieldNames = Collections.unmodifiableList(new ArrayList<>(fieldNames));
+        this.fieldTypes = Collections.unmodifiableList(new ArrayList<>(fieldTypes));
+        this.columns = new Column[fieldTypes.size()];
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = Column.create(fieldTypes.get(i));
+        }
+        this.keys = new HashKeyIndex(HashKeyIndex.isNumeric(columns[0]));
+        this.zoneMap = new ZoneMap(columns);
+        this.readOnly = false;
+        this.current = new Snapshot(this, 0, 0, 0);
+    }
+
+    /**
+     * Constructor for a read-only ColumnarStore over existing columns, used by SegmentFile.open.
+     * @param fieldNames the names of the fields.
+     * @param fieldTypes the types of the fields.
+     * @param columns the columns holding the values of the fields.
+     * @param keys the index of the row keys.
+     * @param size the number of rows.
+     */
+    ColumnarStore(List<String> fieldNames, List<SqlTypeName> fieldTypes, Column[] columns, KeyIndex keys, int size) {
+        this.fieldNames = Collections.unmodifiableList(new ArrayList<>(fieldNames));
+        this.fieldTypes = Collections.unmodifiableList(new ArrayList<>(fieldTypes));
+        this.columns = columns;
+        this.keys = keys;
+        this.readOnly = true;
+        this.size = size;
+        this.current = new Snapshot(this, size, 0, 0);
+    }
+
+    /**
+     * Method to make a writable heap copy of the rows of a Snapshot, for example of a store opened from a segment
+     * file, or to compact a store holding many deleted rows. Only the visible rows are copied.
+     * @param snapshot the Snapshot to copy.
+     * @return the new ColumnarStore.
+     */
+    public static ColumnarStore copyOf(Snapshot snapshot) {
+        ColumnarStore store = snapshot.getStore();
+        int size = snapshot.size();
+        int[] rows = new int[size - snapshot.getDeletedCount()];
+        int count = 0;
+        for (int row = 0; row < size && count < rows.length; row++) {
+            if (snapshot.isVisible(row)) {
+                rows[count++] = row;
+            }
+        }
+        return copyOf(new ColumnarStore[] {store}, new int[count], Arrays.copyOf(rows, count));
+    }
+
+    /**
+     * Method to copy rows of several stores with the same fields into a new store, as a single commit.
+     * @param stores the stores to copy from.
+     * @param sources the index in stores of the store holding each row to copy.
+     * @param rows the position of each row to copy in its store.
+     * @return the new ColumnarStore holding the rows in the order of rows.
+     */
+    static ColumnarStore copyOf(ColumnarStore[] stores, int[] sources, int[] rows) {
+        ColumnarStore copy = new ColumnarStore(stores[0].getFieldNames(), stores[0].getFieldTypes());
+        Object[] values = new Object[copy.columns.length];
+        synchronized (copy) {
+            for (int i = 0; i < rows.length; i++) {
+                ColumnarStore store = stores[sources[i]];
+                for (int field = 0; field < values.length; field++) {
+                    values[field] = store.getValue(rows[i], field);
+                }
+                copy.appendRow(values);
+            }
+            copy.commit();
+        }
+        return copy;
+    }
+
+    /**
+     * Method to add a row, or to replace the row with the same key, as a commit of its own.
+     * @param values the values of the fields, in field order. The first value is the key and must not be null.
+     *               Vector values can be float arrays, DenseVector instances, or any value DenseVector.from accepts.
+     * @return the position of the row.
+     */
+    public synchronized int addRow(Object... values) {
+        int row = appendRow(values);
+        commit();
+        return row;
+    }
+
+    /**
+     * Method to delete the row with a key, as a commit of its own.
+     * @param key the key of the row.
+     * @return true if a row was deleted, false if no row has that key.
+     */
+    public synchronized boolean deleteRow(Object key) {
+        boolean deleted = deleteKey(key);
+        commit();
+        return deleted;
+    }
+
+    /**
+     * Method to apply changes as a single commit, so readers see either none or all of them.
+     * @param records the changes to apply, in order.
+     */
+    public synchronized void apply(List<LogRecord> records) {
+        for (LogRecord record : records) {
+            if (record.getOperation() == LogRecord.UPSERT) {
+                appendRow(record.getValues());
+            } else {
+                deleteKey(record.getValues()[0]);
+            }
+        }
+        commit();
+    }
+
+    /**
+     * Method to get the current Snapshot, holding the rows of the last commit.
+     * @return the current Snapshot.
+     */
+    public Snapshot snapshot() {
+        return current;
+    }
+
+    /**
+     * Method to find the position of the current row with a key.
+     * @param key the key of the row.
+     * @return the position of the row, or -1 if no current row has that key.
+     */
+    public int findRow(Object key) {
+        return current.findRow(key);
+    }
+
+    /**
+     * Method to check if this store is read-only.
+     * @return true if rows cannot be added, like in a store opened from a segment file.
+     */
+    public boolean isReadOnly() {
+        return readOnly;
+    }
+
+    /**
+     * Method to get the number of row positions of the last commit, including the positions that are no longer
+     * visible.
+     * @return the number of row positions.
+     */
+    public int size() {
+        return current.size();
+    }
+
+    /**
+     * Method to get the names of the fields.
+     * @return unmodifiable list of the field names.
+     */
+    public List<String> getFieldNames() {
+        return fieldNames;
+    }
+
+    /**
+     * Method to get the types of the fields.
+     * @return unmodifiable list of the field types.
+     */
+    public List<SqlTypeName> getFieldTypes() {
+        return fieldTypes;
+    }
+
+    /**
+     * Method to get the column of a field.
+     * @param field the index of the field.
+     * @return the Column holding the values of the field.
+     */
+    public Column getColumn(int field) {
+        return columns[field];
+    }
+
+    /**
+     * Method to get the block metadata of the rows, which covers every row position of the last commit. The map of
+     * a store opened from a segment file is built from its columns the first time this method is called.
+     * @return the ZoneMap of the store.
+     */
+    public ZoneMap getZoneMap() {
+        ZoneMap map = zoneMap;
+        if (map == null) {
+            synchronized (this) {
+                map = zoneMap;
+                if (map == null) {
+                    map = ZoneMap.build(columns, size);
+                    zoneMap = map;
+                }
+            }
+        }
+        return map;
+    }
+
+    /**
+     * Method to get the value of a field in a row.
+     * @param row the position of the row.
+     * @param field the index of the field.
+     * @return the value, or null.
+     */
+    public Object getValue(int row, int field) {
+        return columns[field].get(row);
+    }
+
+    /**
+     * Method to estimate the number of bytes of heap used by the stored rows, including the key lookup and the block
+     * metadata. The rows of a store opened from a segment file are not counted, since they stay in the mapped file.
+     * @return the estimated memory usage in bytes.
+     */
+    public long getMemoryUsage() {
+        ZoneMap map = zoneMap;
+        long usage = keys.getMemoryUsage() + versions.getMemoryUsage() + (map == null ? 0 : map.getMemoryUsage());
+        for (Column column : columns) {
+            usage += column.getMemoryUsage();
+        }
+        return usage;
+    }
+
+    /**
+     * Method to get the version information of the rows, read by Snapshot.
+     */
+    RowVersions getVersions() {
+        return versions;
+    }
+
+    /**
+     * Method to find the position of the newest row with a key, which may not be committed yet, read by Snapshot.
+     */
+    int findNewestRow(Object key) {
+        return keys.find(key);
+    }
+
+    /**
+     * Method to check if a row is current for the writer, that is neither deleted nor replaced, including by the
+     * commit in progress.
+     */
+    boolean isCurrent(int row) {
+        return versions.getDeletedVersion(row) == 0;
+    }
+
+    /**
+     * Method to append a row to the commit in progress, replacing the current row with the same key. Like the other
+     * package methods that change rows, it must be called by the single writer of the store, which holds the monitor
+     * of the store or is the only thread knowing it, and the change is visible to readers after commit.
+     * @return the position of the row.
+     */
+    int appendRow(Object[] values) {
+        checkWritable();
+        if (values.length != columns.length) {
+            throw new IllegalArgumentException("expected " + columns.length + " values but got " + values.length);
+        }
+        if (values[0] == null) {
+            throw new IllegalArgumentException("the key of a row must not be null");
+        }
+
+        int row = size;
+        for (int i = 0; i < columns.length; i++) {
+            columns[i].set(row, values[i]);
+        }
+        zoneMap.add(row);
+        Object key = columns[0].get(row);
+        int previous = keys.find(key);
+        if (previous >= 0) {
+            versions.setPreviousRow(row, previous);
+            deleteRowAt(previous);
+        }
+        keys.put(key, row);
+        size = row + 1;
+        return row;
+    }
+
+    /**
+     * Method to delete the current row with a key in the commit in progress. The key stays in the index, so older
+     * Snapshots can still find the row.
+     * @return true if a current row had that key.
+     */
+    boolean deleteKey(Object key) {
+        int row = keys.find(key);
+        return row >= 0 && deleteRowAt(row);
+    }
+
+    /**
+     * Method to delete the row at a position in the commit in progress. Rows of read-only stores can be deleted too.
+     * @return true if the row was current.
+     */
+    boolean deleteRowAt(int row) {
+        if (versions.getDeletedVersion(row) != 0) return false;
+
+        versions.setDeletedVersion(row, version + 1);
+        deletedCount++;
+        return true;
+    }
+
+    /**
+     * Method to make the changes of the commit in progress visible to new readers.
+     */
+    void commit() {
+        version++;
+        current = new Snapshot(this, size, version, deletedCount);
+    }
+
+    private void checkWritable() {
+        if (readOnly) {
+            throw new UnsupportedOperationException("a store opened from a segment file cannot be modified");
+        }
+    }
+}
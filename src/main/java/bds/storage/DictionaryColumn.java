@@ -0,0 +1,113 @@
+package bds.storage;
+
+import org.apache.calcite.sql.type.SqlTypeName;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Column storing VARCHAR values with dictionary encoding: every distinct String is stored once in the dictionary,
+ * and each row only holds the int code of its value. Equality predicates can compare the codes instead of the
+ * Strings. Dictionary values are never removed, so a code read from a row can always be decoded.
+ */
+public class DictionaryColumn extends Column {
+    private volatile int[] codes = new int[0];
+    private volatile String[] dictionary = new String[0];
+    private volatile int dictionarySize;
+    private final Map<String, Integer> codesByValue = new ConcurrentHashMap<>();
+
+    DictionaryColumn(SqlTypeName type) {
+        super(type);
+    }
+
+    /**
+     * Method to get the dictionary code of the value of a row. Check isNull first, null values are read as -1.
+     * @param row the position of the row.
+     * @return the code of the value.
+     */
+    public int getCode(int row) {
+        return codes[row];
+    }
+
+    /**
+     * Method to get the value of a row.
+     * @param row the position of the row.
+     * @return the value, or null.
+     */
+    public String getString(int row) {
+        int code = codes[row];
+        return code < 0 ? null : dictionary[code];
+    }
+
+    /**
+     * Method to get the value of a dictionary code.
+     * @param code the code, between 0 and getDictionarySize - 1.
+     * @return the value of code.
+     */
+    public String decode(int code) {
+        return dictionary[code];
+    }
+
+    /**
+     * Method to find the dictionary code of a value.
+     * @param value the value to look up.
+     * @return the code of value, or -1 if no row holds value.
+     */
+    public int findCode(String value) {
+        Integer code = codesByValue.get(value);
+        return code == null ? -1 : code;
+    }
+
+    /**
+     * Method to get the number of distinct values stored in this column.
+     * @return the size of the dictionary.
+     */
+    public int getDictionarySize() {
+        return dictionarySize;
+    }
+
+    @Override
+    protected Object getValue(int row) {
+        return getString(row);
+    }
+
+    @Override
+    protected synchronized void setValue(int row, Object value) {
+        ensureCapacity(row + 1);
+        String string = value.toString();
+        Integer code = codesByValue.get(string);
+        if (code == null) {
+            code = dictionarySize;
+            if (code == dictionary.length) {
+                dictionary = Arrays.copyOf(dictionary, grow(dictionary.length, code + 1));
+            }
+            dictionary[code] = string;
+            dictionarySize = code + 1;
+            codesByValue.put(string, code);
+        }
+        codes[row] = code;
+    }
+
+    @Override
+    protected void setDefault(int row) {
+        ensureCapacity(row + 1);
+        codes[row] = -1;
+    }
+
+    @Override
+    public long getMemoryUsage() {
+        long usage = super.getMemoryUsage() + 4L * codes.length + 8L * dictionary.length;
+        for (int code = 0; code < dictionarySize; code++) {
+            String value = dictionary[code];
+            // the String, its byte array, and the entries in the dictionary and in the reverse map
+            usage += 40 + value.length() + 48;
+        }
+        return usage;
+    }
+
+    private void ensureCapacity(int required) {
+        if (required > codes.length) {
+            codes = Arrays.copyOf(codes, grow(codes.length, required));
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package bds.storage;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * KeyIndex kept in memory. BIGINT and INTEGER keys are stored in a LongIntHashMap so they are not boxed, keys of
+ * other types are stored in a ConcurrentHashMap. Both can be read while the single writer adds keys.
+ */
+class HashKeyIndex implements KeyIndex {
+    private final LongIntHashMap longKeys;
+    private final Map<Object, Integer> objectKeys;
+
+    /**
+     * Argument constructor for the HashKeyIndex class.
+     * @param numericKeys true if the keys are BIGINT or INTEGER values.
+     */
+    HashKeyIndex(boolean numericKeys) {
+        this.longKeys = numericKeys ? new LongIntHashMap() : null;
+        this.objectKeys = numericKeys ? null : new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Method to build the index of the keys stored in a column.
+     * @param keys the column holding the keys.
+     * @param size the number of rows.
+     * @return the HashKeyIndex holding the keys of all rows.
+     */
+    static HashKeyIndex build(Column keys, int size) {
+        HashKeyIndex index = new HashKeyIndex(isNumeric(keys));
+        for (int row = 0; row < size; row++) {
+            index.put(keys.get(row), row);
+        }
+        return index;
+    }
+
+    /**
+     * Method to check if a key column holds BIGINT or INTEGER keys.
+     */
+    static boolean isNumeric(Column keys) {
+        return keys instanceof LongColumn || keys instanceof IntColumn;
+    }
+
+    @Override
+    public int find(Object key) {
+        if (key == null) return -1;
+
+        if (longKeys != null) {
+            return key instanceof Number ? longKeys.get(((Number) key).longValue()) : -1;
+        }
+        Integer row = objectKeys.get(key);
+        return row == null ? -1 : row;
+    }
+
+    @Override
+    public void put(Object key, int row) {
+        if (longKeys != null) {
+            longKeys.put(((Number) key).longValue(), row);
+        } else {
+            objectKeys.put(key, row);
+        }
+    }
+
+    @Override
+    public long getMemoryUsage() {
+        return longKeys != null ? longKeys.getMemoryUsage() : 64L * objectKeys.size();
+    }
+}
@@ -0,0 +1,52 @@
+package bds.storage;
+
+import org.apache.calcite.sql.type.SqlTypeName;
+import java.util.Arrays;
+
+/**
+ * Column storing INTEGER values in an int array.
+ */
+public class IntColumn extends Column {
+    private volatile int[] values = new int[0];
+
+    IntColumn(SqlTypeName type) {
+        super(type);
+    }
+
+    /**
+     * Method to get the value of a row without boxing it. Check isNull first, null values are read as 0.
+     * @param row the position of the row.
+     * @return the value.
+     */
+    public int getInt(int row) {
+        return values[row];
+    }
+
+    @Override
+    protected Object getValue(int row) {
+        return values[row];
+    }
+
+    @Override
+    protected void setValue(int row, Object value) {
+        ensureCapacity(row + 1);
+        values[row] = value instanceof Number ? ((Number) value).intValue() : Integer.parseInt(value.toString());
+    }
+
+    @Override
+    protected void setDefault(int row) {
+        ensureCapacity(row + 1);
+        values[row] = 0;
+    }
+
+    @Override
+    public long getMemoryUsage() {
+        return super.getMemoryUsage() + 4L * values.length;
+    }
+
+    private void ensureCapacity(int required) {
+        if (required > values.length) {
+            values = Arrays.copyOf(values, grow(values.length, required));
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package bds.storage;
+
+/**
+ * Index from the key of a row, the value of its first field, to its position in a ColumnarStore.
+ */
+interface KeyIndex {
+    /**
+     * Method to find the position of the newest row with a key. The row may have been deleted since, see Snapshot.
+     * @param key the key of the row.
+     * @return the position of the row, or -1 if no row has that key.
+     */
+    int find(Object key);
+
+    /**
+     * Method to add the key of a row.
+     * @param key the key of the row.
+     * @param row the position of the row.
+     */
+    void put(Object key, int row);
+
+    /**
+     * Method to estimate the number of bytes of heap used by the index.
+     * @return the estimated memory usage in bytes.
+     */
+    long getMemoryUsage();
+}
@@ -0,0 +1,64 @@
+package bds.storage;
+
+/**
+ * A single change to the rows of a table, as written to a WriteAheadLog: either a row that is inserted or replaces
+ * the row with the same key, or the deletion of the row with a key.
+ */
+public class LogRecord {
+    /**
+     * Operation of a record that inserts or replaces a row.
+     */
+    public static final byte UPSERT = 1;
+
+    /**
+     * Operation of a record that deletes a row.
+     */
+    public static final byte DELETE = 2;
+
+    private final byte operation;
+    private final Object[] values;
+
+    /**
+     * Argument constructor for the LogRecord class.
+     * @param operation UPSERT or DELETE.
+     * @param values the values of all fields for UPSERT, or the key only for DELETE.
+     */
+    LogRecord(byte operation, Object[] values) {
+        this.operation = operation;
+        this.values = values;
+    }
+
+    /**
+     * Method to create a record that inserts a row, or replaces the row with the same key.
+     * @param values the values of the fields, in field order. The first value is the key.
+     * @return the new LogRecord.
+     */
+    public static LogRecord upsert(Object... values) {
+        return new LogRecord(UPSERT, values);
+    }
+
+    /**
+     * Method to create a record that deletes the row with a key.
+     * @param key the key of the row.
+     * @return the new LogRecord.
+     */
+    public static LogRecord delete(Object key) {
+        return new LogRecord(DELETE, new Object[] {key});
+    }
+
+    /**
+     * Method to get the operation of this record.
+     * @return UPSERT or DELETE.
+     */
+    public byte getOperation() {
+        return operation;
+    }
+
+    /**
+     * Method to get the values of this record.
+     * @return the values of all fields for UPSERT, or an array holding the key for DELETE.
+     */
+    public Object[] getValues() {
+        return values;
+    }
+}
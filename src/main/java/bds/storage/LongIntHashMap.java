@@ -0,0 +1,115 @@
+package bds.storage;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Open addressing hash map from long keys to int values, used to find the position of a row from its key without
+ * boxing the keys. Values must not be negative.
+ * The map has a single writer and any number of readers that do not lock: a slot's key is written before its value
+ * is published with a release store, and a grown table is only published once it is filled, so a reader never sees a
+ * value paired with the wrong key.
+ */
+public class LongIntHashMap {
+    private static final int EMPTY = -1;
+
+    private volatile Table table = new Table(16);
+    private int size;
+
+    /**
+     * Method to get the value of a key.
+     * @param key the key.
+     * @return the value, or -1 if the map has no such key.
+     */
+    public int get(long key) {
+        Table current = table;
+        int mask = current.keys.length - 1;
+        for (int slot = hash(key) & mask; ; slot = (slot + 1) & mask) {
+            int value = current.values.get(slot);
+            if (value == EMPTY) return EMPTY;
+            if (current.keys[slot] == key) return value;
+        }
+    }
+
+    /**
+     * Method to set the value of a key.
+     * @param key the key.
+     * @param value the value, not negative.
+     */
+    public void put(long key, int value) {
+        Table current = table;
+        if (2 * (size + 1) > current.keys.length) {
+            current = resize(current, current.keys.length * 2);
+        }
+        if (current.insert(key, value)) {
+            size++;
+        }
+    }
+
+    /**
+     * Method to get the number of keys in the map.
+     * @return the number of keys.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Method to estimate the number of bytes used by the map.
+     * @return the estimated memory usage in bytes.
+     */
+    public long getMemoryUsage() {
+        return 12L * table.keys.length;
+    }
+
+    private Table resize(Table current, int capacity) {
+        Table grown = new Table(capacity);
+        for (int i = 0; i < current.keys.length; i++) {
+            int value = current.values.get(i);
+            if (value != EMPTY) {
+                grown.insert(current.keys[i], value);
+            }
+        }
+        table = grown;
+        return grown;
+    }
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /**
+     * The slots of the map, replaced as a whole when the map grows.
+     */
+    private static class Table {
+        private final long[] keys;
+        private final AtomicIntegerArray values;
+
+        private Table(int capacity) {
+            keys = new long[capacity];
+            values = new AtomicIntegerArray(capacity);
+            for (int i = 0; i < capacity; i++) {
+                values.lazySet(i, EMPTY);
+            }
+        }
+
+        /**
+         * Method to insert a key.
+         * @return true if the key was not in the table yet.
+         */
+        private boolean insert(long key, int value) {
+            int mask = keys.length - 1;
+            for (int slot = hash(key) & mask; ; slot = (slot + 1) & mask) {
+                if (values.get(slot) == EMPTY) {
+                    keys[slot] = key;
+                    values.lazySet(slot, value);
+                    return true;
+                }
+                if (keys[slot] == key) {
+                    values.lazySet(slot, value);
+                    return false;
+                }
+            }
+        }
+    }
+}
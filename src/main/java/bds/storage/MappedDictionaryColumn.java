@@ -0,0 +1,98 @@
+package bds.storage;
+
+import org.apache.calcite.sql.type.SqlTypeName;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Read-only VARCHAR column of a segment file. The codes and the UTF-8 bytes of the dictionary are read from the
+ * mapped file, and each dictionary value is decoded into a String the first time it is read.
+ */
+class MappedDictionaryColumn extends DictionaryColumn {
+    private final ByteBuffer nulls;
+    private final ByteBuffer codes;
+    private final ByteBuffer valueOffsets;
+    private final ByteBuffer valueBytes;
+    private final String[] values;
+    private Map<String, Integer> codesByValue;
+
+    /**
+     * Argument constructor for the MappedDictionaryColumn class.
+     * @param type the SqlTypeName of the column.
+     * @param nulls the null bitmap.
+     * @param codes the dictionary code of each row as ints.
+     * @param valueOffsets the offsets of the dictionary values in valueBytes as ints, one more than there are values.
+     * @param valueBytes the UTF-8 bytes of the dictionary values.
+     * @param dictionarySize the number of dictionary values.
+     */
+    MappedDictionaryColumn(SqlTypeName type, ByteBuffer nulls, ByteBuffer codes, ByteBuffer valueOffsets,
+                           ByteBuffer valueBytes, int dictionarySize) {
+        super(type);
+        this.nulls = nulls;
+        this.codes = codes;
+        this.valueOffsets = valueOffsets;
+        this.valueBytes = valueBytes;
+        this.values = new String[dictionarySize];
+    }
+
+    @Override
+    public boolean isNull(int row) {
+        return isSet(nulls, row);
+    }
+
+    @Override
+    public int getCode(int row) {
+        return codes.getInt(row << 2);
+    }
+
+    @Override
+    public String getString(int row) {
+        int code = getCode(row);
+        return code < 0 ? null : decode(code);
+    }
+
+    @Override
+    public String decode(int code) {
+        String value = values[code];
+        if (value == null) {
+            int start = valueOffsets.getInt(code << 2);
+            int end = valueOffsets.getInt((code + 1) << 2);
+            byte[] bytes = new byte[end - start];
+            ByteBuffer source = valueBytes.duplicate();
+            source.position(start);
+            source.get(bytes);
+            value = new String(bytes, StandardCharsets.UTF_8);
+            values[code] = value;
+        }
+        return value;
+    }
+
+    @Override
+    public synchronized int findCode(String value) {
+        if (codesByValue == null) {
+            codesByValue = new HashMap<>();
+            for (int code = 0; code < values.length; code++) {
+                codesByValue.put(decode(code), code);
+            }
+        }
+        Integer code = codesByValue.get(value);
+        return code == null ? -1 : code;
+    }
+
+    @Override
+    public int getDictionarySize() {
+        return values.length;
+    }
+
+    @Override
+    protected Object getValue(int row) {
+        return getString(row);
+    }
+
+    @Override
+    public long getMemoryUsage() {
+        return 8L * values.length;
+    }
+}
@@ -0,0 +1,38 @@
+package bds.storage;
+
+import org.apache.calcite.sql.type.SqlTypeName;
+import java.nio.ByteBuffer;
+
+/**
+ * Read-only INTEGER column of a segment file, reading its values from the mapped file.
+ */
+class MappedIntColumn extends IntColumn {
+    private final ByteBuffer nulls;
+    private final ByteBuffer values;
+
+    MappedIntColumn(SqlTypeName type, ByteBuffer nulls, ByteBuffer values) {
+        super(type);
+        this.nulls = nulls;
+        this.values = values;
+    }
+
+    @Override
+    public boolean isNull(int row) {
+        return isSet(nulls, row);
+    }
+
+    @Override
+    public int getInt(int row) {
+        return values.getInt(row << 2);
+    }
+
+    @Override
+    protected Object getValue(int row) {
+        return getInt(row);
+    }
+
+    @Override
+    public long getMemoryUsage() {
+        return 0;
+    }
+}
@@ -0,0 +1,38 @@
+package bds.storage;
+
+import org.apache.calcite.sql.type.SqlTypeName;
+import java.nio.ByteBuffer;
+
+/**
+ * Read-only BIGINT column of a segment file, reading its values from the mapped file.
+ */
+class MappedLongColumn extends LongColumn {
+    private final ByteBuffer nulls;
+    private final ByteBuffer values;
+
+    MappedLongColumn(SqlTypeName type, ByteBuffer nulls, ByteBuffer values) {
+        super(type);
+        this.nulls = nulls;
+        this.values = values;
+    }
+
+    @Override
+    public boolean isNull(int row) {
+        return isSet(nulls, row);
+    }
+
+    @Override
+    public long getLong(int row) {
+        return values.getLong(row << 3);
+    }
+
+    @Override
+    protected Object getValue(int row) {
+        return getLong(row);
+    }
+
+    @Override
+    public long getMemoryUsage() {
+        return 0;
+    }
+}
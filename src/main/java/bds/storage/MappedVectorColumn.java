@@ -0,0 +1,109 @@
+package bds.storage;
+
+import bds.vectors.DenseVector;
+import bds.vectors.VectorCodec;
+import org.apache.calcite.sql.type.SqlTypeName;
+import java.nio.ByteBuffer;
+
+/**
+ * Read-only vector column of a segment file. The float32 elements of all vectors are one block of the file, which
+ * can be larger than a single mapping allows, so the block is mapped as windows that start every
+ * SegmentFile.WINDOW_BYTES bytes and overlap by the size of the largest vector: every vector lies completely in the
+ * window its first element falls in. getVector returns a DenseVector view over the mapped elements, which the
+ * distance kernels read without copying them to the heap. A column holding float64 elements maps the float64 block
+ * the same way, and its vectors read their float64 elements from it.
+ */
+class MappedVectorColumn extends VectorColumn {
+    private final ByteBuffer nulls;
+    private final ByteBuffer offsets;
+    private final ByteBuffer dimensions;
+    private final ByteBuffer[] windows;
+    private final ByteBuffer[] float64Windows;
+    private final long windowBytes;
+    private volatile float[] squaredNorms;
+
+    /**
+     * Argument constructor for the MappedVectorColumn class.
+     * @param type the SqlTypeName of the column.
+     * @param nulls the null bitmap.
+     * @param offsets the index of the first element of each row in the element block, as longs.
+     * @param dimensions the dimension of each row as ints.
+     * @param windows the overlapping windows mapping the element block.
+     * @param float64Windows the overlapping windows mapping the float64 element block, or null if the column has no
+     *                       float64 elements.
+     * @param windowBytes the distance in bytes between the starts of two windows.
+     */
+    MappedVectorColumn(SqlTypeName type, ByteBuffer nulls, ByteBuffer offsets, ByteBuffer dimensions,
+                       ByteBuffer[] windows, ByteBuffer[] float64Windows, long windowBytes) {
+        super(type);
+        this.nulls = nulls;
+        this.offsets = offsets;
+        this.dimensions = dimensions;
+        this.windows = windows;
+        this.float64Windows = float64Windows;
+        this.windowBytes = windowBytes;
+    }
+
+    @Override
+    public boolean isNull(int row) {
+        return isSet(nulls, row);
+    }
+
+    @Override
+    public DenseVector getVector(int row) {
+        if (isNull(row)) return null;
+
+        long element = offsets.getLong(row << 3);
+        long position = element * VectorCodec.FLOAT32;
+        int window = (int) (position / windowBytes);
+        if (float64Windows == null) {
+            return VectorCodec.view(windows[window], (int) (position - window * windowBytes), getDimension(row));
+        }
+
+        long float64Position = element * VectorCodec.FLOAT64;
+        int float64Window = (int) (float64Position / windowBytes);
+        return VectorCodec.view(windows[window], (int) (position - window * windowBytes), getDimension(row),
+                float64Windows[float64Window], (int) (float64Position - float64Window * windowBytes));
+    }
+
+    @Override
+    public boolean hasFloat64Elements() {
+        return float64Windows != null;
+    }
+
+    @Override
+    public int getDimension(int row) {
+        return dimensions.getInt(row << 2);
+    }
+
+    /**
+     * Method to get the squared norm of the vector of a row. The norms are not stored in the segment file, so the
+     * norms of all rows are computed from the mapped elements the first time one is needed, and kept on the heap.
+     */
+    @Override
+    public float getSquaredNorm(int row) {
+        float[] norms = squaredNorms;
+        if (norms == null) {
+            norms = computeSquaredNorms();
+        }
+        return norms[row];
+    }
+
+    private synchronized float[] computeSquaredNorms() {
+        if (squaredNorms == null) {
+            float[] norms = new float[dimensions.capacity() >>> 2];
+            for (int row = 0; row < norms.length; row++) {
+                DenseVector vector = getVector(row);
+                norms[row] = vector == null ? 0 : squaredNorm(vector);
+            }
+            squaredNorms = norms;
+        }
+        return squaredNorms;
+    }
+
+    @Override
+    public long getMemoryUsage() {
+        float[] norms = squaredNorms;
+        return norms == null ? 0 : 4L * norms.length;
+    }
+}
@@ -0,0 +1,44 @@
+package bds.storage;
+
+import org.apache.calcite.sql.type.SqlTypeName;
+import java.util.Arrays;
+
+/**
+ * Column storing values of types that have no specialized column as objects.
+ */
+public class ObjectColumn extends Column {
+    private volatile Object[] values = new Object[0];
+
+    ObjectColumn(SqlTypeName type) {
+        super(type);
+    }
+
+    @Override
+    protected Object getValue(int row) {
+        return values[row];
+    }
+
+    @Override
+    protected void setValue(int row, Object value) {
+        ensureCapacity(row + 1);
+        values[row] = value;
+    }
+
+    @Override
+    protected void setDefault(int row) {
+        ensureCapacity(row + 1);
+        values[row] = null;
+    }
+
+    @Override
+    public long getMemoryUsage() {
+        // the reference and a small boxed value per row
+        return super.getMemoryUsage() + 24L * values.length;
+    }
+
+    private void ensureCapacity(int required) {
+        if (required > values.length) {
+            values = Arrays.copyOf(values, grow(values.length, required));
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package bds.storage;
+
+import java.util.Arrays;
+
+/**
+ * Growable bitmap indexed by row position. Unlike a BitSet, a bitmap can be read while a single writer sets bits:
+ * readers use the array they load once and treat bits past its end as clear, so growing the bitmap never makes a
+ * concurrent read fail.
+ */
+class RowBitmap {
+    private volatile long[] words = new long[0];
+
+    /**
+     * Method to check if the bit of a row is set.
+     * @param row the position of the row.
+     * @return true if the bit is set.
+     */
+    boolean get(int row) {
+        long[] current = words;
+        int word = row >>> 6;
+        return word < current.length && (current[word] & (1L << (row & 63))) != 0;
+    }
+
+    /**
+     * Method to set the bit of a row.
+     * @param row the position of the row.
+     */
+    void set(int row) {
+        int word = row >>> 6;
+        long[] current = words;
+        if (word >= current.length) {
+            current = Arrays.copyOf(current, Math.max(word + 1, current.length * 2));
+        }
+        current[word] |= 1L << (row & 63);
+        words = current;
+    }
+
+    /**
+     * Method to clear the bit of a row.
+     * @param row the position of the row.
+     */
+    void clear(int row) {
+        long[] current = words;
+        int word = row >>> 6;
+        if (word < current.length) {
+            current[word] &= ~(1L << (row & 63));
+            words = current;
+        }
+    }
+
+    /**
+     * Method to estimate the number of bytes used by the bitmap.
+     * @return the estimated memory usage in bytes.
+     */
+    long getMemoryUsage() {
+        return 8L * words.length;
+    }
+}
@@ -0,0 +1,70 @@
+package bds.storage;
+
+import java.util.Arrays;
+
+/**
+ * The version information of the rows of a ColumnarStore: the version of the commit that deleted or replaced each
+ * row, 0 while the row is current, and the position of the row each row replaced. Like the columns, the arrays have a
+ * single writer, and readers use the arrays they load and treat positions past their end as current rows that
+ * replaced nothing.
+ */
+class RowVersions {
+    private volatile long[] deletedVersions = new long[0];
+    private volatile int[] previousRows = new int[0];
+
+    /**
+     * Method to get the version of the commit that deleted or replaced a row.
+     * @param row the position of the row.
+     * @return the version, or 0 if the row is current.
+     */
+    long getDeletedVersion(int row) {
+        long[] current = deletedVersions;
+        return row < current.length ? current[row] : 0;
+    }
+
+    /**
+     * Method to set the version of the commit that deleted or replaced a row.
+     * @param row the position of the row.
+     * @param version the version of the commit.
+     */
+    void setDeletedVersion(int row, long version) {
+        long[] current = deletedVersions;
+        if (row >= current.length) {
+            current = Arrays.copyOf(current, Column.grow(current.length, row + 1));
+        }
+        current[row] = version;
+        deletedVersions = current;
+    }
+
+    /**
+     * Method to get the position of the row a row replaced, the previous version of the row.
+     * @param row the position of the row.
+     * @return the position of the previous version, or -1 if the row did not replace a row.
+     */
+    int getPreviousRow(int row) {
+        int[] current = previousRows;
+        return row < current.length ? current[row] - 1 : -1;
+    }
+
+    /**
+     * Method to set the position of the row a row replaced.
+     * @param row the position of the row.
+     * @param previous the position of the replaced row.
+     */
+    void setPreviousRow(int row, int previous) {
+        int[] current = previousRows;
+        if (row >= current.length) {
+            current = Arrays.copyOf(current, Column.grow(current.length, row + 1));
+        }
+        current[row] = previous + 1;
+        previousRows = current;
+    }
+
+    /**
+     * Method to estimate the number of bytes used by the version information.
+     * @return the estimated memory usage in bytes.
+     */
+    long getMemoryUsage() {
+        return 8L * deletedVersions.length + 4L * previousRows.length;
+    }
+}
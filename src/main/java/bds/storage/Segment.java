@@ -0,0 +1,83 @@
+package bds.storage;
+
+import java.nio.file.Path;
+
+/**
+ * One segment of a table in a TableStorage: the rows of a ColumnarStore, together with the tombstones of the keys that
+ * were deleted while the segment was the memtable. A row of a segment hides the rows with the same key in older
+ * segments, and a tombstone hides them without adding a row, so the tombstones are kept until a merge includes the
+ * oldest segment. Only the memtable receives new rows and tombstones; the other segments are immutable, except that
+ * their rows can be deleted, see ColumnarStore.deleteRowAt.
+ */
+class Segment {
+    private final ColumnarStore store;
+    private final Column tombstones;
+    private final Path path;
+    private int tombstoneCount;
+
+    /**
+     * Argument constructor for the Segment class.
+     * @param store the rows of the segment.
+     * @param tombstones the column holding the tombstones, of the type of the key field.
+     * @param tombstoneCount the number of tombstones in the column.
+     * @param path the segment file holding the segment, or null if the segment is only on the heap.
+     */
+    Segment(ColumnarStore store, Column tombstones, int tombstoneCount, Path path) {
+        this.store = store;
+        this.tombstones = tombstones;
+        this.tombstoneCount = tombstoneCount;
+        this.path = path;
+    }
+
+    /**
+     * Method to create an empty memtable.
+     * @param fields a store with the fields of the table.
+     * @return the new Segment.
+     */
+    static Segment createMemtable(ColumnarStore fields) {
+        return new Segment(new ColumnarStore(fields.getFieldNames(), fields.getFieldTypes()),
+                Column.create(fields.getFieldTypes().get(0)), 0, null);
+    }
+
+    ColumnarStore getStore() {
+        return store;
+    }
+
+    Path getPath() {
+        return path;
+    }
+
+    Column getTombstones() {
+        return tombstones;
+    }
+
+    int getTombstoneCount() {
+        return tombstoneCount;
+    }
+
+    /**
+     * Method to get a tombstone.
+     * @param index the index of the tombstone.
+     * @return the deleted key.
+     */
+    Object getTombstone(int index) {
+        return tombstones.get(index);
+    }
+
+    /**
+     * Method to record the deletion of a key that older segments may hold, called by the writer of the memtable.
+     * @param key the deleted key.
+     */
+    void addTombstone(Object key) {
+        tombstones.set(tombstoneCount++, key);
+    }
+
+    /**
+     * Method to get the number of visible rows of the segment in its current Snapshot.
+     * @return the number of visible rows.
+     */
+    int getLiveRowCount() {
+        Snapshot snapshot = store.snapshot();
+        return snapshot.size() - snapshot.getDeletedCount();
+    }
+}
@@ -0,0 +1,625 @@
+package bds.storage;
+
+import bds.vectors.DenseVector;
+import org.apache.calcite.sql.type.SqlTypeName;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Persistent file format for the rows of a ColumnarStore. A segment file is opened by memory mapping it with
+ * FileChannel.map, so opening a segment takes the same time whatever its size, the operating system page cache
+ * decides which parts of the file stay in memory, and tables can be larger than the heap.
+ * A segment file is little-endian and starts with a header:
+ * <pre>
+ *   int32  magic         0x42445347, "BDSG"
+ *   int32  version       2
+ *   int64  rowCount      number of rows
+ *   int64  keyOffset     offset of the key block, 0 if the key field is not BIGINT or INTEGER
+ *   int32  fieldCount    number of fields
+ *   int32  tombstones    number of tombstones, the keys deleted while the segment was the memtable of its table
+ *   int32  tombstoneMeta the meta value of the tombstone block
+ *   int32  reserved      0
+ *   int64  tombstoneOffset offset of the tombstone block, a column block of the key type holding the tombstones
+ *   int64  tombstoneLength length of the tombstone block
+ *   per field:
+ *     utf8   name        int16 length followed by the bytes
+ *     utf8   type        the SqlTypeName, int16 length followed by the bytes
+ *     int32  meta        the dictionary size of VARCHAR fields, the largest dimension of vector fields, else 0
+ *     int64  offset      offset of the column block
+ *     int64  length      length of the column block
+ * </pre>
+ * Every block, and every part of a block, starts at a multiple of ALIGNMENT bytes. A column block holds the null
+ * bitmap of the column as int64 words, followed by:
+ * <ul>
+ *   <li>BIGINT: the values as int64.</li>
+ *   <li>INTEGER: the values as int32.</li>
+ *   <li>VARCHAR: the dictionary code of each row as int32, then the offsets of the dictionary values as int32, one
+ *   more than there are values, then the UTF-8 bytes of the values.</li>
+ *   <li>OTHER (vectors): the index of the first element of each row as int64, then the dimension of each row as
+ *   int32, then the elements of all vectors as float32, and, when the vectors keep float64 elements, the elements of
+ *   all vectors again as float64. The float64 elements are present when the block is longer than the float32
+ *   elements.</li>
+ * </ul>
+ * The key block holds the keys sorted in ascending order as int64, followed by the position of the row of each key
+ * as int32. Fields of other types cannot be stored in a segment file.
+ * Version 1 files have no tombstone fields in their header and are still read.
+ * Segment files are written by SegmentFile.write and are never modified afterwards.
+ */
+public class SegmentFile {
+    public static final String DIRECTORY_PROPERTY = "bds.storage.dir";
+    public static final String FILE_EXTENSION = ".seg";
+    public static final int MAGIC = 0x42445347;
+    public static final int VERSION = 2;
+    public static final int ALIGNMENT = 64;
+
+    /**
+     * Number of bytes of the header before the first field.
+     */
+    private static final int HEADER_BYTES = 56;
+
+    /**
+     * Distance in bytes between the starts of the windows mapping a vector element block.
+     */
+    static final long WINDOW_BYTES = 1L << 30;
+
+    /**
+     * Private constructor since this class only contains static methods.
+     */
+    private SegmentFile() {}
+
+    /**
+     * Method to get the path of the segment file of a table, in the directory set by the 'bds.storage.dir' system
+     * property.
+     * @param tableName the name of the table.
+     * @return the path of the segment file, or null if the property is not set.
+     */
+    public static Path getPath(String tableName) {
+        String directory = System.getProperty(DIRECTORY_PROPERTY);
+        if (directory == null || directory.trim().isEmpty()) return null;
+
+        return Paths.get(directory.trim(), tableName + FILE_EXTENSION);
+    }
+
+    /**
+     * Method to write the rows of a store to a segment file. The file is written next to path first and then moved
+     * over path, so a reader never sees a partially written segment. The rows of the current Snapshot of the store are
+     * written, so rows committed while the file is written are left out, like the deleted rows.
+     * @param store the store holding the rows.
+     * @param path the path of the segment file.
+     * @throws IOException if the file cannot be written.
+     */
+    public static void write(ColumnarStore store, Path path) throws IOException {
+        int[] rows = liveRows(store.snapshot());
+        write(new ColumnarStore[] {store}, new int[rows.length], rows, null, 0, path);
+    }
+
+    /**
+     * Method to write rows taken from several stores with the same fields to a segment file, together with
+     * tombstones, as TableStorage does when it flushes or merges segments. The dictionaries of VARCHAR fields are
+     * encoded again, so values no row uses are dropped.
+     * @param stores the stores holding the rows.
+     * @param sources the index in stores of the store holding each row.
+     * @param rows the position of each row in its store, in the order the rows are written.
+     * @param tombstones the column holding the tombstones, or null.
+     * @param tombstoneCount the number of tombstones.
+     * @param path the path of the segment file.
+     * @throws IOException if the file cannot be written.
+     */
+    static void write(ColumnarStore[] stores, int[] sources, int[] rows, Column tombstones, int tombstoneCount,
+                      Path path) throws IOException {
+        List<String> names = stores[0].getFieldNames();
+        List<SqlTypeName> types = stores[0].getFieldTypes();
+        for (int i = 0; i < types.size(); i++) {
+            if (!isSupported(types.get(i))) {
+                throw new IllegalArgumentException("field " + names.get(i) + " of type " + types.get(i)
+                        + " cannot be stored in a segment file");
+            }
+        }
+
+        int rowCount = rows.length;
+        int fieldCount = names.size();
+        List<byte[]> encodedNames = new ArrayList<>();
+        int headerBytes = HEADER_BYTES;
+        for (int i = 0; i < fieldCount; i++) {
+            encodedNames.add(names.get(i).getBytes(StandardCharsets.UTF_8));
+            headerBytes += 2 + encodedNames.get(i).length + 2 + types.get(i).name().length() + 4 + 8 + 8;
+        }
+
+        Path directory = path.toAbsolutePath().getParent();
+        if (directory != null) {
+            Files.createDirectories(directory);
+        }
+        Path tempPath = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tempPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            Output output = new Output(channel);
+            output.skip(align(headerBytes));
+
+            int[] metas = new int[fieldCount];
+            long[] offsets = new long[fieldCount];
+            long[] lengths = new long[fieldCount];
+            for (int i = 0; i < fieldCount; i++) {
+                offsets[i] = output.position();
+                metas[i] = writeColumn(output, getColumns(stores, i), sources, rows);
+                lengths[i] = output.position() - offsets[i];
+                output.align();
+            }
+
+            long keyOffset = 0;
+            if (HashKeyIndex.isNumeric(stores[0].getColumn(0))) {
+                keyOffset = output.position();
+                writeKeys(output, getColumns(stores, 0), sources, rows);
+            }
+
+            int tombstoneMeta = 0;
+            long tombstoneOffset = 0;
+            long tombstoneLength = 0;
+            if (tombstoneCount > 0) {
+                int[] positions = new int[tombstoneCount];
+                for (int i = 0; i < tombstoneCount; i++) {
+                    positions[i] = i;
+                }
+                tombstoneOffset = output.position();
+                tombstoneMeta = writeColumn(output, new Column[] {tombstones}, new int[tombstoneCount], positions);
+                tombstoneLength = output.position() - tombstoneOffset;
+                output.align();
+            }
+            output.flush();
+
+            ByteBuffer header = ByteBuffer.allocate(headerBytes).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putInt(VERSION).putLong(rowCount).putLong(keyOffset).putInt(fieldCount);
+            header.putInt(tombstoneCount).putInt(tombstoneMeta).putInt(0);
+            header.putLong(tombstoneOffset).putLong(tombstoneLength);
+            for (int i = 0; i < fieldCount; i++) {
+                byte[] type = types.get(i).name().getBytes(StandardCharsets.UTF_8);
+                header.putShort((short) encodedNames.get(i).length).put(encodedNames.get(i));
+                header.putShort((short) type.length).put(type);
+                header.putInt(metas[i]).putLong(offsets[i]).putLong(lengths[i]);
+            }
+            header.flip();
+            while (header.hasRemaining()) {
+                channel.write(header, header.position());
+            }
+            channel.force(true);
+        }
+        Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Method to open a segment file. The file is memory mapped and the returned store reads its rows directly from
+     * the mapping; the file is not read until rows are accessed.
+     * @param path the path of the segment file.
+     * @return a read-only ColumnarStore over the segment.
+     * @throws IOException if the file cannot be mapped or is not a valid segment file.
+     */
+    public static ColumnarStore open(Path path) throws IOException {
+        return openSegment(path).getStore();
+    }
+
+    /**
+     * Method to open a segment file together with its tombstones.
+     * @param path the path of the segment file.
+     * @return the Segment over the file.
+     * @throws IOException if the file cannot be mapped or is not a valid segment file.
+     */
+    static Segment openSegment(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            ByteBuffer header = map(channel, 0, Math.min(fileSize, 1 << 20));
+            if (fileSize < 28 || header.getInt(0) != MAGIC) {
+                throw new IOException(path + " is not a segment file");
+            }
+            int version = header.getInt(4);
+            if (version != 1 && version != VERSION) {
+                throw new IOException(path + " has unsupported segment version " + version);
+            }
+
+            long rows = header.getLong(8);
+            if (rows < 0 || rows > Integer.MAX_VALUE) {
+                throw new IOException(path + " has an invalid row count " + rows);
+            }
+            int rowCount = (int) rows;
+            long keyOffset = header.getLong(16);
+            int fieldCount = header.getInt(24);
+            int tombstoneCount = version == 1 ? 0 : header.getInt(28);
+            if (tombstoneCount < 0) {
+                throw new IOException(path + " has an invalid tombstone count " + tombstoneCount);
+            }
+
+            header.position(version == 1 ? 28 : HEADER_BYTES);
+            List<String> names = new ArrayList<>();
+            List<SqlTypeName> types = new ArrayList<>();
+            Column[] columns = new Column[fieldCount];
+            for (int i = 0; i < fieldCount; i++) {
+                names.add(readString(header));
+                SqlTypeName type = SqlTypeName.valueOf(readString(header));
+                types.add(type);
+                int meta = header.getInt();
+                long offset = header.getLong();
+                long length = header.getLong();
+                if (offset < 0 || length < 0 || offset + length > fileSize) {
+                    throw new IOException(path + " has an invalid block for field " + names.get(i));
+                }
+                columns[i] = openColumn(channel, type, meta, offset, length, rowCount);
+            }
+
+            KeyIndex keys;
+            if (keyOffset > 0) {
+                keys = new SortedKeyIndex(map(channel, keyOffset, 8L * rowCount),
+                        map(channel, keyOffset + align(8L * rowCount), 4L * rowCount), rowCount);
+            } else {
+                keys = HashKeyIndex.build(columns[0], rowCount);
+            }
+
+            Column tombstones = Column.create(types.get(0));
+            if (tombstoneCount > 0) {
+                long offset = header.getLong(40);
+                long length = header.getLong(48);
+                if (offset <= 0 || length < 0 || offset + length > fileSize) {
+                    throw new IOException(path + " has an invalid tombstone block");
+                }
+                tombstones = openColumn(channel, types.get(0), header.getInt(32), offset, length, tombstoneCount);
+            }
+            return new Segment(new ColumnarStore(names, types, columns, keys, rowCount), tombstones, tombstoneCount,
+                    path);
+        }
+        catch (IllegalArgumentException | IndexOutOfBoundsException ex) {
+            throw new IOException(path + " is not a valid segment file", ex);
+        }
+    }
+
+    /**
+     * Method to check if fields of a type can be stored in a segment file.
+     * @param type the SqlTypeName of the field.
+     * @return true if the type is supported.
+     */
+    public static boolean isSupported(SqlTypeName type) {
+        return type == SqlTypeName.BIGINT || type == SqlTypeName.INTEGER || type == SqlTypeName.VARCHAR
+                || type == SqlTypeName.OTHER;
+    }
+
+    /**
+     * Method to get the column of a field in each store.
+     */
+    private static Column[] getColumns(ColumnarStore[] stores, int field) {
+        Column[] columns = new Column[stores.length];
+        for (int i = 0; i < stores.length; i++) {
+            columns[i] = stores[i].getColumn(field);
+        }
+        return columns;
+    }
+
+    /**
+     * Method to write the block of a column.
+     * @param columns the column of the field in each source store.
+     * @return the meta value of the column.
+     */
+    private static int writeColumn(Output output, Column[] columns, int[] sources, int[] rows) throws IOException {
+        long word = 0;
+        for (int i = 0; i < rows.length; i++) {
+            if (columns[sources[i]].isNull(rows[i])) {
+                word |= 1L << (i & 63);
+            }
+            if ((i & 63) == 63 || i == rows.length - 1) {
+                output.putLong(word);
+                word = 0;
+            }
+        }
+        output.align();
+
+        if (columns[0] instanceof LongColumn) {
+            for (int i = 0; i < rows.length; i++) {
+                output.putLong(((LongColumn) columns[sources[i]]).getLong(rows[i]));
+            }
+            return 0;
+        }
+        if (columns[0] instanceof IntColumn) {
+            for (int i = 0; i < rows.length; i++) {
+                output.putInt(((IntColumn) columns[sources[i]]).getInt(rows[i]));
+            }
+            return 0;
+        }
+        if (columns[0] instanceof DictionaryColumn) {
+            return writeDictionaryColumn(output, columns, sources, rows);
+        }
+        return writeVectorColumn(output, columns, sources, rows);
+    }
+
+    /**
+     * Method to write the block of a VARCHAR column. The codes of each source column are mapped to new codes in the
+     * order the values are first used.
+     */
+    private static int writeDictionaryColumn(Output output, Column[] columns, int[] sources, int[] rows)
+            throws IOException {
+        int[][] codeMaps = new int[columns.length][];
+        for (int i = 0; i < columns.length; i++) {
+            codeMaps[i] = new int[((DictionaryColumn) columns[i]).getDictionarySize()];
+            Arrays.fill(codeMaps[i], -1);
+        }
+
+        List<byte[]> values = new ArrayList<>();
+        for (int i = 0; i < rows.length; i++) {
+            DictionaryColumn column = (DictionaryColumn) columns[sources[i]];
+            if (column.isNull(rows[i])) {
+                output.putInt(-1);
+                continue;
+            }
+            int[] codeMap = codeMaps[sources[i]];
+            int code = column.getCode(rows[i]);
+            if (codeMap[code] < 0) {
+                codeMap[code] = values.size();
+                values.add(column.decode(code).getBytes(StandardCharsets.UTF_8));
+            }
+            output.putInt(codeMap[code]);
+        }
+        output.align();
+
+        int valueOffset = 0;
+        output.putInt(0);
+        for (byte[] value : values) {
+            valueOffset += value.length;
+            output.putInt(valueOffset);
+        }
+        output.align();
+
+        for (byte[] value : values) {
+            output.putBytes(value);
+        }
+        return values.size();
+    }
+
+    private static int writeVectorColumn(Output output, Column[] columns, int[] sources, int[] rows)
+            throws IOException {
+        long elementOffset = 0;
+        int maxDimension = 0;
+        for (int i = 0; i < rows.length; i++) {
+            VectorColumn column = (VectorColumn) columns[sources[i]];
+            output.putLong(elementOffset);
+            int dimension = column.isNull(rows[i]) ? 0 : column.getDimension(rows[i]);
+            elementOffset += dimension;
+            maxDimension = Math.max(maxDimension, dimension);
+        }
+        output.align();
+
+        for (int i = 0; i < rows.length; i++) {
+            VectorColumn column = (VectorColumn) columns[sources[i]];
+            output.putInt(column.isNull(rows[i]) ? 0 : column.getDimension(rows[i]));
+        }
+        output.align();
+
+        boolean float64 = false;
+        for (int i = 0; i < rows.length; i++) {
+            DenseVector vector = ((VectorColumn) columns[sources[i]]).getVector(rows[i]);
+            if (vector != null) {
+                float64 |= vector.hasFloat64Elements();
+                for (int j = 0; j < vector.dimension(); j++) {
+                    output.putFloat(vector.get(j));
+                }
+            }
+        }
+
+        if (float64) {
+            output.align();
+            for (int i = 0; i < rows.length; i++) {
+                DenseVector vector = ((VectorColumn) columns[sources[i]]).getVector(rows[i]);
+                if (vector != null) {
+                    for (int j = 0; j < vector.dimension(); j++) {
+                        output.putDouble(vector.getDouble(j));
+                    }
+                }
+            }
+        }
+        return maxDimension;
+    }
+
+    /**
+     * Method to write the key block, the keys sorted in ascending order followed by the positions of their rows.
+     */
+    private static void writeKeys(Output output, Column[] keyColumns, int[] sources, int[] rows) throws IOException {
+        long[] keys = new long[rows.length];
+        LongIntHashMap positions = new LongIntHashMap();
+        for (int i = 0; i < rows.length; i++) {
+            keys[i] = ((Number) keyColumns[sources[i]].get(rows[i])).longValue();
+            positions.put(keys[i], i);
+        }
+        Arrays.sort(keys);
+
+        for (long key : keys) {
+            output.putLong(key);
+        }
+        output.align();
+        for (long key : keys) {
+            output.putInt(positions.get(key));
+        }
+        output.align();
+    }
+
+    /**
+     * Method to collect the positions of the visible rows of a Snapshot, in ascending order.
+     */
+    private static int[] liveRows(Snapshot snapshot) {
+        int size = snapshot.size();
+        int[] rows = new int[size];
+        int count = 0;
+        for (int row = 0; row < size; row++) {
+            if (snapshot.isVisible(row)) {
+                rows[count++] = row;
+            }
+        }
+        return count == size ? rows : Arrays.copyOf(rows, count);
+    }
+
+    /**
+     * Method to open the block of a column.
+     */
+    private static Column openColumn(FileChannel channel, SqlTypeName type, int meta, long offset, long length,
+                                     int rowCount) throws IOException {
+        long position = offset;
+        ByteBuffer nulls = map(channel, position, 8L * ((rowCount + 63) / 64));
+        position += align(8L * ((rowCount + 63) / 64));
+
+        switch (type) {
+            case BIGINT:
+                return new MappedLongColumn(type, nulls, map(channel, position, 8L * rowCount));
+            case INTEGER:
+                return new MappedIntColumn(type, nulls, map(channel, position, 4L * rowCount));
+            case VARCHAR: {
+                ByteBuffer codes = map(channel, position, 4L * rowCount);
+                position += align(4L * rowCount);
+                ByteBuffer valueOffsets = map(channel, position, 4L * (meta + 1));
+                position += align(4L * (meta + 1));
+                ByteBuffer valueBytes = map(channel, position, offset + length - position);
+                return new MappedDictionaryColumn(type, nulls, codes, valueOffsets, valueBytes, meta);
+            }
+            case OTHER: {
+                ByteBuffer offsets = map(channel, position, 8L * rowCount);
+                position += align(8L * rowCount);
+                ByteBuffer dimensions = map(channel, position, 4L * rowCount);
+                position += align(4L * rowCount);
+
+                long elements = rowCount == 0 ? 0
+                        : offsets.getLong((rowCount - 1) << 3) + dimensions.getInt((rowCount - 1) << 2);
+                long elementBytes = Math.min(4L * elements, offset + length - position);
+                ByteBuffer[] windows = mapWindows(channel, position, elementBytes, 4L * meta);
+                position += align(elementBytes);
+
+                ByteBuffer[] float64Windows = null;
+                if (offset + length - position >= 8L * elements && elements > 0) {
+                    float64Windows = mapWindows(channel, position, 8L * elements, 8L * meta);
+                }
+                return new MappedVectorColumn(type, nulls, offsets, dimensions, windows, float64Windows, WINDOW_BYTES);
+            }
+            default:
+                throw new IOException("fields of type " + type + " cannot be read from a segment file");
+        }
+    }
+
+    /**
+     * Method to map an element block as windows that start every WINDOW_BYTES bytes and overlap by the size of the
+     * largest vector, so every vector lies completely in the window its first element falls in.
+     */
+    private static ByteBuffer[] mapWindows(FileChannel channel, long position, long bytes, long overlap)
+            throws IOException {
+        List<ByteBuffer> windows = new ArrayList<>();
+        for (long start = 0; start == 0 || start < bytes; start += WINDOW_BYTES) {
+            windows.add(map(channel, position + start, Math.min(bytes - start, WINDOW_BYTES + overlap)));
+        }
+        return windows.toArray(new ByteBuffer[0]);
+    }
+
+    /**
+     * Method to map a region of a file as a little-endian read-only buffer.
+     */
+    private static ByteBuffer map(FileChannel channel, long position, long size) throws IOException {
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("segment block of " + size + " bytes is too large to be mapped");
+        }
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+        return buffer.order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static long align(long position) {
+        return (position + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+    }
+
+    /**
+     * Buffered little-endian output to a FileChannel that keeps track of its position.
+     */
+    private static class Output {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+        private long position;
+
+        private Output(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        private long position() {
+            return position;
+        }
+
+        private void putLong(long value) throws IOException {
+            ensure(Long.BYTES);
+            buffer.putLong(value);
+            position += Long.BYTES;
+        }
+
+        private void putInt(int value) throws IOException {
+            ensure(Integer.BYTES);
+            buffer.putInt(value);
+            position += Integer.BYTES;
+        }
+
+        private void putFloat(float value) throws IOException {
+            ensure(Float.BYTES);
+            buffer.putFloat(value);
+            position += Float.BYTES;
+        }
+
+        private void putDouble(double value) throws IOException {
+            ensure(Double.BYTES);
+            buffer.putDouble(value);
+            position += Double.BYTES;
+        }
+
+        private void putBytes(byte[] bytes) throws IOException {
+            for (int start = 0; start < bytes.length; ) {
+                ensure(1);
+                int count = Math.min(buffer.remaining(), bytes.length - start);
+                buffer.put(bytes, start, count);
+                start += count;
+                position += count;
+            }
+        }
+
+        /**
+         * Method to skip bytes, which are written as zeros.
+         */
+        private void skip(long count) throws IOException {
+            for (long i = 0; i < count; i++) {
+                ensure(1);
+                buffer.put((byte) 0);
+                position++;
+            }
+        }
+
+        /**
+         * Method to pad the output with zeros up to the next multiple of ALIGNMENT.
+         */
+        private void align() throws IOException {
+            skip(SegmentFile.align(position) - position);
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                flush();
+            }
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package bds.storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The manifest of a table lists the segment files holding its rows, oldest first, one file name per line. A segment
+ * file that is not listed belongs to a flush or merge that did not complete and is deleted when the table is opened.
+ * The manifest is replaced atomically, so a crash leaves either the old or the new list of segments.
+ */
+class SegmentManifest {
+    static final String EXTENSION = ".manifest";
+
+    /**
+     * Private constructor since this class only contains static methods.
+     */
+    private SegmentManifest() {}
+
+    /**
+     * Method to get the path of the manifest of a table.
+     * @param segmentPath the path of the segment file of the table, see SegmentFile.getPath.
+     * @param tableName the name of the table.
+     * @return the path of the manifest.
+     */
+    static Path getPath(Path segmentPath, String tableName) {
+        return segmentPath.resolveSibling(tableName + EXTENSION);
+    }
+
+    /**
+     * Method to get the path of a segment file written by a flush or a merge.
+     * @param segmentPath the path of the segment file of the table, see SegmentFile.getPath.
+     * @param tableName the name of the table.
+     * @param number the number of the segment, higher for newer files.
+     * @return the path of the segment file.
+     */
+    static Path getSegmentPath(Path segmentPath, String tableName, long number) {
+        return segmentPath.resolveSibling(tableName + "." + number + SegmentFile.FILE_EXTENSION);
+    }
+
+    /**
+     * Method to read the segment file names of a manifest.
+     * @param path the path of the manifest.
+     * @return the file names, oldest first.
+     * @throws IOException if the manifest cannot be read.
+     */
+    static List<String> read(Path path) throws IOException {
+        List<String> names = new ArrayList<>();
+        for (String line : Files.readAllLines(path, StandardCharsets.UTF_8)) {
+            if (!line.trim().isEmpty()) {
+                names.add(line.trim());
+            }
+        }
+        return names;
+    }
+
+    /**
+     * Method to replace a manifest. The new list is synced to the disk before it replaces the old one.
+     * @param path the path of the manifest.
+     * @param names the segment file names, oldest first.
+     * @throws IOException if the manifest cannot be written.
+     */
+    static void write(Path path, List<String> names) throws IOException {
+        StringBuilder text = new StringBuilder();
+        for (String name : names) {
+            text.append(name).append('\n');
+        }
+        Path tempPath = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tempPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer bytes = ByteBuffer.wrap(text.toString().getBytes(StandardCharsets.UTF_8));
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+            channel.force(true);
+        }
+        Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
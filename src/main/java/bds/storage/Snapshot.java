@@ -0,0 +1,88 @@
+package bds.storage;
+
+/**
+ * A consistent, immutable view of the rows of a ColumnarStore as of one committed version. A reader takes a
+ * Snapshot when it starts and reads through it, so it keeps seeing the same rows while writers commit new versions:
+ * rows added after the Snapshot are past its size, and rows deleted or replaced after it still count as visible.
+ * Taking a Snapshot does not lock anything. A Snapshot keeps its store reachable, so the store a Snapshot was taken
+ * from is garbage collected once it was replaced by a compacted copy and no Snapshot of it is left.
+ */
+public class Snapshot {
+    private final ColumnarStore store;
+    private final int size;
+    private final long version;
+    private final int deletedCount;
+
+    /**
+     * Argument constructor for the Snapshot class.
+     * @param store the store the Snapshot reads.
+     * @param size the number of row positions committed at version.
+     * @param version the committed version.
+     * @param deletedCount the number of positions below size that were deleted or replaced at version.
+     */
+    Snapshot(ColumnarStore store, int size, long version, int deletedCount) {
+        this.store = store;
+        this.size = size;
+        this.version = version;
+        this.deletedCount = deletedCount;
+    }
+
+    /**
+     * Method to get the store this Snapshot reads.
+     * @return the ColumnarStore.
+     */
+    public ColumnarStore getStore() {
+        return store;
+    }
+
+    /**
+     * Method to get the number of row positions of this Snapshot, including the positions that are not visible.
+     * @return the number of row positions.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Method to get the version of this Snapshot.
+     * @return the version of the last commit this Snapshot includes.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Method to get the number of row positions of this Snapshot that are not visible. The number of visible rows
+     * is size() - getDeletedCount().
+     * @return the number of deleted or replaced positions.
+     */
+    public int getDeletedCount() {
+        return deletedCount;
+    }
+
+    /**
+     * Method to check if a row is part of this Snapshot.
+     * @param row the position of the row.
+     * @return true if the row was committed and not yet deleted or replaced at the version of this Snapshot.
+     */
+    public boolean isVisible(int row) {
+        if (row >= size) return false;
+
+        long deletedVersion = store.getVersions().getDeletedVersion(row);
+        return deletedVersion == 0 || deletedVersion > version;
+    }
+
+    /**
+     * Method to find the position of the row with a key, following the replaced versions of the row back to the
+     * one this Snapshot sees.
+     * @param key the key of the row.
+     * @return the position of the row, or -1 if no visible row has that key.
+     */
+    public int findRow(Object key) {
+        int row = store.findNewestRow(key);
+        while (row >= size) {
+            row = store.getVersions().getPreviousRow(row);
+        }
+        return row >= 0 && isVisible(row) ? row : -1;
+    }
+}
@@ -0,0 +1,57 @@
+package bds.storage;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Read-only KeyIndex over the key block of a segment file: the BIGINT or INTEGER keys of the rows sorted in
+ * ascending order, followed by the position of each key's row. Keys are found with a binary search on the mapped
+ * block, so opening a segment does not read its keys.
+ */
+class SortedKeyIndex implements KeyIndex {
+    private final ByteBuffer keys;
+    private final ByteBuffer rows;
+    private final int size;
+
+    /**
+     * Argument constructor for the SortedKeyIndex class.
+     * @param keys little-endian buffer holding the sorted keys as longs.
+     * @param rows little-endian buffer holding the row positions as ints, in key order.
+     * @param size the number of keys.
+     */
+    SortedKeyIndex(ByteBuffer keys, ByteBuffer rows, int size) {
+        this.keys = keys;
+        this.rows = rows;
+        this.size = size;
+    }
+
+    @Override
+    public int find(Object key) {
+        if (!(key instanceof Number)) return -1;
+
+        long value = ((Number) key).longValue();
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long midKey = keys.getLong(mid << 3);
+            if (midKey < value) {
+                low = mid + 1;
+            } else if (midKey > value) {
+                high = mid - 1;
+            } else {
+                return rows.getInt(mid << 2);
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public void put(Object key, int row) {
+        throw new UnsupportedOperationException("the key index of a segment file is read-only");
+    }
+
+    @Override
+    public long getMemoryUsage() {
+        return 0;
+    }
+}
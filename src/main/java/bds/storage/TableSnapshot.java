@@ -0,0 +1,91 @@
+package bds.storage;
+
+/**
+ * A consistent, immutable view of all segments of a table, see TableStorage: one Snapshot per segment, oldest first,
+ * with the memtable last. The Snapshots are taken together after a commit, so a row replaced or deleted by the
+ * commit is hidden in its segment exactly when the change is visible in the memtable, and every key has at most one
+ * visible row across the segments.
+ * Rows are addressed by a row reference that combines the index of the segment and the position of the row in it,
+ * see getSegmentIndex and getRow.
+ */
+public class TableSnapshot {
+    private final Snapshot[] segments;
+
+    /**
+     * Argument constructor for the TableSnapshot class.
+     * @param segments the Snapshot of each segment, oldest first.
+     */
+    TableSnapshot(Snapshot[] segments) {
+        this.segments = segments;
+    }
+
+    /**
+     * Method to get the number of segments.
+     * @return the number of segments, including the memtable.
+     */
+    public int getSegmentCount() {
+        return segments.length;
+    }
+
+    /**
+     * Method to get the Snapshot of a segment.
+     * @param index the index of the segment, 0 for the oldest.
+     * @return the Snapshot of the segment.
+     */
+    public Snapshot getSegment(int index) {
+        return segments[index];
+    }
+
+    /**
+     * Method to get the number of visible rows of all segments.
+     * @return the number of visible rows.
+     */
+    public long getRowCount() {
+        long count = 0;
+        for (Snapshot segment : segments) {
+            count += segment.size() - segment.getDeletedCount();
+        }
+        return count;
+    }
+
+    /**
+     * Method to find the visible row with a key. The segments are searched from the newest to the oldest.
+     * @param key the key of the row.
+     * @return the row reference of the row, or -1 if no visible row has that key.
+     */
+    public long findRow(Object key) {
+        for (int i = segments.length - 1; i >= 0; i--) {
+            int row = segments[i].findRow(key);
+            if (row >= 0) return toReference(i, row);
+        }
+        return -1;
+    }
+
+    /**
+     * Method to combine the index of a segment and the position of a row into a row reference.
+     * @param segment the index of the segment.
+     * @param row the position of the row in the segment.
+     * @return the row reference.
+     */
+    public static long toReference(int segment, int row) {
+        return ((long) segment << 32) | row;
+    }
+
+    /**
+     * Method to get the index of the segment of a row reference.
+     * @param reference the row reference.
+     * @return the index of the segment.
+     */
+    public static int getSegmentIndex(long reference) {
+        return (int) (reference >>> 32);
+    }
+
+    /**
+     * Method to get the position of the row of a row reference in its segment.
+     * @param reference the row reference.
+     * @return the position of the row.
+     */
+    public static int getRow(long reference) {
+        return (int) reference;
+    }
+}
@@ -0,0 +1,634 @@
+package bds.storage;
+
+import bds.common.Logger;
+import org.apache.calcite.sql.type.SqlTypeName;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The rows of a table together with their durable write path, stored as a log-structured merge tree. Changes are
+ * appended to a WriteAheadLog and then applied to the memtable, a small writable ColumnarStore. When the memtable holds
+ * 'bds.lsm.memtableRows' rows (65536 by default) it is frozen and a background worker writes it to a new segment file,
+ * sorted by key. The table is the list of these segments, oldest first, and the manifest of the table names the
+ * segment files in use, see SegmentManifest. The worker also merges runs of segments of similar size into one: when
+ * the newest 'bds.lsm.mergeWidth' segments (4 by default) or more each hold at most as many rows as the newer ones
+ * together, they are merged, so a table holds a logarithmic number of segments and writes never rewrite the whole
+ * table. A segment of which more than half of the rows are deleted is rewritten on its own.
+ * A key has at most one visible row across the segments. A change to a key held by an older segment deletes the old
+ * row in that segment, see ColumnarStore.deleteRowAt, and deleting such a key also leaves a tombstone in the memtable,
+ * so the deletion survives a restart until a merge includes the oldest segment. Each write commits every segment it
+ * changes and then publishes a new TableSnapshot, so readers see a consistent table without locking.
+ * Freezing the memtable seals the log, so the records of the frozen memtable are exactly those of the sealed log,
+ * which is deleted once the segment file is listed in the manifest. A restart opens the listed segments, and replays
+ * the sealed log and then the current log into a new memtable; applying a change again gives the same rows.
+ * Without a storage directory the memtable is frozen and merged in memory only.
+ */
+public class TableStorage {
+    public static final String MEMTABLE_ROWS_PROPERTY = "bds.lsm.memtableRows";
+    public static final String MERGE_WIDTH_PROPERTY = "bds.lsm.mergeWidth";
+
+    private static final int DEFAULT_MEMTABLE_ROWS = 1 << 16;
+    private static final int DEFAULT_MERGE_WIDTH = 4;
+    private static final Logger logger = Logger.getInstance();
+    private static final ExecutorService compactionExecutor = Executors.newSingleThreadExecutor(task -> {
+        Thread thread = new Thread(task, "bds-compaction");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final String tableName;
+    private final List<String> fieldNames;
+    private final List<SqlTypeName> fieldTypes;
+    private final Path segmentPath;
+    private final int memtableRows;
+    private final int mergeWidth;
+    private final AtomicBoolean compactionScheduled = new AtomicBoolean();
+    private final Object compactionLock = new Object();
+    private List<Segment> segments;
+    private Segment memtable;
+    private volatile TableSnapshot current;
+    private WriteAheadLog log;
+    private long nextSegmentNumber = 1;
+    private boolean closed;
+
+    /**
+     * Argument constructor for the TableStorage class.
+     * @param tableName the name of the table.
+     * @param segments the immutable segments of the table, oldest first.
+     * @param segmentPath the path of the segment file of the table, see SegmentFile.getPath, or null if the segments
+     *                    are only kept in memory.
+     */
+    private TableStorage(String tableName, List<Segment> segments, Path segmentPath) {
+        ColumnarStore fields = segments.get(0).getStore();
+        this.tableName = tableName;
+        this.fieldNames = fields.getFieldNames();
+        this.fieldTypes = fields.getFieldTypes();
+        this.segments = segments;
+        this.segmentPath = segmentPath;
+        this.memtable = Segment.createMemtable(fields);
+        this.memtableRows = Math.max(1, Integer.getInteger(MEMTABLE_ROWS_PROPERTY, DEFAULT_MEMTABLE_ROWS));
+        this.mergeWidth = Math.max(2, Integer.getInteger(MERGE_WIDTH_PROPERTY, DEFAULT_MERGE_WIDTH));
+        publish();
+    }
+
+    /**
+     * Method to create a TableStorage that applies changes in memory only.
+     * @param tableName the name of the table.
+     * @param store the rows of the table.
+     * @return the new TableStorage.
+     */
+    public static TableStorage inMemory(String tableName, ColumnarStore store) {
+        List<Segment> segments = new ArrayList<>();
+        segments.add(new Segment(store, Column.create(store.getFieldTypes().get(0)), 0, null));
+        return new TableStorage(tableName, segments, null);
+    }
+
+    /**
+     * Method to open the durable storage of a table in the directory set with the 'bds.storage.dir' system property.
+     * The segments listed in the manifest of the table are opened; a table without a manifest starts with the
+     * single segment file written when its rows were loaded. The records left in the log by a previous run are then
+     * applied to the memtable.
+     * @param tableName the name of the table.
+     * @param fields a store with the fields of the table, see BaseCustomTable.createStore.
+     * @param rows supplies the rows of a table without a manifest, loaded from its segment file or by its
+     *             DataLoader; it is not called for a table with a manifest.
+     * @return the new TableStorage, applying changes in memory only if the property is not set.
+     * @throws IOException if a segment file or the log cannot be read, or a segment file is missing or has other
+     *                     fields.
+     */
+    public static TableStorage open(String tableName, ColumnarStore fields, Supplier<ColumnarStore> rows)
+            throws IOException {
+        Path segmentPath = SegmentFile.getPath(tableName);
+        Path logPath = WriteAheadLog.getPath(tableName);
+        if (logPath == null || !WriteAheadLog.isSupported(fields.getFieldTypes())) {
+            return inMemory(tableName, rows.get());
+        }
+
+        Path manifestPath = SegmentManifest.getPath(segmentPath, tableName);
+        List<Segment> segments = new ArrayList<>();
+        if (Files.exists(manifestPath)) {
+            for (String name : SegmentManifest.read(manifestPath)) {
+                Segment segment = SegmentFile.openSegment(segmentPath.resolveSibling(name));
+                ColumnarStore store = segment.getStore();
+                if (!store.getFieldNames().equals(fields.getFieldNames())
+                        || !store.getFieldTypes().equals(fields.getFieldTypes())) {
+                    throw new IOException("segment file " + name + " does not match the fields of " + tableName);
+                }
+                segments.add(segment);
+            }
+        }
+        if (segments.isEmpty()) {
+            ColumnarStore store = rows.get();
+            if (!Files.exists(segmentPath)) {
+                // the log only holds the changes made since the segment file was written
+                throw new IOException("no segment file " + segmentPath + " for " + tableName);
+            }
+            segments.add(new Segment(store, Column.create(store.getFieldTypes().get(0)), 0, segmentPath));
+            SegmentManifest.write(manifestPath, Collections.singletonList(segmentPath.getFileName().toString()));
+        }
+
+        TableStorage storage = new TableStorage(tableName, segments, segmentPath);
+        storage.hideShadowedRows();
+        storage.deleteUnlistedFiles();
+        storage.publish();
+
+        Path sealedPath = getSealedPath(logPath);
+        if (Files.exists(sealedPath)) {
+            WriteAheadLog.replay(sealedPath, storage.fieldTypes, storage::apply);
+        }
+        storage.log = WriteAheadLog.open(logPath, storage.fieldTypes, WriteAheadLog.SyncMode.fromSystemProperties(),
+                storage::apply);
+        logger.debug("opened " + segments.size() + " segments and the log " + logPath + " of " + tableName + ", "
+                + storage.log.size() + " bytes", "TableStorage");
+        storage.scheduleCompaction();
+        return storage;
+    }
+
+    /**
+     * Method to get the rows of the last commit. The TableSnapshot stays consistent while later commits are applied
+     * and while segments are flushed and merged.
+     * @return the current TableSnapshot of the rows.
+     */
+    public TableSnapshot snapshot() {
+        return current;
+    }
+
+    /**
+     * Method to get the names of the fields of the table.
+     * @return unmodifiable list of the field names.
+     */
+    public List<String> getFieldNames() {
+        return fieldNames;
+    }
+
+    /**
+     * Method to get the types of the fields of the table.
+     * @return unmodifiable list of the field types.
+     */
+    public List<SqlTypeName> getFieldTypes() {
+        return fieldTypes;
+    }
+
+    /**
+     * Method to check if changes are written to a log.
+     * @return true if changes survive a restart.
+     */
+    public boolean isDurable() {
+        return log != null;
+    }
+
+    /**
+     * Method to apply changes to the rows. With a log, the changes are logged first and the method returns once they
+     * are durable as configured by 'bds.wal.sync'. The changes of one call are applied in order as one commit, so
+     * readers see either none or all of them.
+     * @param records the changes to apply.
+     * @throws IOException if the changes cannot be logged; they are not applied then.
+     * @throws IllegalArgumentException if a change does not match the fields of the table; nothing is applied then.
+     */
+    public void write(List<LogRecord> records) throws IOException {
+        if (records.isEmpty()) return;
+
+        if (log == null) {
+            apply(records);
+        } else {
+            log.append(records);
+        }
+        if (memtable.getStore().size() >= memtableRows) {
+            scheduleCompaction();
+        }
+    }
+
+    /**
+     * Method to freeze the memtable and, with a storage directory, write it to a new segment file, then to merge
+     * segments as needed. This normally runs in the background once the memtable is full, see write.
+     * @throws IOException if a segment file or the manifest cannot be written.
+     */
+    public void flush() throws IOException {
+        synchronized (compactionLock) {
+            if (closed) return;
+
+            flushMemtable();
+            mergeSegments();
+        }
+    }
+
+    /**
+     * Method to wait for the background flush or merge in progress, then to write the pending changes and close the
+     * log. The memtable is not flushed, its changes are replayed from the log on the next start.
+     * @throws IOException if the log cannot be written.
+     */
+    public void close() throws IOException {
+        synchronized (compactionLock) {
+            closed = true;
+            if (log != null) {
+                log.close();
+            }
+        }
+    }
+
+    private void scheduleCompaction() {
+        if (compactionScheduled.compareAndSet(false, true)) {
+            compactionExecutor.execute(this::compactQuietly);
+        }
+    }
+
+    private void compactQuietly() {
+        try {
+            synchronized (compactionLock) {
+                if (closed) return;
+
+                if (memtable.getStore().size() >= memtableRows || segmentPath != null && hasUnwrittenSegment()) {
+                    flushMemtable();
+                }
+                mergeSegments();
+            }
+        }
+        catch (IOException | RuntimeException ex) {
+            logger.error("could not flush or merge the segments of " + tableName + ": " + ex.getMessage(),
+                    "TableStorage");
+        }
+        finally {
+            compactionScheduled.set(false);
+        }
+    }
+
+    /**
+     * Method to freeze the memtable and write it to a segment file, called under compactionLock. A frozen memtable
+     * whose segment file could not be written stays in the segments, and is written by the next flush before a new
+     * memtable is frozen, since the sealed log holds its records.
+     */
+    private void flushMemtable() throws IOException {
+        if (segmentPath == null) {
+            synchronized (this) {
+                freezeMemtable();
+            }
+            return;
+        }
+
+        Path sealedPath = getSealedPath(WriteAheadLog.getPath(tableName));
+        if (!hasUnwrittenSegment()) {
+            if (Files.exists(sealedPath)) {
+                // the sealed log of a previous run was replayed into the memtable, so the memtable covers it
+                synchronized (this) {
+                    freezeMemtable();
+                }
+            } else {
+                log.rotate(sealedPath, () -> {
+                    synchronized (this) {
+                        freezeMemtable();
+                    }
+                });
+            }
+        }
+
+        Segment frozen;
+        synchronized (this) {
+            frozen = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+        }
+        if (frozen == null || frozen.getPath() != null) return;
+
+        rewrite(Collections.singletonList(frozen));
+        Files.deleteIfExists(sealedPath);
+    }
+
+    /**
+     * Method to turn the memtable into an immutable segment and to start a new memtable, called by the single writer.
+     */
+    private void freezeMemtable() {
+        ColumnarStore store = memtable.getStore();
+        if (store.size() == 0 && memtable.getTombstoneCount() == 0) return;
+
+        List<Segment> frozen = new ArrayList<>(segments);
+        frozen.add(memtable);
+        segments = frozen;
+        memtable = Segment.createMemtable(store);
+        publish();
+        logger.debug("froze the memtable of " + tableName + " with " + store.size() + " rows", "TableStorage");
+    }
+
+    private synchronized boolean hasUnwrittenSegment() {
+        return !segments.isEmpty() && segments.get(segments.size() - 1).getPath() == null;
+    }
+
+    /**
+     * Method to merge runs of segments until none is due, called under compactionLock.
+     */
+    private void mergeSegments() throws IOException {
+        List<Segment> run;
+        while ((run = pickMerge()) != null) {
+            rewrite(run);
+            for (Segment segment : run) {
+                if (segment.getPath() != null) {
+                    try {
+                        Files.deleteIfExists(segment.getPath());
+                    }
+                    catch (IOException ex) {
+                        logger.error("could not delete " + segment.getPath() + ": " + ex.getMessage(),
+                                "TableStorage");
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Method to pick the segments to merge next: the longest run of the newest written segments in which each
+     * segment holds at most as many visible rows as the newer ones together, if it has at least mergeWidth segments,
+     * or else a segment of which more than half of the rows are deleted.
+     * @return the segments to merge, oldest first, or null if no merge is due.
+     */
+    private synchronized List<Segment> pickMerge() {
+        int end = segments.size();
+        if (segmentPath != null && hasUnwrittenSegment()) {
+            end--;
+        }
+        if (end <= 0) return null;
+
+        int start = end - 1;
+        long rows = segments.get(start).getLiveRowCount();
+        while (start > 0 && segments.get(start - 1).getLiveRowCount() <= rows) {
+            start--;
+            rows += segments.get(start).getLiveRowCount();
+        }
+        if (end - start >= mergeWidth) {
+            return new ArrayList<>(segments.subList(start, end));
+        }
+
+        for (int i = 0; i < end; i++) {
+            Snapshot snapshot = segments.get(i).getStore().snapshot();
+            if (2L * snapshot.getDeletedCount() > snapshot.size()) {
+                return Collections.singletonList(segments.get(i));
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Method to replace consecutive segments by one segment holding their visible rows sorted by key, and their
+     * tombstones unless the oldest segment is among them. The rows are copied from the current Snapshots while
+     * writers go on; rows deleted in the meantime are deleted in the new segment when it replaces the old ones.
+     * @param run the segments to replace, oldest first.
+     */
+    private void rewrite(List<Segment> run) throws IOException {
+        ColumnarStore[] stores = new ColumnarStore[run.size()];
+        Snapshot[] snapshots = new Snapshot[run.size()];
+        boolean oldest;
+        synchronized (this) {
+            oldest = segments.indexOf(run.get(0)) == 0;
+            for (int i = 0; i < stores.length; i++) {
+                stores[i] = run.get(i).getStore();
+                snapshots[i] = stores[i].snapshot();
+            }
+        }
+
+        int count = 0;
+        for (Snapshot snapshot : snapshots) {
+            count += snapshot.size() - snapshot.getDeletedCount();
+        }
+        int[] sources = new int[count];
+        int[] rows = new int[count];
+        count = 0;
+        for (int i = 0; i < snapshots.length; i++) {
+            for (int row = 0; row < snapshots[i].size(); row++) {
+                if (snapshots[i].isVisible(row)) {
+                    sources[count] = i;
+                    rows[count++] = row;
+                }
+            }
+        }
+        sortByKey(stores, sources, rows, count);
+
+        Column tombstones = Column.create(fieldTypes.get(0));
+        int tombstoneCount = 0;
+        if (!oldest) {
+            Set<Object> keys = new HashSet<>();
+            for (Segment segment : run) {
+                for (int i = 0; i < segment.getTombstoneCount(); i++) {
+                    Object key = segment.getTombstone(i);
+                    if (keys.add(key)) {
+                        tombstones.set(tombstoneCount++, key);
+                    }
+                }
+            }
+        }
+
+        Segment replacement;
+        if (segmentPath == null) {
+            replacement = new Segment(ColumnarStore.copyOf(stores, sources, rows), tombstones, tombstoneCount, null);
+        } else {
+            Path path = SegmentManifest.getSegmentPath(segmentPath, tableName, nextSegmentNumber++);
+            SegmentFile.write(stores, sources, rows, tombstones, tombstoneCount, path);
+            replacement = SegmentFile.openSegment(path);
+        }
+
+        List<String> names = install(run, replacement, stores, sources, rows);
+        if (names != null) {
+            SegmentManifest.write(SegmentManifest.getPath(segmentPath, tableName), names);
+        }
+        logger.debug("rewrote " + run.size() + " segments of " + tableName + " into one with " + count + " rows",
+                "TableStorage");
+    }
+
+    /**
+     * Method to replace segments by their rewritten segment, deleting the rows that were deleted from the old
+     * segments while it was written.
+     * @return the segment file names to write to the manifest, or null without a storage directory.
+     */
+    private synchronized List<String> install(List<Segment> run, Segment replacement, ColumnarStore[] stores,
+                                              int[] sources, int[] rows) {
+        ColumnarStore store = replacement.getStore();
+        for (int i = 0; i < store.size(); i++) {
+            if (!stores[sources[i]].isCurrent(rows[i])) {
+                store.deleteRowAt(i);
+            }
+        }
+        store.commit();
+
+        int start = segments.indexOf(run.get(0));
+        List<Segment> replaced = new ArrayList<>(segments.subList(0, start));
+        replaced.add(replacement);
+        replaced.addAll(segments.subList(start + run.size(), segments.size()));
+        segments = replaced;
+        publish();
+
+        if (segmentPath == null) return null;
+
+        List<String> names = new ArrayList<>();
+        for (Segment segment : segments) {
+            if (segment.getPath() != null) {
+                names.add(segment.getPath().getFileName().toString());
+            }
+        }
+        return names;
+    }
+
+    /**
+     * Method to apply a commit, called in log order by a single writer at a time.
+     */
+    private synchronized void apply(List<LogRecord> records) {
+        ColumnarStore store = memtable.getStore();
+        boolean[] changed = new boolean[segments.size()];
+        for (LogRecord record : records) {
+            Object key = record.getValues()[0];
+            if (record.getOperation() == LogRecord.UPSERT) {
+                int row = store.appendRow(record.getValues());
+                hideInSegments(store.getValue(row, 0), changed);
+            } else if (key != null) {
+                store.deleteKey(key);
+                if (hideInSegments(key, changed)) {
+                    memtable.addTombstone(key);
+                }
+            }
+        }
+        for (int i = 0; i < changed.length; i++) {
+            if (changed[i]) {
+                segments.get(i).getStore().commit();
+            }
+        }
+        store.commit();
+        publish();
+    }
+
+    /**
+     * Method to delete the current row with a key in the newest segment holding the key.
+     * @return true if a segment holds the key.
+     */
+    private boolean hideInSegments(Object key, boolean[] changed) {
+        for (int i = segments.size() - 1; i >= 0; i--) {
+            ColumnarStore store = segments.get(i).getStore();
+            int row = store.findNewestRow(key);
+            if (row >= 0) {
+                if (store.deleteRowAt(row)) {
+                    changed[i] = true;
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Method to delete the rows of older segments that the rows and tombstones of newer segments replace, when the
+     * segments are opened.
+     */
+    private synchronized void hideShadowedRows() {
+        boolean[] changed = new boolean[segments.size()];
+        for (int j = segments.size() - 1; j > 0; j--) {
+            Segment segment = segments.get(j);
+            ColumnarStore store = segment.getStore();
+            List<Segment> older = segments.subList(0, j);
+            for (int row = 0; row < store.size(); row++) {
+                hideInSegments(older, store.getValue(row, 0), changed);
+            }
+            for (int i = 0; i < segment.getTombstoneCount(); i++) {
+                hideInSegments(older, segment.getTombstone(i), changed);
+            }
+        }
+        for (int i = 0; i < changed.length; i++) {
+            if (changed[i]) {
+                segments.get(i).getStore().commit();
+            }
+        }
+    }
+
+    private static void hideInSegments(List<Segment> segments, Object key, boolean[] changed) {
+        for (int i = segments.size() - 1; i >= 0; i--) {
+            ColumnarStore store = segments.get(i).getStore();
+            int row = store.findNewestRow(key);
+            if (row >= 0) {
+                if (store.deleteRowAt(row)) {
+                    changed[i] = true;
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * Method to delete the segment files of the table that the manifest does not list, left by a flush or merge that
+     * did not complete.
+     */
+    private void deleteUnlistedFiles() throws IOException {
+        Set<String> listed = new HashSet<>();
+        for (Segment segment : segments) {
+            listed.add(segment.getPath().getFileName().toString());
+        }
+        Pattern pattern = Pattern.compile(Pattern.quote(tableName) + "(\\.(\\d+))?"
+                + Pattern.quote(SegmentFile.FILE_EXTENSION) + "(\\.tmp)?");
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(segmentPath.toAbsolutePath().getParent())) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                Matcher matcher = pattern.matcher(name);
+                if (!matcher.matches()) continue;
+
+                if (matcher.group(2) != null) {
+                    nextSegmentNumber = Math.max(nextSegmentNumber, Long.parseLong(matcher.group(2)) + 1);
+                }
+                if (!listed.contains(name)) {
+                    Files.deleteIfExists(file);
+                    logger.debug("deleted unlisted segment file " + file, "TableStorage");
+                }
+            }
+        }
+    }
+
+    /**
+     * Method to publish the current Snapshots of the segments and the memtable to new readers.
+     */
+    private synchronized void publish() {
+        Snapshot[] snapshots = new Snapshot[segments.size() + 1];
+        for (int i = 0; i < segments.size(); i++) {
+            snapshots[i] = segments.get(i).getStore().snapshot();
+        }
+        snapshots[segments.size()] = memtable.getStore().snapshot();
+        current = new TableSnapshot(snapshots);
+    }
+
+    /**
+     * Method to sort the first count rows by key, so the segment files are sorted by key.
+     */
+    private static void sortByKey(ColumnarStore[] stores, int[] sources, int[] rows, int count) {
+        Integer[] order = new Integer[count];
+        Object[] keys = new Object[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+            keys[i] = stores[sources[i]].getValue(rows[i], 0);
+        }
+        Arrays.sort(order, (a, b) -> compareKeys(keys[a], keys[b]));
+
+        int[] sortedSources = new int[count];
+        int[] sortedRows = new int[count];
+        for (int i = 0; i < count; i++) {
+            sortedSources[i] = sources[order[i]];
+            sortedRows[i] = rows[order[i]];
+        }
+        System.arraycopy(sortedSources, 0, sources, 0, count);
+        System.arraycopy(sortedRows, 0, rows, 0, count);
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static int compareKeys(Object a, Object b) {
+        if (a instanceof Number && b instanceof Number) {
+            return Long.compare(((Number) a).longValue(), ((Number) b).longValue());
+        }
+        return ((Comparable) a).compareTo(b);
+    }
+
+    private static Path getSealedPath(Path logPath) {
+        return logPath.resolveSibling(logPath.getFileName() + ".1");
+    }
+}
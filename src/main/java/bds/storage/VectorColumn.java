@@ -0,0 +1,148 @@
+package bds.storage;
+
+import bds.vectors.DenseVector;
+import org.apache.calcite.sql.type.SqlTypeName;
+import java.util.Arrays;
+
+/**
+ * Column storing vectors in one contiguous float buffer. Each row holds the offset and the dimension of its vector
+ * in the buffer, and getVector returns a DenseVector view over that slice, so scanning the column reads the buffer
+ * sequentially without copying or decoding the elements. The squared norm of each vector is computed when it is
+ * stored, for the range searches of similarity thresholds.
+ * Vectors that keep float64 elements, see DenseVector.getDouble, are also written to a float64 buffer at the same
+ * offsets, so the EXACT precision mode computes with the digits they were loaded with. The float64 buffer is only
+ * created when the first such vector is stored, and then holds the widened float elements of the other vectors.
+ * Elements written to the buffer are never overwritten: replacing the vector of a row appends the new elements, so
+ * views returned earlier keep their values.
+ */
+public class VectorColumn extends Column {
+    private volatile float[] buffer = new float[0];
+    private volatile double[] float64Buffer;
+    private int bufferSize;
+    private volatile int[] offsets = new int[0];
+    private volatile int[] dimensions = new int[0];
+    private volatile float[] squaredNorms = new float[0];
+
+    VectorColumn(SqlTypeName type) {
+        super(type);
+    }
+
+    /**
+     * Method to get the vector of a row.
+     * @param row the position of the row.
+     * @return a DenseVector view over the elements of the vector, or null if the value is null.
+     */
+    public DenseVector getVector(int row) {
+        if (isNull(row)) return null;
+
+        return new DenseVector(buffer, offsets[row], dimensions[row], float64Buffer);
+    }
+
+    /**
+     * Method to check if the vectors of this column keep float64 elements.
+     * @return true if a vector with float64 elements was stored.
+     */
+    public boolean hasFloat64Elements() {
+        return float64Buffer != null;
+    }
+
+    /**
+     * Method to get the dimension of the vector of a row.
+     * @param row the position of the row.
+     * @return the number of elements, 0 if the value is null.
+     */
+    public int getDimension(int row) {
+        return dimensions[row];
+    }
+
+    /**
+     * Method to get the squared norm of the vector of a row, which is computed once when the vector is stored.
+     * @param row the position of the row.
+     * @return the sum of the squares of the elements, 0 if the value is null.
+     */
+    public float getSquaredNorm(int row) {
+        return squaredNorms[row];
+    }
+
+    @Override
+    protected Object getValue(int row) {
+        return getVector(row);
+    }
+
+    @Override
+    protected synchronized void setValue(int row, Object value) {
+        ensureRowCapacity(row + 1);
+        DenseVector vector = value instanceof float[] ? new DenseVector((float[]) value) : DenseVector.from(value);
+
+        int dimension = vector.dimension();
+        if (bufferSize + dimension > buffer.length) {
+            int capacity = grow(buffer.length, bufferSize + dimension);
+            if (float64Buffer != null) {
+                float64Buffer = Arrays.copyOf(float64Buffer, capacity);
+            }
+            buffer = Arrays.copyOf(buffer, capacity);
+        }
+        float[] array = vector.getArray();
+        if (array != null) {
+            System.arraycopy(array, vector.getArrayOffset(), buffer, bufferSize, dimension);
+        } else {
+            for (int i = 0; i < dimension; i++) {
+                buffer[bufferSize + i] = vector.get(i);
+            }
+        }
+        if (float64Buffer == null && vector.hasFloat64Elements()) {
+            double[] widened = new double[buffer.length];
+            for (int i = 0; i < bufferSize; i++) {
+                widened[i] = buffer[i];
+            }
+            float64Buffer = widened;
+        }
+        if (float64Buffer != null) {
+            for (int i = 0; i < dimension; i++) {
+                float64Buffer[bufferSize + i] = vector.getDouble(i);
+            }
+        }
+        offsets[row] = bufferSize;
+        dimensions[row] = dimension;
+        squaredNorms[row] = squaredNorm(new DenseVector(buffer, bufferSize, dimension));
+        bufferSize += dimension;
+    }
+
+    @Override
+    protected void setDefault(int row) {
+        ensureRowCapacity(row + 1);
+        offsets[row] = 0;
+        dimensions[row] = 0;
+        squaredNorms[row] = 0;
+    }
+
+    @Override
+    public long getMemoryUsage() {
+        double[] float64 = float64Buffer;
+        return super.getMemoryUsage() + 4L * buffer.length + (float64 == null ? 0 : 8L * float64.length)
+                + 12L * offsets.length;
+    }
+
+    /**
+     * Method to compute the squared norm of a vector, accumulated in double precision.
+     * @param vector the vector.
+     * @return the sum of the squares of the elements.
+     */
+    protected static float squaredNorm(DenseVector vector) {
+        double sum = 0;
+        for (int i = 0; i < vector.dimension(); i++) {
+            float element = vector.get(i);
+            sum += (double) element * element;
+        }
+        return (float) sum;
+    }
+
+    private void ensureRowCapacity(int required) {
+        if (required > offsets.length) {
+            int capacity = grow(offsets.length, required);
+            offsets = Arrays.copyOf(offsets, capacity);
+            dimensions = Arrays.copyOf(dimensions, capacity);
+            squaredNorms = Arrays.copyOf(squaredNorms, capacity);
+        }
+    }
+}
@@ -0,0 +1,594 @@
+package bds.storage;
+
+import bds.common.Logger;
+import bds.vectors.DenseVector;
+import org.apache.calcite.sql.type.SqlTypeName;
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of the changes made to the rows of a table, so the changes made since the last segment file was
+ * written survive a restart. The file starts with an 8 byte header (the magic number and the format version) followed
+ * by one entry per commit, holding the records of one append call:
+ * <pre>
+ *   int32  length    the number of payload bytes
+ *   int32  crc       the CRC32 of the payload
+ *   int32  count     the number of records
+ *   records          for each record:
+ *     byte operation LogRecord.UPSERT or LogRecord.DELETE
+ *     values         for each value, a null flag byte followed by the value: int64 for BIGINT, int32 for INTEGER,
+ *                    the length and the UTF-8 bytes for VARCHAR, the dimension and the float32 elements for vectors,
+ *                    or the dimension with its sign bit set and the float64 elements for vectors keeping float64
+ *                    elements
+ * </pre>
+ * All numbers are little-endian. A crash can leave a partially written entry at the end of the file; opening the log
+ * stops at the first entry whose length or checksum does not match, and truncates the file there, so a commit is
+ * either replayed as a whole or not at all.
+ * Appends use group commit: concurrent writers queue their encoded records, and the first writer to get the file
+ * writes the entries of all waiting writers with a single write and a single sync, then applies their commits in log
+ * order on behalf of the others. How the file is synced is configured with the 'bds.wal.sync' system property, see
+ * SyncMode.
+ * A commit is applied from the records decoded from its own entry, which are the records a replay applies, so every
+ * value is already converted to the type of its field and applying a written commit cannot fail on a value. A commit
+ * whose entry cannot be encoded is rejected before anything is written.
+ */
+public class WriteAheadLog implements Closeable {
+    public static final String EXTENSION = ".wal";
+    public static final String SYNC_PROPERTY = "bds.wal.sync";
+    public static final String SYNC_INTERVAL_PROPERTY = "bds.wal.syncInterval";
+
+    private static final int MAGIC = 0x57534442;
+    private static final int VERSION = 2;
+    private static final int HEADER_BYTES = 8;
+    private static final int MAX_ENTRY_BYTES = 1 << 30;
+    private static final long DEFAULT_SYNC_INTERVAL = 100;
+    private static final int FLOAT64_FLAG = 1 << 31;
+
+    private static final Logger logger = Logger.getInstance();
+    private static final ScheduledExecutorService syncScheduler = Executors.newSingleThreadScheduledExecutor(task -> {
+        Thread thread = new Thread(task, "bds-wal-sync");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * The ways the log can be synced to the disk.
+     */
+    public enum SyncMode {
+        /** Every group commit is synced before the writers return, no acknowledged change is lost. */
+        COMMIT,
+        /** The file is synced in the background every 'bds.wal.syncInterval' milliseconds (100 by default), so a
+         * crash of the machine loses at most the changes of the last interval. */
+        INTERVAL,
+        /** The file is never synced explicitly, the operating system decides when it reaches the disk. */
+        NONE;
+
+        /**
+         * Method to read the SyncMode from the 'bds.wal.sync' system property.
+         * @return the configured SyncMode, COMMIT by default.
+         */
+        public static SyncMode fromSystemProperties() {
+            String mode = System.getProperty(SYNC_PROPERTY);
+            return mode == null ? COMMIT : valueOf(mode.trim().toUpperCase(Locale.ROOT));
+        }
+    }
+
+    private final Path path;
+    private final List<SqlTypeName> types;
+    private final SyncMode syncMode;
+    private final Consumer<List<LogRecord>> applier;
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private final Object pendingLock = new Object();
+    private volatile FileChannel channel;
+    private volatile long size;
+    private List<Commit> pending = new ArrayList<>();
+    private int pendingBytes;
+    private ScheduledFuture<?> syncTask;
+    private volatile RuntimeException applyFailure;
+
+    private WriteAheadLog(Path path, List<SqlTypeName> types, SyncMode syncMode, Consumer<List<LogRecord>> applier,
+                          FileChannel channel, long size) {
+        this.path = path;
+        this.types = types;
+        this.syncMode = syncMode;
+        this.applier = applier;
+        this.channel = channel;
+        this.size = size;
+    }
+
+    /**
+     * Method to get the path of the log of a table, in the directory set with the 'bds.storage.dir' system property.
+     * @param tableName the name of the table.
+     * @return the path of the log, or null if the property is not set.
+     */
+    public static Path getPath(String tableName) {
+        Path segmentPath = SegmentFile.getPath(tableName);
+        return segmentPath == null ? null : segmentPath.resolveSibling(tableName + EXTENSION);
+    }
+
+    /**
+     * Method to check if the rows of a table can be logged.
+     * @param types the types of the fields of the table.
+     * @return true if every field type can be written to a log.
+     */
+    public static boolean isSupported(List<SqlTypeName> types) {
+        for (SqlTypeName type : types) {
+            if (!SegmentFile.isSupported(type)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Method to read the commits of a log file, for example of a log that was sealed by rotate before a crash.
+     * Reading stops at the end of the file or at the first damaged entry.
+     * @param path the path of the log file.
+     * @param types the types of the fields of the table.
+     * @param consumer called with the records of each commit, in log order.
+     * @return the number of bytes holding valid entries, including the header.
+     * @throws IOException if the file cannot be read or is not a log file.
+     */
+    public static long replay(Path path, List<SqlTypeName> types, Consumer<List<LogRecord>> consumer)
+            throws IOException {
+        try (InputStream input = new BufferedInputStream(Files.newInputStream(path), 1 << 16)) {
+            DataInputStream data = new DataInputStream(input);
+            byte[] header = new byte[HEADER_BYTES];
+            data.readFully(header);
+            ByteBuffer headerBuffer = ByteBuffer.wrap(header).order(ByteOrder.LITTLE_ENDIAN);
+            if (headerBuffer.getInt(0) != MAGIC || headerBuffer.getInt(4) != VERSION) {
+                throw new IOException(path + " is not a log file of a supported version");
+            }
+
+            long valid = HEADER_BYTES;
+            byte[] entryHeader = new byte[8];
+            CRC32 crc = new CRC32();
+            while (true) {
+                try {
+                    data.readFully(entryHeader);
+                }
+                catch (EOFException ex) {
+                    return valid;
+                }
+                ByteBuffer entry = ByteBuffer.wrap(entryHeader).order(ByteOrder.LITTLE_ENDIAN);
+                int length = entry.getInt(0);
+                if (length <= 0 || length > MAX_ENTRY_BYTES) return valid;
+
+                byte[] payload = new byte[length];
+                try {
+                    data.readFully(payload);
+                }
+                catch (EOFException ex) {
+                    return valid;
+                }
+                crc.reset();
+                crc.update(payload, 0, length);
+                if ((int) crc.getValue() != entry.getInt(4)) return valid;
+
+                consumer.accept(decode(ByteBuffer.wrap(payload).order(ByteOrder.LITTLE_ENDIAN), types));
+                valid += 8 + length;
+            }
+        }
+        catch (EOFException ex) {
+            throw new IOException(path + " is not a log file", ex);
+        }
+    }
+
+    /**
+     * Method to open the log of a table for appending, creating it if needed. The commits already in the log are
+     * passed to applier first, and a damaged tail left by a crash is truncated.
+     * @param path the path of the log file.
+     * @param types the types of the fields of the table.
+     * @param syncMode how the file is synced.
+     * @param applier called with the records of each commit in log order, for the replayed commits and then for the
+     *                appended ones.
+     * @return the open WriteAheadLog.
+     * @throws IOException if the file cannot be opened or is not a log file.
+     */
+    public static WriteAheadLog open(Path path, List<SqlTypeName> types, SyncMode syncMode,
+                                     Consumer<List<LogRecord>> applier) throws IOException {
+        long size = HEADER_BYTES;
+        if (Files.exists(path) && Files.size(path) > 0) {
+            size = replay(path, types, applier);
+        }
+        FileChannel channel = openChannel(path, size);
+        WriteAheadLog log = new WriteAheadLog(path, types, syncMode, applier, channel, size);
+        if (syncMode == SyncMode.INTERVAL) {
+            long interval = Long.getLong(SYNC_INTERVAL_PROPERTY, DEFAULT_SYNC_INTERVAL);
+            log.syncTask = syncScheduler.scheduleWithFixedDelay(log::syncQuietly, interval, interval,
+                    TimeUnit.MILLISECONDS);
+        }
+        return log;
+    }
+
+    /**
+     * Method to append records to the log as one commit. The method returns once the records are written, synced as
+     * configured by the SyncMode, and applied, so the changes are visible to readers when it returns. The commits of
+     * concurrent calls are written together, but each is applied on its own. An error is only reported for commits
+     * that were not written, so a commit reported as failed is never replayed.
+     * @param records the records to append.
+     * @throws IOException if the log cannot be written; the records are not applied then.
+     * @throws IllegalArgumentException if a record does not match the fields of the table; nothing is written then.
+     * @throws IllegalStateException if an earlier commit was written but could not be applied, see flushPending.
+     */
+    public void append(List<LogRecord> records) throws IOException {
+        checkApplied();
+        byte[] bytes = encode(records);
+        Commit commit;
+        try {
+            commit = new Commit(decode(ByteBuffer.wrap(bytes, 8, bytes.length - 8).slice()
+                    .order(ByteOrder.LITTLE_ENDIAN), types), bytes);
+        }
+        catch (IOException | RuntimeException ex) {
+            throw new IllegalArgumentException("the records cannot be logged: " + ex.getMessage(), ex);
+        }
+        synchronized (pendingLock) {
+            pending.add(commit);
+            pendingBytes += commit.bytes.length;
+        }
+
+        flushLock.lock();
+        try {
+            if (!commit.done) {
+                flushPending();
+            }
+        }
+        finally {
+            flushLock.unlock();
+        }
+
+        if (commit.error != null) {
+            throw commit.error;
+        }
+    }
+
+    /**
+     * Method to get the size of the log file.
+     * @return the number of bytes written to the log.
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Method to seal the current log file by moving it to sealedPath, and to continue appending to a new empty log.
+     * Every record appended before this call is in the sealed file, every record appended after it goes to the new
+     * file.
+     * @param sealedPath the path the current log file is moved to.
+     * @param sealed called once every record of the sealed file is applied, before any record of the new file is
+     *               applied, or null.
+     * @throws IOException if the log cannot be moved or recreated.
+     */
+    public void rotate(Path sealedPath, Runnable sealed) throws IOException {
+        flushLock.lock();
+        try {
+            flushPending();
+            checkApplied();
+            if (sealed != null) {
+                sealed.run();
+            }
+            FileChannel current = channel;
+            current.force(false);
+            current.close();
+            Files.move(path, sealedPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            channel = openChannel(path, HEADER_BYTES);
+            size = HEADER_BYTES;
+        }
+        finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * Method to write the pending records, sync the log, and close it.
+     * @throws IOException if the log cannot be written.
+     */
+    @Override
+    public void close() throws IOException {
+        if (syncTask != null) {
+            syncTask.cancel(false);
+        }
+        flushLock.lock();
+        try {
+            flushPending();
+            channel.force(false);
+            channel.close();
+        }
+        finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * Method to write the records of every waiting writer, called by the writer holding flushLock.
+     */
+    private void flushPending() {
+        List<Commit> batch;
+        ByteBuffer bytes;
+        synchronized (pendingLock) {
+            if (pending.isEmpty()) return;
+            batch = pending;
+            bytes = ByteBuffer.allocate(pendingBytes);
+            pending = new ArrayList<>();
+            pendingBytes = 0;
+        }
+        for (Commit commit : batch) {
+            bytes.put(commit.bytes);
+        }
+        bytes.flip();
+
+        FileChannel current = channel;
+        long position = size;
+        try {
+            while (bytes.hasRemaining()) {
+                position += current.write(bytes, position);
+            }
+            if (syncMode == SyncMode.COMMIT) {
+                current.force(false);
+            }
+            size = position;
+        }
+        catch (IOException ex) {
+            truncateQuietly(current, size);
+            for (Commit commit : batch) {
+                commit.error = ex;
+                commit.done = true;
+            }
+            return;
+        }
+
+        // the commits are durable now, so a failure to apply one is not reported to its writer, whose commit would
+        // be replayed on the next open, but stops the log: the memtable no longer matches the log
+        for (Commit commit : batch) {
+            if (applyFailure == null) {
+                try {
+                    applier.accept(commit.records);
+                }
+                catch (RuntimeException ex) {
+                    logger.error("could not apply a commit written to " + path + ", the table must be reopened: "
+                            + ex.getMessage(), "WriteAheadLog");
+                    applyFailure = ex;
+                }
+            }
+            commit.done = true;
+        }
+    }
+
+    /**
+     * Method to reject new commits once a written commit could not be applied.
+     */
+    private void checkApplied() {
+        RuntimeException failure = applyFailure;
+        if (failure != null) {
+            throw new IllegalStateException("a commit written to " + path + " could not be applied, the table must "
+                    + "be reopened", failure);
+        }
+    }
+
+    private void syncQuietly() {
+        try {
+            channel.force(false);
+        }
+        catch (ClosedChannelException ex) {
+            // the log was rotated or closed, the next run syncs the new file
+        }
+        catch (IOException ex) {
+            logger.error("could not sync " + path + ": " + ex.getMessage(), "WriteAheadLog");
+        }
+    }
+
+    private static void truncateQuietly(FileChannel channel, long size) {
+        try {
+            channel.truncate(size);
+        }
+        catch (IOException ex) {
+            // replay stops at the damaged entry anyway
+        }
+    }
+
+    private static FileChannel openChannel(Path path, long size) throws IOException {
+        Path directory = path.toAbsolutePath().getParent();
+        if (directory != null) {
+            Files.createDirectories(directory);
+        }
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        if (channel.size() < HEADER_BYTES) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putInt(VERSION).flip();
+            while (header.hasRemaining()) {
+                channel.write(header, header.position());
+            }
+            channel.force(true);
+        } else if (channel.size() > size) {
+            channel.truncate(size);
+        }
+        return channel;
+    }
+
+    /**
+     * Method to encode the records of a commit as a log entry.
+     */
+    private byte[] encode(List<LogRecord> records) {
+        Encoder encoder = new Encoder();
+        encoder.ensure(12);
+        encoder.buffer.position(8);
+        encoder.buffer.putInt(records.size());
+        for (LogRecord record : records) {
+            encoder.putByte(record.getOperation());
+
+            Object[] values = record.getValues();
+            if (record.getOperation() == LogRecord.UPSERT && values.length != types.size()) {
+                throw new IllegalArgumentException("expected " + types.size() + " values but got " + values.length);
+            }
+            if (values.length == 0 || values[0] == null) {
+                throw new IllegalArgumentException("the key of a row must not be null");
+            }
+            for (int i = 0; i < values.length; i++) {
+                encoder.putValue(types.get(i), values[i]);
+            }
+        }
+
+        ByteBuffer buffer = encoder.buffer;
+        int length = buffer.position() - 8;
+        if (length > MAX_ENTRY_BYTES) {
+            throw new IllegalArgumentException("a commit cannot hold more than " + MAX_ENTRY_BYTES + " bytes");
+        }
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), 8, length);
+        buffer.putInt(0, length).putInt(4, (int) crc.getValue());
+        byte[] bytes = new byte[buffer.position()];
+        System.arraycopy(buffer.array(), 0, bytes, 0, bytes.length);
+        return bytes;
+    }
+
+    /**
+     * Method to decode the records of the payload of a log entry.
+     */
+    private static List<LogRecord> decode(ByteBuffer payload, List<SqlTypeName> types) throws IOException {
+        int count = payload.getInt();
+        List<LogRecord> records = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            records.add(decodeRecord(payload, types));
+        }
+        return records;
+    }
+
+    private static LogRecord decodeRecord(ByteBuffer payload, List<SqlTypeName> types) throws IOException {
+        byte operation = payload.get();
+        if (operation != LogRecord.UPSERT && operation != LogRecord.DELETE) {
+            throw new IOException("unknown log operation " + operation);
+        }
+        Object[] values = new Object[operation == LogRecord.UPSERT ? types.size() : 1];
+        for (int i = 0; i < values.length; i++) {
+            if (payload.get() == 0) continue;
+
+            switch (types.get(i)) {
+                case BIGINT:
+                    values[i] = payload.getLong();
+                    break;
+                case INTEGER:
+                    values[i] = payload.getInt();
+                    break;
+                case VARCHAR:
+                    byte[] bytes = new byte[payload.getInt()];
+                    payload.get(bytes);
+                    values[i] = new String(bytes, StandardCharsets.UTF_8);
+                    break;
+                default:
+                    int dimension = payload.getInt();
+                    if ((dimension & FLOAT64_FLAG) != 0) {
+                        double[] elements = new double[dimension & ~FLOAT64_FLAG];
+                        payload.asDoubleBuffer().get(elements);
+                        payload.position(payload.position() + 8 * elements.length);
+                        values[i] = DenseVector.of(elements);
+                    } else {
+                        float[] elements = new float[dimension];
+                        payload.asFloatBuffer().get(elements);
+                        payload.position(payload.position() + 4 * elements.length);
+                        values[i] = elements;
+                    }
+                    break;
+            }
+        }
+        return new LogRecord(operation, values);
+    }
+
+    /**
+     * The records of one append call, as decoded from their entry, and the outcome of writing them.
+     */
+    private static class Commit {
+        private final List<LogRecord> records;
+        private final byte[] bytes;
+        private boolean done;
+        private IOException error;
+
+        private Commit(List<LogRecord> records, byte[] bytes) {
+            this.records = records;
+            this.bytes = bytes;
+        }
+    }
+
+    /**
+     * Growable little-endian buffer used to encode log entries.
+     */
+    private static class Encoder {
+        private ByteBuffer buffer = ByteBuffer.allocate(256).order(ByteOrder.LITTLE_ENDIAN);
+
+        private void ensure(int bytes) {
+            if (buffer.remaining() < bytes) {
+                ByteBuffer grown = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + bytes))
+                        .order(ByteOrder.LITTLE_ENDIAN);
+                buffer.flip();
+                grown.put(buffer);
+                buffer = grown;
+            }
+        }
+
+        private void putByte(byte value) {
+            ensure(1);
+            buffer.put(value);
+        }
+
+        private void putValue(SqlTypeName type, Object value) {
+            putByte((byte) (value == null ? 0 : 1));
+            if (value == null) return;
+
+            switch (type) {
+                case BIGINT:
+                    ensure(8);
+                    buffer.putLong(value instanceof Number
+                            ? ((Number) value).longValue() : Long.parseLong(value.toString()));
+                    break;
+                case INTEGER:
+                    ensure(4);
+                    buffer.putInt(value instanceof Number
+                            ? ((Number) value).intValue() : Integer.parseInt(value.toString()));
+                    break;
+                case VARCHAR:
+                    byte[] bytes = value.toString().getBytes(StandardCharsets.UTF_8);
+                    ensure(4 + bytes.length);
+                    buffer.putInt(bytes.length).put(bytes);
+                    break;
+                default:
+                    DenseVector vector = value instanceof float[]
+                            ? new DenseVector((float[]) value) : DenseVector.from(value);
+                    if (vector.hasFloat64Elements()) {
+                        ensure(4 + 8 * vector.dimension());
+                        buffer.putInt(vector.dimension() | FLOAT64_FLAG);
+                        for (int i = 0; i < vector.dimension(); i++) {
+                            buffer.putDouble(vector.getDouble(i));
+                        }
+                    } else {
+                        ensure(4 + 4 * vector.dimension());
+                        buffer.putInt(vector.dimension());
+                        for (int i = 0; i < vector.dimension(); i++) {
+                            buffer.putFloat(vector.get(i));
+                        }
+                    }
+                    break;
+            }
+        }
+    }
+}
@@ -0,0 +1,316 @@
+package bds.storage;
+
+import bds.vectors.DenseVector;
+import bds.vectors.QueryVector;
+import java.util.Arrays;
+
+/**
+ * Block metadata of the rows of a ColumnarStore, also called a zone map. The row positions are split into blocks of
+ * BLOCK_ROWS consecutive positions, and for each block the map keeps the smallest and largest value of every BIGINT
+ * and INTEGER field, the smallest and largest dictionary code of every VARCHAR field, and for every vector field the
+ * smallest and largest element in each dimension together with the smallest and largest vector norm. A scan can then
+ * skip the blocks whose rows cannot satisfy a predicate before it reads any of them, see mayContain and
+ * getScoreBounds.
+ * Every row position is covered, visible or not, and null values are left out, since they satisfy no comparison. A
+ * heap store adds each row to its map as the row is appended, so the map is built by the loads and writes adding the
+ * rows, while a store opened from a segment file builds its map from the mapped columns when it is first needed.
+ * Like the columns, the map has a single writer and readers that do not lock.
+ */
+public class ZoneMap {
+    public static final int BLOCK_SHIFT = 10;
+    public static final int BLOCK_ROWS = 1 << BLOCK_SHIFT;
+
+    /**
+     * Relative error allowed per vector element when bounding scores, which covers the rounding of the float
+     * arithmetic the scores are computed with, so a block is never skipped because of a rounded score.
+     */
+    private static final double ELEMENT_ERROR = 1e-6;
+
+    private final Column[] columns;
+    private final ValueZones[] values;
+    private final VectorZones[] vectors;
+
+    /**
+     * Argument constructor for the ZoneMap class.
+     * @param columns the columns of the store, whose values are read when rows are added.
+     */
+    ZoneMap(Column[] columns) {
+        this.columns = columns;
+        this.values = new ValueZones[columns.length];
+        this.vectors = new VectorZones[columns.length];
+        for (int field = 0; field < columns.length; field++) {
+            Column column = columns[field];
+            if (column instanceof LongColumn || column instanceof IntColumn || column instanceof DictionaryColumn) {
+                values[field] = new ValueZones();
+            } else if (column instanceof VectorColumn) {
+                vectors[field] = new VectorZones();
+            }
+        }
+    }
+
+    /**
+     * Method to build the map of rows that are already stored, like the rows of a store opened from a segment file.
+     * @param columns the columns of the store.
+     * @param size the number of row positions.
+     * @return the new ZoneMap covering the rows.
+     */
+    static ZoneMap build(Column[] columns, int size) {
+        ZoneMap map = new ZoneMap(columns);
+        for (int row = 0; row < size; row++) {
+            map.add(row);
+        }
+        return map;
+    }
+
+    /**
+     * Method to get the block holding a row.
+     * @param row the position of the row.
+     * @return the index of the block.
+     */
+    public static int getBlock(int row) {
+        return row >>> BLOCK_SHIFT;
+    }
+
+    /**
+     * Method to get the number of blocks holding a number of row positions.
+     * @param size the number of row positions.
+     * @return the number of blocks, the last one may not be full.
+     */
+    public static int getBlockCount(int size) {
+        return (int) ((size + (long) BLOCK_ROWS - 1) >>> BLOCK_SHIFT);
+    }
+
+    /**
+     * Method to add the values of a row to the metadata of its block. Rows are added in position order, after the
+     * values are set in the columns.
+     * @param row the position of the row.
+     */
+    void add(int row) {
+        int block = getBlock(row);
+        for (int field = 0; field < columns.length; field++) {
+            Column column = columns[field];
+            if (column.isNull(row)) {
+                if (values[field] != null) {
+                    values[field].ensureBlock(block);
+                } else if (vectors[field] != null) {
+                    vectors[field].ensureBlock(block);
+                }
+            } else if (column instanceof LongColumn) {
+                values[field].add(block, ((LongColumn) column).getLong(row));
+            } else if (column instanceof IntColumn) {
+                values[field].add(block, ((IntColumn) column).getInt(row));
+            } else if (column instanceof DictionaryColumn) {
+                values[field].add(block, ((DictionaryColumn) column).getCode(row));
+            } else if (column instanceof VectorColumn) {
+                VectorColumn vectorColumn = (VectorColumn) column;
+                vectors[field].add(block, vectorColumn.getVector(row), vectorColumn.getSquaredNorm(row));
+            }
+        }
+    }
+
+    /**
+     * Method to check if a block may hold a row whose value of a field is in a range. The values of VARCHAR fields
+     * are their dictionary codes.
+     * @param field the index of a BIGINT, INTEGER or VARCHAR field.
+     * @param block the index of the block.
+     * @param from the smallest value of the range.
+     * @param to the largest value of the range.
+     * @return false if no non-null value of the block is in the range, true if one may be or if the field or the
+     *         block has no metadata.
+     */
+    public boolean mayContain(int field, int block, long from, long to) {
+        ValueZones zones = values[field];
+        return zones == null || zones.mayContain(block, from, to);
+    }
+
+    /**
+     * Method to bound the SIMILARITY or COSINE_SIMILARITY scores of the vectors of a block against a query vector.
+     * The dot product is bounded twice, by the per dimension bounds of the elements and, after Cauchy-Schwarz, by the
+     * largest norm of the block times the norm of the query, and the tighter bounds are kept. Cosine bounds divide
+     * the dot product bounds by the smallest or largest norms. The bounds are widened by the rounding error of the
+     * float kernels.
+     * @param field the index of a vector field.
+     * @param block the index of the block.
+     * @param query the query vector.
+     * @param cosine true to bound the cosine similarity, false for the dot product.
+     * @return the smallest and largest score of the non-null vectors of the block, which are positive and negative
+     *         infinity when no vector of the block has a score, or null if the field or the block has no metadata.
+     */
+    public double[] getScoreBounds(int field, int block, QueryVector query, boolean cosine) {
+        VectorZones zones = vectors[field];
+        return zones == null ? null : zones.getScoreBounds(block, query, cosine);
+    }
+
+    /**
+     * Method to estimate the number of bytes of heap used by the metadata.
+     * @return the estimated memory usage in bytes.
+     */
+    public long getMemoryUsage() {
+        long usage = 0;
+        for (int field = 0; field < columns.length; field++) {
+            if (values[field] != null) {
+                usage += values[field].getMemoryUsage();
+            } else if (vectors[field] != null) {
+                usage += vectors[field].getMemoryUsage();
+            }
+        }
+        return usage;
+    }
+
+    /**
+     * The smallest and largest value of a BIGINT, INTEGER or VARCHAR field in each block. A block without non-null
+     * values has a smallest value larger than its largest one.
+     */
+    private static class ValueZones {
+        private volatile long[] mins = new long[0];
+        private volatile long[] maxes = new long[0];
+
+        private void add(int block, long value) {
+            ensureBlock(block);
+            long[] currentMins = mins;
+            long[] currentMaxes = maxes;
+            currentMins[block] = Math.min(currentMins[block], value);
+            currentMaxes[block] = Math.max(currentMaxes[block], value);
+        }
+
+        private void ensureBlock(int block) {
+            long[] currentMins = mins;
+            if (block < currentMins.length) return;
+
+            int length = currentMins.length;
+            int capacity = Column.grow(length, block + 1);
+            long[] newMins = Arrays.copyOf(currentMins, capacity);
+            long[] newMaxes = Arrays.copyOf(maxes, capacity);
+            Arrays.fill(newMins, length, capacity, Long.MAX_VALUE);
+            Arrays.fill(newMaxes, length, capacity, Long.MIN_VALUE);
+            maxes = newMaxes;
+            mins = newMins;
+        }
+
+        private boolean mayContain(int block, long from, long to) {
+            long[] currentMins = mins;
+            long[] currentMaxes = maxes;
+            if (block >= currentMins.length || block >= currentMaxes.length) return true;
+
+            return from <= currentMaxes[block] && to >= currentMins[block];
+        }
+
+        private long getMemoryUsage() {
+            return 16L * mins.length;
+        }
+    }
+
+    /**
+     * The smallest and largest element in each dimension of the vectors of a vector field in each block, with the
+     * largest norm and the smallest norm that is not 0. Vectors shorter than others of their block count as vectors
+     * padded with zeros, like the distance kernels score them. A block without non-null vectors has no elements.
+     */
+    private static class VectorZones {
+        private volatile float[][] mins = new float[0][];
+        private volatile float[][] maxes = new float[0][];
+        private volatile double[] minNorms = new double[0];
+        private volatile double[] maxNorms = new double[0];
+
+        private void add(int block, DenseVector vector, float squaredNorm) {
+            ensureBlock(block);
+            int dimension = vector.dimension();
+            float[] min = mins[block];
+            float[] max = maxes[block];
+            if (min == null) {
+                min = new float[dimension];
+                max = new float[dimension];
+                for (int i = 0; i < dimension; i++) {
+                    min[i] = vector.get(i);
+                    max[i] = min[i];
+                }
+            } else {
+                if (dimension > min.length) {
+                    min = Arrays.copyOf(min, dimension);
+                    max = Arrays.copyOf(max, dimension);
+                }
+                for (int i = 0; i < min.length; i++) {
+                    float element = i < dimension ? vector.get(i) : 0;
+                    min[i] = Math.min(min[i], element);
+                    max[i] = Math.max(max[i], element);
+                }
+            }
+
+            double norm = Math.sqrt(squaredNorm);
+            if (norm > 0) {
+                minNorms[block] = Math.min(minNorms[block], norm);
+            }
+            maxNorms[block] = Math.max(maxNorms[block], norm);
+            maxes[block] = max;
+            mins[block] = min;
+        }
+
+        private void ensureBlock(int block) {
+            float[][] currentMins = mins;
+            if (block < currentMins.length) return;
+
+            int length = currentMins.length;
+            int capacity = Column.grow(length, block + 1);
+            double[] newMinNorms = Arrays.copyOf(minNorms, capacity);
+            Arrays.fill(newMinNorms, length, capacity, Double.POSITIVE_INFINITY);
+            minNorms = newMinNorms;
+            maxNorms = Arrays.copyOf(maxNorms, capacity);
+            maxes = Arrays.copyOf(maxes, capacity);
+            mins = Arrays.copyOf(currentMins, capacity);
+        }
+
+        private double[] getScoreBounds(int block, QueryVector query, boolean cosine) {
+            float[][] currentMins = mins;
+            float[][] currentMaxes = maxes;
+            double[] currentMinNorms = minNorms;
+            double[] currentMaxNorms = maxNorms;
+            if (block >= currentMins.length || block >= currentMaxes.length || block >= currentMinNorms.length
+                    || block >= currentMaxNorms.length) {
+                return null;
+            }
+            float[] min = currentMins[block];
+            float[] max = currentMaxes[block];
+            double[] empty = {Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY};
+            if (min == null || max == null) return empty;
+
+            float[] elements = query.getElements();
+            int dimension = Math.min(Math.min(min.length, max.length), elements.length);
+            double lower = 0;
+            double upper = 0;
+            double magnitude = 0;
+            for (int i = 0; i < dimension; i++) {
+                double low = (double) elements[i] * min[i];
+                double high = (double) elements[i] * max[i];
+                lower += Math.min(low, high);
+                upper += Math.max(low, high);
+                magnitude += Math.max(Math.abs(low), Math.abs(high));
+            }
+
+            double queryNorm = query.getNorm();
+            double maxNorm = currentMaxNorms[block];
+            lower = Math.max(lower, -maxNorm * queryNorm);
+            upper = Math.min(upper, maxNorm * queryNorm);
+
+            double error = ELEMENT_ERROR * (Math.max(min.length, elements.length) + 1);
+            double slack = error * Math.min(magnitude, maxNorm * queryNorm);
+            lower -= slack;
+            upper += slack;
+            if (!cosine) return new double[] {lower, upper};
+
+            double minNorm = currentMinNorms[block] * (1 - error) * queryNorm;
+            maxNorm = maxNorm * (1 + error) * queryNorm;
+            if (!(minNorm > 0) || Double.isInfinite(minNorm)) return empty;
+
+            double lowerCosine = lower / (lower >= 0 ? maxNorm : minNorm);
+            double upperCosine = upper / (upper >= 0 ? minNorm : maxNorm);
+            return new double[] {Math.max(lowerCosine, -1 - error), Math.min(upperCosine, 1 + error)};
+        }
+
+        private long getMemoryUsage() {
+            long usage = 32L * mins.length;
+            for (float[] min : mins) {
+                usage += min == null ? 0 : 8L * min.length;
+            }
+            return usage;
+        }
+    }
+}
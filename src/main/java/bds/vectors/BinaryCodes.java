@@ -0,0 +1,87 @@
+package bds.vectors;
+
+/**
+ * Binary codes of vectors: one bit per element, set when the element is positive, packed 64 elements per long.
+ * Two codes are compared with their Hamming distance, the number of differing bits, which Long.bitCount computes for
+ * 64 elements at once. Vectors pointing in similar directions have a small Hamming distance.
+ */
+public final class BinaryCodes {
+
+    /**
+     * Private constructor since this class only contains static methods.
+     */
+    private BinaryCodes() {}
+
+    /**
+     * Method to get the number of longs holding the code of a vector.
+     * @param dimension the number of elements of the vector.
+     * @return the number of longs.
+     */
+    public static int words(int dimension) {
+        return (dimension + 63) >>> 6;
+    }
+
+    /**
+     * Method to compute the code of a vector.
+     * @param vector the vector.
+     * @return the code, holding words(vector.dimension()) longs.
+     */
+    public static long[] encode(DenseVector vector) {
+        long[] code = new long[words(vector.dimension())];
+        for (int i = 0; i < vector.dimension(); i++) {
+            if (vector.get(i) > 0) {
+                code[i >>> 6] |= 1L << (i & 63);
+            }
+        }
+        return code;
+    }
+
+    /**
+     * Method to compute the code of a vector given as a float array.
+     * @param elements the elements of the vector.
+     * @return the code, holding words(elements.length) longs.
+     */
+    public static long[] encode(float[] elements) {
+        long[] code = new long[words(elements.length)];
+        for (int i = 0; i < elements.length; i++) {
+            if (elements[i] > 0) {
+                code[i >>> 6] |= 1L << (i & 63);
+            }
+        }
+        return code;
+    }
+
+    /**
+     * Method to compute the Hamming distance of two codes stored in larger arrays.
+     * @param a the array holding the first code.
+     * @param aOffset the index of the first word of the first code.
+     * @param b the array holding the second code.
+     * @param bOffset the index of the first word of the second code.
+     * @param words the number of words of both codes.
+     * @return the number of bits that differ.
+     */
+    public static int hammingDistance(long[] a, int aOffset, long[] b, int bOffset, int words) {
+        int distance = 0;
+        for (int i = 0; i < words; i++) {
+            distance += Long.bitCount(a[aOffset + i] ^ b[bOffset + i]);
+        }
+        return distance;
+    }
+
+    /**
+     * Method to compute the Hamming distance of two codes, which can have a different number of words; the missing
+     * words of the shorter code are treated as 0.
+     * @param a the first code.
+     * @param b the second code.
+     * @return the number of bits that differ.
+     */
+    public static int hammingDistance(long[] a, long[] b) {
+        int common = Math.min(a.length, b.length);
+        int distance = hammingDistance(a, 0, b, 0, common);
+        long[] longer = a.length > common ? a : b;
+        for (int i = common; i < longer.length; i++) {
+            distance += Long.bitCount(longer[i]);
+        }
+        return distance;
+    }
+}
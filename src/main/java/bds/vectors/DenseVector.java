@@ -0,0 +1,360 @@
+package bds.vectors;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * DenseVector class that stores vector values as primitive floats. This is the default type used for vector
+ * columns, since it avoids boxing every element into a BigDecimal like DecimalVector does.
+ * A DenseVector is either backed by a float array, possibly a slice of a larger array shared by many vectors, or it
+ * is a view over the binary encoding written by VectorCodec. In both cases the elements are read in place without
+ * being copied.
+ * A vector may also keep its elements as float64, like the vectors of a float64 encoding or of a column holding
+ * float64 elements next to the float ones. The distance kernels still read the float elements, while the EXACT
+ * precision mode reads the float64 ones with getDouble, so it computes with the digits the vector was loaded with.
+ */
+public class DenseVector {
+    private static final String DELIMITER = "::";
+    private static final DenseVector EMPTY = new DenseVector(new float[0]);
+
+    private final ByteBuffer buffer;
+    private final float[] array;
+    private final int offset;
+    private final int elementSize;
+    private final int dimension;
+    private final double[] float64Array;
+    private final ByteBuffer float64Buffer;
+    private final int float64Offset;
+    private float[] elements;
+
+    /**
+     * Argument constructor for the DenseVector class. The passed array is not copied.
+     * @param elements Initial vector elements.
+     */
+    public DenseVector(float[] elements) {
+        this(elements, 0, elements.length);
+    }
+
+    /**
+     * Constructor for a DenseVector that is a view over a slice of a float array. The array is not copied.
+     * @param array the array holding the elements.
+     * @param offset the index of the first element in array.
+     * @param dimension the number of elements.
+     */
+    public DenseVector(float[] array, int offset, int dimension) {
+        this(array, offset, dimension, null);
+    }
+
+    /**
+     * Constructor for a DenseVector that is a view over a slice of a float array, with the float64 form of the same
+     * elements in a slice of a double array. Neither array is copied.
+     * @param array the array holding the elements.
+     * @param offset the index of the first element in array and in float64Array.
+     * @param dimension the number of elements.
+     * @param float64Array the array holding the float64 elements at the same indexes, or null.
+     */
+    public DenseVector(float[] array, int offset, int dimension, double[] float64Array) {
+        this.array = array;
+        this.buffer = null;
+        this.offset = offset;
+        this.elementSize = VectorCodec.FLOAT32;
+        this.dimension = dimension;
+        this.float64Array = float64Array;
+        this.float64Buffer = null;
+        this.float64Offset = offset;
+        if (offset == 0 && dimension == array.length) {
+            this.elements = array;
+        }
+    }
+
+    /**
+     * Constructor for a DenseVector that is a view over encoded elements. Use VectorCodec.decode to create one.
+     * @param buffer the little-endian buffer holding the elements.
+     * @param offset the absolute offset of the first element in buffer.
+     * @param elementSize the size of each element in bytes, VectorCodec.FLOAT32 or VectorCodec.FLOAT64.
+     * @param dimension the number of elements.
+     */
+    DenseVector(ByteBuffer buffer, int offset, int elementSize, int dimension) {
+        this(buffer, offset, elementSize, dimension, null, 0);
+    }
+
+    /**
+     * Constructor for a DenseVector that is a view over encoded float32 elements, with the float64 form of the same
+     * elements in another buffer. Use VectorCodec.view to create one.
+     * @param buffer the little-endian buffer holding the elements.
+     * @param offset the absolute offset of the first element in buffer.
+     * @param elementSize the size of each element in bytes, VectorCodec.FLOAT32 or VectorCodec.FLOAT64.
+     * @param dimension the number of elements.
+     * @param float64Buffer the little-endian buffer holding the float64 elements, or null.
+     * @param float64Offset the absolute offset of the first float64 element in float64Buffer.
+     */
+    DenseVector(ByteBuffer buffer, int offset, int elementSize, int dimension, ByteBuffer float64Buffer,
+                int float64Offset) {
+        this.array = null;
+        this.buffer = buffer;
+        this.offset = offset;
+        this.elementSize = elementSize;
+        this.dimension = dimension;
+        this.float64Array = null;
+        this.float64Buffer = float64Buffer;
+        this.float64Offset = float64Offset;
+    }
+
+    /**
+     * Constructor for a DenseVector reading the same elements as another one, which is not copied.
+     * @param vector the vector whose elements are read.
+     */
+    DenseVector(DenseVector vector) {
+        this.array = vector.array;
+        this.buffer = vector.buffer;
+        this.offset = vector.offset;
+        this.elementSize = vector.elementSize;
+        this.dimension = vector.dimension;
+        this.float64Array = vector.float64Array;
+        this.float64Buffer = vector.float64Buffer;
+        this.float64Offset = vector.float64Offset;
+        this.elements = vector.elements;
+    }
+
+    /**
+     * Method to create a DenseVector from double values. The float elements are the values narrowed to float, and the
+     * values themselves are kept as the float64 elements. The passed array is not copied.
+     * @param values the double values.
+     * @return the newly created DenseVector instance.
+     */
+    public static DenseVector of(double... values) {
+        float[] elements = new float[values.length];
+        for (int i = 0; i < values.length; i++) {
+            elements[i] = (float) values[i];
+        }
+        return new DenseVector(elements, 0, elements.length, values);
+    }
+
+    /**
+     * Method to create a DenseVector from a List of BigDecimal elements, like the ones passed to the vector
+     * functions through ARRAY[...] literals.
+     * @param decimals List of BigDecimal elements.
+     * @return the newly created DenseVector instance.
+     */
+    public static DenseVector fromDecimals(List<BigDecimal> decimals) {
+        if (decimals == null) return EMPTY;
+
+        float[] elements = new float[decimals.size()];
+        for (int i = 0; i < elements.length; i++) {
+            BigDecimal value = decimals.get(i);
+            elements[i] = value == null ? 0f : value.floatValue();
+        }
+        return new DenseVector(elements);
+    }
+
+    /**
+     * Method to get a DenseVector from a value passed to the Vector Functions. The value is either a DenseVector read
+     * from a vector column, the binary encoding of a vector as a byte array or ByteBuffer, or a String holding the
+     * elements separated by the delimiter '::'.
+     * @param value the value to convert.
+     * @return the DenseVector for value.
+     */
+    public static DenseVector from(Object value) {
+        if (value instanceof DenseVector) return (DenseVector) value;
+        if (value instanceof byte[]) return VectorCodec.decode((byte[]) value);
+        if (value instanceof ByteBuffer) return VectorCodec.decode((ByteBuffer) value);
+        if (value instanceof DecimalVector) return fromDecimals(((DecimalVector) value).getElements());
+
+        return fromString(value == null ? null : value.toString());
+    }
+
+    /**
+     * Method to return the number of dimensions of this vector.
+     * @return the number of dimensions.
+     */
+    public int dimension() {
+        return dimension;
+    }
+
+    /**
+     * Method to get the element at the passed index.
+     * @param index the index of the element.
+     * @return the element at index.
+     */
+    public float get(int index) {
+        if (array != null) return array[offset + index];
+
+        if (elementSize == VectorCodec.FLOAT32) {
+            return buffer.getFloat(offset + (index << 2));
+        }
+        return (float) buffer.getDouble(offset + (index << 3));
+    }
+
+    /**
+     * Method to get the float64 form of the element at the passed index. Vectors without float64 elements return the
+     * float element widened to double.
+     * @param index the index of the element.
+     * @return the element at index.
+     */
+    public double getDouble(int index) {
+        if (float64Array != null) return float64Array[float64Offset + index];
+        if (float64Buffer != null) return float64Buffer.getDouble(float64Offset + (index << 3));
+        if (buffer != null && elementSize == VectorCodec.FLOAT64) return buffer.getDouble(offset + (index << 3));
+
+        return get(index);
+    }
+
+    /**
+     * Method to check if this vector keeps its elements as float64, see getDouble.
+     * @return true if the float64 elements are not only the float elements widened to double.
+     */
+    public boolean hasFloat64Elements() {
+        return float64Array != null || float64Buffer != null || (buffer != null && elementSize == VectorCodec.FLOAT64);
+    }
+
+    /**
+     * Method to check if this vector is a view over encoded bytes instead of a float array.
+     * @return true if the elements are read from an encoded buffer.
+     */
+    public boolean isEncoded() {
+        return buffer != null;
+    }
+
+    /**
+     * Method to get the array this vector reads its elements from. Use getArrayOffset to find the first element.
+     * @return the backing array, or null if this vector is a view over encoded bytes.
+     */
+    public float[] getArray() {
+        return array;
+    }
+
+    /**
+     * Method to get the buffer this vector reads its float32 elements from. Use getBufferOffset to find the first
+     * element.
+     * @return the little-endian buffer, or null if this vector is backed by an array or holds float64 elements.
+     */
+    public ByteBuffer getBuffer() {
+        return buffer != null && elementSize == VectorCodec.FLOAT32 ? buffer : null;
+    }
+
+    /**
+     * Method to get the absolute offset of the first element of this vector in its buffer.
+     * @return the offset of the first element, only meaningful when getBuffer is not null.
+     */
+    public int getBufferOffset() {
+        return buffer != null ? offset : 0;
+    }
+
+    /**
+     * Method to get the index of the first element of this vector in its backing array.
+     * @return the offset of the first element, only meaningful when getArray is not null.
+     */
+    public int getArrayOffset() {
+        return array != null ? offset : 0;
+    }
+
+    /**
+     * Method to return the elements as a float array. Vectors backed by a whole array return that array, slices and
+     * encoded vectors copy their elements into a new array the first time this is called. The returned array must
+     * not be modified.
+     * @return the elements as a float array.
+     */
+    public float[] getElements() {
+        float[] result = elements;
+        if (result == null) {
+            result = new float[dimension];
+            for (int i = 0; i < dimension; i++) {
+                result[i] = get(i);
+            }
+            elements = result;
+        }
+        return result;
+    }
+
+    /**
+     * Method to convert this DenseVector into a DecimalVector that can be used for exact arithmetic. The decimals are
+     * the shortest decimal forms of the float64 elements, so a vector loaded from decimal text as float64 gets back
+     * the digits it was loaded with.
+     * @return the DecimalVector holding the values of this vector's elements.
+     */
+    public DecimalVector toDecimalVector() {
+        List<BigDecimal> decimals = new ArrayList<>(dimension);
+        for (int i = 0; i < dimension; i++) {
+            decimals.add(BigDecimal.valueOf(getDouble(i)));
+        }
+        return new DecimalVector(decimals);
+    }
+
+    /**
+     * Method to convert this DenseVector object to a String. Elements are separated by the delimiter '::'.
+     * @return string form of this DenseVector object.
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        boolean float64 = hasFloat64Elements();
+        for (int i = 0; i < dimension; i++) {
+            if (i > 0) {
+                sb.append(DELIMITER);
+            }
+            if (float64) {
+                sb.append(getDouble(i));
+            } else {
+                sb.append(get(i));
+            }
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) return true;
+        if (!(other instanceof DenseVector)) return false;
+
+        DenseVector vector = (DenseVector) other;
+        if (dimension != vector.dimension) return false;
+        for (int i = 0; i < dimension; i++) {
+            if (Float.floatToIntBits(get(i)) != Float.floatToIntBits(vector.get(i))) return false;
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = 1;
+        for (int i = 0; i < dimension; i++) {
+            result = 31 * result + Float.floatToIntBits(get(i));
+        }
+        return result;
+    }
+
+    /**
+     * Method to create a DenseVector object from a String. The string strList should contain all the vector
+     * elements separated by the delimiter '::'.
+     * @param strList The String from which a new DenseVector is to be created.
+     * @return the newly created DenseVector instance.
+     */
+    public static DenseVector fromString(String strList) {
+        if (strList == null || strList.trim().isEmpty()) return EMPTY;
+
+        float[] elements = new float[8];
+        int count = 0;
+        int start = 0;
+        int length = strList.length();
+        while (start <= length) {
+            int end = strList.indexOf(DELIMITER, start);
+            if (end < 0) {
+                end = length;
+            }
+
+            String part = strList.substring(start, end).trim();
+            if (!part.isEmpty()) {
+                if (count == elements.length) {
+                    elements = Arrays.copyOf(elements, count * 2);
+                }
+                elements[count++] = Float.parseFloat(part);
+            }
+            start = end + DELIMITER.length();
+        }
+
+        return new DenseVector(count == elements.length ? elements : Arrays.copyOf(elements, count));
+    }
+}
@@ -0,0 +1,143 @@
+package bds.vectors;
+
+import bds.common.Logger;
+import java.nio.ByteBuffer;
+
+/**
+ * Distance kernels used to score float vectors. When two vectors have different dimensions, the missing elements of
+ * the shorter vector are treated as 0. The sums are accumulated in double precision, so long vectors do not lose the
+ * digits float sums would, and the kernels returning a float only round the final sum.
+ * The implementation is chosen once, when this interface is first used: the SIMD kernels built on the
+ * jdk.incubator.vector module are used when the module is available (run with --add-modules jdk.incubator.vector),
+ * otherwise the scalar kernels are used. The SIMD kernels can be disabled with the 'bds.vector.simd=false' system
+ * property.
+ */
+public interface DistanceKernels {
+
+    String SIMD_PROPERTY = "bds.vector.simd";
+
+    /**
+     * Method to get the distance kernels chosen at startup.
+     * @return the DistanceKernels instance.
+     */
+    static DistanceKernels getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    /**
+     * Method to compute the dot product, also called inner product, of two vectors.
+     * @param a the first vector.
+     * @param b the second vector.
+     * @return the dot product.
+     */
+    float dot(float[] a, float[] b);
+
+    /**
+     * Method to compute the dot product of a vector stored in a slice of a larger array and another vector, like the
+     * vectors of an inverted list that are stored one after the other.
+     * @param a the array holding the first vector.
+     * @param offset the index of the first element of the first vector in a.
+     * @param length the number of elements of the first vector.
+     * @param b the second vector.
+     * @return the dot product.
+     */
+    float dot(float[] a, int offset, int length, float[] b);
+
+    /**
+     * Method to compute the cosine similarity of two vectors in a single pass that computes the dot product and the
+     * norms of both vectors together.
+     * @param a the first vector.
+     * @param b the second vector.
+     * @return the cosine similarity, or NaN if one of the vectors has a norm of 0.
+     */
+    double cosine(float[] a, float[] b);
+
+    /**
+     * Method to compute, in a single pass, the dot product of two vectors and the squared norm of the first vector.
+     * Both the dot product and the cosine similarity can be derived from the result when the norm of b is known.
+     * @param a the first vector.
+     * @param b the second vector.
+     * @param result the result to write to, reused by the caller across calls.
+     * @return result, holding the dot product and the squared norm of a.
+     */
+    default DotAndSquaredNorm dotAndSquaredNorm(float[] a, float[] b, DotAndSquaredNorm result) {
+        return dotAndSquaredNorm(a, 0, a.length, b, result);
+    }
+
+    /**
+     * Method to compute dotAndSquaredNorm for a vector stored in a slice of a larger array, like the vectors of a
+     * columnar store that share one float buffer.
+     * @param a the array holding the first vector.
+     * @param offset the index of the first element of the first vector in a.
+     * @param length the number of elements of the first vector.
+     * @param b the second vector.
+     * @param result the result to write to, reused by the caller across calls.
+     * @return result, holding the dot product and the squared norm of the first vector.
+     */
+    DotAndSquaredNorm dotAndSquaredNorm(float[] a, int offset, int length, float[] b, DotAndSquaredNorm result);
+
+    /**
+     * Method to compute dotAndSquaredNorm for a vector stored as little-endian float32 elements in a buffer, like a
+     * memory mapped segment file, without copying the elements to an array first.
+     * @param a the little-endian buffer holding the first vector.
+     * @param offset the absolute offset in bytes of the first element of the first vector.
+     * @param length the number of elements of the first vector.
+     * @param b the second vector.
+     * @param result the result to write to, reused by the caller across calls.
+     * @return result, holding the dot product and the squared norm of the first vector.
+     */
+    DotAndSquaredNorm dotAndSquaredNorm(ByteBuffer a, int offset, int length, float[] b, DotAndSquaredNorm result);
+
+    /**
+     * Method to compute the dot product of float weights and a vector of signed 8-bit codes stored in a larger array,
+     * like the INT8 codes of a QuantizedIndex.
+     * @param weights the float vector.
+     * @param codes the array holding the codes.
+     * @param offset the index of the first code in codes.
+     * @param length the number of codes, at most the number of weights.
+     * @return the dot product.
+     */
+    float dot(float[] weights, byte[] codes, int offset, int length);
+
+    /**
+     * Method to compute the squared euclidean (L2) distance of two vectors.
+     * @param a the first vector.
+     * @param b the second vector.
+     * @return the squared L2 distance.
+     */
+    float squaredL2(float[] a, float[] b);
+
+    /**
+     * Method to get the name of this implementation.
+     * @return the name of the implementation.
+     */
+    String getName();
+
+    /**
+     * Holder of the kernels chosen at startup.
+     */
+    final class Holder {
+        private static final DistanceKernels INSTANCE = create();
+
+        private Holder() {}
+
+        /**
+         * Method to create the SIMD kernels if they are enabled and available, or the scalar kernels otherwise.
+         */
+        private static DistanceKernels create() {
+            Logger logger = Logger.getInstance();
+            if (Boolean.parseBoolean(System.getProperty(SIMD_PROPERTY, "true"))) {
+                try {
+                    DistanceKernels kernels = (DistanceKernels) Class.forName("bds.vectors.SimdDistanceKernels")
+                            .getDeclaredConstructor().newInstance();
+                    logger.debug("using " + kernels.getName() + " distance kernels", "DistanceKernels");
+                    return kernels;
+                }
+                catch (ReflectiveOperationException | LinkageError ex) {
+                    logger.debug("SIMD distance kernels are not available: " + ex, "DistanceKernels");
+                }
+            }
+            return new ScalarDistanceKernels();
+        }
+    }
+}
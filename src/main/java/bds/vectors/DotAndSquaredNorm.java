@@ -0,0 +1,40 @@
+package bds.vectors;
+
+/**
+ * Result of DistanceKernels.dotAndSquaredNorm: the dot product of two vectors and the squared norm of the first one,
+ * both accumulated in double precision. The kernels write their result into an instance passed by the caller, so a
+ * search scoring many vectors reuses one instance instead of allocating a result per vector. An instance must not be
+ * shared between threads.
+ */
+public final class DotAndSquaredNorm {
+    private double dot;
+    private double squaredNorm;
+
+    /**
+     * Method to get the dot product.
+     * @return the dot product of the last vectors scored into this result.
+     */
+    public double getDot() {
+        return dot;
+    }
+
+    /**
+     * Method to get the squared norm of the first vector.
+     * @return the squared norm of the last vector scored into this result.
+     */
+    public double getSquaredNorm() {
+        return squaredNorm;
+    }
+
+    /**
+     * Method to set the result, called by the kernels.
+     * @param dot the dot product.
+     * @param squaredNorm the squared norm of the first vector.
+     * @return this result.
+     */
+    DotAndSquaredNorm set(double dot, double squaredNorm) {
+        this.dot = dot;
+        this.squaredNorm = squaredNorm;
+        return this;
+    }
+}
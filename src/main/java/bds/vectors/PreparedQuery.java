@@ -0,0 +1,50 @@
+package bds.vectors;
+
+import org.apache.calcite.linq4j.function.Deterministic;
+import java.math.BigDecimal;
+import java.util.List;
+
+/**
+ * The query vector of a Vector Function call whose query is not a constant, like a '?' parameter. The generated code
+ * of a statement holds one PreparedQuery per such call, created once when the code is loaded, and a statement passes
+ * the same List for every row, so the query vector is only prepared again when another List is passed. Lists are
+ * compared by reference, never by their elements. The generated code is shared by the threads running the
+ * statement, so the last List and its query vector are published together through a volatile field.
+ */
+public final class PreparedQuery {
+    private volatile Entry last;
+
+    /**
+     * Default constructor for the PreparedQuery class. It is deterministic, so Calcite creates the PreparedQuery of a
+     * call once, when the generated code is loaded.
+     */
+    @Deterministic
+    public PreparedQuery() {}
+
+    /**
+     * Method to get the prepared query vector of a List of elements.
+     * @param elements List of BigDecimal elements passed to a Vector Function.
+     * @return the prepared QueryVector.
+     */
+    public QueryVector get(List<BigDecimal> elements) {
+        Entry entry = last;
+        if (entry == null || entry.elements != elements) {
+            entry = new Entry(elements, QueryVector.of(elements));
+            last = entry;
+        }
+        return entry.query;
+    }
+
+    /**
+     * A List of elements passed to the call, with its query vector.
+     */
+    private static final class Entry {
+        private final List<BigDecimal> elements;
+        private final QueryVector query;
+
+        private Entry(List<BigDecimal> elements, QueryVector query) {
+            this.elements = elements;
+            this.query = query;
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package bds.vectors;
+
+import org.apache.calcite.linq4j.function.Deterministic;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Query vector passed to a Vector Function, prepared once for the distance kernels: its elements are converted to
+ * floats and its norm is computed up front.
+ * Query vectors are prepared when a statement is planned or starts, never for each row, see PreparedVectorFunction
+ * and PreparedQuery. There is no cache shared by the statements: a query vector is only held by the statement that
+ * prepared it, so preparing one never waits for another thread.
+ */
+public final class QueryVector {
+
+    private final List<BigDecimal> source;
+    private final float[] elements;
+    private final double norm;
+    private volatile long[] signBits;
+
+    /**
+     * Argument constructor for the QueryVector class.
+     * @param source the BigDecimal elements the query vector was prepared from.
+     * @param elements the elements converted to floats.
+     */
+    private QueryVector(List<BigDecimal> source, float[] elements) {
+        this.source = source;
+        this.elements = elements;
+
+        double squaredNorm = 0;
+        for (float element : elements) {
+            squaredNorm += (double) element * element;
+        }
+        this.norm = Math.sqrt(squaredNorm);
+    }
+
+    /**
+     * Method to prepare a query vector.
+     * @param elements the BigDecimal elements of the query vector.
+     * @return the newly prepared QueryVector.
+     */
+    public static QueryVector of(List<BigDecimal> elements) {
+        List<BigDecimal> source = Collections.unmodifiableList(new ArrayList<>(elements));
+        float[] floats = new float[source.size()];
+        for (int i = 0; i < floats.length; i++) {
+            floats[i] = source.get(i).floatValue();
+        }
+        return new QueryVector(source, floats);
+    }
+
+    /**
+     * Method to prepare a query vector encoded as its elements separated by ',', like the constant query vectors of
+     * the plans, see VectorFunctionCall.encodeQueryVector. The method is deterministic, so Calcite evaluates a call
+     * with a constant argument once, when the generated code is loaded, instead of once per row.
+     * @param encoded the encoded elements.
+     * @return the prepared QueryVector.
+     */
+    @Deterministic
+    public static QueryVector parse(String encoded) {
+        List<BigDecimal> elements = new ArrayList<>();
+        if (!encoded.isEmpty()) {
+            for (String part : encoded.split(",")) {
+                elements.add(new BigDecimal(part));
+            }
+        }
+        return of(elements);
+    }
+
+    /**
+     * Method to get the elements the query vector was prepared from, used by the EXACT precision mode.
+     * @return the unmodifiable BigDecimal elements.
+     */
+    public List<BigDecimal> getSource() {
+        return source;
+    }
+
+    /**
+     * Method to get the elements of the query vector.
+     * @return the float elements.
+     */
+    public float[] getElements() {
+        return elements;
+    }
+
+    /**
+     * Method to get the binary code of the query vector, see BinaryCodes. It is computed the first time it is needed.
+     * @return the binary code.
+     */
+    public long[] getSignBits() {
+        long[] bits = signBits;
+        if (bits == null) {
+            bits = BinaryCodes.encode(elements);
+            signBits = bits;
+        }
+        return bits;
+    }
+
+    /**
+     * Method to check if another query vector has the same elements, like the same constant query prepared by the
+     * scan and by the generated code of a statement.
+     * @param other the other query vector.
+     * @return true if both query vectors have the same float elements.
+     */
+    public boolean hasSameElements(QueryVector other) {
+        return this == other || Arrays.equals(elements, other.elements);
+    }
+
+    /**
+     * Method to get the euclidean norm of the query vector.
+     * @return the norm.
+     */
+    public double getNorm() {
+        return norm;
+    }
+}
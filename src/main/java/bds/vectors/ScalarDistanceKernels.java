@@ -0,0 +1,132 @@
+package bds.vectors;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Distance kernels implemented with plain scalar loops. These kernels are used when the SIMD kernels are not
+ * available. The product of two floats is exact in double precision, so each product is widened before it is added
+ * to the double sum.
+ */
+public class ScalarDistanceKernels implements DistanceKernels {
+
+    @Override
+    public float dot(float[] a, float[] b) {
+        int dimension = Math.min(a.length, b.length);
+        double total = 0;
+        for (int i = 0; i < dimension; i++) {
+            total += (double) a[i] * b[i];
+        }
+        return (float) total;
+    }
+
+    @Override
+    public float dot(float[] a, int offset, int length, float[] b) {
+        int dimension = Math.min(length, b.length);
+        double total = 0;
+        for (int i = 0; i < dimension; i++) {
+            total += (double) a[offset + i] * b[i];
+        }
+        return (float) total;
+    }
+
+    @Override
+    public double cosine(float[] a, float[] b) {
+        int dimension = Math.min(a.length, b.length);
+        double dotProduct = 0;
+        double normA = 0;
+        double normB = 0;
+        for (int i = 0; i < dimension; i++) {
+            dotProduct += (double) a[i] * b[i];
+            normA += (double) a[i] * a[i];
+            normB += (double) b[i] * b[i];
+        }
+        normA += squaredNorm(a, dimension);
+        normB += squaredNorm(b, dimension);
+
+        return dotProduct / (Math.sqrt(normA) * Math.sqrt(normB));
+    }
+
+    @Override
+    public DotAndSquaredNorm dotAndSquaredNorm(float[] a, int offset, int length, float[] b,
+                                               DotAndSquaredNorm result) {
+        int dimension = Math.min(length, b.length);
+        double dotProduct = 0;
+        double normA = 0;
+        for (int i = 0; i < dimension; i++) {
+            double value = a[offset + i];
+            dotProduct += value * b[i];
+            normA += value * value;
+        }
+        normA += squaredNorm(a, offset + dimension, offset + length);
+
+        return result.set(dotProduct, normA);
+    }
+
+    @Override
+    public DotAndSquaredNorm dotAndSquaredNorm(ByteBuffer a, int offset, int length, float[] b,
+                                               DotAndSquaredNorm result) {
+        int dimension = Math.min(length, b.length);
+        double dotProduct = 0;
+        double normA = 0;
+        for (int i = 0; i < length; i++) {
+            double value = a.getFloat(offset + (i << 2));
+            if (i < dimension) {
+                dotProduct += value * b[i];
+            }
+            normA += value * value;
+        }
+
+        return result.set(dotProduct, normA);
+    }
+
+    @Override
+    public float dot(float[] weights, byte[] codes, int offset, int length) {
+        double total = 0;
+        for (int i = 0; i < length; i++) {
+            total += (double) weights[i] * codes[offset + i];
+        }
+        return (float) total;
+    }
+
+    @Override
+    public float squaredL2(float[] a, float[] b) {
+        int dimension = Math.min(a.length, b.length);
+        double total = 0;
+        for (int i = 0; i < dimension; i++) {
+            double diff = (double) a[i] - b[i];
+            total += diff * diff;
+        }
+        return (float) (total + squaredNorm(a, dimension) + squaredNorm(b, dimension));
+    }
+
+    @Override
+    public String getName() {
+        return "scalar";
+    }
+
+    /**
+     * Method to compute the squared norm of the elements of a vector starting at from. It is used for the elements
+     * that have no counterpart in a shorter vector.
+     * @param vector the vector.
+     * @param from the index of the first element.
+     * @return the sum of the squares of the elements.
+     */
+    static double squaredNorm(float[] vector, int from) {
+        return squaredNorm(vector, from, vector.length);
+    }
+
+    /**
+     * Method to compute the squared norm of the elements of a vector from index from to index to, exclusive.
+     * @param vector the vector.
+     * @param from the index of the first element.
+     * @param to the index after the last element.
+     * @return the sum of the squares of the elements.
+     */
+    static double squaredNorm(float[] vector, int from, int to) {
+        double total = 0;
+        for (int i = from; i < to; i++) {
+            total += (double) vector[i] * vector[i];
+        }
+        return total;
+    }
+}
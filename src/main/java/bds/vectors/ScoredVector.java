@@ -0,0 +1,34 @@
+package bds.vectors;
+
+/**
+ * A vector of a row together with its score against a query vector. The scan creates one for each row whose vector
+ * a pushed similarity filter scored, in place of the vector it read, so a SIMILARITY or COSINE_SIMILARITY call on the
+ * same row and query in the SELECT list reuses the score, see VectorFunctions.score. The vector it was created from
+ * is never changed, and a ScoredVector belongs to a single row, so no other row or statement can see the score.
+ */
+public final class ScoredVector extends DenseVector {
+    private final VectorScore score;
+
+    /**
+     * Argument constructor for the ScoredVector class.
+     * @param vector the vector of the row, whose elements are read without being copied.
+     * @param score the score of vector.
+     */
+    public ScoredVector(DenseVector vector, VectorScore score) {
+        super(vector);
+        this.score = score;
+    }
+
+    /**
+     * Method to get the score of a vector against a query vector, if the vector holds it.
+     * @param vector the vector.
+     * @param query the query vector.
+     * @return the VectorScore, or null if vector is not a ScoredVector scored against the elements of query.
+     */
+    public static VectorScore getScore(DenseVector vector, QueryVector query) {
+        if (!(vector instanceof ScoredVector)) return null;
+
+        VectorScore score = ((ScoredVector) vector).score;
+        return score.getQuery().hasSameElements(query) ? score : null;
+    }
+}
@@ -0,0 +1,214 @@
+package bds.vectors;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Distance kernels built on the jdk.incubator.vector module, using the preferred FloatVector species of the CPU.
+ * Each kernel processes as many elements per instruction as the species has lanes, and finishes the remaining
+ * elements with a scalar loop. This class is only loaded by DistanceKernels when the module is available.
+ * The lanes accumulate floats for BLOCK_STEPS instructions at a time, and each block is then reduced into a double
+ * total, so the float sums stay short while the lanes keep the full SIMD width.
+ * Byte codes are loaded with the ByteVector species that has as many lanes as SPECIES, and widened to floats.
+ */
+public class SimdDistanceKernels implements DistanceKernels {
+
+    private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Byte> BYTE_SPECIES = SPECIES.length() >= 8
+            ? VectorSpecies.of(byte.class, VectorShape.forBitSize(SPECIES.length() * Byte.SIZE)) : null;
+
+    /**
+     * Number of SIMD instructions whose float lane sums are accumulated before they are reduced into the double
+     * total.
+     */
+    private static final int BLOCK_STEPS = 16;
+    private static final int BLOCK = SPECIES.length() * BLOCK_STEPS;
+
+    @Override
+    public float dot(float[] a, float[] b) {
+        return dot(a, 0, a.length, b);
+    }
+
+    @Override
+    public float dot(float[] a, int offset, int length, float[] b) {
+        int dimension = Math.min(length, b.length);
+        int bound = SPECIES.loopBound(dimension);
+
+        double total = 0;
+        int i = 0;
+        while (i < bound) {
+            int end = Math.min(bound, i + BLOCK);
+            FloatVector sum = FloatVector.zero(SPECIES);
+            for (; i < end; i += SPECIES.length()) {
+                FloatVector va = FloatVector.fromArray(SPECIES, a, offset + i);
+                sum = va.fma(FloatVector.fromArray(SPECIES, b, i), sum);
+            }
+            total += sum.reduceLanes(VectorOperators.ADD);
+        }
+
+        for (; i < dimension; i++) {
+            total += (double) a[offset + i] * b[i];
+        }
+        return (float) total;
+    }
+
+    @Override
+    public double cosine(float[] a, float[] b) {
+        int dimension = Math.min(a.length, b.length);
+        int bound = SPECIES.loopBound(dimension);
+
+        double dotProduct = 0;
+        double normA = 0;
+        double normB = 0;
+        int i = 0;
+        while (i < bound) {
+            int end = Math.min(bound, i + BLOCK);
+            FloatVector dotSum = FloatVector.zero(SPECIES);
+            FloatVector normASum = FloatVector.zero(SPECIES);
+            FloatVector normBSum = FloatVector.zero(SPECIES);
+            for (; i < end; i += SPECIES.length()) {
+                FloatVector va = FloatVector.fromArray(SPECIES, a, i);
+                FloatVector vb = FloatVector.fromArray(SPECIES, b, i);
+                dotSum = va.fma(vb, dotSum);
+                normASum = va.fma(va, normASum);
+                normBSum = vb.fma(vb, normBSum);
+            }
+            dotProduct += dotSum.reduceLanes(VectorOperators.ADD);
+            normA += normASum.reduceLanes(VectorOperators.ADD);
+            normB += normBSum.reduceLanes(VectorOperators.ADD);
+        }
+
+        for (; i < dimension; i++) {
+            dotProduct += (double) a[i] * b[i];
+            normA += (double) a[i] * a[i];
+            normB += (double) b[i] * b[i];
+        }
+        normA += ScalarDistanceKernels.squaredNorm(a, dimension);
+        normB += ScalarDistanceKernels.squaredNorm(b, dimension);
+
+        return dotProduct / (Math.sqrt(normA) * Math.sqrt(normB));
+    }
+
+    @Override
+    public DotAndSquaredNorm dotAndSquaredNorm(float[] a, int offset, int length, float[] b,
+                                               DotAndSquaredNorm result) {
+        int dimension = Math.min(length, b.length);
+        int bound = SPECIES.loopBound(dimension);
+
+        double dotProduct = 0;
+        double normA = 0;
+        int i = 0;
+        while (i < bound) {
+            int end = Math.min(bound, i + BLOCK);
+            FloatVector dotSum = FloatVector.zero(SPECIES);
+            FloatVector normASum = FloatVector.zero(SPECIES);
+            for (; i < end; i += SPECIES.length()) {
+                FloatVector va = FloatVector.fromArray(SPECIES, a, offset + i);
+                dotSum = va.fma(FloatVector.fromArray(SPECIES, b, i), dotSum);
+                normASum = va.fma(va, normASum);
+            }
+            dotProduct += dotSum.reduceLanes(VectorOperators.ADD);
+            normA += normASum.reduceLanes(VectorOperators.ADD);
+        }
+
+        for (; i < dimension; i++) {
+            double value = a[offset + i];
+            dotProduct += value * b[i];
+            normA += value * value;
+        }
+        normA += ScalarDistanceKernels.squaredNorm(a, offset + dimension, offset + length);
+
+        return result.set(dotProduct, normA);
+    }
+
+    @Override
+    public DotAndSquaredNorm dotAndSquaredNorm(ByteBuffer a, int offset, int length, float[] b,
+                                               DotAndSquaredNorm result) {
+        int dimension = Math.min(length, b.length);
+        int bound = SPECIES.loopBound(dimension);
+
+        double dotProduct = 0;
+        double normA = 0;
+        int i = 0;
+        while (i < bound) {
+            int end = Math.min(bound, i + BLOCK);
+            FloatVector dotSum = FloatVector.zero(SPECIES);
+            FloatVector normASum = FloatVector.zero(SPECIES);
+            for (; i < end; i += SPECIES.length()) {
+                FloatVector va = FloatVector.fromByteBuffer(SPECIES, a, offset + (i << 2), ByteOrder.LITTLE_ENDIAN);
+                dotSum = va.fma(FloatVector.fromArray(SPECIES, b, i), dotSum);
+                normASum = va.fma(va, normASum);
+            }
+            dotProduct += dotSum.reduceLanes(VectorOperators.ADD);
+            normA += normASum.reduceLanes(VectorOperators.ADD);
+        }
+
+        for (; i < length; i++) {
+            double value = a.getFloat(offset + (i << 2));
+            if (i < dimension) {
+                dotProduct += value * b[i];
+            }
+            normA += value * value;
+        }
+
+        return result.set(dotProduct, normA);
+    }
+
+    @Override
+    public float dot(float[] weights, byte[] codes, int offset, int length) {
+        int bound = BYTE_SPECIES == null ? 0 : SPECIES.loopBound(length);
+
+        double total = 0;
+        int i = 0;
+        while (i < bound) {
+            int end = Math.min(bound, i + BLOCK);
+            FloatVector sum = FloatVector.zero(SPECIES);
+            for (; i < end; i += SPECIES.length()) {
+                FloatVector vc = (FloatVector) ByteVector.fromArray(BYTE_SPECIES, codes, offset + i)
+                        .convertShape(VectorOperators.B2F, SPECIES, 0);
+                sum = vc.fma(FloatVector.fromArray(SPECIES, weights, i), sum);
+            }
+            total += sum.reduceLanes(VectorOperators.ADD);
+        }
+
+        for (; i < length; i++) {
+            total += (double) weights[i] * codes[offset + i];
+        }
+        return (float) total;
+    }
+
+    @Override
+    public float squaredL2(float[] a, float[] b) {
+        int dimension = Math.min(a.length, b.length);
+        int bound = SPECIES.loopBound(dimension);
+
+        double total = 0;
+        int i = 0;
+        while (i < bound) {
+            int end = Math.min(bound, i + BLOCK);
+            FloatVector sum = FloatVector.zero(SPECIES);
+            for (; i < end; i += SPECIES.length()) {
+                FloatVector diff = FloatVector.fromArray(SPECIES, a, i).sub(FloatVector.fromArray(SPECIES, b, i));
+                sum = diff.fma(diff, sum);
+            }
+            total += sum.reduceLanes(VectorOperators.ADD);
+        }
+
+        for (; i < dimension; i++) {
+            double diff = (double) a[i] - b[i];
+            total += diff * diff;
+        }
+        return (float) (total + ScalarDistanceKernels.squaredNorm(a, dimension)
+                + ScalarDistanceKernels.squaredNorm(b, dimension));
+    }
+
+    @Override
+    public String getName() {
+        return "SIMD " + SPECIES;
+    }
+}
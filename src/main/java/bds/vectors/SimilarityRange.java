@@ -0,0 +1,142 @@
+package bds.vectors;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Range search over the vectors of a vector field: tests if the SIMILARITY or COSINE_SIMILARITY score of a vector
+ * against a query vector is in a range, like the rows of 'COSINE_SIMILARITY(vec, ARRAY[1.1, 2.2]) &gt; 0.8'.
+ * Instead of scoring every vector completely, the dot product is accumulated CHECK_INTERVAL dimensions at a time,
+ * and after each group the rest of the dot product is bounded with Cauchy-Schwarz by the norm of the remaining
+ * elements of the vector, known from its precomputed squared norm, times the norm of the remaining elements of the
+ * query. A vector is rejected as soon as even the bounded score cannot reach the range, so most vectors far from the
+ * threshold are rejected after a few groups. For cosine ranges, the precomputed norm also turns the range of scores
+ * into a range of dot products once per vector.
+ * The score of the vectors that are scored completely is returned by score, so the scan can keep it with the vector
+ * of the row for a SIMILARITY or COSINE_SIMILARITY call in the SELECT list, see ScoredVector.
+ */
+public final class SimilarityRange {
+    /**
+     * Number of dimensions accumulated between two checks of the bound.
+     */
+    public static final int CHECK_INTERVAL = 32;
+
+    /**
+     * Relative error allowed on the bounds, which covers the rounding of the precomputed norms and of the float
+     * scores, so a vector is never rejected early when its complete score would be in the range.
+     */
+    private static final double BOUND_ERROR = 1e-6;
+
+    private final QueryVector query;
+    private final boolean cosine;
+    private final double from;
+    private final boolean fromInclusive;
+    private final double to;
+    private final boolean toInclusive;
+    private final double[] suffixNorms;
+
+    /**
+     * Argument constructor for the SimilarityRange class.
+     * @param query the prepared query vector.
+     * @param metric COSINE for COSINE_SIMILARITY scores, DOT_PRODUCT for SIMILARITY scores.
+     * @param from the smallest score of the range, or negative infinity.
+     * @param fromInclusive true if a score equal to from is in the range.
+     * @param to the largest score of the range, or positive infinity.
+     * @param toInclusive true if a score equal to to is in the range.
+     */
+    public SimilarityRange(QueryVector query, VectorMetric metric, double from, boolean fromInclusive, double to,
+                           boolean toInclusive) {
+        this.query = query;
+        this.cosine = metric == VectorMetric.COSINE;
+        this.from = from;
+        this.fromInclusive = fromInclusive;
+        this.to = to;
+        this.toInclusive = toInclusive;
+
+        float[] elements = this.query.getElements();
+        double[] suffixSquares = new double[elements.length + 1];
+        for (int i = elements.length - 1; i >= 0; i--) {
+            suffixSquares[i] = suffixSquares[i + 1] + (double) elements[i] * elements[i];
+        }
+        this.suffixNorms = new double[suffixSquares.length];
+        for (int i = 0; i < suffixSquares.length; i++) {
+            suffixNorms[i] = Math.sqrt(suffixSquares[i]);
+        }
+    }
+
+    /**
+     * Method to check if the score of a vector is in the range.
+     * @param vector the vector to test.
+     * @param squaredNorm the precomputed squared norm of vector.
+     * @return true if the score is in the range, false if it is not or is NaN, like the cosine similarity of a vector
+     *         with a norm of 0.
+     */
+    public boolean contains(DenseVector vector, float squaredNorm) {
+        VectorScore score = score(vector, squaredNorm);
+        return score != null && contains(score);
+    }
+
+    /**
+     * Method to check if a score computed against the query vector of the range is in the range.
+     * @param score the VectorScore.
+     * @return true if the score is in the range, false if it is not or is NaN.
+     */
+    public boolean contains(VectorScore score) {
+        return accept(cosine ? score.getCosine() : score.getDot());
+    }
+
+    /**
+     * Method to score a vector against the query vector of the range, stopping as soon as the score cannot be in the
+     * range. A vector holding its score, see ScoredVector, is not scored again.
+     * @param vector the vector to score.
+     * @param squaredNorm the precomputed squared norm of vector.
+     * @return the VectorScore of vector, or null if it was rejected before being scored completely.
+     */
+    public VectorScore score(DenseVector vector, float squaredNorm) {
+        VectorScore score = ScoredVector.getScore(vector, query);
+        if (score != null) return score;
+
+        double magnitude = Math.sqrt(squaredNorm) * query.getNorm();
+        if (cosine && !(magnitude > 0)) return null;
+
+        // the range of dot products giving a score in the range
+        double low = cosine ? from * magnitude : from;
+        double high = cosine ? to * magnitude : to;
+        double slack = BOUND_ERROR * (magnitude + (Double.isInfinite(low) ? 0 : Math.abs(low))
+                + (Double.isInfinite(high) ? 0 : Math.abs(high)));
+        double paddedNorm = squaredNorm * (1 + BOUND_ERROR);
+
+        float[] elements = query.getElements();
+        int dimension = Math.min(vector.dimension(), elements.length);
+        float[] array = vector.getArray();
+        ByteBuffer buffer = array == null ? vector.getBuffer() : null;
+        float[] values = array == null && buffer == null ? vector.getElements() : null;
+        int offset = array != null ? vector.getArrayOffset() : vector.getBufferOffset();
+
+        double dot = 0;
+        double squares = 0;
+        for (int start = 0; start < dimension; start += CHECK_INTERVAL) {
+            int end = Math.min(dimension, start + CHECK_INTERVAL);
+            for (int i = start; i < end; i++) {
+                float value = array != null ? array[offset + i]
+                        : buffer != null ? buffer.getFloat(offset + (i << 2)) : values[i];
+                dot += (double) value * elements[i];
+                squares += (double) value * value;
+            }
+            if (end < dimension) {
+                double rest = Math.sqrt(Math.max(0, paddedNorm - squares)) * suffixNorms[end];
+                if (dot + rest < low - slack || dot - rest > high + slack) {
+                    return null;
+                }
+            }
+        }
+
+        return new VectorScore(query, dot, squares);
+    }
+
+    /**
+     * Method to check if a score is in the range.
+     */
+    private boolean accept(double score) {
+        return (fromInclusive ? score >= from : score > from) && (toInclusive ? score <= to : score < to);
+    }
+}
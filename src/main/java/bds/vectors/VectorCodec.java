@@ -0,0 +1,162 @@
+package bds.vectors;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Binary encoding used to store vectors. An encoded vector is little-endian and consists of a header followed by
+ * the elements:
+ * <pre>
+ *   int32  dimension     number of elements
+ *   int32  elementSize   4 for float32 elements, 8 for float64 elements
+ *   ...    elements      dimension * elementSize bytes
+ * </pre>
+ * Decoding does not copy the elements, the returned DenseVector reads them directly from the encoded bytes.
+ */
+public class VectorCodec {
+    public static final int FLOAT32 = Float.BYTES;
+    public static final int FLOAT64 = Double.BYTES;
+    public static final int HEADER_BYTES = 2 * Integer.BYTES;
+
+    /**
+     * Private constructor since this class only contains static methods.
+     */
+    private VectorCodec() {}
+
+    /**
+     * Method to get the number of bytes needed to encode a vector.
+     * @param dimension the number of elements.
+     * @param elementSize the size of each element, FLOAT32 or FLOAT64.
+     * @return the size of the encoded vector in bytes.
+     */
+    public static int encodedLength(int dimension, int elementSize) {
+        return HEADER_BYTES + dimension * elementSize;
+    }
+
+    /**
+     * Method to encode float elements as float32.
+     * @param elements the elements to encode.
+     * @return the encoded bytes.
+     */
+    public static byte[] encode(float[] elements) {
+        ByteBuffer buffer = ByteBuffer.allocate(encodedLength(elements.length, FLOAT32)).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(elements.length).putInt(FLOAT32);
+        buffer.asFloatBuffer().put(elements);
+        return buffer.array();
+    }
+
+    /**
+     * Method to encode a DenseVector, as float64 if it keeps float64 elements and as float32 otherwise.
+     * @param vector the vector to encode.
+     * @return the encoded bytes.
+     */
+    public static byte[] encode(DenseVector vector) {
+        if (!vector.hasFloat64Elements()) return encode(vector.getElements());
+
+        double[] elements = new double[vector.dimension()];
+        for (int i = 0; i < elements.length; i++) {
+            elements[i] = vector.getDouble(i);
+        }
+        return encode(elements);
+    }
+
+    /**
+     * Method to encode double elements as float64.
+     * @param elements the elements to encode.
+     * @return the encoded bytes.
+     */
+    public static byte[] encode(double[] elements) {
+        ByteBuffer buffer = ByteBuffer.allocate(encodedLength(elements.length, FLOAT64)).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(elements.length).putInt(FLOAT64);
+        buffer.asDoubleBuffer().put(elements);
+        return buffer.array();
+    }
+
+    /**
+     * Method to decode a vector from encoded bytes.
+     * @param encoded the encoded bytes.
+     * @return a DenseVector that reads its elements from encoded.
+     */
+    public static DenseVector decode(byte[] encoded) {
+        return decode(ByteBuffer.wrap(encoded), 0);
+    }
+
+    /**
+     * Method to decode a vector that starts at the current position of the passed buffer. The position of the buffer
+     * is not changed.
+     * @param buffer the buffer holding the encoded vector.
+     * @return a DenseVector that reads its elements from buffer.
+     */
+    public static DenseVector decode(ByteBuffer buffer) {
+        return decode(buffer, buffer.position());
+    }
+
+    /**
+     * Method to decode a vector that starts at the passed absolute offset of the buffer.
+     * @param buffer the buffer holding the encoded vector.
+     * @param offset the absolute offset of the encoded vector.
+     * @return a DenseVector that reads its elements from buffer.
+     */
+    public static DenseVector decode(ByteBuffer buffer, int offset) {
+        ByteBuffer view = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        if (view.limit() - offset < HEADER_BYTES) {
+            throw new IllegalArgumentException("Encoded vector is too short: " + (view.limit() - offset) + " bytes");
+        }
+
+        int dimension = view.getInt(offset);
+        int elementSize = view.getInt(offset + Integer.BYTES);
+        if (dimension < 0 || (elementSize != FLOAT32 && elementSize != FLOAT64)) {
+            throw new IllegalArgumentException("Invalid encoded vector header: dimension " + dimension
+                    + ", element size " + elementSize);
+        }
+        if (view.limit() - offset < encodedLength(dimension, elementSize)) {
+            throw new IllegalArgumentException("Encoded vector is truncated, expected "
+                    + encodedLength(dimension, elementSize) + " bytes");
+        }
+
+        return new DenseVector(view, offset + HEADER_BYTES, elementSize, dimension);
+    }
+
+    /**
+     * Method to get a view over float32 elements that are stored without a header, like the vector block of a
+     * segment file. The buffer is only duplicated when it is not little-endian, so views over the same buffer are
+     * cheap to create.
+     * @param buffer the buffer holding the elements.
+     * @param offset the absolute offset of the first element.
+     * @param dimension the number of elements.
+     * @return a DenseVector that reads its elements from buffer.
+     */
+    public static DenseVector view(ByteBuffer buffer, int offset, int dimension) {
+        return view(buffer, offset, dimension, null, 0);
+    }
+
+    /**
+     * Method to get a view over float32 elements that are stored without a header, together with the float64 form of
+     * the same elements stored without a header in another buffer, like the vector blocks of a segment file holding
+     * float64 elements. See DenseVector.getDouble.
+     * @param buffer the buffer holding the float32 elements.
+     * @param offset the absolute offset of the first float32 element.
+     * @param dimension the number of elements.
+     * @param float64Buffer the buffer holding the float64 elements, or null.
+     * @param float64Offset the absolute offset of the first float64 element.
+     * @return a DenseVector that reads its elements from buffer and float64Buffer.
+     */
+    public static DenseVector view(ByteBuffer buffer, int offset, int dimension, ByteBuffer float64Buffer,
+                                   int float64Offset) {
+        ByteBuffer view = littleEndian(buffer);
+        if (offset < 0 || view.limit() - offset < dimension * FLOAT32) {
+            throw new IllegalArgumentException("Vector of dimension " + dimension + " at offset " + offset
+                    + " is out of bounds");
+        }
+        ByteBuffer float64View = float64Buffer == null ? null : littleEndian(float64Buffer);
+        if (float64View != null && (float64Offset < 0 || float64View.limit() - float64Offset < dimension * FLOAT64)) {
+            throw new IllegalArgumentException("Vector of dimension " + dimension + " at float64 offset "
+                    + float64Offset + " is out of bounds");
+        }
+        return new DenseVector(view, offset, FLOAT32, dimension, float64View, float64Offset);
+    }
+
+    private static ByteBuffer littleEndian(ByteBuffer buffer) {
+        return buffer.order() == ByteOrder.LITTLE_ENDIAN ? buffer : buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+    }
+}
@@ -7,12 +7,60 @@ import java.util.List;
 
 /**
  * Class containing Vector Functions that can be used inside SQL. These functions include SUM_ELEMENTS, SIMILARITY,
- * and COSINE_SIMILARITY.
+ * COSINE_SIMILARITY, HAMMING_DISTANCE, and VECTOR.
+ * By default, the functions use the DistanceKernels on DenseVector elements. The original BigDecimal arithmetic
+ * can be enabled with setPrecision(VectorPrecision.EXACT) or the 'bds.vector.precision=exact' system property.
+ * SIMILARITY, COSINE_SIMILARITY and HAMMING_DISTANCE take their query vector as a QueryVector prepared once per
+ * statement, see PreparedVectorFunction, so the work done for each row is only the distance kernel. The methods
+ * taking a List of elements declare the SQL signature of the functions; called directly, they prepare the query
+ * vector for that call only, without a cache shared by the threads. SIMILARITY and COSINE_SIMILARITY compute the
+ * dot product and the norm of the vector in a single fused kernel pass, see score.
  */
 public class VectorFunctions {
 
+    public static final String PRECISION_PROPERTY = "bds.vector.precision";
+
     private static Logger logger = Logger.getInstance();
     private static MathContext _mc = new MathContext(10);
+    private static final DistanceKernels kernels = DistanceKernels.getInstance();
+
+    private static volatile VectorPrecision precision =
+            VectorPrecision.fromString(System.getProperty(PRECISION_PROPERTY), VectorPrecision.FAST);
+
+    /**
+     * Method to get the precision mode currently used by the Vector Functions.
+     * @return the current VectorPrecision.
+     */
+    public static VectorPrecision getPrecision() {
+        return precision;
+    }
+
+    /**
+     * Method to set the precision mode used by the Vector Functions.
+     * @param newPrecision the VectorPrecision to use.
+     */
+    public static void setPrecision(VectorPrecision newPrecision) {
+        precision = newPrecision == null ? VectorPrecision.FAST : newPrecision;
+    }
+
+    /**
+     * Implementation for the VECTOR function, which turns an ARRAY[...] literal into a vector value, for example to
+     * insert or update the vector field of a row. The result is declared as Object, which Calcite types as ANY, so
+     * it can be assigned to vector fields. In the EXACT precision mode the vector keeps its elements as float64, so
+     * the exact functions compute with the digits of the literal.
+     * @param elements List of BigDecimal elements passed to VECTOR function.
+     * @return the DenseVector holding the elements.
+     */
+    public static Object vector(List<BigDecimal> elements) {
+        if (precision != VectorPrecision.EXACT || elements == null) return DenseVector.fromDecimals(elements);
+
+        double[] values = new double[elements.size()];
+        for (int i = 0; i < values.length; i++) {
+            BigDecimal value = elements.get(i);
+            values[i] = value == null ? 0 : value.doubleValue();
+        }
+        return DenseVector.of(values);
+    }
 
     /**
      * Implementation for the SIMILARITY function.
@@ -20,12 +68,126 @@ public class VectorFunctions {
      * @param otherVector List of BigDecimal elements passed to SIMILARITY function.
      * @return The Similarity function result in Double.
      */
-    public static double similarity(String columnVector, List<BigDecimal> otherVector) {
+    public static double similarity(Object columnVector, List<BigDecimal> otherVector) {
+        return similarity(columnVector, QueryVector.of(otherVector));
+    }
+
+    /**
+     * Implementation for the SIMILARITY function with a prepared query vector.
+     * @param columnVector the value stored in the vector column.
+     * @param query the prepared query vector passed to SIMILARITY function.
+     * @return The Similarity function result in Double.
+     */
+    public static double similarity(Object columnVector, QueryVector query) {
+        DenseVector vector = DenseVector.from(columnVector);
+        if (precision == VectorPrecision.EXACT) {
+            return exactSimilarity(vector, query.getSource());
+        }
+
+        return score(vector, query).getDot();
+    }
+
+    /**
+     * Implementation for the COSINE_SIMILARITY function.
+     * @param columnVector the value stored in the vector column.
+     * @param otherVector List of BigDecimal elements passed to COSINE_SIMILARITY function.
+     * @return The CosineSimilarity function result in Double.
+     */
+    public static double cosineSimilarity(Object columnVector, List<BigDecimal> otherVector) {
+        return cosineSimilarity(columnVector, QueryVector.of(otherVector));
+    }
+
+    /**
+     * Implementation for the COSINE_SIMILARITY function with a prepared query vector.
+     * @param columnVector the value stored in the vector column.
+     * @param query the prepared query vector passed to COSINE_SIMILARITY function.
+     * @return The CosineSimilarity function result in Double.
+     */
+    public static double cosineSimilarity(Object columnVector, QueryVector query) {
+        DenseVector vector = DenseVector.from(columnVector);
+        if (precision == VectorPrecision.EXACT) {
+            return exactCosineSimilarity(vector, query.getSource());
+        }
+
+        return score(vector, query).getCosine();
+    }
+
+    /**
+     * Implementation for the HAMMING_DISTANCE function, which compares the binary codes of two vectors, see
+     * BinaryCodes. BINARY quantized fields find their candidates with the same distance, on codes taken relative to
+     * the mean vector; a lower distance means more similar vectors.
+     * @param columnVector the value stored in the vector column.
+     * @param otherVector List of BigDecimal elements passed to HAMMING_DISTANCE function.
+     * @return the number of elements whose signs differ, counting 0 as negative.
+     */
+    public static int hammingDistance(Object columnVector, List<BigDecimal> otherVector) {
+        return hammingDistance(columnVector, QueryVector.of(otherVector));
+    }
+
+    /**
+     * Implementation for the HAMMING_DISTANCE function with a prepared query vector.
+     * @param columnVector the value stored in the vector column.
+     * @param query the prepared query vector passed to HAMMING_DISTANCE function.
+     * @return the number of elements whose signs differ, counting 0 as negative.
+     */
+    public static int hammingDistance(Object columnVector, QueryVector query) {
+        DenseVector vector = DenseVector.from(columnVector);
+        return BinaryCodes.hammingDistance(BinaryCodes.encode(vector), query.getSignBits());
+    }
+
+    /**
+     * Method to score a vector against a query vector. The dot product and the norm of the vector are computed in a
+     * single pass, unless the vector is a ScoredVector holding its score against the query, like the vectors of the
+     * rows a pushed similarity filter accepted. The vector itself is never changed.
+     * @param vector the vector to score.
+     * @param query the prepared query vector.
+     * @return the VectorScore of vector.
+     */
+    public static VectorScore score(DenseVector vector, QueryVector query) {
+        VectorScore score = ScoredVector.getScore(vector, query);
+        if (score != null) return score;
+
+        DotAndSquaredNorm result = new DotAndSquaredNorm();
+        if (vector.getArray() != null) {
+            kernels.dotAndSquaredNorm(vector.getArray(), vector.getArrayOffset(), vector.dimension(),
+                    query.getElements(), result);
+        } else if (vector.getBuffer() != null) {
+            kernels.dotAndSquaredNorm(vector.getBuffer(), vector.getBufferOffset(), vector.dimension(),
+                    query.getElements(), result);
+        } else {
+            kernels.dotAndSquaredNorm(vector.getElements(), query.getElements(), result);
+        }
+        return new VectorScore(query, result.getDot(), result.getSquaredNorm());
+    }
+
+    /**
+     * Implementation for the SUM_ELEMENTS function. This function finds the sum of all the elements in the vector and
+     * returns that sum.
+     * @param columnVector the value stored in the vector column.
+     * @return the sum of all the elements.
+     */
+    public static BigDecimal sumElements(Object columnVector) {
+        DenseVector vector = DenseVector.from(columnVector);
+        if (precision == VectorPrecision.EXACT) {
+            return exactSumElements(vector);
+        }
+
+        double total = 0;
+        for (int i = 0; i < vector.dimension(); i++) {
+            total += vector.get(i);
+        }
+        return BigDecimal.valueOf(total);
+    }
+
+    /**
+     * BigDecimal implementation of the SIMILARITY function. An element that cannot be computed is logged and gives a
+     * NaN score, which no comparison accepts.
+     */
+    private static double exactSimilarity(DenseVector columnVector, List<BigDecimal> otherVector) {
         logger.debug("SimilaritySearch: " + columnVector + ", " + otherVector.toString(), "VectorFunctions");
         BigDecimal total = BigDecimal.ZERO;
         try {
-            DecimalVector vector = DecimalVector.fromString(columnVector.trim());
-            List<BigDecimal> vectorCols = vector.getElements();
+            List<BigDecimal> vectorCols = columnVector.toDecimalVector().getElements();
             for (int i = 0; i < vectorCols.size(); i++) {
                 BigDecimal otherVal = getOrDefault(otherVector, i, BigDecimal.ZERO);
                 BigDecimal colVal = getOrDefault(vectorCols, i, BigDecimal.ZERO);
@@ -34,30 +196,27 @@ public class VectorFunctions {
 
             }
         }
-        catch (Exception ex) {
-            System.out.println(ex.getMessage());
+        catch (RuntimeException ex) {
+            logger.error("SIMILARITY failed: " + ex.getMessage(), "VectorFunctions");
+            return Double.NaN;
         }
 
         return total.doubleValue();
     }
 
     /**
-     * Implementation for the COSINE_SIMILARITY function.
-     * @param columnVector the value stored in the vector column.
-     * @param otherVector List of BigDecimal elements passed to COSINE_SIMILARITY function.
-     * @return The CosineSimilarity function result in Double.
+     * BigDecimal implementation of the COSINE_SIMILARITY function. An element that cannot be computed is logged and
+     * gives a NaN score, the score of a vector of norm 0, instead of a score of 1 that would rank it first.
      */
-    public static double cosineSimilarity(String columnVector, List<BigDecimal> otherVector) {
+    private static double exactCosineSimilarity(DenseVector columnVector, List<BigDecimal> otherVector) {
 
         try {
             BigDecimal dotProduct = BigDecimal.ZERO;
             BigDecimal normA = BigDecimal.ZERO;
             BigDecimal normB = BigDecimal.ZERO;
 
-            DecimalVector vector1 = DecimalVector.fromString(columnVector.trim());
+            DecimalVector vector1 = columnVector.toDecimalVector();
             int maxDimension = Math.max(vector1.getElements().size(), otherVector.size());
-            //BigDecimal[] powDimensionA = new BigDecimal[maxDimension];
-            //BigDecimal[] powDimensionB = new BigDecimal[maxDimension];
 
             for (int i = 0; i < maxDimension; i++) {
                 BigDecimal Element1 = getOrDefault(vector1.getElements(), i, BigDecimal.ZERO);
@@ -68,33 +227,25 @@ public class VectorFunctions {
                 normA = normA.add(Element1.pow(2));
                 normB = normB.add(Element2.pow(2));
                 logger.debug("NormA: " + normA.toString() + " , NormB: " + normB.toString(), "VectorFunctions");
-
-                //powDimensionA[i] = Element1.pow(2);
-                //powDimensionB[i] = Element2.pow(2);
             }
 
             BigDecimal div = normA.sqrt(new MathContext(20)).multiply(normB.sqrt(new MathContext(20)));
             logger.debug("div : " + div, "VectorFunctions");
             return (dotProduct.doubleValue() / div.doubleValue());
         }
-        catch (Exception ex) {
-            System.out.println("Exception");
-            System.out.println(ex.getMessage());
-            return BigDecimal.ONE.doubleValue();
+        catch (RuntimeException ex) {
+            logger.error("COSINE_SIMILARITY failed: " + ex.getMessage(), "VectorFunctions");
+            return Double.NaN;
         }
     }
 
     /**
-     * Implementation for the SUM_ELEMENTS function. This function finds the sum of all the elements in the vector and
-     * returns that sum.
-     * @param columnVector the value stored in the vector column.
-     * @return the sum of all the elements.
+     * BigDecimal implementation of the SUM_ELEMENTS function.
      */
-    public static BigDecimal sumElements(String columnVector) {
-        logger.debug(columnVector, "VectorFunctions");
+    private static BigDecimal exactSumElements(DenseVector columnVector) {
+        logger.debug(columnVector.toString(), "VectorFunctions");
 
-        DecimalVector vector = DecimalVector.fromString(columnVector.trim());
-        List<BigDecimal> vectorCols = vector.getElements();
+        List<BigDecimal> vectorCols = columnVector.toDecimalVector().getElements();
         BigDecimal total = BigDecimal.ZERO;
         for (int i = 0; i < vectorCols.size(); i++) {
             BigDecimal colVal = getOrDefault(vectorCols, i, BigDecimal.ZERO);
@@ -117,4 +268,4 @@ public class VectorFunctions {
 
         return decimalsList.get(index);
     }
-}
\ No newline at end of file
+}
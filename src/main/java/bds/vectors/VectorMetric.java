@@ -0,0 +1,50 @@
+package bds.vectors;
+
+/**
+ * Similarity metrics that can be used by vector indexes. For every metric, a higher score means that two vectors
+ * are more similar.
+ */
+public enum VectorMetric {
+    /**
+     * Cosine similarity, the same score as the COSINE_SIMILARITY function. Vectors are normalized by prepare, so the
+     * score of two prepared vectors is their dot product.
+     */
+    COSINE,
+
+    /**
+     * Dot product, the same score as the SIMILARITY function.
+     */
+    DOT_PRODUCT;
+
+    /**
+     * Method to convert a vector into the form that is stored in an index and passed to score.
+     * @param vector the vector to prepare.
+     * @return a new float array holding the prepared vector.
+     */
+    public float[] prepare(DenseVector vector) {
+        float[] prepared = vector.getElements().clone();
+        if (this == COSINE) {
+            double norm = 0;
+            for (float element : prepared) {
+                norm += (double) element * element;
+            }
+            if (norm > 0) {
+                float scale = (float) (1.0 / Math.sqrt(norm));
+                for (int i = 0; i < prepared.length; i++) {
+                    prepared[i] *= scale;
+                }
+            }
+        }
+        return prepared;
+    }
+
+    /**
+     * Method to compute the score of two prepared vectors. Missing elements of the shorter vector are treated as 0.
+     * @param a the first prepared vector.
+     * @param b the second prepared vector.
+     * @return the similarity score.
+     */
+    public float score(float[] a, float[] b) {
+        return DistanceKernels.getInstance().dot(a, b);
+    }
+}
@@ -0,0 +1,27 @@
+package bds.vectors;
+
+/**
+ * Precision modes used by the Vector Functions. FAST computes with primitive float/double arithmetic and is the
+ * default. EXACT computes with BigDecimal arithmetic like the original DecimalVector implementation.
+ */
+public enum VectorPrecision {
+    FAST,
+    EXACT;
+
+    /**
+     * Method to parse a precision mode from a String like 'fast' or 'exact'.
+     * @param value the String to parse.
+     * @param defaultValue the value returned when value is null or unknown.
+     * @return the parsed VectorPrecision.
+     */
+    public static VectorPrecision fromString(String value, VectorPrecision defaultValue) {
+        if (value == null) return defaultValue;
+
+        for (VectorPrecision precision : values()) {
+            if (precision.name().equalsIgnoreCase(value.trim())) {
+                return precision;
+            }
+        }
+        return defaultValue;
+    }
+}
@@ -0,0 +1,65 @@
+package bds.vectors;
+
+/**
+ * Quantization modes for the vectors of a vector field, see QuantizedIndex. A quantized field keeps its full
+ * precision vectors in the table, and a much smaller copy of them as codes that queries scan first; only the best
+ * candidates found with the codes are scored again with the full precision vectors.
+ */
+public enum VectorQuantization {
+    /**
+     * No quantization, the vectors are only stored with full precision.
+     */
+    NONE(1),
+
+    /**
+     * One byte per element, scaled between the minimum and the maximum of each dimension. 4 times smaller than
+     * float32 elements.
+     */
+    INT8(4),
+
+    /**
+     * One byte per element, scaled between the minimum and the maximum of all elements. 4 times smaller than float32
+     * elements, and less precise than INT8 when the dimensions have different ranges.
+     */
+    INT8_GLOBAL(4),
+
+    /**
+     * One bit per element, set when the element is above the mean of its dimension, compared with the Hamming
+     * distance. 32 times smaller than float32 elements, but much less precise, so more candidates are scored again.
+     */
+    BINARY(30);
+
+    public static final String PROPERTY = "bds.vector.quantization";
+
+    private final int defaultOversampling;
+
+    VectorQuantization(int defaultOversampling) {
+        this.defaultOversampling = defaultOversampling;
+    }
+
+    /**
+     * Method to get how many candidates per requested result are scored again with full precision by default.
+     * @return the default oversampling factor.
+     */
+    public int getDefaultOversampling() {
+        return defaultOversampling;
+    }
+
+    /**
+     * Method to parse a quantization mode from a String like 'int8', 'int8-global' or 'binary'.
+     * @param value the String to parse.
+     * @param defaultValue the value returned when value is null or unknown.
+     * @return the parsed VectorQuantization.
+     */
+    public static VectorQuantization fromString(String value, VectorQuantization defaultValue) {
+        if (value == null) return defaultValue;
+
+        String name = value.trim().replace('-', '_');
+        for (VectorQuantization quantization : values()) {
+            if (quantization.name().equalsIgnoreCase(name)) {
+                return quantization;
+            }
+        }
+        return defaultValue;
+    }
+}
@@ -0,0 +1,49 @@
+package bds.vectors;
+
+/**
+ * Result of scoring a vector against a query vector in a single pass: the dot product of the two vectors and the
+ * squared norm of the scored vector. Both SIMILARITY and COSINE_SIMILARITY can be computed from it, so a VectorScore
+ * computed by a pushed filter is kept with the vector of the row, see ScoredVector, and reused by the vector function
+ * calls on the same row and query. Both values are kept as the doubles accumulated by the distance kernels.
+ */
+public final class VectorScore {
+    private final QueryVector query;
+    private final double dot;
+    private final double squaredNorm;
+
+    /**
+     * Argument constructor for the VectorScore class.
+     * @param query the query vector the vector was scored against.
+     * @param dot the dot product of the vector and the query vector.
+     * @param squaredNorm the squared norm of the vector.
+     */
+    public VectorScore(QueryVector query, double dot, double squaredNorm) {
+        this.query = query;
+        this.dot = dot;
+        this.squaredNorm = squaredNorm;
+    }
+
+    /**
+     * Method to get the query vector the vector was scored against.
+     * @return the QueryVector.
+     */
+    public QueryVector getQuery() {
+        return query;
+    }
+
+    /**
+     * Method to get the dot product, which is the SIMILARITY result.
+     * @return the dot product.
+     */
+    public double getDot() {
+        return dot;
+    }
+
+    /**
+     * Method to get the cosine similarity, which is the COSINE_SIMILARITY result.
+     * @return the cosine similarity, or NaN if one of the vectors has a norm of 0.
+     */
+    public double getCosine() {
+        return dot / (Math.sqrt(squaredNorm) * query.getNorm());
+    }
+}
@@ -0,0 +1,86 @@
+package bds.calcite;
+
+import bds.storage.ColumnarStore;
+import bds.storage.TableStorage;
+import org.apache.calcite.jdbc.JavaTypeFactoryImpl;
+import org.junit.jupiter.api.Test;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Tests that a table loads its rows with its storage loader only when they are first needed, waits for a pending
+ * load, and tries again after a failed one.
+ */
+class BaseCustomTableTest {
+
+    @Test
+    void rowsAreLoadedOnFirstAccessOnly() {
+        EmployeesTable table = new EmployeesTable();
+        AtomicInteger loads = new AtomicInteger();
+        CompletableFuture<TableStorage> pending = new CompletableFuture<>();
+        table.setStorageLoader(() -> {
+            loads.incrementAndGet();
+            return pending;
+        });
+
+        // the fields are known without the rows
+        assertEquals(Arrays.asList("id", "firstname", "lastname", "email", "age", "vec"), table.getFieldNames());
+        assertEquals(4, table.getFieldIndex("AGE"));
+        assertEquals(0, loads.get());
+
+        // validating a query starts the load without waiting for it
+        assertEquals(6, table.getRowType(new JavaTypeFactoryImpl()).getFieldCount());
+        table.startLoading();
+        assertEquals(1, loads.get());
+        assertFalse(pending.isDone());
+
+        new Thread(() -> pending.complete(createStorage(table, 3))).start();
+        assertEquals(3, table.getSnapshot(null).getRowCount());
+        assertEquals(3, table.getSnapshot(null).getRowCount());
+        table.startLoading();
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void failedLoadIsReportedAndRetried() {
+        EmployeesTable table = new EmployeesTable();
+        AtomicInteger loads = new AtomicInteger();
+        IOException failure = new IOException("disk on fire");
+        table.setStorageLoader(() -> {
+            CompletableFuture<TableStorage> result = new CompletableFuture<>();
+            if (loads.incrementAndGet() == 1) {
+                result.completeExceptionally(failure);
+            } else {
+                result.complete(createStorage(table, 2));
+            }
+            return result;
+        });
+
+        RuntimeException thrown = assertThrows(RuntimeException.class, () -> table.getSnapshot(null));
+        assertSame(failure, thrown.getCause());
+        assertEquals(1, loads.get());
+
+        assertEquals(2, table.getSnapshot(null).getRowCount());
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void tableWithoutDataOrLoaderIsNotSet() {
+        assertThrows(IllegalStateException.class, () -> new EmployeesTable().getSnapshot(null));
+    }
+
+    private static TableStorage createStorage(BaseCustomTable table, int rows) {
+        ColumnarStore store = table.createStore();
+        for (long id = 1; id <= rows; id++) {
+            store.addRow(id, "first" + id, "last" + id, "mail" + id, 20 + (int) id, new float[] {id, 0, 0, 0});
+        }
+        return TableStorage.inMemory(table.getTableName(), store);
+    }
+}
@@ -0,0 +1,127 @@
+package bds.calcite;
+
+import org.apache.calcite.linq4j.Enumerator;
+import org.junit.jupiter.api.Test;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests checking that ParallelScan returns the results of the partitions in partition order, stops processing the
+ * partitions once its enumerator is closed, and throws the exception of a failed partition.
+ */
+class ParallelScanTest {
+    private static final int ROWS = 1000;
+
+    @Test
+    void resultsAreInPartitionOrder() {
+        for (int parallelism : new int[] {1, 4}) {
+            ParallelScan scan = new ParallelScan(parallelism, 7, false);
+            // the later partitions finish first
+            List<int[]> ranges = scan.mapRanges(ROWS, (from, to) -> {
+                sleep(from < 70 ? 20 - from / 7 : 0);
+                return new int[] {from, to};
+            });
+
+            assertEquals((ROWS + 6) / 7, ranges.size());
+            int next = 0;
+            for (int[] range : ranges) {
+                assertEquals(next, range[0]);
+                assertEquals(Math.min(ROWS, next + 7), range[1]);
+                next = range[1];
+            }
+            assertEquals(ROWS, next);
+        }
+    }
+
+    @Test
+    void propertiesConfigureTheScan() {
+        Properties properties = new Properties();
+        properties.setProperty(ParallelScan.PARALLELISM_PROPERTY, "1");
+        properties.setProperty(ParallelScan.PARTITION_SIZE_PROPERTY, "10");
+        ParallelScan scan = ParallelScan.fromProperties(properties);
+        assertEquals(10, scan.getPartitionSize());
+        assertFalse(scan.isParallel(ROWS));
+
+        properties.setProperty(ParallelScan.PARALLELISM_PROPERTY, "4");
+        assertTrue(ParallelScan.fromProperties(properties).isParallel(11));
+        assertFalse(ParallelScan.fromProperties(properties).isParallel(10));
+    }
+
+    @Test
+    void closingTheEnumeratorStopsThePartitions() throws InterruptedException {
+        ParallelScan scan = new ParallelScan(2, 10, false);
+        AtomicInteger started = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        try (Enumerator<Integer> enumerator = scan.enumerateRanges(ROWS, (from, to) -> {
+            started.incrementAndGet();
+            if (from > 0) {
+                await(release);
+            }
+            return from;
+        }).enumerator()) {
+            assertTrue(enumerator.moveNext());
+            assertEquals(0, enumerator.current());
+        }
+        release.countDown();
+        Thread.sleep(100);
+
+        // the first partition, and at most the parallelism partitions submitted ahead of the enumerator
+        assertTrue(started.get() <= 3, "started " + started.get());
+    }
+
+    @Test
+    void failedPartitionThrowsItsExceptionAndCancelsTheOthers() throws InterruptedException {
+        for (int parallelism : new int[] {1, 4}) {
+            ParallelScan scan = new ParallelScan(parallelism, 10, false);
+            AtomicInteger started = new AtomicInteger();
+            IllegalStateException failure = new IllegalStateException("partition failed");
+            IllegalStateException thrown = assertThrows(IllegalStateException.class,
+                    () -> scan.mapRanges(ROWS, (from, to) -> {
+                        started.incrementAndGet();
+                        if (from == 20) throw failure;
+                        sleep(5);
+                        return from;
+                    }));
+            // a ForkJoinPool throws a copy of the exception of another thread, caused by the original
+            assertTrue(thrown == failure || thrown.getCause() == failure, thrown.toString());
+            Thread.sleep(100);
+            assertTrue(started.get() < ROWS / 10, "started " + started.get());
+        }
+    }
+
+    @Test
+    void errorsAreWrappedInRuntimeExceptions() {
+        ParallelScan scan = new ParallelScan(4, 10, false);
+        RuntimeException thrown = assertThrows(RuntimeException.class, () -> scan.mapRanges(ROWS, (from, to) -> {
+            if (from == 30) throw new AssertionError("partition failed");
+            return from;
+        }));
+        assertTrue(thrown.getCause() instanceof AssertionError);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
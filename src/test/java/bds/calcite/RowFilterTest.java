@@ -0,0 +1,217 @@
+package bds.calcite;
+
+import bds.query.CalciteConnector;
+import bds.storage.ColumnarStore;
+import bds.storage.ZoneMap;
+import org.apache.calcite.jdbc.CalciteConnection;
+import org.apache.calcite.jdbc.JavaTypeFactoryImpl;
+import org.apache.calcite.rel.type.RelDataType;
+import org.apache.calcite.rex.RexBuilder;
+import org.apache.calcite.rex.RexNode;
+import org.apache.calcite.sql.fun.SqlStdOperatorTable;
+import org.apache.calcite.sql.type.SqlTypeName;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests comparing the rows of queries whose filters RowFilter evaluates in the scan with the rows of the same
+ * filters OR'ed with a LIKE test no row passes, which RowFilter does not support, so Calcite evaluates them instead.
+ */
+class RowFilterTest {
+    private static final String QUERY = "ARRAY[1.0, 2.0, 3.0, 4.0]";
+    private static final String NOT_PUSHED = " OR firstname LIKE 'no such name%'";
+    private static final long ZERO_ID = 998;
+
+    private CalciteConnection connection;
+
+    @AfterEach
+    void close() throws SQLException {
+        if (connection == null) return;
+
+        // the tables are shared by the connections, so the row would be seen by the other tests
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate("DELETE FROM hr.employees WHERE id = " + ZERO_ID);
+        }
+        finally {
+            connection.close();
+        }
+    }
+
+    @Test
+    void supportedFiltersAreRemovedAndEvaluated() {
+        ColumnarStore store = new ColumnarStore(Arrays.asList("id", "age", "name"),
+                Arrays.asList(SqlTypeName.BIGINT, SqlTypeName.INTEGER, SqlTypeName.VARCHAR));
+        store.addRow(1L, 20, "Ann");
+        store.addRow(2L, 40, "Bob");
+        store.addRow(3L, null, "Cid");
+        store.addRow(4L, 35, null);
+
+        RexBuilder builder = new RexBuilder(new JavaTypeFactoryImpl());
+        RelDataType intType = builder.getTypeFactory().createTypeWithNullability(
+                builder.getTypeFactory().createSqlType(SqlTypeName.INTEGER), true);
+        RelDataType stringType = builder.getTypeFactory().createTypeWithNullability(
+                builder.getTypeFactory().createSqlType(SqlTypeName.VARCHAR), true);
+        RexNode age = builder.makeInputRef(intType, 1);
+        RexNode name = builder.makeInputRef(stringType, 2);
+        RexNode older = builder.makeCall(SqlStdOperatorTable.GREATER_THAN, age,
+                builder.makeExactLiteral(BigDecimal.valueOf(30)));
+        RexNode like = builder.makeCall(SqlStdOperatorTable.LIKE, name, builder.makeLiteral("B%"));
+        RexNode notBob = builder.makeCall(SqlStdOperatorTable.NOT_EQUALS, name, builder.makeLiteral("Bob"));
+
+        List<RexNode> filters = new ArrayList<>(Arrays.asList(older, like));
+        RowFilter filter = RowFilter.create(filters, store);
+        assertEquals(Collections.singletonList(like), filters);
+        assertEquals(Arrays.asList(false, true, false, true), testRows(filter, store));
+
+        // only the supported conjunct is evaluated, the filter is left to Calcite
+        filters = new ArrayList<>(Collections.singletonList(builder.makeCall(SqlStdOperatorTable.AND, notBob, like)));
+        RexNode partial = filters.get(0);
+        filter = RowFilter.create(filters, store);
+        assertEquals(1, filters.size());
+        assertSame(partial, filters.get(0));
+        assertEquals(Arrays.asList(true, false, true, false), testRows(filter, store));
+
+        filters = new ArrayList<>(Collections.singletonList(builder.makeCall(SqlStdOperatorTable.IS_NULL, age)));
+        filter = RowFilter.create(filters, store);
+        assertTrue(filters.isEmpty());
+        assertEquals(Arrays.asList(false, false, true, false), testRows(filter, store));
+    }
+
+    @Test
+    void skippedBlocksHoldNoMatchingRow() {
+        ColumnarStore store = new ColumnarStore(Arrays.asList("id", "age", "name"),
+                Arrays.asList(SqlTypeName.BIGINT, SqlTypeName.INTEGER, SqlTypeName.VARCHAR));
+        Random random = new Random(42);
+        int size = 8 * ZoneMap.BLOCK_ROWS + 10;
+        for (long id = 0; id < size; id++) {
+            store.addRow(id, id % 11 == 0 ? null : (int) (id / 100) + random.nextInt(10), "name" + id / 3000);
+        }
+
+        RexBuilder builder = new RexBuilder(new JavaTypeFactoryImpl());
+        RelDataType intType = builder.getTypeFactory().createTypeWithNullability(
+                builder.getTypeFactory().createSqlType(SqlTypeName.INTEGER), true);
+        RexNode age = builder.makeInputRef(intType, 1);
+        RexNode name = builder.makeInputRef(builder.getTypeFactory().createSqlType(SqlTypeName.VARCHAR), 2);
+        RexNode older = builder.makeCall(SqlStdOperatorTable.GREATER_THAN_OR_EQUAL, age,
+                builder.makeExactLiteral(BigDecimal.valueOf(60)));
+        RexNode younger = builder.makeCall(SqlStdOperatorTable.LESS_THAN, age,
+                builder.makeExactLiteral(BigDecimal.valueOf(25)));
+        RexNode exact = builder.makeCall(SqlStdOperatorTable.EQUALS, age,
+                builder.makeExactLiteral(new BigDecimal("30.5")));
+        RexNode named = builder.makeCall(SqlStdOperatorTable.EQUALS, name, builder.makeLiteral("name1"));
+
+        List<RexNode> predicates = Arrays.asList(older, younger, builder.makeCall(SqlStdOperatorTable.OR, older,
+                younger), builder.makeCall(SqlStdOperatorTable.AND, older, named), named, exact);
+        for (RexNode predicate : predicates) {
+            RowFilter filter = RowFilter.create(new ArrayList<>(Collections.singletonList(predicate)), store);
+            int[] rows = filter.getRows(store.size());
+            assertTrue(rows != null && rows.length < store.size(), predicate + " skipped no block");
+            for (int row = 0; row < store.size(); row++) {
+                if (filter.test(row, null)) {
+                    assertTrue(Arrays.binarySearch(rows, row) >= 0, predicate + " dropped row " + row);
+                }
+            }
+        }
+    }
+
+    @Test
+    void pushedFiltersReturnTheRowsOfCalciteFilters() throws SQLException {
+        connect(new Properties());
+        assertSameRows();
+    }
+
+    @Test
+    void parallelPushedFiltersReturnTheRowsOfCalciteFilters() throws SQLException {
+        Properties properties = new Properties();
+        properties.setProperty(ParallelScan.PARTITION_SIZE_PROPERTY, "4");
+        connect(properties);
+        assertSameRows();
+    }
+
+    private void assertSameRows() throws SQLException {
+        String firstname = queryString("SELECT firstname FROM hr.employees WHERE id = 7");
+        String email = queryString("SELECT email FROM hr.employees WHERE id = 12");
+        String[] predicates = {
+            "age > 30",
+            "age >= 30 AND age < 50",
+            "age BETWEEN 25 AND 35",
+            "age IN (21, 30, 45, 60)",
+            "age <> 40",
+            "id < 20 AND age > 25",
+            "id = 5",
+            "id IN (1, 2, " + ZERO_ID + ", 1000)",
+            "firstname = '" + firstname + "'",
+            "firstname <> '" + firstname + "'",
+            "lastname < 'M'",
+            "email = '" + email + "'",
+            "hr.COSINE_SIMILARITY(vec, " + QUERY + ") > 0.5",
+            "hr.COSINE_SIMILARITY(vec, " + QUERY + ") <> 0.5",
+            "hr.SIMILARITY(vec, " + QUERY + ") <= 1",
+            "age < 30 OR hr.COSINE_SIMILARITY(vec, " + QUERY + ") >= 0.9",
+        };
+        for (String predicate : predicates) {
+            String sql = "SELECT id FROM hr.employees WHERE " + predicate + " ORDER BY id";
+            List<Long> expected = queryIds("SELECT id FROM hr.employees WHERE (" + predicate + ")" + NOT_PUSHED
+                    + " ORDER BY id");
+            List<Long> actual = queryIds(sql);
+            assertEquals(expected, actual, sql);
+            assertFalse(actual.isEmpty(), sql);
+        }
+    }
+
+    private void connect(Properties properties) throws SQLException {
+        try {
+            connection = new CalciteConnector().connect(properties);
+        }
+        catch (ClassNotFoundException ex) {
+            throw new IllegalStateException(ex);
+        }
+        try (Statement statement = connection.createStatement()) {
+            // a vector of norm 0, whose cosine similarity is NaN
+            assertEquals(1, statement.executeUpdate("INSERT INTO hr.employees VALUES (" + ZERO_ID + ", 'Zero', 'Norm', "
+                    + "'zero.norm@gmail.com', 40, hr.VECTOR(ARRAY[0.0, 0.0, 0.0, 0.0]))"));
+        }
+    }
+
+    private static List<Boolean> testRows(RowFilter filter, ColumnarStore store) {
+        List<Boolean> results = new ArrayList<>();
+        for (int row = 0; row < store.size(); row++) {
+            results.add(filter.test(row, null));
+        }
+        return results;
+    }
+
+    private String queryString(String sql) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery(sql)) {
+            assertTrue(resultSet.next());
+            return resultSet.getString(1);
+        }
+    }
+
+    private List<Long> queryIds(String sql) throws SQLException {
+        List<Long> ids = new ArrayList<>();
+        try (Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery(sql)) {
+            while (resultSet.next()) {
+                ids.add(resultSet.getLong(1));
+            }
+        }
+        return ids;
+    }
+}
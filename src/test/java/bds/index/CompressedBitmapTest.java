@@ -0,0 +1,97 @@
+package bds.index;
+
+import org.junit.jupiter.api.Test;
+import java.util.BitSet;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests comparing the intersections and unions of CompressedBitmaps with the ones of BitSets, for chunks stored in
+ * arrays, in bitsets, and missing from one of the bitmaps.
+ */
+class CompressedBitmapTest {
+    private static final int CHUNK = 65536;
+
+    @Test
+    void setOperationsMatchBitSets() {
+        Random random = new Random(42);
+        // sparse chunks stay arrays, dense chunks become bitsets, and some chunks only exist in one bitmap
+        int[][] densities = {{10, 5000, 0, 30000}, {20000, 100, 3000, 0}};
+        BitSet[] expected = new BitSet[2];
+        CompressedBitmap[] bitmaps = new CompressedBitmap[2];
+        for (int b = 0; b < 2; b++) {
+            expected[b] = new BitSet();
+            bitmaps[b] = new CompressedBitmap();
+            for (int chunk = 0; chunk < densities[b].length; chunk++) {
+                for (int i = 0; i < densities[b][chunk]; i++) {
+                    int row = chunk * CHUNK + random.nextInt(CHUNK);
+                    expected[b].set(row);
+                    bitmaps[b].add(row);
+                }
+            }
+            assertSameRows(expected[b], bitmaps[b]);
+        }
+
+        BitSet and = (BitSet) expected[0].clone();
+        and.and(expected[1]);
+        assertSameRows(and, bitmaps[0].and(bitmaps[1]));
+        assertSameRows(and, bitmaps[1].and(bitmaps[0]));
+
+        BitSet or = (BitSet) expected[0].clone();
+        or.or(expected[1]);
+        assertSameRows(or, bitmaps[0].or(bitmaps[1]));
+        assertSameRows(or, bitmaps[1].or(bitmaps[0]));
+
+        // the operations do not change their operands
+        assertSameRows(expected[0], bitmaps[0]);
+        assertSameRows(expected[1], bitmaps[1]);
+    }
+
+    @Test
+    void rowsAreKeptInAscendingOrderOnce() {
+        CompressedBitmap bitmap = CompressedBitmap.of(3 * CHUNK + 1, 7, 7, 0, CHUNK - 1, CHUNK);
+        assertArrayEquals(new int[] {0, 7, CHUNK - 1, CHUNK, 3 * CHUNK + 1}, bitmap.toArray());
+        assertEquals(5, bitmap.getCardinality());
+        assertTrue(bitmap.contains(CHUNK - 1));
+        assertFalse(bitmap.contains(8));
+        assertFalse(bitmap.contains(2 * CHUNK + 7));
+
+        CompressedBitmap copy = bitmap.copy();
+        copy.add(8);
+        assertFalse(bitmap.contains(8));
+        assertTrue(copy.contains(8));
+
+        assertTrue(new CompressedBitmap().isEmpty());
+        assertTrue(CompressedBitmap.of(1, 2).and(CompressedBitmap.of(3, CHUNK + 1)).isEmpty());
+    }
+
+    @Test
+    void denseChunksTakeAboutOneBitPerRow() {
+        CompressedBitmap bitmap = new CompressedBitmap();
+        for (int row = 0; row < CHUNK; row++) {
+            bitmap.add(row);
+        }
+        assertEquals(CHUNK, bitmap.getCardinality());
+        assertTrue(bitmap.getMemoryUsage() < CHUNK / 8 + 1024);
+
+        CompressedBitmap sparse = new CompressedBitmap();
+        for (int row = 0; row < 100; row++) {
+            sparse.add(row * 100);
+        }
+        assertTrue(sparse.getMemoryUsage() < 100 * 2 + 1024);
+    }
+
+    private static void assertSameRows(BitSet expected, CompressedBitmap actual) {
+        assertArrayEquals(expected.stream().toArray(), actual.toArray());
+        assertEquals(expected.cardinality(), actual.getCardinality());
+        assertEquals(expected.isEmpty(), actual.isEmpty());
+        for (int row = expected.nextSetBit(0); row >= 0; row = expected.nextSetBit(row + 1)) {
+            assertTrue(actual.contains(row), "row " + row);
+            assertEquals(expected.get(row + 1), actual.contains(row + 1), "row " + (row + 1));
+        }
+    }
+}
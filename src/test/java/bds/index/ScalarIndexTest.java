@@ -0,0 +1,66 @@
+package bds.index;
+
+import org.junit.jupiter.api.Test;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests comparing the rows found by the SortedIndex and the BitmapIndex with a scan of the indexed values.
+ */
+class ScalarIndexTest {
+
+    @Test
+    void sortedIndexFindsTheRowsInRanges() {
+        assertLookups(new SortedIndex(), 100);
+    }
+
+    @Test
+    void bitmapIndexFindsTheRowsInRanges() {
+        assertLookups(new BitmapIndex(), 20);
+    }
+
+    /**
+     * Method to index random values in two rounds, so rows are also added after lookups, and check that the lookups
+     * of single values and ranges find the rows holding them.
+     */
+    private static void assertLookups(ScalarIndex index, int distinctValues) {
+        Random random = new Random(42);
+        List<Long> values = new ArrayList<>();
+        for (int round = 0; round < 2; round++) {
+            for (int i = 0; i < 5000; i++) {
+                long value = random.nextInt(distinctValues) - distinctValues / 2;
+                // every third row is null, so it is not indexed
+                if (values.size() % 3 != 0) {
+                    index.add(values.size(), value);
+                }
+                values.add(value);
+            }
+            assertEquals(values.size() - (values.size() + 2) / 3, index.size());
+
+            for (long value = -distinctValues / 2 - 1; value <= distinctValues / 2; value++) {
+                assertFound(values, index, value, value);
+                assertFound(values, index, value, value + 5);
+            }
+            assertFound(values, index, Long.MIN_VALUE, 0);
+            assertFound(values, index, 0, Long.MAX_VALUE);
+            assertFound(values, index, Long.MIN_VALUE, Long.MAX_VALUE);
+            assertTrue(index.find(5, 4).isEmpty());
+        }
+    }
+
+    private static void assertFound(List<Long> values, ScalarIndex index, long from, long to) {
+        List<Integer> expected = new ArrayList<>();
+        for (int row = 0; row < values.size(); row++) {
+            if (row % 3 != 0 && values.get(row) >= from && values.get(row) <= to) {
+                expected.add(row);
+            }
+        }
+        assertArrayEquals(expected.stream().mapToInt(Integer::intValue).toArray(), index.find(from, to).toArray(),
+                index.getClass().getSimpleName() + " [" + from + ", " + to + "]");
+    }
+}
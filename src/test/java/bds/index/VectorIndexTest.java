@@ -0,0 +1,153 @@
+package bds.index;
+
+import bds.vectors.DenseVector;
+import bds.vectors.VectorMetric;
+import bds.vectors.VectorQuantization;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.function.Predicate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests comparing the top-k results of each kind of VectorIndex with an exact brute force search.
+ */
+class VectorIndexTest {
+    private static final int DIMENSION = 16;
+    private static final int VECTORS = 2000;
+    private static final int QUERIES = 20;
+    private static final int K = 10;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void hnswFindsTheNearestVectors() {
+        assertRecall(new HnswIndex(VectorMetric.COSINE), null, 0.95);
+    }
+
+    @Test
+    void ivfScanningEveryListIsExact() {
+        assertRecall(new IvfIndex(VectorMetric.COSINE, 16, 16, 50, 1024), null, 1.0);
+    }
+
+    @Test
+    void pqWithRerankFindsTheNearestVectors() {
+        assertRecall(new PqIndex(VectorMetric.COSINE, 0, 8192, 10, 8), null, 0.9);
+    }
+
+    @Test
+    void diskGraphFindsTheNearestVectors() {
+        assertRecall(new DiskGraphIndex(VectorMetric.COSINE, 32, 64, 100, 4, 0, directory), null, 0.9);
+    }
+
+    @Test
+    void quantizedIndexesFindTheNearestVectors() {
+        assertRecall(new QuantizedIndex(VectorMetric.COSINE, VectorQuantization.INT8, 4), null, 0.95);
+        assertRecall(new QuantizedIndex(VectorMetric.COSINE, VectorQuantization.INT8_GLOBAL, 4), null, 0.95);
+        // 16 bits per vector leave many candidates with the same Hamming distance, so binary codes find fewer
+        assertRecall(new QuantizedIndex(VectorMetric.COSINE, VectorQuantization.BINARY, 30), null, 0.8);
+        assertThrows(IllegalArgumentException.class,
+                () -> new QuantizedIndex(VectorMetric.COSINE, VectorQuantization.NONE, 1));
+    }
+
+    @Test
+    void quantizedResultsHaveFullPrecisionScores() {
+        Random random = new Random(7);
+        List<DenseVector> vectors = new ArrayList<>();
+        QuantizedIndex index = new QuantizedIndex(VectorMetric.COSINE, VectorQuantization.BINARY, 30);
+        for (int id = 0; id < 500; id++) {
+            vectors.add(randomVector(random));
+            index.add(id, vectors.get(id));
+        }
+        DenseVector query = randomVector(random);
+        for (SearchResult result : index.search(query, K)) {
+            assertEquals(cosine(vectors.get((Integer) result.getId()), query), result.getScore(), 1e-5);
+        }
+    }
+
+    @Test
+    void filteredSearchOnlyReturnsAcceptedVectors() {
+        Predicate<Object> even = id -> (Integer) id % 2 == 0;
+        assertRecall(new HnswIndex(VectorMetric.COSINE), even, 0.9);
+        assertRecall(new IvfIndex(VectorMetric.COSINE, 16, 16, 50, 1024), even, 1.0);
+    }
+
+    /**
+     * Method to fill an index with random vectors and check that its results for random queries hold at least a
+     * fraction of the exact top k.
+     */
+    private static void assertRecall(VectorIndex index, Predicate<Object> filter, double minimumRecall) {
+        Random random = new Random(42);
+        List<DenseVector> vectors = new ArrayList<>();
+        for (int id = 0; id < VECTORS; id++) {
+            DenseVector vector = randomVector(random);
+            vectors.add(vector);
+            index.add(id, vector);
+        }
+        assertEquals(VECTORS, index.size());
+
+        int found = 0;
+        for (int i = 0; i < QUERIES; i++) {
+            DenseVector query = randomVector(random);
+            Set<Object> exact = bruteForce(vectors, query, filter);
+            List<SearchResult> results = index.search(query, K, 0, filter);
+            assertEquals(K, results.size());
+            for (int j = 0; j < results.size(); j++) {
+                Object id = results.get(j).getId();
+                assertTrue(filter == null || filter.test(id), "rejected id " + id);
+                assertTrue(j == 0 || results.get(j - 1).getScore() >= results.get(j).getScore(),
+                        "results are ordered from the most to the least similar");
+                if (exact.contains(id)) {
+                    found++;
+                }
+            }
+        }
+        double recall = (double) found / (QUERIES * K);
+        assertTrue(recall >= minimumRecall, index.getClass().getSimpleName() + " recall " + recall);
+    }
+
+    private static Set<Object> bruteForce(List<DenseVector> vectors, DenseVector query, Predicate<Object> filter) {
+        List<SearchResult> scored = new ArrayList<>();
+        for (int id = 0; id < vectors.size(); id++) {
+            if (filter == null || filter.test(id)) {
+                scored.add(new SearchResult(id, cosine(vectors.get(id), query)));
+            }
+        }
+        scored.sort((a, b) -> Double.compare(b.getScore(), a.getScore()));
+
+        Set<Object> ids = new HashSet<>();
+        for (SearchResult result : scored.subList(0, K)) {
+            ids.add(result.getId());
+        }
+        return ids;
+    }
+
+    private static double cosine(DenseVector a, DenseVector b) {
+        double dot = 0;
+        double normA = 0;
+        double normB = 0;
+        for (int i = 0; i < DIMENSION; i++) {
+            dot += a.getDouble(i) * b.getDouble(i);
+            normA += a.getDouble(i) * a.getDouble(i);
+            normB += b.getDouble(i) * b.getDouble(i);
+        }
+        return dot / Math.sqrt(normA * normB);
+    }
+
+    private static DenseVector randomVector(Random random) {
+        float[] elements = new float[DIMENSION];
+        for (int i = 0; i < DIMENSION; i++) {
+            elements[i] = (float) random.nextGaussian();
+        }
+        return new DenseVector(elements);
+    }
+}
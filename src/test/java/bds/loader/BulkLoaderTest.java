@@ -0,0 +1,169 @@
+package bds.loader;
+
+import bds.storage.LogRecord;
+import org.apache.calcite.sql.type.SqlTypeName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests loading CSV, JSON Lines and fvecs files with the BulkLoader, in chunks parsed in parallel, and rejecting
+ * malformed files.
+ */
+class BulkLoaderTest {
+    private static final List<String> NAMES = Arrays.asList("id", "age", "name", "vec");
+    private static final List<SqlTypeName> TYPES = Arrays.asList(SqlTypeName.BIGINT, SqlTypeName.INTEGER,
+            SqlTypeName.VARCHAR, SqlTypeName.OTHER);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void csvValuesAreConverted() throws IOException {
+        Path path = write("people.csv", "\uFEFFName,ignored,ID,vec,age\r\n"
+                + "\"Smith, \"\"Jo\"\"\",x,1,\"[1.5, -2, 3e2]\",41\r\n"
+                + "plain,y,2,4;5,\n"
+                + "\n"
+                + "\"multi\nline\",z,3,[],7\n");
+        List<LogRecord> records = load(path, 1);
+
+        assertEquals(3, records.size());
+        assertValues(records.get(0), 1L, 41, "Smith, \"Jo\"", new float[] {1.5f, -2, 300});
+        assertValues(records.get(1), 2L, null, "plain", new float[] {4, 5});
+        assertValues(records.get(2), 3L, 7, "multi\nline", new float[0]);
+    }
+
+    @Test
+    void jsonLinesValuesAreConverted() throws IOException {
+        Path path = write("people.jsonl", "{\"id\": 1, \"name\": \"a \\\"quoted\\\" \\u0041\", \"vec\": [1, 2.5],"
+                + " \"age\": 30, \"other\": {\"nested\": [1, {\"x\": \"]\"}]}}\n"
+                + "\n"
+                + "  {\"ID\": 2, \"vec\": \"3, 4\", \"name\": null}  \n"
+                + "{\"id\": 3}");
+        List<LogRecord> records = load(path, 1);
+
+        assertEquals(3, records.size());
+        assertValues(records.get(0), 1L, 30, "a \"quoted\" A", new float[] {1, 2.5f});
+        assertValues(records.get(1), 2L, null, null, new float[] {3, 4});
+        assertValues(records.get(2), 3L, null, null, null);
+    }
+
+    @Test
+    void fvecsVectorsAreNumberedInFileOrder() throws IOException {
+        ByteBuffer bytes = ByteBuffer.allocate(3 * (4 + 2 * 4)).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < 3; i++) {
+            bytes.putInt(2).putFloat(i).putFloat(-i);
+        }
+        Path path = directory.resolve("vectors.fvecs");
+        Files.write(path, bytes.array());
+
+        List<LogRecord> records = load(path, 2);
+        assertEquals(3, records.size());
+        for (int i = 0; i < 3; i++) {
+            assertValues(records.get(i), (long) i, null, null, new float[] {i, -i});
+        }
+    }
+
+    @Test
+    void chunksParsedInParallelKeepTheFileOrder() throws IOException {
+        StringBuilder csv = new StringBuilder("id,age,name,vec\n");
+        for (int id = 0; id < 20000; id++) {
+            csv.append(id).append(',').append(id % 100).append(",name").append(id).append(",\"[")
+                    .append(id).append(", 0.5]\"\n");
+        }
+        Path path = write("many.csv", csv.toString());
+
+        List<Long> progress = new ArrayList<>();
+        List<LogRecord> records = new ArrayList<>();
+        long rows = new BulkLoader(NAMES, TYPES, 4, 4096, 1000).load(path, records::addAll,
+                (loaded, bytes, totalBytes) -> progress.add(loaded));
+        assertEquals(20000, rows);
+        assertEquals(20000, records.size());
+        for (int id = 0; id < 20000; id++) {
+            assertValues(records.get(id), (long) id, id % 100, "name" + id, new float[] {id, 0.5f});
+        }
+        assertTrue(progress.size() > 2);
+        assertEquals(20000L, (long) progress.get(progress.size() - 1));
+    }
+
+    @Test
+    void malformedFilesAreRejected() throws IOException {
+        assertInvalid("header.csv", "name,age\nx,1\n");
+        assertInvalid("number.csv", "id,age\n1,2\n2,two\n");
+        assertInvalid("key.csv", "id,age\n1,2\n,3\n");
+        assertInvalid("object.jsonl", "{\"id\": 1}\n{\"id\": 2, \"age\": 3\n");
+        assertInvalid("trailing.jsonl", "{\"id\": 1} x\n");
+        assertInvalid("string.jsonl", "{\"id\": 1, \"name\": \"open}\n");
+        assertInvalid("nokey.jsonl", "{\"age\": 1}\n");
+        assertInvalid("array.jsonl", "{\"id\": 1, \"vec\": [1, 2}\n");
+
+        ByteBuffer bytes = ByteBuffer.allocate(4 + 2 * 4 + 4 + 3 * 4).order(ByteOrder.LITTLE_ENDIAN);
+        bytes.putInt(2).putFloat(1).putFloat(2).putInt(3).putFloat(1).putFloat(2).putFloat(3);
+        Files.write(directory.resolve("dimension.fvecs"), bytes.array());
+        assertThrows(IOException.class, () -> load(directory.resolve("dimension.fvecs"), 1));
+        Files.write(directory.resolve("truncated.fvecs"), Arrays.copyOf(bytes.array(), 10));
+        assertThrows(IOException.class, () -> load(directory.resolve("truncated.fvecs"), 1));
+        Files.write(directory.resolve("negative.fvecs"), new byte[] {-1, -1, -1, -1, 0, 0, 0, 0});
+        assertThrows(IOException.class, () -> load(directory.resolve("negative.fvecs"), 1));
+
+        assertThrows(IllegalArgumentException.class, () -> load(write("people.txt", "id\n1\n"), 1));
+        assertThrows(IllegalArgumentException.class, () -> new BulkLoader(Arrays.asList("name", "vec"),
+                Arrays.asList(SqlTypeName.VARCHAR, SqlTypeName.OTHER)).load(directory.resolve("dimension.fvecs"),
+                records -> { }));
+    }
+
+    @Test
+    void floatsAreParsedLikeFloatParseFloat() {
+        String[] numbers = {"0", "-0", "1", "+2.5", "3.", ".25", "-123.456", "1e3", "1E-3", "2.5e+10", "7e-30",
+            "123456789012345678", "0.1", "0.30000000000000004", "3.4028235e38", "1.4e-45", "NaN", "-Infinity"};
+        for (String number : numbers) {
+            assertEquals(Float.parseFloat(number), RecordParser.parseFloat(number, 0, number.length()), number);
+        }
+        assertThrows(NumberFormatException.class, () -> RecordParser.parseFloat("1x", 0, 2));
+        assertThrows(NumberFormatException.class, () -> RecordParser.parseFloat("", 0, 0));
+    }
+
+    private void assertInvalid(String name, String text) throws IOException {
+        Path path = write(name, text);
+        assertThrows(IOException.class, () -> load(path, 1), name);
+    }
+
+    private static void assertValues(LogRecord record, Long id, Integer age, String name, float[] vector) {
+        assertEquals(LogRecord.UPSERT, record.getOperation());
+        Object[] values = record.getValues();
+        assertEquals(id, values[0]);
+        assertEquals(age, values[1]);
+        assertEquals(name, values[2]);
+        if (vector == null) {
+            assertNull(values[3]);
+        } else {
+            assertArrayEquals(vector, (float[]) values[3]);
+        }
+    }
+
+    private Path write(String name, String text) throws IOException {
+        Path path = directory.resolve(name);
+        Files.write(path, text.getBytes(StandardCharsets.UTF_8));
+        return path;
+    }
+
+    private static List<LogRecord> load(Path path, int parallelism) throws IOException {
+        List<LogRecord> records = new ArrayList<>();
+        new BulkLoader(NAMES, TYPES, parallelism, 4096, 100).load(path, records::addAll);
+        return records;
+    }
+}
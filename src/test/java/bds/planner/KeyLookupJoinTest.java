@@ -0,0 +1,70 @@
+package bds.planner;
+
+import bds.query.CalciteConnector;
+import org.apache.calcite.jdbc.CalciteConnection;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests of the joins on the key of a Custom Table, which are planned as a KeyLookupJoin.
+ */
+class KeyLookupJoinTest {
+    private static final String JOIN = "SELECT e.id, f.age FROM hr.employees e JOIN hr.employees f ON e.id = f.id "
+            + "WHERE e.age > 60";
+
+    private CalciteConnection connection;
+
+    @BeforeEach
+    void connect() throws ClassNotFoundException, SQLException {
+        connection = new CalciteConnector().connect();
+    }
+
+    @AfterEach
+    void close() throws SQLException {
+        connection.close();
+    }
+
+    @Test
+    void keyJoinIsPlannedAsLookup() throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("EXPLAIN PLAN FOR " + JOIN)) {
+            assertTrue(resultSet.next());
+            String plan = resultSet.getString(1);
+            assertTrue(plan.contains("KeyLookupJoin"), plan);
+        }
+    }
+
+    @Test
+    void lookupFindsTheRowOfEachKey() throws SQLException {
+        Map<Long, Integer> expected = query("SELECT id, age FROM hr.employees WHERE age > 60");
+        Map<Long, Integer> joined = query(JOIN);
+
+        assertFalse(expected.isEmpty());
+        assertEquals(expected, joined);
+    }
+
+    /**
+     * Method to run a query returning a unique id and an age.
+     */
+    private Map<Long, Integer> query(String sql) throws SQLException {
+        Map<Long, Integer> rows = new HashMap<>();
+        try (Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery(sql)) {
+            while (resultSet.next()) {
+                assertNull(rows.put(resultSet.getLong(1), resultSet.getInt(2)), "duplicate id");
+            }
+        }
+        return rows;
+    }
+}
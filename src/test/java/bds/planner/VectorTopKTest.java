@@ -0,0 +1,124 @@
+package bds.planner;
+
+import bds.query.CalciteConnector;
+import org.apache.calcite.jdbc.CalciteConnection;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests comparing the rows of the top-k queries rewritten by VectorTopKRule with the rows of the same queries
+ * planned with a full sort, which a second sort key keeps the rule from rewriting.
+ */
+class VectorTopKTest {
+    private static final String COSINE = "SELECT id, hr.COSINE_SIMILARITY(vec, ARRAY[%s]) AS score FROM hr.employees";
+    private static final String QUERY = "1.0, 2.0, 3.0, 4.0";
+    private static final String ALL_FIELDS = "SELECT *, hr.COSINE_SIMILARITY(vec, ARRAY[" + QUERY + "]) AS score "
+            + "FROM hr.employees";
+    private static final long ZERO_ID = 999;
+
+    private CalciteConnection connection;
+
+    @AfterEach
+    void close() throws SQLException {
+        connection.close();
+    }
+
+    @Test
+    void topKIsPlannedWithTheIndexOrAHeap() throws SQLException {
+        connect(new Properties());
+
+        assertTrue(explain(ALL_FIELDS + " ORDER BY score DESC LIMIT 3").contains("strategy=[index]"));
+        assertTrue(explain(cosine(QUERY, "WHERE age > 30", "DESC", 3)).contains("strategy=[filtered-index]"));
+        assertTrue(explain(cosine(QUERY, "", "ASC", 3)).contains("strategy=[heap]"));
+        assertTrue(explain(cosine("0.0, 0.0, 0.0, 0.0", "", "DESC", 3)).contains("strategy=[heap]"));
+        assertFalse(explain(cosine(QUERY, "", "DESC, id", 3)).contains("VectorTopK"));
+    }
+
+    @Test
+    void topKReturnsTheRowsOfTheSortedPlan() throws SQLException {
+        connect(new Properties());
+        assertSameRows();
+    }
+
+    @Test
+    void parallelTopKReturnsTheRowsOfTheSortedPlan() throws SQLException {
+        Properties properties = new Properties();
+        properties.setProperty("bds.scan.partitionSize", "4");
+        connect(properties);
+        assertSameRows();
+    }
+
+    /**
+     * Method to compare the rewritten and the sorted plans of queries whose results include the row with a vector of
+     * norm 0, whose cosine similarity is NaN: Calcite sorts NaN above every score.
+     */
+    private void assertSameRows() throws SQLException {
+        for (String direction : new String[] {"DESC", "ASC"}) {
+            for (String where : new String[] {"", "WHERE age > 30"}) {
+                for (int k : new int[] {1, 3, 20}) {
+                    String sql = cosine(QUERY, where, direction, k);
+                    assertTrue(explain(sql).contains("VectorTopK"), sql);
+
+                    List<Long> expected = queryIds(cosine(QUERY, where, direction + ", id", k));
+                    assertEquals(expected, queryIds(sql), sql);
+                    assertEquals(direction.equals("DESC"), expected.contains(ZERO_ID), sql);
+                }
+            }
+        }
+
+        for (int k : new int[] {1, 3, 20}) {
+            String sql = ALL_FIELDS + " ORDER BY score DESC LIMIT " + k;
+            assertEquals(queryIds(ALL_FIELDS + " ORDER BY score DESC, id LIMIT " + k), queryIds(sql), sql);
+        }
+
+        // every row has a NaN score against a query vector of norm 0, so the rows keep the order of the scan
+        String zeroQuery = cosine("0.0, 0.0, 0.0, 0.0", "", "DESC", 5);
+        assertEquals(queryIds(cosine("0.0, 0.0, 0.0, 0.0", "", "DESC, id", 5)), queryIds(zeroQuery));
+    }
+
+    private void connect(Properties properties) throws SQLException {
+        try {
+            connection = new CalciteConnector().connect(properties);
+        }
+        catch (ClassNotFoundException ex) {
+            throw new IllegalStateException(ex);
+        }
+        try (Statement statement = connection.createStatement()) {
+            assertEquals(1, statement.executeUpdate("INSERT INTO hr.employees VALUES (" + ZERO_ID
+                    + ", 'Zero', 'Norm', 'zero.norm@gmail.com', 40, hr.VECTOR(ARRAY[0.0, 0.0, 0.0, 0.0]))"));
+        }
+    }
+
+    private static String cosine(String query, String where, String direction, int k) {
+        return String.format(COSINE, query) + " " + where + " ORDER BY score " + direction + " LIMIT " + k;
+    }
+
+    private String explain(String sql) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("EXPLAIN PLAN FOR " + sql)) {
+            assertTrue(resultSet.next());
+            return resultSet.getString(1);
+        }
+    }
+
+    private List<Long> queryIds(String sql) throws SQLException {
+        List<Long> ids = new ArrayList<>();
+        try (Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery(sql)) {
+            while (resultSet.next()) {
+                ids.add(resultSet.getLong(1));
+            }
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,90 @@
+package bds.storage;
+
+import bds.vectors.DenseVector;
+import org.apache.calcite.sql.type.SqlTypeName;
+import org.junit.jupiter.api.Test;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests reading back the rows added to a ColumnarStore, with every column type, null values, replaced and deleted
+ * rows.
+ */
+class ColumnarStoreTest {
+
+    @Test
+    void rowsAreReadBackFromTheColumns() {
+        ColumnarStore store = createStore();
+        assertEquals(0, store.addRow(1L, 10, "a", new float[] {1, 2}));
+        assertEquals(1, store.addRow(2L, null, "b", DenseVector.of(0.1, 0.2, 0.3)));
+        assertEquals(2, store.addRow(3L, 30, null, null));
+        assertEquals(3, store.addRow(4L, 40, "a", "5::6"));
+
+        assertEquals(4, store.size());
+        assertEquals(Arrays.asList(1L, 10, "a"), Arrays.asList(store.getValue(0, 0), store.getValue(0, 1),
+                store.getValue(0, 2)));
+        assertNull(store.getValue(1, 1));
+        assertNull(store.getValue(2, 2));
+        assertNull(store.getValue(2, 3));
+
+        DictionaryColumn names = (DictionaryColumn) store.getColumn(2);
+        assertEquals(names.getCode(0), names.getCode(3));
+        assertEquals(2, names.getDictionarySize());
+        assertEquals(-1, names.findCode("c"));
+
+        VectorColumn vectors = (VectorColumn) store.getColumn(3);
+        assertEquals(new DenseVector(new float[] {1, 2}), vectors.getVector(0));
+        assertEquals(new DenseVector(new float[] {5, 6}), vectors.getVector(3));
+        assertEquals(3, vectors.getDimension(1));
+        assertEquals(0.1 * 0.1 + 0.2 * 0.2 + 0.3 * 0.3, vectors.getSquaredNorm(1), 1e-6);
+        assertTrue(vectors.hasFloat64Elements());
+        assertEquals(0.3, vectors.getVector(1).getDouble(2));
+        assertTrue(vectors.isNull(2));
+    }
+
+    @Test
+    void replacedAndDeletedRowsAreNotVisible() {
+        ColumnarStore store = createStore();
+        store.addRow(1L, 10, "a", new float[] {1});
+        store.addRow(2L, 20, "b", new float[] {2});
+        Snapshot before = store.snapshot();
+
+        int replaced = store.addRow(1L, 11, "c", new float[] {3});
+        assertTrue(store.deleteRow(2L));
+        assertFalse(store.deleteRow(5L));
+        Snapshot after = store.snapshot();
+
+        assertEquals(0, before.findRow(1L));
+        assertEquals(1, before.findRow(2L));
+        assertTrue(before.isVisible(0));
+        assertEquals(2, before.size());
+
+        assertEquals(replaced, after.findRow(1L));
+        assertEquals(11, store.getValue(replaced, 1));
+        assertEquals(-1, after.findRow(2L));
+        assertFalse(after.isVisible(0));
+        assertFalse(after.isVisible(1));
+        assertEquals(2, after.getDeletedCount());
+
+        ColumnarStore copy = ColumnarStore.copyOf(after);
+        assertEquals(1, copy.size());
+        assertEquals(Arrays.asList(1L, 11, "c"), Arrays.asList(copy.getValue(0, 0), copy.getValue(0, 1),
+                copy.getValue(0, 2)));
+    }
+
+    @Test
+    void storeNeedsAKeyAndOneTypePerField() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new ColumnarStore(Arrays.asList("id", "name"), Arrays.asList(SqlTypeName.BIGINT)));
+    }
+
+    static ColumnarStore createStore() {
+        return new ColumnarStore(Arrays.asList("id", "age", "name", "vec"),
+                Arrays.asList(SqlTypeName.BIGINT, SqlTypeName.INTEGER, SqlTypeName.VARCHAR, SqlTypeName.OTHER));
+    }
+}
@@ -0,0 +1,111 @@
+package bds.storage;
+
+import bds.vectors.DenseVector;
+import org.apache.calcite.sql.type.SqlTypeName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests writing the rows of a ColumnarStore to a segment file and reading them back from the memory mapped file.
+ */
+class SegmentFileTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void segmentHoldsTheVisibleRowsOfTheStore() throws IOException {
+        ColumnarStore store = ColumnarStoreTest.createStore();
+        Random random = new Random(42);
+        for (long id = 0; id < 500; id++) {
+            double[] elements = new double[1 + random.nextInt(8)];
+            for (int i = 0; i < elements.length; i++) {
+                elements[i] = random.nextGaussian();
+            }
+            store.addRow(id, id % 7 == 0 ? null : (int) id, id % 5 == 0 ? null : "name" + (id % 13),
+                    id % 11 == 0 ? null : DenseVector.of(elements));
+        }
+        store.addRow(3L, 333, "replaced", new float[] {3});
+        store.deleteRow(4L);
+
+        Path path = directory.resolve("rows" + SegmentFile.FILE_EXTENSION);
+        SegmentFile.write(store, path);
+        ColumnarStore segment = SegmentFile.open(path);
+
+        assertTrue(segment.isReadOnly());
+        assertEquals(store.getFieldNames(), segment.getFieldNames());
+        assertEquals(store.getFieldTypes(), segment.getFieldTypes());
+        assertEquals(499, segment.size());
+        assertEquals(-1, segment.findRow(4L));
+        VectorColumn segmentVectors = (VectorColumn) segment.getColumn(3);
+        VectorColumn storeVectors = (VectorColumn) store.getColumn(3);
+        assertTrue(segmentVectors.hasFloat64Elements());
+        for (long id = 0; id < 500; id++) {
+            int storeRow = store.findRow(id);
+            int segmentRow = segment.findRow(id);
+            assertEquals(storeRow < 0, segmentRow < 0, "id " + id);
+            if (storeRow < 0) continue;
+
+            for (int field = 0; field < 3; field++) {
+                assertEquals(store.getValue(storeRow, field), segment.getValue(segmentRow, field), "id " + id);
+            }
+            assertEquals(storeVectors.isNull(storeRow), segmentVectors.isNull(segmentRow), "id " + id);
+            if (!storeVectors.isNull(storeRow)) {
+                DenseVector expected = storeVectors.getVector(storeRow);
+                DenseVector actual = segmentVectors.getVector(segmentRow);
+                assertEquals(expected, actual, "id " + id);
+                for (int i = 0; i < expected.dimension(); i++) {
+                    assertEquals(expected.getDouble(i), actual.getDouble(i), "id " + id);
+                }
+                assertEquals(storeVectors.getSquaredNorm(storeRow), segmentVectors.getSquaredNorm(segmentRow));
+            }
+        }
+        assertEquals(333, segment.getValue(segment.findRow(3L), 1));
+    }
+
+    @Test
+    void floatVectorsAndStringKeysAreStored() throws IOException {
+        ColumnarStore store = new ColumnarStore(Arrays.asList("name", "vec"),
+                Arrays.asList(SqlTypeName.VARCHAR, SqlTypeName.OTHER));
+        store.addRow("b", new float[] {1, 2, 3});
+        store.addRow("a", new float[] {4, 5});
+
+        Path path = directory.resolve("names" + SegmentFile.FILE_EXTENSION);
+        SegmentFile.write(store, path);
+        ColumnarStore segment = SegmentFile.open(path);
+
+        VectorColumn vectors = (VectorColumn) segment.getColumn(1);
+        assertFalse(vectors.hasFloat64Elements());
+        assertEquals(new DenseVector(new float[] {4, 5}), vectors.getVector(segment.findRow("a")));
+        assertEquals(new DenseVector(new float[] {1, 2, 3}), vectors.getVector(segment.findRow("b")));
+        assertEquals(-1, segment.findRow("c"));
+    }
+
+    @Test
+    void invalidFilesAreRejected() throws IOException {
+        Path text = directory.resolve("text" + SegmentFile.FILE_EXTENSION);
+        Files.write(text, "not a segment file at all, only some text".getBytes());
+        assertThrows(IOException.class, () -> SegmentFile.open(text));
+
+        ColumnarStore store = ColumnarStoreTest.createStore();
+        store.addRow(1L, 1, "one", new float[] {1});
+        Path path = directory.resolve("truncated" + SegmentFile.FILE_EXTENSION);
+        SegmentFile.write(store, path);
+        byte[] bytes = Files.readAllBytes(path);
+        Files.write(path, Arrays.copyOf(bytes, 100));
+        assertThrows(IOException.class, () -> SegmentFile.open(path));
+
+        assertFalse(SegmentFile.isSupported(SqlTypeName.DOUBLE));
+        assertTrue(SegmentFile.isSupported(SqlTypeName.OTHER));
+    }
+}
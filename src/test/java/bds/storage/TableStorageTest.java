@@ -0,0 +1,166 @@
+package bds.storage;
+
+import org.apache.calcite.sql.type.SqlTypeName;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests of the MVCC snapshots, the LSM segments and the write-ahead log of TableStorage.
+ */
+class TableStorageTest {
+
+    @TempDir
+    Path directory;
+
+    @AfterEach
+    void clearProperties() {
+        System.clearProperty(SegmentFile.DIRECTORY_PROPERTY);
+        System.clearProperty(TableStorage.MEMTABLE_ROWS_PROPERTY);
+        System.clearProperty(TableStorage.MERGE_WIDTH_PROPERTY);
+    }
+
+    @Test
+    void snapshotKeepsTheRowsOfItsCommit() throws IOException {
+        TableStorage storage = TableStorage.inMemory("mvcc", createStore(5));
+        TableSnapshot before = storage.snapshot();
+
+        storage.write(Arrays.asList(LogRecord.upsert(2L, "two"), LogRecord.delete(3L), LogRecord.upsert(7L, "seven")));
+        TableSnapshot after = storage.snapshot();
+
+        assertEquals(5, before.getRowCount());
+        assertEquals("name2", getName(before, 2));
+        assertEquals("name3", getName(before, 3));
+        assertNull(getName(before, 7));
+
+        assertEquals(5, after.getRowCount());
+        assertEquals("two", getName(after, 2));
+        assertNull(getName(after, 3));
+        assertEquals("seven", getName(after, 7));
+    }
+
+    @Test
+    void mergedSegmentsKeepTheLatestVersionOfEachKey() throws IOException {
+        System.setProperty(TableStorage.MEMTABLE_ROWS_PROPERTY, "4");
+        System.setProperty(TableStorage.MERGE_WIDTH_PROPERTY, "2");
+        TableStorage storage = TableStorage.inMemory("lsm", createStore(20));
+
+        for (long id = 100; id < 140; id++) {
+            storage.write(Collections.singletonList(LogRecord.upsert(id, "name" + id)));
+            storage.flush();
+        }
+        for (long id = 0; id < 5; id++) {
+            storage.write(Collections.singletonList(LogRecord.upsert(id, "updated" + id)));
+        }
+        for (long id = 5; id < 10; id++) {
+            storage.write(Collections.singletonList(LogRecord.delete(id)));
+        }
+        for (long id = 100; id < 110; id++) {
+            storage.write(Collections.singletonList(LogRecord.delete(id)));
+        }
+        storage.flush();
+
+        TableSnapshot snapshot = storage.snapshot();
+        assertEquals(20 + 40 - 5 - 10, snapshot.getRowCount());
+        assertTrue(snapshot.getSegmentCount() < 10, "segments are merged: " + snapshot.getSegmentCount());
+        for (long id = 0; id < 5; id++) {
+            assertEquals("updated" + id, getName(snapshot, id));
+        }
+        for (long id = 5; id < 10; id++) {
+            assertNull(getName(snapshot, id));
+        }
+        for (long id = 100; id < 140; id++) {
+            assertEquals(id < 110 ? null : "name" + id, getName(snapshot, id));
+        }
+    }
+
+    @Test
+    void restartReplaysTheLog() throws IOException {
+        System.setProperty(SegmentFile.DIRECTORY_PROPERTY, directory.toString());
+        Path segmentPath = SegmentFile.getPath("wal");
+        SegmentFile.write(createStore(10), segmentPath);
+
+        TableStorage storage = open("wal", segmentPath);
+        assertTrue(storage.isDurable());
+        storage.write(Arrays.asList(LogRecord.upsert(3L, "three"), LogRecord.delete(4L)));
+        storage.write(Collections.singletonList(LogRecord.upsert(20L, "twenty")));
+        storage.close();
+
+        storage = open("wal", segmentPath);
+        TableSnapshot snapshot = storage.snapshot();
+        assertEquals(10, snapshot.getRowCount());
+        assertEquals("three", getName(snapshot, 3));
+        assertNull(getName(snapshot, 4));
+        assertEquals("twenty", getName(snapshot, 20));
+
+        // after a flush the changes are in a segment file, and a later delete leaves a tombstone in the log
+        storage.flush();
+        storage.write(Collections.singletonList(LogRecord.delete(3L)));
+        storage.close();
+
+        storage = open("wal", segmentPath);
+        snapshot = storage.snapshot();
+        assertEquals(9, snapshot.getRowCount());
+        assertNull(getName(snapshot, 3));
+        assertNull(getName(snapshot, 4));
+        assertEquals("twenty", getName(snapshot, 20));
+        assertEquals("name5", getName(snapshot, 5));
+        storage.close();
+    }
+
+    @Test
+    void damagedLogFailsToOpen() throws IOException {
+        System.setProperty(SegmentFile.DIRECTORY_PROPERTY, directory.toString());
+        Path segmentPath = SegmentFile.getPath("damaged");
+        SegmentFile.write(createStore(10), segmentPath);
+        Files.write(WriteAheadLog.getPath("damaged"), new byte[] {1, 2, 3, 4, 5, 6, 7, 8, 9});
+
+        assertThrows(IOException.class, () -> open("damaged", segmentPath));
+    }
+
+    @Test
+    void missingSegmentFileFailsToOpen() {
+        System.setProperty(SegmentFile.DIRECTORY_PROPERTY, directory.toString());
+
+        assertThrows(IOException.class, () -> TableStorage.open("missing", createStore(0), () -> createStore(10)));
+    }
+
+    private static TableStorage open(String tableName, Path segmentPath) throws IOException {
+        return TableStorage.open(tableName, createStore(0), () -> {
+            try {
+                return SegmentFile.open(segmentPath);
+            }
+            catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        });
+    }
+
+    private static ColumnarStore createStore(int rows) {
+        ColumnarStore store = new ColumnarStore(Arrays.asList("id", "name"),
+                Arrays.asList(SqlTypeName.BIGINT, SqlTypeName.VARCHAR));
+        for (long id = 0; id < rows; id++) {
+            store.addRow(id, "name" + id);
+        }
+        return store;
+    }
+
+    private static String getName(TableSnapshot snapshot, long id) {
+        long reference = snapshot.findRow(id);
+        if (reference < 0) return null;
+
+        Snapshot segment = snapshot.getSegment(TableSnapshot.getSegmentIndex(reference));
+        return (String) segment.getStore().getValue(TableSnapshot.getRow(reference), 1);
+    }
+}
@@ -0,0 +1,70 @@
+package bds.storage;
+
+import org.apache.calcite.sql.type.SqlTypeName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Tests of the commits of WriteAheadLog that cannot be encoded or applied.
+ */
+class WriteAheadLogTest {
+    private static final List<SqlTypeName> TYPES = Arrays.asList(SqlTypeName.BIGINT, SqlTypeName.INTEGER);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void invalidCommitIsNeitherWrittenNorApplied() throws IOException {
+        Path path = directory.resolve("invalid.wal");
+        List<List<LogRecord>> applied = new ArrayList<>();
+        try (WriteAheadLog log = WriteAheadLog.open(path, TYPES, WriteAheadLog.SyncMode.COMMIT, applied::add)) {
+            log.append(Collections.singletonList(LogRecord.upsert(1L, 10)));
+            assertThrows(IllegalArgumentException.class,
+                    () -> log.append(Collections.singletonList(LogRecord.upsert(2L, "not a number"))));
+            assertThrows(IllegalArgumentException.class,
+                    () -> log.append(Collections.singletonList(LogRecord.upsert(3L))));
+            log.append(Collections.singletonList(LogRecord.upsert("4", "40")));
+        }
+
+        assertEquals(2, applied.size());
+        // the applied records are converted to the types of the fields, like the replayed ones
+        assertArrayEquals(new Object[] {4L, 40}, applied.get(1).get(0).getValues());
+        assertEquals(applied.size(), replay(path).size());
+    }
+
+    @Test
+    void writtenCommitIsNotReportedAsFailed() throws IOException {
+        Path path = directory.resolve("apply.wal");
+        List<List<LogRecord>> applied = new ArrayList<>();
+        try (WriteAheadLog log = WriteAheadLog.open(path, TYPES, WriteAheadLog.SyncMode.COMMIT, records -> {
+            if (records.get(0).getValues()[0].equals(2L)) throw new IllegalStateException("apply failed");
+            applied.add(records);
+        })) {
+            log.append(Collections.singletonList(LogRecord.upsert(1L, 10)));
+            log.append(Collections.singletonList(LogRecord.upsert(2L, 20)));
+            assertThrows(IllegalStateException.class,
+                    () -> log.append(Collections.singletonList(LogRecord.upsert(3L, 30))));
+        }
+
+        assertEquals(1, applied.size());
+        List<List<LogRecord>> replayed = replay(path);
+        assertEquals(2, replayed.size());
+        assertArrayEquals(new Object[] {2L, 20}, replayed.get(1).get(0).getValues());
+    }
+
+    private static List<List<LogRecord>> replay(Path path) throws IOException {
+        List<List<LogRecord>> commits = new ArrayList<>();
+        WriteAheadLog.replay(path, TYPES, commits::add);
+        return commits;
+    }
+}
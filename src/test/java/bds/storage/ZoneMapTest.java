@@ -0,0 +1,150 @@
+package bds.storage;
+
+import bds.vectors.DenseVector;
+import bds.vectors.QueryVector;
+import bds.vectors.VectorFunctions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests that the ZoneMap of a store never rules a block out when one of its rows has a value in a range or a score
+ * between the bounds, for maps built as rows are appended and from the columns of a segment file.
+ */
+class ZoneMapTest {
+    private static final int ROWS = 5 * ZoneMap.BLOCK_ROWS + 100;
+    private static final String[] QUERIES = {"1,0,0,0,0,0,0,0", "-0.5,2,0,1,-3,0.25,0,1", "1e-3,-1e-3,0,0,0,0,0,0",
+        "3,3,3,3,3,3,3,3,3,3"};
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void blocksHoldingValuesInRangesAreKept() throws IOException {
+        ColumnarStore store = createStore();
+        assertValueBlocks(store, store.getZoneMap());
+        assertValueBlocks(store, openSegment(store).getZoneMap());
+    }
+
+    @Test
+    void scoresOfEveryVectorAreWithinTheBoundsOfItsBlock() throws IOException {
+        ColumnarStore store = createStore();
+        assertScoreBounds(store, store.getZoneMap());
+        assertScoreBounds(store, openSegment(store).getZoneMap());
+    }
+
+    @Test
+    void blocksWithoutValuesHaveEmptyBounds() {
+        ColumnarStore store = ColumnarStoreTest.createStore();
+        for (long id = 0; id < ZoneMap.BLOCK_ROWS + 1; id++) {
+            store.addRow(id, null, null, id < ZoneMap.BLOCK_ROWS ? new float[4] : null);
+        }
+        ZoneMap zoneMap = store.getZoneMap();
+        assertEquals(2, ZoneMap.getBlockCount(store.size()));
+        assertFalse(zoneMap.mayContain(1, 0, -1000, 1000));
+
+        QueryVector query = QueryVector.parse("1,1,1,1");
+        // the cosine similarity of a vector of norm 0 is NaN, which no bound comparison accepts
+        assertArrayEquals(new double[] {Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY},
+                zoneMap.getScoreBounds(3, 0, query, true));
+        assertArrayEquals(new double[] {Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY},
+                zoneMap.getScoreBounds(3, 1, query, false));
+        double[] bounds = zoneMap.getScoreBounds(3, 0, query, false);
+        assertTrue(bounds[0] <= 0 && bounds[1] >= 0);
+    }
+
+    /**
+     * Method to check ranges around the values of each block: a block is kept when one of its rows is in the range,
+     * and, since the values of the store grow from block to block, ruled out when the range is past its values.
+     */
+    private static void assertValueBlocks(ColumnarStore store, ZoneMap zoneMap) {
+        for (int field = 0; field < 3; field++) {
+            int skipped = 0;
+            for (long from = -5; from < ROWS + 5; from += 97) {
+                for (long width : new long[] {0, 3, 500, 5000}) {
+                    long to = from + width;
+                    for (int block = 0; block < ZoneMap.getBlockCount(store.size()); block++) {
+                        boolean holds = false;
+                        int end = Math.min(store.size(), (block + 1) * ZoneMap.BLOCK_ROWS);
+                        for (int row = block * ZoneMap.BLOCK_ROWS; row < end && !holds; row++) {
+                            Long value = getValue(store, field, row);
+                            holds = value != null && value >= from && value <= to;
+                        }
+                        boolean kept = zoneMap.mayContain(field, block, from, to);
+                        assertTrue(kept || !holds, "field " + field + " block " + block + " [" + from + ", " + to
+                                + "]");
+                        if (!kept) skipped++;
+                    }
+                }
+            }
+            assertTrue(skipped > 0, "field " + field);
+        }
+    }
+
+    private static void assertScoreBounds(ColumnarStore store, ZoneMap zoneMap) {
+        VectorColumn vectors = (VectorColumn) store.getColumn(3);
+        for (String encoded : QUERIES) {
+            QueryVector query = QueryVector.parse(encoded);
+            for (int block = 0; block < ZoneMap.getBlockCount(store.size()); block++) {
+                double[] dotBounds = zoneMap.getScoreBounds(3, block, query, false);
+                double[] cosineBounds = zoneMap.getScoreBounds(3, block, query, true);
+                int end = Math.min(store.size(), (block + 1) * ZoneMap.BLOCK_ROWS);
+                for (int row = block * ZoneMap.BLOCK_ROWS; row < end; row++) {
+                    if (vectors.isNull(row)) continue;
+
+                    DenseVector vector = vectors.getVector(row);
+                    String name = encoded + " row " + row;
+                    assertWithin(dotBounds, VectorFunctions.similarity(vector, query), name);
+                    assertWithin(cosineBounds, VectorFunctions.cosineSimilarity(vector, query), name);
+                }
+            }
+        }
+    }
+
+    private static void assertWithin(double[] bounds, double score, String name) {
+        if (Double.isNaN(score)) return;
+
+        assertTrue(bounds[0] <= score && score <= bounds[1], name + ": " + score + " not in [" + bounds[0] + ", "
+                + bounds[1] + "]");
+    }
+
+    private static Long getValue(ColumnarStore store, int field, int row) {
+        Column column = store.getColumn(field);
+        if (column.isNull(row)) return null;
+        if (column instanceof DictionaryColumn) return (long) ((DictionaryColumn) column).getCode(row);
+
+        return ((Number) store.getValue(row, field)).longValue();
+    }
+
+    /**
+     * Method to create a store whose values grow from block to block with some noise, with null values, and with
+     * vectors of a few dimensions around a mean that changes from block to block, some shorter than the others.
+     */
+    private static ColumnarStore createStore() {
+        ColumnarStore store = ColumnarStoreTest.createStore();
+        Random random = new Random(42);
+        for (long id = 0; id < ROWS; id++) {
+            int noise = random.nextInt(200) - 100;
+            float[] elements = new float[id % 10 == 0 ? 3 : 8];
+            for (int i = 0; i < elements.length; i++) {
+                elements[i] = (float) (random.nextGaussian() + (id / ZoneMap.BLOCK_ROWS) * (i % 2 == 0 ? 1 : -1));
+            }
+            store.addRow(id, id % 13 == 0 ? null : (int) (id + noise), "name" + (char) ('a' + id / 700),
+                    id % 17 == 0 ? null : elements);
+        }
+        return store;
+    }
+
+    private ColumnarStore openSegment(ColumnarStore store) throws IOException {
+        Path path = directory.resolve("rows" + SegmentFile.FILE_EXTENSION);
+        SegmentFile.write(store, path);
+        return SegmentFile.open(path);
+    }
+}
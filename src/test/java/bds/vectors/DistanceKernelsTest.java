@@ -0,0 +1,132 @@
+package bds.vectors;
+
+import org.junit.jupiter.api.Test;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Tests comparing the SIMD distance kernels with the scalar ones, and checking which kernels are chosen at startup.
+ * The SIMD kernels are loaded by name, like DistanceKernels does, since they are left out of builds on older JDKs.
+ */
+class DistanceKernelsTest {
+    private static final String SIMD_CLASS = "bds.vectors.SimdDistanceKernels";
+    private static final double ERROR = 1e-5;
+
+    @Test
+    void simdKernelsMatchTheScalarKernels() {
+        DistanceKernels simd = createSimdKernels();
+        assumeTrue(simd != null, "the jdk.incubator.vector module is not available");
+        DistanceKernels scalar = new ScalarDistanceKernels();
+
+        Random random = new Random(42);
+        // dimensions below, at and above the SIMD lengths and blocks, so the tail loops are covered
+        for (int dimension : new int[] {0, 1, 3, 7, 8, 15, 16, 17, 31, 64, 100, 257, 1536}) {
+            float[] a = randomVector(random, dimension);
+            float[] b = randomVector(random, dimension);
+            float[] shorter = randomVector(random, dimension / 2);
+            String name = "dimension " + dimension;
+
+            assertClose(scalar.dot(a, b), simd.dot(a, b), name);
+            assertClose(scalar.dot(a, shorter), simd.dot(a, shorter), name);
+            assertClose(scalar.cosine(a, b), simd.cosine(a, b), name);
+            assertClose(scalar.squaredL2(a, b), simd.squaredL2(a, b), name);
+            assertClose(scalar.squaredL2(a, shorter), simd.squaredL2(a, shorter), name);
+
+            // a slice of a larger array, as stored by a columnar store
+            float[] array = new float[dimension + 5];
+            System.arraycopy(a, 0, array, 3, dimension);
+            assertClose(scalar.dot(array, 3, dimension, b), simd.dot(array, 3, dimension, b), name);
+            assertSameResult(scalar.dotAndSquaredNorm(array, 3, dimension, b, new DotAndSquaredNorm()),
+                    simd.dotAndSquaredNorm(array, 3, dimension, b, new DotAndSquaredNorm()), name);
+
+            // the same elements encoded as little-endian float32, as in a segment file
+            ByteBuffer buffer = ByteBuffer.allocate(8 + dimension * 4).order(ByteOrder.LITTLE_ENDIAN);
+            for (int i = 0; i < dimension; i++) {
+                buffer.putFloat(8 + i * 4, a[i]);
+            }
+            assertSameResult(scalar.dotAndSquaredNorm(a, b, new DotAndSquaredNorm()),
+                    simd.dotAndSquaredNorm(buffer, 8, dimension, b, new DotAndSquaredNorm()), name);
+
+            byte[] codes = new byte[dimension + 2];
+            random.nextBytes(codes);
+            assertClose(scalar.dot(a, codes, 2, dimension), simd.dot(a, codes, 2, dimension), name);
+        }
+    }
+
+    @Test
+    void scalarKernelsComputeTheExactScores() {
+        DistanceKernels scalar = new ScalarDistanceKernels();
+        float[] a = {1, 2, 3};
+        float[] b = {4, -5, 6};
+        assertEquals(12, scalar.dot(a, b));
+        assertEquals(12 / Math.sqrt(14 * 77), scalar.cosine(a, b), ERROR);
+        assertEquals(9 + 49 + 9, scalar.squaredL2(a, b));
+        assertEquals(1 * 4 + 2 * -5, scalar.dot(a, new float[] {4, -5}));
+        assertTrue(Double.isNaN(scalar.cosine(new float[3], b)));
+
+        DotAndSquaredNorm result = scalar.dotAndSquaredNorm(a, b, new DotAndSquaredNorm());
+        assertEquals(12, result.getDot());
+        assertEquals(14, result.getSquaredNorm());
+    }
+
+    @Test
+    void kernelsAreChosenFromTheModuleAndTheProperty() throws ReflectiveOperationException {
+        boolean simdAvailable = createSimdKernels() != null;
+        assertEquals(simdAvailable, DistanceKernels.getInstance().getName().startsWith("SIMD"));
+
+        String previous = System.getProperty(DistanceKernels.SIMD_PROPERTY);
+        System.setProperty(DistanceKernels.SIMD_PROPERTY, "false");
+        try {
+            Method create = DistanceKernels.Holder.class.getDeclaredMethod("create");
+            create.setAccessible(true);
+            assertTrue(create.invoke(null) instanceof ScalarDistanceKernels);
+        }
+        finally {
+            if (previous == null) {
+                System.clearProperty(DistanceKernels.SIMD_PROPERTY);
+            } else {
+                System.setProperty(DistanceKernels.SIMD_PROPERTY, previous);
+            }
+        }
+    }
+
+    /**
+     * Method to create the SIMD kernels.
+     * @return the SIMD kernels, or null if the jdk.incubator.vector module is not available.
+     */
+    private static DistanceKernels createSimdKernels() {
+        try {
+            return (DistanceKernels) Class.forName(SIMD_CLASS).getDeclaredConstructor().newInstance();
+        }
+        catch (ReflectiveOperationException | LinkageError ex) {
+            return null;
+        }
+    }
+
+    private static void assertSameResult(DotAndSquaredNorm expected, DotAndSquaredNorm actual, String name) {
+        assertClose(expected.getDot(), actual.getDot(), name);
+        assertClose(expected.getSquaredNorm(), actual.getSquaredNorm(), name);
+    }
+
+    private static void assertClose(double expected, double actual, String name) {
+        if (Double.isNaN(expected)) {
+            assertTrue(Double.isNaN(actual), name);
+        } else {
+            assertEquals(expected, actual, ERROR * Math.max(1, Math.abs(expected)), name);
+        }
+    }
+
+    private static float[] randomVector(Random random, int dimension) {
+        float[] elements = new float[dimension];
+        for (int i = 0; i < dimension; i++) {
+            elements[i] = (float) random.nextGaussian();
+        }
+        return elements;
+    }
+}
@@ -0,0 +1,53 @@
+package bds.vectors;
+
+import org.junit.jupiter.api.Test;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * Tests of the query vectors prepared once per statement.
+ */
+class PreparedQueryTest {
+    private static final List<BigDecimal> ELEMENTS = Arrays.asList(new BigDecimal("3"), new BigDecimal("4"));
+
+    @Test
+    void queryIsPreparedAgainOnlyForAnotherList() {
+        PreparedQuery prepared = new PreparedQuery();
+        QueryVector query = prepared.get(ELEMENTS);
+
+        assertSame(query, prepared.get(ELEMENTS));
+        // lists are compared by reference, so an equal list passed by another execution is prepared again
+        QueryVector other = prepared.get(new ArrayList<>(ELEMENTS));
+        assertNotSame(query, other);
+        assertArrayEquals(query.getElements(), other.getElements());
+    }
+
+    @Test
+    void preparedQueryHoldsTheConvertedElements() {
+        QueryVector query = QueryVector.parse("3,4");
+
+        assertArrayEquals(new float[] {3, 4}, query.getElements());
+        assertEquals(5, query.getNorm());
+        assertEquals(ELEMENTS, query.getSource());
+    }
+
+    @Test
+    void listAndPreparedOverloadsGiveTheSameScores() {
+        DenseVector vector = new DenseVector(new float[] {1, 2});
+        QueryVector query = QueryVector.of(ELEMENTS);
+
+        assertEquals(11, VectorFunctions.similarity(vector, ELEMENTS), 1e-9);
+        assertEquals(VectorFunctions.similarity(vector, ELEMENTS), VectorFunctions.similarity(vector, query));
+        assertEquals(VectorFunctions.cosineSimilarity(vector, ELEMENTS),
+                VectorFunctions.cosineSimilarity(vector, query));
+        assertEquals(VectorFunctions.hammingDistance(vector, ELEMENTS),
+                VectorFunctions.hammingDistance(vector, query));
+    }
+}
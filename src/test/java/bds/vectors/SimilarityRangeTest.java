@@ -0,0 +1,129 @@
+package bds.vectors;
+
+import org.junit.jupiter.api.Test;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests comparing the vectors a SimilarityRange accepts, rejecting most of them early, with the vectors whose
+ * complete scores are in the range.
+ */
+class SimilarityRangeTest {
+    private static final int DIMENSION = 200;
+
+    @Test
+    void earlyRejectionKeepsTheVectorsOfCompleteScoring() {
+        Random random = new Random(42);
+        QueryVector query = randomQuery(random);
+        List<DenseVector> vectors = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            // some vectors are shorter than the query, and some are the query itself or its opposite
+            float[] elements = new float[i % 9 == 0 ? DIMENSION / 3 : DIMENSION];
+            for (int j = 0; j < elements.length; j++) {
+                float element = query.getElements()[j];
+                elements[j] = i == 1 ? element : i == 2 ? -element : (float) random.nextGaussian();
+            }
+            vectors.add(new DenseVector(elements));
+        }
+
+        double[][] ranges = {{-0.1, 0.1}, {0.2, Double.POSITIVE_INFINITY}, {Double.NEGATIVE_INFINITY, -0.25},
+            {0.999, 1}, {-1, -0.999}, {-20, -5}, {15, Double.POSITIVE_INFINITY}, {Double.NEGATIVE_INFINITY, 0}};
+        for (VectorMetric metric : VectorMetric.values()) {
+            boolean cosine = metric == VectorMetric.COSINE;
+            for (double[] range : ranges) {
+                double from = cosine || Double.isInfinite(range[0]) ? range[0] : range[0] * 10;
+                double to = cosine || Double.isInfinite(range[1]) ? range[1] : range[1] * 10;
+                int rejected = 0;
+                for (boolean inclusive : new boolean[] {true, false}) {
+                    SimilarityRange similarityRange = new SimilarityRange(query, metric, from, inclusive, to,
+                            inclusive);
+                    for (DenseVector vector : vectors) {
+                        VectorScore expected = scoreCompletely(vector, query);
+                        double score = cosine ? expected.getCosine() : expected.getDot();
+                        boolean accepted = inclusive ? from <= score && score <= to : from < score && score < to;
+                        String name = metric + " [" + from + ", " + to + "] " + score;
+                        assertEquals(accepted, similarityRange.contains(vector, squaredNorm(vector)), name);
+
+                        VectorScore actual = similarityRange.score(vector, squaredNorm(vector));
+                        if (actual == null) {
+                            assertFalse(accepted, name);
+                            rejected++;
+                        } else {
+                            assertEquals(expected.getDot(), actual.getDot(), name);
+                            assertEquals(score, cosine ? actual.getCosine() : actual.getDot(), name);
+                        }
+                    }
+                }
+                assertTrue(rejected > 0, metric + " [" + from + ", " + to + "] rejected no vector early");
+            }
+        }
+    }
+
+    @Test
+    void boundsAreInclusiveOrExclusive() {
+        QueryVector query = QueryVector.parse("1,0,0");
+        DenseVector vector = DenseVector.of(-2, 5, 0);
+        float squaredNorm = squaredNorm(vector);
+        assertTrue(new SimilarityRange(query, VectorMetric.DOT_PRODUCT, -2, true, 3, false)
+                .contains(vector, squaredNorm));
+        assertFalse(new SimilarityRange(query, VectorMetric.DOT_PRODUCT, -2, false, 3, false)
+                .contains(vector, squaredNorm));
+        assertTrue(new SimilarityRange(query, VectorMetric.DOT_PRODUCT, -5, false, -2, true)
+                .contains(vector, squaredNorm));
+        assertFalse(new SimilarityRange(query, VectorMetric.DOT_PRODUCT, -5, false, -2, false)
+                .contains(vector, squaredNorm));
+
+        DenseVector same = DenseVector.of(3, 0, 0);
+        assertTrue(new SimilarityRange(query, VectorMetric.COSINE, 1, true, 1, true).contains(same, 9));
+        assertFalse(new SimilarityRange(query, VectorMetric.COSINE, 1, false, Double.POSITIVE_INFINITY, false)
+                .contains(same, 9));
+    }
+
+    @Test
+    void vectorsWithoutCosineSimilarityAreNotInCosineRanges() {
+        QueryVector query = QueryVector.parse("1,2,3");
+        SimilarityRange everything = new SimilarityRange(query, VectorMetric.COSINE, Double.NEGATIVE_INFINITY, true,
+                Double.POSITIVE_INFINITY, true);
+        assertFalse(everything.contains(new DenseVector(new float[3]), 0));
+        assertNull(everything.score(new DenseVector(new float[3]), 0));
+        assertNotNull(new SimilarityRange(query, VectorMetric.DOT_PRODUCT, Double.NEGATIVE_INFINITY, true,
+                Double.POSITIVE_INFINITY, true).score(new DenseVector(new float[3]), 0));
+    }
+
+    /**
+     * Method to score a vector completely, accumulating the products in doubles like the range does.
+     */
+    private static VectorScore scoreCompletely(DenseVector vector, QueryVector query) {
+        float[] elements = query.getElements();
+        double dot = 0;
+        double squares = 0;
+        for (int i = 0; i < Math.min(vector.dimension(), elements.length); i++) {
+            dot += (double) vector.get(i) * elements[i];
+            squares += (double) vector.get(i) * vector.get(i);
+        }
+        return new VectorScore(query, dot, squares);
+    }
+
+    private static float squaredNorm(DenseVector vector) {
+        double squares = 0;
+        for (int i = 0; i < vector.dimension(); i++) {
+            squares += (double) vector.get(i) * vector.get(i);
+        }
+        return (float) squares;
+    }
+
+    private static QueryVector randomQuery(Random random) {
+        StringBuilder encoded = new StringBuilder();
+        for (int i = 0; i < DIMENSION; i++) {
+            encoded.append(i == 0 ? "" : ",").append((float) random.nextGaussian());
+        }
+        return QueryVector.parse(encoded.toString());
+    }
+}
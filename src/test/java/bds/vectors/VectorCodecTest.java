@@ -0,0 +1,62 @@
+package bds.vectors;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests of the float32 and float64 encodings of VectorCodec.
+ */
+class VectorCodecTest {
+    private static final double[] VALUES = {0.1, -2.0000000001, Math.PI, 1e-300, Double.MAX_VALUE};
+
+    @Test
+    void float64RoundTripKeepsEveryDigit() {
+        DenseVector vector = VectorCodec.decode(VectorCodec.encode(VALUES));
+
+        assertTrue(vector.hasFloat64Elements());
+        assertEquals(VALUES.length, vector.dimension());
+        for (int i = 0; i < VALUES.length; i++) {
+            assertEquals(VALUES[i], vector.getDouble(i));
+            assertEquals((float) VALUES[i], vector.get(i));
+        }
+    }
+
+    @Test
+    void float64VectorIsEncodedAsFloat64() {
+        DenseVector vector = DenseVector.of(VALUES);
+        byte[] encoded = VectorCodec.encode(vector);
+
+        assertEquals(VectorCodec.encodedLength(VALUES.length, VectorCodec.FLOAT64), encoded.length);
+        DenseVector decoded = VectorCodec.decode(encoded);
+        for (int i = 0; i < VALUES.length; i++) {
+            assertEquals(VALUES[i], decoded.getDouble(i));
+        }
+    }
+
+    @Test
+    void float32RoundTripWidensTheFloats() {
+        float[] elements = {0.1f, -2.5f, 3.25f};
+        DenseVector vector = VectorCodec.decode(VectorCodec.encode(new DenseVector(elements)));
+
+        assertFalse(vector.hasFloat64Elements());
+        assertEquals(VectorCodec.encodedLength(elements.length, VectorCodec.FLOAT32),
+                VectorCodec.encode(elements).length);
+        for (int i = 0; i < elements.length; i++) {
+            assertEquals(elements[i], vector.get(i));
+            assertEquals((double) elements[i], vector.getDouble(i));
+        }
+    }
+
+    @Test
+    void truncatedVectorIsRejected() {
+        byte[] encoded = VectorCodec.encode(VALUES);
+        byte[] truncated = new byte[encoded.length - 1];
+        System.arraycopy(encoded, 0, truncated, 0, truncated.length);
+
+        assertThrows(IllegalArgumentException.class, () -> VectorCodec.decode(truncated));
+    }
+}
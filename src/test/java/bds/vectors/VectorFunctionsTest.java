@@ -0,0 +1,84 @@
+package bds.vectors;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests comparing the FAST and EXACT precision modes of the Vector Functions, and HAMMING_DISTANCE with a count of
+ * the differing signs.
+ */
+class VectorFunctionsTest {
+    private static final QueryVector QUERY = QueryVector.parse("1,2,2");
+
+    @AfterEach
+    void resetPrecision() {
+        VectorFunctions.setPrecision(VectorPrecision.FAST);
+    }
+
+    @Test
+    void exactAndFastScoresAgree() {
+        DenseVector vector = DenseVector.of(0.5, -1.25, 4);
+        for (VectorPrecision precision : VectorPrecision.values()) {
+            VectorFunctions.setPrecision(precision);
+            assertEquals(6.0, VectorFunctions.similarity(vector, QUERY), 1e-6, precision.toString());
+            assertEquals(6.0 / (3 * Math.sqrt(17.8125)), VectorFunctions.cosineSimilarity(vector, QUERY), 1e-6,
+                    precision.toString());
+        }
+    }
+
+    @Test
+    void scoresThatCannotBeComputedAreNaN() {
+        VectorFunctions.setPrecision(VectorPrecision.EXACT);
+        DenseVector invalid = new DenseVector(new float[] {Float.NaN, 1, 1});
+        assertTrue(Double.isNaN(VectorFunctions.similarity(invalid, QUERY)));
+        assertTrue(Double.isNaN(VectorFunctions.cosineSimilarity(invalid, QUERY)));
+        assertTrue(Double.isNaN(VectorFunctions.cosineSimilarity(new DenseVector(new float[3]), QUERY)));
+
+        VectorFunctions.setPrecision(VectorPrecision.FAST);
+        assertTrue(Double.isNaN(VectorFunctions.cosineSimilarity(new DenseVector(new float[3]), QUERY)));
+    }
+
+    @Test
+    void hammingDistanceCountsTheElementsWhoseSignsDiffer() {
+        Random random = new Random(42);
+        // lengths below, at and above the 64 elements of a code word, and vectors shorter than the query
+        for (int dimension : new int[] {1, 5, 63, 64, 65, 130}) {
+            float[] elements = new float[dimension];
+            List<BigDecimal> query = new ArrayList<>();
+            for (int i = 0; i < dimension; i++) {
+                elements[i] = i % 7 == 0 ? 0 : (float) random.nextGaussian();
+                query.add(BigDecimal.valueOf(i % 5 == 0 ? 0 : random.nextGaussian()));
+            }
+            float[] shorter = new float[dimension / 2];
+            System.arraycopy(elements, 0, shorter, 0, shorter.length);
+
+            assertEquals(countDifferentSigns(elements, query), VectorFunctions.hammingDistance(
+                    new DenseVector(elements), query), "dimension " + dimension);
+            assertEquals(countDifferentSigns(shorter, query), VectorFunctions.hammingDistance(
+                    new DenseVector(shorter), query), "dimension " + dimension);
+        }
+        assertEquals(0, VectorFunctions.hammingDistance(DenseVector.of(1, -2, 0), QueryVector.parse("3,-1,0")));
+        assertEquals(3, VectorFunctions.hammingDistance(DenseVector.of(1, -2, 0), QueryVector.parse("-3,1,2")));
+    }
+
+    /**
+     * Method to count the elements whose signs differ, counting 0 and the missing elements of the vector as negative.
+     */
+    private static int countDifferentSigns(float[] vector, List<BigDecimal> query) {
+        int count = 0;
+        for (int i = 0; i < query.size(); i++) {
+            boolean positive = i < vector.length && vector[i] > 0;
+            if (positive != (query.get(i).signum() > 0)) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
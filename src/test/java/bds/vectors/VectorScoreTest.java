@@ -0,0 +1,92 @@
+package bds.vectors;
+
+import bds.query.CalciteConnector;
+import org.apache.calcite.jdbc.CalciteConnection;
+import org.junit.jupiter.api.Test;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests checking that a score is only reused for the row that computed it, and that the scores reused by the SELECT
+ * list of a filtered query are the scores computed without the filter.
+ */
+class VectorScoreTest {
+    private static final String QUERY = "1.0, 2.0, 3.0, 4.0";
+
+    @Test
+    void scoringLeavesTheVectorUnchanged() {
+        DenseVector vector = new DenseVector(new float[] {3, 4});
+        QueryVector query = QueryVector.parse("1,2");
+
+        VectorScore first = VectorFunctions.score(vector, query);
+        VectorScore second = VectorFunctions.score(vector, query);
+        assertNotSame(first, second);
+        assertNull(ScoredVector.getScore(vector, query));
+        assertEquals(11, first.getDot(), 1e-9);
+        assertEquals(11 / (5 * Math.sqrt(5)), first.getCosine(), 1e-9);
+    }
+
+    @Test
+    void scoredVectorReusesItsScoreForTheSameElementsOnly() {
+        DenseVector vector = new DenseVector(new float[] {3, 4});
+        QueryVector query = QueryVector.parse("1,2");
+        SimilarityRange range = new SimilarityRange(query, VectorMetric.COSINE, 0.5, false, Double.POSITIVE_INFINITY,
+                false);
+        VectorScore score = range.score(vector, 25);
+        assertNotNull(score);
+        assertTrue(range.contains(score));
+
+        ScoredVector scored = new ScoredVector(vector, score);
+        assertEquals(vector, scored);
+        assertSame(score, VectorFunctions.score(scored, QueryVector.parse("1.0,2.0")));
+        assertSame(score, range.score(scored, 25));
+        assertNull(ScoredVector.getScore(scored, QueryVector.parse("2,1")));
+        assertEquals(10, VectorFunctions.similarity(scored, QueryVector.parse("2,1")), 1e-9);
+        assertNull(ScoredVector.getScore(vector, query));
+    }
+
+    @Test
+    void filteredQueryReturnsTheScoresOfTheUnfilteredQuery() throws SQLException, ClassNotFoundException {
+        try (CalciteConnection connection = new CalciteConnector().connect(new Properties())) {
+            String select = "SELECT id, hr.SIMILARITY(vec, ARRAY[" + QUERY + "]), hr.COSINE_SIMILARITY(vec, ARRAY["
+                    + QUERY + "]) FROM hr.employees";
+            Map<Long, double[]> expected = queryScores(connection, select);
+            Map<Long, double[]> filtered = queryScores(connection, select + " WHERE hr.COSINE_SIMILARITY(vec, ARRAY["
+                    + QUERY + "]) > 0.5 AND hr.SIMILARITY(vec, ARRAY[" + QUERY + "]) > 0");
+
+            assertFalse(filtered.isEmpty());
+            for (Map.Entry<Long, double[]> entry : expected.entrySet()) {
+                double[] scores = entry.getValue();
+                double[] filteredScores = filtered.get(entry.getKey());
+                assertEquals(scores[1] > 0.5 && scores[0] > 0, filteredScores != null, "id " + entry.getKey());
+                if (filteredScores != null) {
+                    assertEquals(scores[0], filteredScores[0], "id " + entry.getKey());
+                    assertEquals(scores[1], filteredScores[1], "id " + entry.getKey());
+                }
+            }
+        }
+    }
+
+    private static Map<Long, double[]> queryScores(CalciteConnection connection, String sql) throws SQLException {
+        Map<Long, double[]> scores = new HashMap<>();
+        try (Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery(sql)) {
+            while (resultSet.next()) {
+                scores.put(resultSet.getLong(1), new double[] {resultSet.getDouble(2), resultSet.getDouble(3)});
+            }
+        }
+        return scores;
+    }
+}